@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2.tutorial;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import com.here.account.auth.BatchSignatureVerifier;
+
+/**
+ * A tutorial class providing example code for re-verifying an archive of
+ * signed requests, such as for an audit, with a {@link BatchSignatureVerifier}.
+ */
+public class BatchSignatureVerificationTutorial {
+
+    private final String[] argv;
+
+    public BatchSignatureVerificationTutorial(String[] argv) {
+        this.argv = argv;
+    }
+
+    public static void main(String[] argv) {
+        new BatchSignatureVerificationTutorial(argv).verify();
+    }
+
+    protected void exit(int status) {
+        System.exit(status);
+    }
+
+    /**
+     * Verifies the records, printing the report and any failures.
+     *
+     * @return the report, or null if the records could not be verified
+     */
+    public BatchSignatureVerifier.Report verify() {
+        Args args = parseArgs(argv);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(args.parallelism);
+        try (InputStream records = new FileInputStream(args.recordsFile)) {
+            final Properties verificationKeys = loadProperties(args.verificationKeysFile);
+            BatchSignatureVerifier verifier = BatchSignatureVerifier.builder()
+                    .setForkJoinPool(forkJoinPool)
+                    .setVerificationKeyProvider(consumerKey -> verificationKeys.getProperty(consumerKey))
+                    .build();
+            BatchSignatureVerifier.Report report = verifier.verify(records);
+            System.out.println(report);
+            for (BatchSignatureVerifier.Failure failure : report.getFailures()) {
+                System.out.println("  " + failure);
+            }
+            if (report.getFailures().size() < report.getFailureCount()) {
+                System.out.println("  ...");
+            }
+            if (report.getFailureCount() > 0) {
+                exit(3);
+            }
+            return report;
+        } catch (IOException e) {
+            System.err.println("trouble verifying records: " + e);
+            e.printStackTrace();
+            exit(2);
+            return null;
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    private static Properties loadProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    ////////
+    // print usage and exit
+    ////////
+
+    /**
+     * Usage is displayed to stderr, along with exiting the process with a non-zero exit code.
+     */
+    protected void printUsageAndExit() {
+        System.err.println("Usage: java "
+                + BatchSignatureVerificationTutorial.class.getName()
+                + " [-help]"
+                + " [-parallelism n]"
+                + " path_to_verification_keys_property_file"
+                + " path_to_records_file");
+        System.err.println("where:");
+        System.err.println("  -help: means print this message and exit");
+        System.err.println("  -parallelism n: verify with n threads; defaults to the number of processors");
+        System.err.println("  path_to_verification_keys_property_file: a properties file of consumer keys ");
+        System.err.println("     to their access key secrets, or for ES512 to their base64 public keys");
+        System.err.println("  path_to_records_file: JSON lines of signed requests, one per line; see ");
+        System.err.println("     " + BatchSignatureVerifier.class.getName());
+        System.err.println("exits with status 3 if any record did not verify.");
+        exit(1);
+    }
+
+    ////////
+    // an approach to parsing input args
+    ////////
+
+    protected static class Args {
+        private final int parallelism;
+        private final File verificationKeysFile;
+        private final File recordsFile;
+
+        public Args(int parallelism, File verificationKeysFile, File recordsFile) {
+            this.parallelism = parallelism;
+            this.verificationKeysFile = verificationKeysFile;
+            this.recordsFile = recordsFile;
+        }
+    }
+
+    protected Args parseArgs(String[] argv) {
+        if (null == argv) {
+            printUsageAndExit();
+        }
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        File verificationKeysFile = null;
+        File recordsFile = null;
+        int i = 0;
+        while (i < argv.length) {
+            String arg = argv[i++];
+            if (arg.equals("-help")) {
+                printUsageAndExit();
+            } else if (arg.equals("-parallelism") && i < argv.length) {
+                try {
+                    parallelism = Integer.parseInt(argv[i++]);
+                } catch (NumberFormatException e) {
+                    parallelism = 0;
+                }
+                if (parallelism <= 0) {
+                    System.err.println("-parallelism must be a positive number");
+                    printUsageAndExit();
+                }
+            } else if (null == verificationKeysFile) {
+                verificationKeysFile = existingFile(arg);
+            } else if (null == recordsFile) {
+                recordsFile = existingFile(arg);
+            } else {
+                System.err.println("unrecognized option or too many files");
+                printUsageAndExit();
+            }
+        }
+        if (null == recordsFile) {
+            printUsageAndExit();
+        }
+        return new Args(parallelism, verificationKeysFile, recordsFile);
+    }
+
+    private File existingFile(String path) {
+        File file = new File(path);
+        if (!file.exists() || !file.isFile()) {
+            System.err.println("WARNING: file does not exist: " + file);
+            printUsageAndExit();
+        }
+        return file;
+    }
+}
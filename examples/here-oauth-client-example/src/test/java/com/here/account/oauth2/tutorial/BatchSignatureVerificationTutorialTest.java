@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2.tutorial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.here.account.auth.BatchSignatureVerifier;
+import com.here.account.auth.SignatureCalculator;
+import com.here.account.auth.SignatureMethod;
+import com.here.account.util.JsonSerializer;
+
+public class BatchSignatureVerificationTutorialTest {
+
+    static BatchSignatureVerificationTutorial mockTutorial(String[] args) {
+        BatchSignatureVerificationTutorial mock = Mockito.spy(new BatchSignatureVerificationTutorial(args));
+        Mockito.doThrow(Helper.MyException.class).when(mock).exit(Mockito.anyInt());
+        return mock;
+    }
+
+    private static File tempFile(String content) throws IOException {
+        File file = File.createTempFile("batch", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String record(String nonce) throws IOException {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        long timestamp = 1480000000L;
+        String signature = new SignatureCalculator("id", "secret").calculateSignature(
+                "POST", "https://www.example.com/oauth2/token", timestamp, nonce, SignatureMethod.HMACSHA256,
+                formParams, null);
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("consumerKey", "id");
+        record.put("method", "POST");
+        record.put("baseURL", "https://www.example.com/oauth2/token");
+        record.put("timestamp", timestamp);
+        record.put("nonce", nonce);
+        record.put("signatureMethod", "HMAC-SHA256");
+        record.put("signature", signature);
+        record.put("formParams", formParams);
+        return JsonSerializer.toJson(record);
+    }
+
+    @Test
+    public void test_verify() throws IOException {
+        File keys = tempFile("id=secret\n");
+        File records = tempFile(record("a") + "\n" + record("b") + "\n");
+        String[] args = {
+                "-parallelism",
+                "2",
+                keys.getAbsolutePath(),
+                records.getAbsolutePath()
+        };
+        BatchSignatureVerifier.Report report = mockTutorial(args).verify();
+        assertEquals(2, report.getValidCount());
+        assertEquals(0, report.getFailureCount());
+    }
+
+    @Test(expected = Helper.MyException.class)
+    public void test_verify_failures() throws IOException {
+        File keys = tempFile("id=wrong\n");
+        File records = tempFile(record("a") + "\n");
+        String[] args = {
+                keys.getAbsolutePath(),
+                records.getAbsolutePath()
+        };
+        mockTutorial(args).verify();
+    }
+
+    @Test(expected = Helper.MyException.class)
+    public void test_help() {
+        String[] args = {
+                "-help"
+        };
+        mockTutorial(args).verify();
+    }
+
+    @Test(expected = Helper.MyException.class)
+    public void test_null() {
+        mockTutorial(null).verify();
+    }
+
+    @Test(expected = Helper.MyException.class)
+    public void test_missingRecordsFile() throws IOException {
+        File keys = tempFile("id=secret\n");
+        String[] args = {
+                keys.getAbsolutePath(),
+                keys.getAbsolutePath() + UUID.randomUUID().toString()
+        };
+        mockTutorial(args).verify();
+    }
+
+    @Test(expected = Helper.MyException.class)
+    public void test_badParallelism() throws IOException {
+        String[] args = {
+                "-parallelism",
+                "none"
+        };
+        mockTutorial(args).verify();
+    }
+}
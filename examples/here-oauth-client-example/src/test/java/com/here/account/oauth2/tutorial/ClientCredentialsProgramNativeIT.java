@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2.tutorial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.auth.OAuth1ClientCredentialsProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Smoke tests the native executable of {@link ClientCredentialsProgram}, built by
+ * <tt>mvn -Pnative verify</tt> with a GraalVM JDK, against a local token endpoint.
+ * Skipped unless the <tt>native.image</tt> system property names the executable.
+ */
+public class ClientCredentialsProgramNativeIT {
+
+    private static final String NATIVE_IMAGE_PROPERTY = "native.image";
+    private static final String ACCESS_TOKEN = "h1.native-image-smoke-test-access-token";
+
+    private HttpServer httpServer;
+    private File credentialsFile;
+    private File outputFile;
+    private volatile String authorizationHeader;
+
+    @Before
+    public void setUp() throws IOException {
+        String image = System.getProperty(NATIVE_IMAGE_PROPERTY);
+        Assume.assumeTrue("no native image; set -D" + NATIVE_IMAGE_PROPERTY,
+                null != image && new File(image).canExecute());
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/oauth2/token", this::handle);
+        httpServer.start();
+
+        Properties properties = new Properties();
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.TOKEN_ENDPOINT_URL_PROPERTY,
+                "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/oauth2/token");
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.ACCESS_KEY_ID_PROPERTY, "accessKeyId");
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.ACCESS_KEY_SECRET_PROPERTY,
+                "accessKeySecret");
+        credentialsFile = File.createTempFile("credentials", ".properties");
+        try (OutputStream out = new FileOutputStream(credentialsFile)) {
+            properties.store(out, null);
+        }
+        outputFile = File.createTempFile("native-image", ".out");
+    }
+
+    @After
+    public void tearDown() {
+        if (null != httpServer) {
+            httpServer.stop(0);
+        }
+        if (null != credentialsFile) {
+            credentialsFile.delete();
+        }
+        if (null != outputFile) {
+            outputFile.delete();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] body = ("{\"access_token\":\"" + ACCESS_TOKEN + "\",\"token_type\":\"bearer\",\"expires_in\":3600}")
+                .getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void test_nativeImage_getToken() throws Exception {
+        Process process = new ProcessBuilder(System.getProperty(NATIVE_IMAGE_PROPERTY), "-v", credentialsFile.getPath())
+                .redirectErrorStream(true)
+                .redirectOutput(outputFile)
+                .start();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            fail("native image did not exit within 60 seconds");
+        }
+        String output = new String(Files.readAllBytes(outputFile.toPath()), "UTF-8");
+        assertEquals("exit code, output:\n" + output, 0, process.exitValue());
+        assertTrue("expected the token, output:\n" + output, output.contains("HERE Access Token: " + ACCESS_TOKEN));
+        assertTrue("expected an OAuth1 signature, actual " + authorizationHeader,
+                null != authorizationHeader && authorizationHeader.startsWith("OAuth "));
+    }
+}
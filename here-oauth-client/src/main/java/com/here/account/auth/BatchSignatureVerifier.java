@@ -0,0 +1,627 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.here.account.util.Clock;
+import com.here.account.util.JsonTokenizer;
+import com.here.account.util.JsonTokenizer.Token;
+import com.here.account.util.OAuthConstants;
+
+/**
+ * Re-verifies archived OAuth 1.0 signed requests in bulk, such as when auditing
+ * request logs, as a parallel alternative to calling
+ * {@link SignatureCalculator#verifySignature(String, String, String, long, String,
+ * SignatureMethod, Map, Map, String, String)} once per request.
+ *
+ * <p>
+ * Records are read as JSON lines, one request per line, for example
+ * <pre>
+ * {"consumerKey":"...","method":"POST","baseURL":"https://account.api.here.com/oauth2/token",
+ *  "timestamp":1480000000,"nonce":"...","signatureMethod":"HMAC-SHA256","signature":"...",
+ *  "formParams":{"grant_type":["client_credentials"]},"queryParams":{}}
+ * </pre>
+ * where formParams, queryParams and oauthVersion (default "1.0") are optional,
+ * and other fields are ignored.
+ * Lines are read in order, then handed in groups to a {@link ForkJoinPool},
+ * whose workers parse and verify them, each with its own Mac or Signature.
+ * Only a bounded number of groups are queued at a time, so memory use does not
+ * depend on the size of the input.
+ *
+ * <p>
+ * Timestamps and nonces are not checked, as they are when verifying live
+ * requests with an {@link OAuth1Verifier}.
+ */
+public class BatchSignatureVerifier {
+
+    /**
+     * Default number of records each task verifies.
+     */
+    public static final int DEFAULT_RECORDS_PER_TASK = 1000;
+
+    /**
+     * Default maximum number of failures listed in a {@link Report}.
+     */
+    public static final int DEFAULT_MAXIMUM_REPORTED_FAILURES = 1000;
+
+    private static final String DEFAULT_OAUTH_VERSION = "1.0";
+
+    private static final Comparator<Failure> BY_RECORD_NUMBER = new Comparator<Failure>() {
+        @Override
+        public int compare(Failure o1, Failure o2) {
+            return Long.compare(o1.recordNumber, o2.recordNumber);
+        }
+    };
+
+    /**
+     * Why a record did not verify.
+     */
+    public enum Reason {
+        /**
+         * The record was not a JSON object with the required fields.
+         */
+        MALFORMED_RECORD,
+        /**
+         * The record's signatureMethod is not supported.
+         */
+        UNSUPPORTED_SIGNATURE_METHOD,
+        /**
+         * The {@link OAuth1Verifier.VerificationKeyProvider} had no key for the consumerKey.
+         */
+        UNKNOWN_CONSUMER_KEY,
+        /**
+         * The signature did not verify.
+         */
+        INVALID_SIGNATURE
+    }
+
+    /**
+     * A record that did not verify.
+     */
+    public static class Failure {
+        private final long recordNumber;
+        private final Reason reason;
+        private final String consumerKey;
+        private final String nonce;
+
+        private Failure(long recordNumber, Reason reason, String consumerKey, String nonce) {
+            this.recordNumber = recordNumber;
+            this.reason = reason;
+            this.consumerKey = consumerKey;
+            this.nonce = nonce;
+        }
+
+        /**
+         * @return the line number of the record, starting at 1
+         */
+        public long getRecordNumber() {
+            return recordNumber;
+        }
+
+        /**
+         * @return why the record did not verify
+         */
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return the record's consumerKey, or null if it was malformed
+         */
+        public String getConsumerKey() {
+            return consumerKey;
+        }
+
+        /**
+         * @return the record's nonce, or null if it was malformed
+         */
+        public String getNonce() {
+            return nonce;
+        }
+
+        @Override
+        public String toString() {
+            return "record " + recordNumber + ": " + reason
+                    + (null != consumerKey ? " consumerKey=" + consumerKey : "")
+                    + (null != nonce ? " nonce=" + nonce : "");
+        }
+    }
+
+    /**
+     * The outcome of verifying a batch of records.
+     */
+    public static class Report {
+        private final long recordCount;
+        private final long validCount;
+        private final long elapsedMillis;
+        private final List<Failure> failures;
+
+        private Report(long recordCount, long validCount, long elapsedMillis, List<Failure> failures) {
+            this.recordCount = recordCount;
+            this.validCount = validCount;
+            this.elapsedMillis = elapsedMillis;
+            this.failures = failures;
+        }
+
+        /**
+         * @return the number of records read, not counting blank lines
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return the number of records whose signatures verified
+         */
+        public long getValidCount() {
+            return validCount;
+        }
+
+        /**
+         * @return the number of records that did not verify
+         */
+        public long getFailureCount() {
+            return recordCount - validCount;
+        }
+
+        /**
+         * @return the wall-clock time taken, in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the records verified per second
+         */
+        public double getRecordsPerSecond() {
+            return recordCount * 1000.0 / Math.max(1L, elapsedMillis);
+        }
+
+        /**
+         * @return failures in record number order, up to the maximum reported failures;
+         *      see {@link #getFailureCount()} for how many there were in all
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "verified " + recordCount + " records in " + elapsedMillis + " ms ("
+                    + Math.round(getRecordsPerSecond()) + " records/s): "
+                    + validCount + " valid, " + getFailureCount() + " failed";
+        }
+    }
+
+    private final Clock clock;
+    private final ForkJoinPool forkJoinPool;
+    private final CachedSignatureVerifier signatureVerifier;
+    private final int recordsPerTask;
+    private final int maximumReportedFailures;
+
+    private BatchSignatureVerifier(Builder builder) {
+        this.clock = builder.clock;
+        this.forkJoinPool = null != builder.forkJoinPool ? builder.forkJoinPool : ForkJoinPool.commonPool();
+        this.signatureVerifier = new CachedSignatureVerifier(builder.verificationKeyProvider,
+                builder.maximumCachedKeys);
+        this.recordsPerTask = builder.recordsPerTask;
+        this.maximumReportedFailures = builder.maximumReportedFailures;
+    }
+
+    /**
+     * Get a builder for a BatchSignatureVerifier.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds a {@link BatchSignatureVerifier}.
+     * At a minimum you must set the verificationKeyProvider.
+     */
+    public static class Builder {
+        private Clock clock = Clock.SYSTEM;
+        private ForkJoinPool forkJoinPool;
+        private OAuth1Verifier.VerificationKeyProvider verificationKeyProvider;
+        private int maximumCachedKeys = OAuth1Verifier.DEFAULT_MAXIMUM_CACHED_KEYS;
+        private int recordsPerTask = DEFAULT_RECORDS_PER_TASK;
+        private int maximumReportedFailures = DEFAULT_MAXIMUM_REPORTED_FAILURES;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the clock used to time each batch.
+         *
+         * @param clock the implementation of a clock you want to use
+         * @return this
+         */
+        public Builder setClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Sets the pool whose workers verify records.
+         * If unset, the {@link ForkJoinPool#commonPool()} is used.
+         *
+         * @param forkJoinPool the pool
+         * @return this
+         */
+        public Builder setForkJoinPool(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+            return this;
+        }
+
+        /**
+         * Sets the source of consumers' verification keys.
+         *
+         * @param verificationKeyProvider looks up the verification key of a consumer
+         * @return this
+         */
+        public Builder setVerificationKeyProvider(
+                OAuth1Verifier.VerificationKeyProvider verificationKeyProvider) {
+            this.verificationKeyProvider = verificationKeyProvider;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of consumers whose decoded keys are cached.
+         *
+         * @param maximumCachedKeys the maximum cached keys; must be positive
+         * @return this
+         */
+        public Builder setMaximumCachedKeys(int maximumCachedKeys) {
+            this.maximumCachedKeys = maximumCachedKeys;
+            return this;
+        }
+
+        /**
+         * Sets the number of records each task verifies.
+         * Larger tasks have less overhead; smaller ones balance better across workers.
+         *
+         * @param recordsPerTask the records per task; must be positive
+         * @return this
+         */
+        public Builder setRecordsPerTask(int recordsPerTask) {
+            this.recordsPerTask = recordsPerTask;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of failures listed in a {@link Report};
+         * all failures are counted regardless.
+         *
+         * @param maximumReportedFailures the maximum reported failures; must not be negative
+         * @return this
+         */
+        public Builder setMaximumReportedFailures(int maximumReportedFailures) {
+            this.maximumReportedFailures = maximumReportedFailures;
+            return this;
+        }
+
+        /**
+         * Build the BatchSignatureVerifier.
+         *
+         * @return the BatchSignatureVerifier
+         */
+        public BatchSignatureVerifier build() {
+            Objects.requireNonNull(clock, "clock is required");
+            Objects.requireNonNull(verificationKeyProvider, "verificationKeyProvider is required");
+            if (recordsPerTask <= 0) {
+                throw new IllegalArgumentException("recordsPerTask must be positive: " + recordsPerTask);
+            }
+            if (maximumReportedFailures < 0) {
+                throw new IllegalArgumentException("maximumReportedFailures must not be negative: "
+                        + maximumReportedFailures);
+            }
+            return new BatchSignatureVerifier(this);
+        }
+    }
+
+    /**
+     * Verifies the UTF-8 JSON lines records of the input stream, which is not closed.
+     *
+     * @param records the records
+     * @return the report
+     * @throws IOException if trouble reading the records
+     * @throws RuntimeException if the VerificationKeyProvider threw one
+     */
+    public Report verify(InputStream records) throws IOException {
+        return verify(new InputStreamReader(records, OAuthConstants.UTF_8_CHARSET));
+    }
+
+    /**
+     * Verifies the JSON lines records of the reader, which is not closed.
+     *
+     * @param records the records
+     * @return the report
+     * @throws IOException if trouble reading the records
+     * @throws RuntimeException if the VerificationKeyProvider threw one
+     */
+    public Report verify(Reader records) throws IOException {
+        long startMillis = clock.currentTimeMillis();
+        Batch batch = new Batch();
+        BufferedReader reader = records instanceof BufferedReader
+                ? (BufferedReader) records : new BufferedReader(records);
+
+        // a couple of tasks queued per worker keeps them busy, without reading ahead unboundedly
+        int maximumQueuedTasks = 2 * forkJoinPool.getParallelism();
+        Semaphore queuedTasks = new Semaphore(maximumQueuedTasks);
+        try {
+            long lineNumber = 0;
+            String[] lines = new String[recordsPerTask];
+            long[] lineNumbers = new long[recordsPerTask];
+            int count = 0;
+            String line;
+            while (null != (line = reader.readLine()) && null == batch.error.get()) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                lines[count] = line;
+                lineNumbers[count] = lineNumber;
+                count++;
+                if (count == recordsPerTask) {
+                    submit(batch, queuedTasks, lines, lineNumbers, count);
+                    lines = new String[recordsPerTask];
+                    lineNumbers = new long[recordsPerTask];
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                submit(batch, queuedTasks, lines, lineNumbers, count);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted verifying records");
+        } finally {
+            // wait for the queued tasks to finish, even if reading failed, so none outlive this call
+            queuedTasks.acquireUninterruptibly(maximumQueuedTasks);
+            queuedTasks.release(maximumQueuedTasks);
+        }
+        RuntimeException error = batch.error.get();
+        if (null != error) {
+            throw error;
+        }
+
+        List<Failure> failures = new ArrayList<Failure>(batch.failures);
+        Collections.sort(failures, BY_RECORD_NUMBER);
+        return new Report(batch.recordCount.sum(), batch.validCount.sum(),
+                clock.currentTimeMillis() - startMillis, Collections.unmodifiableList(failures));
+    }
+
+    /**
+     * The running totals of one call to verify.
+     */
+    private static class Batch {
+        private final LongAdder recordCount = new LongAdder();
+        private final LongAdder validCount = new LongAdder();
+        /**
+         * The lowest numbered failures so far, highest first.  Guarded by its own lock.
+         */
+        private final PriorityQueue<Failure> failures =
+                new PriorityQueue<Failure>(11, Collections.reverseOrder(BY_RECORD_NUMBER));
+        private final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+
+        /**
+         * Keeps the failure if it is among the lowest numbered, up to the maximum;
+         * failures arrive out of order, as tasks finish.
+         */
+        private void addFailure(Failure failure, int maximumReportedFailures) {
+            synchronized (failures) {
+                if (failures.size() < maximumReportedFailures) {
+                    failures.add(failure);
+                } else if (failure.recordNumber < failures.peek().recordNumber) {
+                    failures.poll();
+                    failures.add(failure);
+                }
+            }
+        }
+    }
+
+    private void submit(final Batch batch, final Semaphore queuedTasks,
+            final String[] lines, final long[] lineNumbers, final int count) throws InterruptedException {
+        queuedTasks.acquire();
+        try {
+            forkJoinPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < count && null == batch.error.get(); i++) {
+                            verifyRecord(batch, lines[i], lineNumbers[i]);
+                        }
+                    } catch (RuntimeException e) {
+                        // such as from the VerificationKeyProvider; rethrown by verify
+                        batch.error.compareAndSet(null, e);
+                    } finally {
+                        queuedTasks.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            queuedTasks.release();
+            throw e;
+        }
+    }
+
+    private void verifyRecord(Batch batch, String line, long lineNumber) {
+        batch.recordCount.increment();
+        Record record = parse(line);
+        Reason reason = null;
+        if (null == record) {
+            reason = Reason.MALFORMED_RECORD;
+        } else {
+            SignatureMethod signatureMethod = CachedSignatureVerifier.toSignatureMethod(record.signatureMethod);
+            CachedSignatureVerifier.CachedKey cachedKey;
+            if (null == signatureMethod) {
+                reason = Reason.UNSUPPORTED_SIGNATURE_METHOD;
+            } else if (null == (cachedKey = signatureVerifier.getCachedKey(record.consumerKey))) {
+                reason = Reason.UNKNOWN_CONSUMER_KEY;
+            } else {
+                SignatureBaseString signatureBaseString = SignatureBaseString.get().build(
+                        record.consumerKey, record.method, record.baseURL, record.timestamp, record.nonce,
+                        signatureMethod, record.oauthVersion, record.formParams, record.queryParams);
+                if (!signatureVerifier.verify(signatureBaseString, signatureMethod, record.signature,
+                        cachedKey)) {
+                    reason = Reason.INVALID_SIGNATURE;
+                }
+            }
+        }
+
+        if (null == reason) {
+            batch.validCount.increment();
+        } else if (maximumReportedFailures > 0) {
+            batch.addFailure(new Failure(lineNumber, reason,
+                    null != record ? record.consumerKey : null, null != record ? record.nonce : null),
+                    maximumReportedFailures);
+        }
+    }
+
+    /**
+     * The fields of one record.
+     */
+    private static class Record {
+        private String consumerKey;
+        private String method;
+        private String baseURL;
+        private long timestamp = -1L;
+        private String nonce;
+        private String signatureMethod;
+        private String signature;
+        private String oauthVersion = DEFAULT_OAUTH_VERSION;
+        private Map<String, List<String>> formParams;
+        private Map<String, List<String>> queryParams;
+    }
+
+    /**
+     * Parses the record with a {@link JsonTokenizer}, without building a tree,
+     * so that verifying needs no JSON library.
+     *
+     * @return the record, or null if malformed or missing a required field
+     */
+    private static Record parse(String line) {
+        Record record = new Record();
+        byte[] bytes = line.getBytes(OAuthConstants.UTF_8_CHARSET);
+        JsonTokenizer tokenizer = new JsonTokenizer(bytes, 0, bytes.length);
+        try {
+            if (Token.START_OBJECT != tokenizer.nextToken()) {
+                return null;
+            }
+            String name;
+            while (null != (name = tokenizer.nextFieldName())) {
+                Token token = tokenizer.nextToken();
+                if ("formParams".equals(name)) {
+                    record.formParams = parseParams(tokenizer, token);
+                } else if ("queryParams".equals(name)) {
+                    record.queryParams = parseParams(tokenizer, token);
+                } else if ("timestamp".equals(name)) {
+                    if (!tokenizer.isIntegralNumber()) {
+                        return null;
+                    }
+                    record.timestamp = Long.parseLong(tokenizer.getText());
+                } else if (Token.VALUE_STRING == token) {
+                    setField(record, name, tokenizer.getText());
+                } else {
+                    tokenizer.skipChildren();
+                }
+            }
+            if (Token.END_OBJECT != tokenizer.getCurrentToken() || null != tokenizer.nextToken()) {
+                return null;
+            }
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+        if (null == record.consumerKey || null == record.method || null == record.baseURL
+                || record.timestamp < 0L || null == record.nonce || null == record.signatureMethod
+                || null == record.signature) {
+            return null;
+        }
+        return record;
+    }
+
+    private static void setField(Record record, String name, String value) {
+        if ("consumerKey".equals(name)) {
+            record.consumerKey = value;
+        } else if ("method".equals(name)) {
+            record.method = value;
+        } else if ("baseURL".equals(name)) {
+            record.baseURL = value;
+        } else if ("nonce".equals(name)) {
+            record.nonce = value;
+        } else if ("signatureMethod".equals(name)) {
+            record.signatureMethod = value;
+        } else if ("signature".equals(name)) {
+            record.signature = value;
+        } else if ("oauthVersion".equals(name)) {
+            record.oauthVersion = value;
+        }
+    }
+
+    /**
+     * Parses an object of parameter names to arrays of values, or to single values.
+     */
+    private static Map<String, List<String>> parseParams(JsonTokenizer tokenizer, Token token) throws IOException {
+        if (Token.VALUE_NULL == token) {
+            return null;
+        }
+        if (Token.START_OBJECT != token) {
+            throw tokenizer.error("expected an object of parameters");
+        }
+        Map<String, List<String>> params = new HashMap<String, List<String>>();
+        String name;
+        while (null != (name = tokenizer.nextFieldName())) {
+            token = tokenizer.nextToken();
+            List<String> values;
+            if (Token.START_ARRAY == token) {
+                values = new ArrayList<String>(1);
+                while (Token.VALUE_STRING == tokenizer.nextToken()) {
+                    values.add(tokenizer.getText());
+                }
+                if (Token.END_ARRAY != tokenizer.getCurrentToken()) {
+                    throw tokenizer.error("expected string parameter values");
+                }
+            } else if (Token.VALUE_STRING == token) {
+                values = Collections.singletonList(tokenizer.getText());
+            } else {
+                throw tokenizer.error("expected string parameter values");
+            }
+            params.put(name, values);
+        }
+        return params;
+    }
+}
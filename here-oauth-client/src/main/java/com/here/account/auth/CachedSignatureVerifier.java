@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Verifies signature base strings against consumers' keys, as shared by
+ * {@link OAuth1Verifier} and {@link BatchSignatureVerifier}.
+ * Keys are decoded once per consumer, then cached in a bounded map,
+ * which evicts the least recently used consumer's key;
+ * each thread keeps its own Mac or Signature per signature method.
+ */
+final class CachedSignatureVerifier {
+
+    private static final Logger LOG = Logger.getLogger(CachedSignatureVerifier.class.getName());
+
+    /**
+     * A consumer's verification key, decoded per signature method on first use.
+     */
+    static final class CachedKey {
+        private final String verificationKey;
+        private volatile SecretKeySpec[] hmacKeys;
+        private volatile PublicKey publicKey;
+
+        private CachedKey(String verificationKey) {
+            this.verificationKey = verificationKey;
+        }
+
+        private SecretKeySpec getHmacKey(SignatureMethod signatureMethod) {
+            SecretKeySpec[] keys = hmacKeys;
+            if (null == keys) {
+                keys = new SecretKeySpec[SignatureMethod.values().length];
+                hmacKeys = keys;
+            }
+            SecretKeySpec key = keys[signatureMethod.ordinal()];
+            if (null == key) {
+                key = new SecretKeySpec(SignatureCalculator.toHmacKeyBytes(verificationKey),
+                        signatureMethod.getAlgorithm());
+                keys[signatureMethod.ordinal()] = key;
+            }
+            return key;
+        }
+
+        private PublicKey getPublicKey() {
+            PublicKey key = publicKey;
+            if (null == key) {
+                key = SignatureCalculator.toEllipticCurvePublicKey(verificationKey);
+                publicKey = key;
+            }
+            return key;
+        }
+    }
+
+    private final OAuth1Verifier.VerificationKeyProvider verificationKeyProvider;
+    /**
+     * The cached keys, least recently used first.  Guarded by its own lock.
+     */
+    private final Map<String, CachedKey> cachedKeys;
+
+    /**
+     * Per thread, a Mac or Signature per signature method, indexed by ordinal.
+     */
+    private final ThreadLocal<Object[]> verifiers = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[SignatureMethod.values().length];
+        }
+    };
+
+    CachedSignatureVerifier(OAuth1Verifier.VerificationKeyProvider verificationKeyProvider,
+            int maximumCachedKeys) {
+        if (maximumCachedKeys <= 0) {
+            throw new IllegalArgumentException("maximumCachedKeys must be positive: " + maximumCachedKeys);
+        }
+        this.verificationKeyProvider = verificationKeyProvider;
+        this.cachedKeys = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                // many distinct consumers; evict the least recently used rather than grow without bound
+                return size() > maximumCachedKeys;
+            }
+        };
+    }
+
+    /**
+     * Gets the consumer's cached key, looking it up on first use.
+     *
+     * @param consumerKey the oauth_consumer_key
+     * @return the cached key, or null if the consumer is unknown
+     */
+    CachedKey getCachedKey(String consumerKey) {
+        CachedKey cachedKey;
+        synchronized (cachedKeys) {
+            cachedKey = cachedKeys.get(consumerKey);
+        }
+        if (null == cachedKey) {
+            // look up outside of the lock; the provider can be slow
+            String verificationKey = verificationKeyProvider.getVerificationKey(consumerKey);
+            if (null == verificationKey) {
+                return null;
+            }
+            cachedKey = new CachedKey(verificationKey);
+            synchronized (cachedKeys) {
+                cachedKeys.put(consumerKey, cachedKey);
+            }
+        }
+        return cachedKey;
+    }
+
+    /**
+     * Forgets the cached key of the consumer.
+     *
+     * @param consumerKey the oauth_consumer_key
+     */
+    void invalidateKey(String consumerKey) {
+        synchronized (cachedKeys) {
+            cachedKeys.remove(consumerKey);
+        }
+    }
+
+    /**
+     * Verifies the signature of the base string.
+     *
+     * @param signatureBaseString the signature base string
+     * @param signatureMethod the signature method
+     * @param signature the base64-encoded oauth_signature
+     * @param cachedKey the consumer's key
+     * @return true if the signature verified, false if not, or if the key or signature was malformed
+     */
+    boolean verify(SignatureBaseString signatureBaseString, SignatureMethod signatureMethod,
+            String signature, CachedKey cachedKey) {
+        Object[] threadVerifiers = verifiers.get();
+        int index = signatureMethod.ordinal();
+        try {
+            byte[] signatureBytes = SignatureCalculator.decodeBase64(signature);
+            if (SignatureMethod.ES512.equals(signatureMethod)) {
+                Signature verifier = (Signature) threadVerifiers[index];
+                if (null == verifier) {
+                    verifier = Signature.getInstance(signatureMethod.getAlgorithm());
+                    threadVerifiers[index] = verifier;
+                }
+                verifier.initVerify(cachedKey.getPublicKey());
+                verifier.update(signatureBaseString.getBytes(), 0, signatureBaseString.length());
+                return verifier.verify(signatureBytes);
+            } else {
+                Mac mac = (Mac) threadVerifiers[index];
+                if (null == mac) {
+                    mac = Mac.getInstance(signatureMethod.getAlgorithm());
+                    threadVerifiers[index] = mac;
+                }
+                mac.init(cachedKey.getHmacKey(signatureMethod));
+                mac.update(signatureBaseString.getBytes(), 0, signatureBaseString.length());
+                // constant time, so the comparison doesn't leak how much of a forgery was right
+                return MessageDigest.isEqual(mac.doFinal(), signatureBytes);
+            }
+        } catch (Exception e) {
+            // such as a malformed key or signature; don't reuse a verifier in an unknown state
+            threadVerifiers[index] = null;
+            LOG.fine("trouble verifying signature " + e);
+            return false;
+        }
+    }
+
+    /**
+     * @param oauth1SignatureMethod the oauth_signature_method value, such as HMAC-SHA256
+     * @return the SignatureMethod, or null if unsupported
+     */
+    static SignatureMethod toSignatureMethod(String oauth1SignatureMethod) {
+        for (SignatureMethod signatureMethod : SignatureMethod.values()) {
+            if (signatureMethod.getOauth1SignatureMethod().equals(oauth1SignatureMethod)) {
+                return signatureMethod;
+            }
+        }
+        return null;
+    }
+}
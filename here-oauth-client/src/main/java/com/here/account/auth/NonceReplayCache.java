@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Remembers the oauth_consumer_key and oauth_nonce of each accepted request,
+ * bucketed by its oauth_timestamp second, for as long as that timestamp is
+ * within the allowed skew.
+ *
+ * <p>
+ * Each second's bucket is a fixed-size open-addressing table of 64-bit hashes,
+ * reused once its second leaves the window, so memory is bounded:
+ * at most about 21 bytes per nonce per second, for each second of the window.
+ * A second whose bucket is full rejects further nonces, rather than forget any.
+ * Hashes are seeded randomly per cache, so colliding nonces can't be precomputed.
+ */
+final class NonceReplayCache {
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The nonces of one oauth_timestamp second.
+     */
+    private static final class Bucket {
+        /**
+         * Allocated on first use, so seconds without requests cost nothing.
+         */
+        private long[] hashes;
+        private long second = Long.MIN_VALUE;
+        private int count;
+    }
+
+    private final Bucket[] buckets;
+    private final int capacity;
+    private final int maximumNoncesPerSecond;
+    private final long seed;
+
+    /**
+     * Construct a NonceReplayCache.
+     *
+     * @param maximumSkewSeconds the oauth_timestamp skew accepted, either way;
+     *      nonces are remembered for this long either side of their timestamp
+     * @param maximumNoncesPerSecond the most nonces accepted per oauth_timestamp second
+     */
+    NonceReplayCache(long maximumSkewSeconds, int maximumNoncesPerSecond) {
+        if (maximumSkewSeconds < 0 || maximumSkewSeconds > 3600) {
+            throw new IllegalArgumentException("maximumSkewSeconds must be from 0 to 3600: "
+                    + maximumSkewSeconds);
+        }
+        if (maximumNoncesPerSecond <= 0 || maximumNoncesPerSecond > (1 << 24)) {
+            throw new IllegalArgumentException("maximumNoncesPerSecond must be from 1 to 2^24: "
+                    + maximumNoncesPerSecond);
+        }
+        // at most three quarters full, so probes stay short
+        int minimumCapacity = (int) ((maximumNoncesPerSecond * 4L + 2) / 3);
+        this.capacity = Integer.highestOneBit(minimumCapacity - 1) << 1;
+        // one more than the window, so a bucket is only reused after its second has left it
+        int bucketCount = (int) (2 * maximumSkewSeconds + 2);
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.maximumNoncesPerSecond = maximumNoncesPerSecond;
+        this.seed = ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Records the nonce, if it has not been seen before.
+     *
+     * @param timestampSeconds the oauth_timestamp, already checked to be within the skew
+     * @param consumerKey the oauth_consumer_key
+     * @param nonce the oauth_nonce
+     * @return {@link OAuth1Verifier.Result#VALID} if the nonce is new,
+     *      {@link OAuth1Verifier.Result#REPLAYED_NONCE} if it was seen before,
+     *      or {@link OAuth1Verifier.Result#NONCE_CACHE_FULL} if its second has no room
+     */
+    OAuth1Verifier.Result record(long timestampSeconds, String consumerKey, String nonce) {
+        long hash = hash(consumerKey, nonce);
+        Bucket bucket = buckets[(int) Math.floorMod(timestampSeconds, (long) buckets.length)];
+        synchronized (bucket) {
+            if (bucket.second != timestampSeconds) {
+                if (bucket.second > timestampSeconds) {
+                    // the timestamp has left the window since it was checked
+                    return OAuth1Verifier.Result.TIMESTAMP_OUT_OF_RANGE;
+                }
+                if (null == bucket.hashes) {
+                    bucket.hashes = new long[capacity];
+                } else if (bucket.count > 0) {
+                    Arrays.fill(bucket.hashes, 0L);
+                }
+                bucket.count = 0;
+                bucket.second = timestampSeconds;
+            }
+            long[] hashes = bucket.hashes;
+            int mask = hashes.length - 1;
+            int index = (int) hash & mask;
+            while (hashes[index] != 0L) {
+                if (hashes[index] == hash) {
+                    return OAuth1Verifier.Result.REPLAYED_NONCE;
+                }
+                index = (index + 1) & mask;
+            }
+            if (bucket.count >= maximumNoncesPerSecond) {
+                return OAuth1Verifier.Result.NONCE_CACHE_FULL;
+            }
+            hashes[index] = hash;
+            bucket.count++;
+            return OAuth1Verifier.Result.VALID;
+        }
+    }
+
+    /**
+     * A seeded 64-bit FNV-1a hash of the consumer key and nonce, with a final mix;
+     * never 0, which marks empty table slots.
+     */
+    private long hash(String consumerKey, String nonce) {
+        long hash = seed;
+        for (int i = 0, length = consumerKey.length(); i < length; i++) {
+            hash = (hash ^ consumerKey.charAt(i)) * FNV_PRIME;
+        }
+        // separate the two, so ("ab", "c") and ("a", "bc") differ
+        hash = (hash ^ 0x10000) * FNV_PRIME;
+        for (int i = 0, length = nonce.length(); i < length; i++) {
+            hash = (hash ^ nonce.charAt(i)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash != 0L ? hash : 1L;
+    }
+}
@@ -46,12 +46,31 @@ public class OAuth1ClientCredentialsProvider implements ClientCredentialsProvide
     public OAuth1ClientCredentialsProvider(String tokenEndpointUrl,
                                            String accessKeyId,
                                            String accessKeySecret) {
+        this(tokenEndpointUrl, accessKeyId, accessKeySecret, SignatureMethod.HMACSHA256);
+    }
+    
+    /**
+     * Construct a new {@code OAuth1ClientCredentialsProvider} that points to
+     * the given token endpoint and uses the given client credentials to sign
+     * requests using OAuth1 signatures of the given signature method.
+     * 
+     * @param tokenEndpointUrl the full URL of the OAuth2.0 token endpoint
+     * @param accessKeyId the access key id to be used as a client credential
+     * @param accessKeySecret the access key secret to be used as a client credential; 
+     *      for {@link SignatureMethod#ES512}, the base64-encoded PKCS#8 elliptic curve private key
+     * @param signatureMethod the OAuth1 signature method
+     */
+    public OAuth1ClientCredentialsProvider(String tokenEndpointUrl,
+                                           String accessKeyId,
+                                           String accessKeySecret,
+                                           SignatureMethod signatureMethod) {
         Objects.requireNonNull(tokenEndpointUrl, "tokenEndpointUrl is required");
         Objects.requireNonNull(accessKeyId, "accessKeyId is required");
         Objects.requireNonNull(accessKeySecret, "accessKeySecret is required");
+        Objects.requireNonNull(signatureMethod, "signatureMethod is required");
         
         this.tokenEndpointUrl = tokenEndpointUrl;
-        this.oauth1Signer = new OAuth1Signer(accessKeyId, accessKeySecret);
+        this.oauth1Signer = new OAuth1Signer(accessKeyId, accessKeySecret, signatureMethod);
     }
 
     @Override
@@ -72,12 +91,19 @@ public class OAuth1ClientCredentialsProvider implements ClientCredentialsProvide
      * <li>{@value #ACCESS_KEY_ID_PROPERTY} - Used to set the access key id.</li>
      * <li>{@value #ACCESS_KEY_SECRET_PROPERTY} - Used to set the access key secret.</li>
      * </ul>
+     * Optionally:
+     * <ul>
+     * <li>{@value #SIGNATURE_METHOD_PROPERTY} - Used to set the signature method, 
+     * such as HMAC-SHA256 (the default), HMAC-SHA1, or ES512.  For ES512 the access key secret 
+     * is the base64-encoded PKCS#8 elliptic curve private key.</li>
+     * </ul>
      */
     public static class FromProperties extends OAuth1ClientCredentialsProvider {
         
         public static final String TOKEN_ENDPOINT_URL_PROPERTY = "here.token.endpoint.url";
         public static final String ACCESS_KEY_ID_PROPERTY = "here.access.key.id";
         public static final String ACCESS_KEY_SECRET_PROPERTY = "here.access.key.secret";
+        public static final String SIGNATURE_METHOD_PROPERTY = "here.access.key.signature.method";
 
         /**
          * Builds an {@link OAuth1ClientCredentialsProvider} by pulling the
@@ -89,7 +115,29 @@ public class OAuth1ClientCredentialsProvider implements ClientCredentialsProvide
         public FromProperties(Properties properties) {
             super(properties.getProperty(TOKEN_ENDPOINT_URL_PROPERTY),
                   properties.getProperty(ACCESS_KEY_ID_PROPERTY),
-                  properties.getProperty(ACCESS_KEY_SECRET_PROPERTY));
+                  properties.getProperty(ACCESS_KEY_SECRET_PROPERTY),
+                  getSignatureMethod(properties.getProperty(SIGNATURE_METHOD_PROPERTY)));
+        }
+        
+        /**
+         * Gets the signature method named by the property value, which may be either 
+         * the oauth_signature_method, such as "HMAC-SHA256", or the enum name, such as "HMACSHA256".
+         * 
+         * @param value the property value, or null for the default HMAC-SHA256
+         * @return the signature method
+         */
+        private static SignatureMethod getSignatureMethod(String value) {
+            if (null == value || value.trim().isEmpty()) {
+                return SignatureMethod.HMACSHA256;
+            }
+            value = value.trim();
+            for (SignatureMethod signatureMethod : SignatureMethod.values()) {
+                if (signatureMethod.getOauth1SignatureMethod().equalsIgnoreCase(value)
+                        || signatureMethod.name().equalsIgnoreCase(value)) {
+                    return signatureMethod;
+                }
+            }
+            throw new IllegalArgumentException("unsupported " + SIGNATURE_METHOD_PROPERTY + ": " + value);
         }
     }
     
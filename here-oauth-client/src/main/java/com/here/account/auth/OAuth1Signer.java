@@ -18,11 +18,18 @@ package com.here.account.auth;
 import com.here.account.http.HttpProvider;
 import com.here.account.http.HttpProvider.HttpRequest;
 import com.here.account.util.Clock;
-import org.apache.commons.codec.binary.Base64;
+import com.here.account.util.OAuthConstants;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Appends the 
@@ -45,6 +52,18 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      */
     private static final int NONCE_LENGTH = 6;
     
+    /**
+     * The most signing templates kept, one per method and URL signed.
+     */
+    static final int MAXIMUM_SIGNING_TEMPLATES = 32;
+    
+    /**
+     * A header signed by {@link #presign(String, String, Map)} is only used 
+     * if it is at most this old, well within the oauth_timestamp skew the 
+     * HERE authorization server allows.
+     */
+    public static final long MAXIMUM_PRESIGNED_AGE_MILLIS = 30000L;
+    
     private final Clock clock;
     
     /**
@@ -59,6 +78,71 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      */
     private final String accessKeySecret;
     
+    /**
+     * The oauth_signature_method.
+     */
+    private final SignatureMethod signatureMethod;
+    
+    /**
+     * Reused for every request, so its derived key material and initialized 
+     * Macs are too.
+     */
+    private final SignatureCalculator signatureCalculator;
+    
+    /**
+     * Signing templates by method and URL, least recently used first, 
+     * so each endpoint's URL is normalized and 
+     * encoded only once.  The last one used is checked first, without building a key.
+     */
+    private final Map<String, SigningTemplate> signingTemplates = 
+            new LinkedHashMap<String, SigningTemplate>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SigningTemplate> eldest) {
+                    // many distinct urls; evict the least recently used rather than grow without bound
+                    return size() > MAXIMUM_SIGNING_TEMPLATES;
+                }
+            };
+    private volatile SigningTemplate lastSigningTemplate;
+    
+    /**
+     * The Authorization header value signed ahead of time for the next request, if any.
+     */
+    private final AtomicReference<PresignedHeader> presignedHeader = new AtomicReference<PresignedHeader>();
+    
+    /**
+     * An Authorization header value signed ahead of time, and the request it was signed for.
+     */
+    private static class PresignedHeader {
+        private final String method;
+        private final String url;
+        private final Map<String, List<String>> formParams;
+        private final String authorizationHeaderValue;
+        private final long signedTimeMillis;
+        
+        private PresignedHeader(String method, String url, Map<String, List<String>> formParams, 
+                String authorizationHeaderValue, long signedTimeMillis) {
+            this.method = method;
+            this.url = url;
+            this.formParams = formParams;
+            this.authorizationHeaderValue = authorizationHeaderValue;
+            this.signedTimeMillis = signedTimeMillis;
+        }
+        
+        private boolean matches(String method, String url, Map<String, List<String>> formParams) {
+            return this.method.equals(method) && this.url.equals(url) 
+                    && Objects.equals(normalize(this.formParams), normalize(formParams));
+        }
+        
+        /**
+         * No form parameters sign the same as empty form parameters.
+         */
+        private static Map<String, List<String>> normalize(Map<String, List<String>> formParams) {
+            return null == formParams || formParams.isEmpty() ? null : formParams;
+        }
+    }
+    
     /**
      * Construct the OAuth signer based on accessKeyId and accessKeySecret.
      * 
@@ -71,6 +155,20 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
         this(Clock.SYSTEM, accessKeyId, accessKeySecret);
     }
     
+    /**
+     * Construct the OAuth signer based on accessKeyId, accessKeySecret, and signatureMethod.
+     * 
+     * @param accessKeyId the HERE client accessKeyId.  Becomes the value of oauth_consumer_key in 
+     *      the Authorization: OAuth header.
+     * @param accessKeySecret the HERE client accessKeySecret.  Used to calculate the oauth_signature 
+     *      in the Authorization: OAuth header.  For {@link SignatureMethod#ES512}, the 
+     *      base64-encoded PKCS#8 elliptic curve private key.
+     * @param signatureMethod the oauth_signature_method
+     */
+    public OAuth1Signer(String accessKeyId, String accessKeySecret, SignatureMethod signatureMethod) {
+        this(Clock.SYSTEM, accessKeyId, accessKeySecret, signatureMethod);
+    }
+    
     /**
      * Construct the OAuth signer based on clock, accessKeyId, and accessKeySecret.
      * Use this if you want to inject your own clock, such as during unit tests.
@@ -82,9 +180,71 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      *      in the Authorization: OAuth header.
      */
     public OAuth1Signer(Clock clock, String accessKeyId, String accessKeySecret) {
+        this(clock, accessKeyId, accessKeySecret, SignatureMethod.HMACSHA256);
+    }
+    
+    /**
+     * Construct the OAuth signer based on clock, accessKeyId, accessKeySecret, and signatureMethod.
+     * Use this if you want to inject your own clock, such as during unit tests.
+     * 
+     * @param clock the implementation of a clock you want to use
+     * @param accessKeyId the HERE clientId.  Becomes the value of oauth_consumer_key in 
+     *      the Authorization: OAuth header.
+     * @param accessKeySecret the HERE clientSecret.  Used to calculate the oauth_signature 
+     *      in the Authorization: OAuth header.  For {@link SignatureMethod#ES512}, the 
+     *      base64-encoded PKCS#8 elliptic curve private key.
+     * @param signatureMethod the oauth_signature_method
+     */
+    public OAuth1Signer(Clock clock, String accessKeyId, String accessKeySecret, 
+            SignatureMethod signatureMethod) {
+        Objects.requireNonNull(signatureMethod, "signatureMethod cannot be null");
         this.clock = clock;
         this.accessKeyId = accessKeyId;
         this.accessKeySecret = accessKeySecret;
+        this.signatureMethod = signatureMethod;
+        // client accessKeyId is "Client Identifier" a.k.a. "oauth_consumer_key" in the OAuth1.0 spec
+        // client accessKeySecret is "Client Shared-Secret" , which becomes the client shared-secret component 
+        // of the HMAC-SHA1 key per http://tools.ietf.org/html/rfc5849#section-3.4.2.
+        // For ES512 it is instead the private key, parsed once by the signatureCalculator, 
+        // which signs with one initialized Signature per thread.
+        this.signatureCalculator = new SignatureCalculator(accessKeyId, accessKeySecret);
+    }
+
+    /**
+     * Gets the HERE client accessKeyId, the value of oauth_consumer_key in the 
+     * Authorization: OAuth header.  It identifies, but is not, a credential.
+     * 
+     * @return the accessKeyId
+     */
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+    
+    /**
+     * Gets the oauth_signature_method used to sign requests.
+     * 
+     * @return the signature method
+     */
+    public SignatureMethod getSignatureMethod() {
+        return signatureMethod;
+    }
+    
+    /**
+     * Gets a fingerprint of the accessKeySecret: its SHA-256, base64url encoded.
+     * It tells apart signers with the same accessKeyId but different secrets, 
+     * such as before and after a key rotation, without disclosing the secret.
+     * 
+     * @return the fingerprint of the accessKeySecret
+     */
+    public String getAccessKeySecretFingerprint() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    accessKeySecret.getBytes(OAuthConstants.UTF_8_CHARSET));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     /**
@@ -120,7 +280,7 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      */
     private String getAuthorizationHeaderValue(String method, String url, 
             Map<String, List<String>> formParams) {
-        SignatureCalculator calculator = getSignatureCalculator();
+        SigningTemplate signingTemplate = getSigningTemplate(method, url);
         
         // <a href="https://tools.ietf.org/html/rfc5849#section-3.3">timestamp</no I a>.
         // the number of seconds since January 1, 1970 00:00:00 GMT
@@ -128,14 +288,40 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
         // choose the first 6 chars from base64 alphabet
         byte[] bytes = new byte[NONCE_LENGTH]; 
         nextBytes(bytes);
-        String nonce = Base64.encodeBase64URLSafeString(bytes).substring(0, NONCE_LENGTH);
-        String computedSignature = calculator.calculateSignature(method, url, timestamp, nonce, 
-                SignatureMethod.HMACSHA256,
-                formParams,
-                null);
+        String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes).substring(0, NONCE_LENGTH);
+        String computedSignature = signingTemplate.calculateSignature(timestamp, nonce, formParams);
         
-        return calculator.constructAuthHeader(computedSignature, nonce, timestamp, 
-                SignatureMethod.HMACSHA256);
+        return signingTemplate.constructAuthHeader(computedSignature, nonce, timestamp);
+    }
+    
+    /**
+     * Gets the signing template for the method and url, creating it on first use.
+     * The form parameters of requests are all dynamic, so the template holds 
+     * the method, url and OAuth parameters only.
+     * 
+     * @param method the HTTP method
+     * @param url the url
+     * @return the signing template
+     */
+    SigningTemplate getSigningTemplate(String method, String url) {
+        SigningTemplate signingTemplate = lastSigningTemplate;
+        if (null != signingTemplate && signingTemplate.matches(method, url)) {
+            return signingTemplate;
+        }
+        String key = method + ' ' + url;
+        synchronized (signingTemplates) {
+            signingTemplate = signingTemplates.get(key);
+        }
+        if (null == signingTemplate) {
+            // create outside of the lock; a concurrent duplicate is harmless
+            signingTemplate = getSignatureCalculator().newSigningTemplate(method, url, 
+                    signatureMethod, null);
+            synchronized (signingTemplates) {
+                signingTemplates.put(key, signingTemplate);
+            }
+        }
+        lastSigningTemplate = signingTemplate;
+        return signingTemplate;
     }
     
     /**
@@ -145,11 +331,7 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      * @return
      */
     SignatureCalculator getSignatureCalculator() {
-        // client accessKeyId is "Client Identifier" a.k.a. "oauth_consumer_key" in the OAuth1.0 spec
-        // client accessKeySecret is "Client Shared-Secret" , which becomes the client shared-secret component 
-        // of the HMAC-SHA1 key per http://tools.ietf.org/html/rfc5849#section-3.4.2.
-        SignatureCalculator calculator = new SignatureCalculator(accessKeyId, accessKeySecret);
-        return calculator;
+        return signatureCalculator;
     }
 
     /**
@@ -157,8 +339,58 @@ public class OAuth1Signer implements HttpProvider.HttpRequestAuthorizer {
      */
     @Override
     public void authorize(HttpRequest httpRequest, String method, String url, Map<String, List<String>> formParams) {
-        String authorizationHeaderValue = getAuthorizationHeaderValue(method, url, formParams);
+        String authorizationHeaderValue = takePresignedHeaderValue(method, url, formParams);
+        if (null == authorizationHeaderValue) {
+            authorizationHeaderValue = getAuthorizationHeaderValue(method, url, formParams);
+        }
         httpRequest.addAuthorizationHeader(authorizationHeaderValue);
     }
+    
+    /**
+     * Signs the next request ahead of time, such as on a background thread shortly before 
+     * a scheduled token refresh, so that the request's {@link #authorize(HttpRequest, String, String, Map)} 
+     * only attaches the ready Authorization header.
+     * 
+     * <p>
+     * The presigned header is used once, by the next request with the same method, url, and 
+     * form parameters, and only if it is at most {@link #MAXIMUM_PRESIGNED_AGE_MILLIS} old; 
+     * otherwise the request is signed as usual.  Presigning again replaces any unused header.
+     * 
+     * @param method the HTTP method of the upcoming request
+     * @param url the url of the upcoming request
+     * @param formParams the form parameters of the upcoming request, or null
+     */
+    public void presign(String method, String url, Map<String, List<String>> formParams) {
+        long signedTimeMillis = clock.currentTimeMillis();
+        String authorizationHeaderValue = getAuthorizationHeaderValue(method, url, formParams);
+        // copied, in case the caller reuses its map
+        Map<String, List<String>> formParamsCopy = null == formParams ? null 
+                : new HashMap<String, List<String>>(formParams);
+        presignedHeader.set(new PresignedHeader(method, url, formParamsCopy, authorizationHeaderValue, 
+                signedTimeMillis));
+    }
+    
+    /**
+     * Takes the presigned header value, if it was signed for this request and is still fresh.
+     * 
+     * @return the presigned header value, or null to sign inline
+     */
+    private String takePresignedHeaderValue(String method, String url, Map<String, List<String>> formParams) {
+        PresignedHeader presigned = presignedHeader.get();
+        if (null == presigned) {
+            return null;
+        }
+        long ageMillis = clock.currentTimeMillis() - presigned.signedTimeMillis;
+        if (ageMillis < 0 || ageMillis > MAXIMUM_PRESIGNED_AGE_MILLIS) {
+            // too old; never use it
+            presignedHeader.compareAndSet(presigned, null);
+            return null;
+        }
+        // each presigned nonce is used at most once
+        if (presigned.matches(method, url, formParams) && presignedHeader.compareAndSet(presigned, null)) {
+            return presigned.authorizationHeaderValue;
+        }
+        return null;
+    }
 
 }
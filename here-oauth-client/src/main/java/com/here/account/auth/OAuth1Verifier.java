@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.here.account.util.Clock;
+import com.here.account.util.OAuthConstants;
+
+/**
+ * Verifies the OAuth 1.0 <tt>Authorization</tt> header of incoming requests,
+ * as signed by {@link OAuth1Signer}, such as in a local stand-in for a service.
+ *
+ * <p>
+ * A request is {@link Result#VALID} if its header is well formed, its
+ * oauth_timestamp is within the allowed skew of the clock, its signature
+ * verifies with its consumer's key, and its oauth_nonce has not been seen
+ * before from that consumer.
+ * Consumers' keys come from a {@link VerificationKeyProvider}, and are decoded
+ * once, then cached; nonces are remembered in a bounded-memory cache covering
+ * the skew window.
+ *
+ * <p>
+ * An OAuth1Verifier is thread-safe; share one across all the threads serving requests.
+ */
+public class OAuth1Verifier {
+
+    /**
+     * Default maximum difference, either way, between an oauth_timestamp and the clock: 5 minutes.
+     */
+    public static final long DEFAULT_MAXIMUM_SKEW_SECONDS = 300L;
+
+    /**
+     * Default maximum number of nonces accepted per oauth_timestamp second.
+     */
+    public static final int DEFAULT_MAXIMUM_NONCES_PER_SECOND = 4096;
+
+    /**
+     * Default maximum number of consumers whose decoded keys are cached.
+     */
+    public static final int DEFAULT_MAXIMUM_CACHED_KEYS = 1000;
+
+    private static final String OAUTH_SCHEME = "OAuth";
+    private static final String OAUTH_VERSION = "1.0";
+
+    /**
+     * The outcome of verifying a request.
+     */
+    public enum Result {
+        /**
+         * The request was signed by the consumer, and was not replayed.
+         */
+        VALID,
+        /**
+         * The Authorization header was missing, not of the OAuth scheme,
+         * or missing or repeating a required parameter.
+         */
+        MALFORMED_HEADER,
+        /**
+         * The oauth_signature_method or oauth_version is not supported,
+         * or an oauth_token was included.
+         */
+        UNSUPPORTED_PARAMETER,
+        /**
+         * The oauth_timestamp was too far from the clock.
+         */
+        TIMESTAMP_OUT_OF_RANGE,
+        /**
+         * The {@link VerificationKeyProvider} had no key for the oauth_consumer_key.
+         */
+        UNKNOWN_CONSUMER_KEY,
+        /**
+         * The oauth_signature did not verify.
+         */
+        INVALID_SIGNATURE,
+        /**
+         * The oauth_nonce was already used by the consumer, with the same oauth_timestamp.
+         */
+        REPLAYED_NONCE,
+        /**
+         * Too many requests with the same oauth_timestamp to remember their nonces.
+         */
+        NONCE_CACHE_FULL
+    }
+
+    /**
+     * Looks up the verification key of a consumer.
+     */
+    @FunctionalInterface
+    public interface VerificationKeyProvider {
+
+        /**
+         * Gets the verification key for the consumer.
+         *
+         * @param consumerKey the oauth_consumer_key, a.k.a. the client accessKeyId
+         * @return for HMAC-SHAn signatures, the client accessKeySecret;
+         *      for ES512 signatures, the base64-encoded X.509 elliptic curve public key;
+         *      or null if the consumer is unknown
+         */
+        String getVerificationKey(String consumerKey);
+    }
+
+    /**
+     * The OAuth parameters of an Authorization header.
+     */
+    private static class AuthorizationHeader {
+        private String consumerKey;
+        private String signatureMethod;
+        private String signature;
+        private String timestamp;
+        private String nonce;
+        private String version;
+        private String token;
+    }
+
+    private final Clock clock;
+    private final long maximumSkewSeconds;
+    private final CachedSignatureVerifier signatureVerifier;
+    private final NonceReplayCache nonceReplayCache;
+
+    private OAuth1Verifier(Builder builder) {
+        this.clock = builder.clock;
+        this.maximumSkewSeconds = builder.maximumSkewSeconds;
+        this.signatureVerifier = new CachedSignatureVerifier(builder.verificationKeyProvider,
+                builder.maximumCachedKeys);
+        this.nonceReplayCache = new NonceReplayCache(builder.maximumSkewSeconds,
+                builder.maximumNoncesPerSecond);
+    }
+
+    /**
+     * Get a builder for an OAuth1Verifier.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds an {@link OAuth1Verifier}.
+     * At a minimum you must set the verificationKeyProvider.
+     */
+    public static class Builder {
+        private Clock clock = Clock.SYSTEM;
+        private VerificationKeyProvider verificationKeyProvider;
+        private long maximumSkewSeconds = DEFAULT_MAXIMUM_SKEW_SECONDS;
+        private int maximumNoncesPerSecond = DEFAULT_MAXIMUM_NONCES_PER_SECOND;
+        private int maximumCachedKeys = DEFAULT_MAXIMUM_CACHED_KEYS;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the clock oauth_timestamps are checked against.
+         * Use this if you want to inject your own clock, such as during unit tests.
+         *
+         * @param clock the implementation of a clock you want to use
+         * @return this
+         */
+        public Builder setClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Sets the source of consumers' verification keys.
+         *
+         * @param verificationKeyProvider looks up the verification key of a consumer
+         * @return this
+         */
+        public Builder setVerificationKeyProvider(VerificationKeyProvider verificationKeyProvider) {
+            this.verificationKeyProvider = verificationKeyProvider;
+            return this;
+        }
+
+        /**
+         * Sets the maximum difference, either way, between an oauth_timestamp and the clock.
+         * Nonces are remembered for twice this long.
+         *
+         * @param maximumSkewSeconds the maximum skew, from 0 to 3600 seconds
+         * @return this
+         */
+        public Builder setMaximumSkewSeconds(long maximumSkewSeconds) {
+            this.maximumSkewSeconds = maximumSkewSeconds;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of nonces accepted per oauth_timestamp second.
+         * Requests beyond it are rejected with {@link Result#NONCE_CACHE_FULL}.
+         * The nonce cache uses up to about 21 bytes for each, for every second of the
+         * 2 * maximumSkewSeconds window; for example about 16MB for 10000 nonces per second
+         * and a 60 second skew.  To verify more requests per second, prefer a smaller skew.
+         *
+         * @param maximumNoncesPerSecond the maximum nonces per second, from 1 to 2^24
+         * @return this
+         */
+        public Builder setMaximumNoncesPerSecond(int maximumNoncesPerSecond) {
+            this.maximumNoncesPerSecond = maximumNoncesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of consumers whose decoded keys are cached.
+         *
+         * @param maximumCachedKeys the maximum cached keys; must be positive
+         * @return this
+         */
+        public Builder setMaximumCachedKeys(int maximumCachedKeys) {
+            this.maximumCachedKeys = maximumCachedKeys;
+            return this;
+        }
+
+        /**
+         * Build the OAuth1Verifier.
+         *
+         * @return the OAuth1Verifier
+         */
+        public OAuth1Verifier build() {
+            Objects.requireNonNull(clock, "clock is required");
+            Objects.requireNonNull(verificationKeyProvider, "verificationKeyProvider is required");
+            return new OAuth1Verifier(this);
+        }
+    }
+
+    /**
+     * Verifies the Authorization header of a request.
+     *
+     * @param method the HTTP method
+     * @param baseURL the base url including the protocol, host and port, without the query
+     * @param formParams the form parameters, or null
+     * @param queryParams the query parameters, or null
+     * @param authorizationHeader the Authorization header value, or null if there was none
+     * @return the result; only {@link Result#VALID} should be served
+     */
+    public Result verify(String method, String baseURL,
+            Map<String, List<String>> formParams,
+            Map<String, List<String>> queryParams,
+            String authorizationHeader) {
+        AuthorizationHeader header = parse(authorizationHeader);
+        if (null == header || null == header.consumerKey || null == header.signatureMethod
+                || null == header.signature || null == header.timestamp || null == header.nonce) {
+            return Result.MALFORMED_HEADER;
+        }
+
+        SignatureMethod signatureMethod = CachedSignatureVerifier.toSignatureMethod(header.signatureMethod);
+        if (null == signatureMethod || null != header.token
+                || (null != header.version && !OAUTH_VERSION.equals(header.version))) {
+            return Result.UNSUPPORTED_PARAMETER;
+        }
+
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(header.timestamp);
+        } catch (NumberFormatException e) {
+            return Result.MALFORMED_HEADER;
+        }
+        long nowSeconds = clock.currentTimeMillis() / 1000L;
+        if (Math.abs(nowSeconds - timestamp) > maximumSkewSeconds) {
+            return Result.TIMESTAMP_OUT_OF_RANGE;
+        }
+
+        CachedSignatureVerifier.CachedKey cachedKey = signatureVerifier.getCachedKey(header.consumerKey);
+        if (null == cachedKey) {
+            return Result.UNKNOWN_CONSUMER_KEY;
+        }
+
+        SignatureBaseString signatureBaseString = SignatureBaseString.get().build(
+                header.consumerKey, method, baseURL, timestamp, header.nonce, signatureMethod,
+                header.version, formParams, queryParams);
+        if (!signatureVerifier.verify(signatureBaseString, signatureMethod, header.signature, cachedKey)) {
+            return Result.INVALID_SIGNATURE;
+        }
+
+        // only remember the nonces of genuine requests, so forgeries can't fill the cache
+        return nonceReplayCache.record(timestamp, header.consumerKey, header.nonce);
+    }
+
+    /**
+     * Forgets the cached key of the consumer, such as after its key was rotated.
+     *
+     * @param consumerKey the oauth_consumer_key
+     */
+    public void invalidateKey(String consumerKey) {
+        signatureVerifier.invalidateKey(consumerKey);
+    }
+
+    /**
+     * Parses the OAuth parameters of the Authorization header, per
+     * <a href="https://tools.ietf.org/html/rfc5849#section-3.5.1">RFC5849 section 3.5.1</a>,
+     * by scanning, without regular expressions.
+     *
+     * @param value the Authorization header value
+     * @return the parameters, or null if malformed
+     */
+    private static AuthorizationHeader parse(String value) {
+        if (null == value) {
+            return null;
+        }
+        int length = value.length();
+        int i = skipWhitespace(value, 0, length);
+        if (!value.regionMatches(true, i, OAUTH_SCHEME, 0, OAUTH_SCHEME.length())) {
+            return null;
+        }
+        i += OAUTH_SCHEME.length();
+        if (i < length && !isWhitespace(value.charAt(i))) {
+            return null;
+        }
+
+        AuthorizationHeader header = new AuthorizationHeader();
+        boolean first = true;
+        while (true) {
+            i = skipWhitespace(value, i, length);
+            if (i == length) {
+                return header;
+            }
+            if (!first) {
+                if (value.charAt(i) != ',') {
+                    return null;
+                }
+                i = skipWhitespace(value, i + 1, length);
+            }
+            first = false;
+
+            int nameStart = i;
+            while (i < length && value.charAt(i) != '=' && !isWhitespace(value.charAt(i))) {
+                i++;
+            }
+            int nameEnd = i;
+            i = skipWhitespace(value, i, length);
+            if (nameStart == nameEnd || i + 1 >= length || value.charAt(i) != '=') {
+                return null;
+            }
+            i = skipWhitespace(value, i + 1, length);
+            if (i >= length || value.charAt(i) != '"') {
+                return null;
+            }
+            int valueStart = ++i;
+            while (i < length && value.charAt(i) != '"') {
+                i++;
+            }
+            if (i == length) {
+                return null;
+            }
+            String parameterValue = percentDecode(value, valueStart, i);
+            i++;
+            if (null == parameterValue || !setParameter(header, value, nameStart, nameEnd, parameterValue)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return false if the parameter was repeated
+     */
+    private static boolean setParameter(AuthorizationHeader header, String value, int nameStart, int nameEnd,
+            String parameterValue) {
+        int nameLength = nameEnd - nameStart;
+        if (matches("oauth_consumer_key", value, nameStart, nameLength)) {
+            if (null != header.consumerKey) {
+                return false;
+            }
+            header.consumerKey = parameterValue;
+        } else if (matches("oauth_signature_method", value, nameStart, nameLength)) {
+            if (null != header.signatureMethod) {
+                return false;
+            }
+            header.signatureMethod = parameterValue;
+        } else if (matches("oauth_signature", value, nameStart, nameLength)) {
+            if (null != header.signature) {
+                return false;
+            }
+            header.signature = parameterValue;
+        } else if (matches("oauth_timestamp", value, nameStart, nameLength)) {
+            if (null != header.timestamp) {
+                return false;
+            }
+            header.timestamp = parameterValue;
+        } else if (matches("oauth_nonce", value, nameStart, nameLength)) {
+            if (null != header.nonce) {
+                return false;
+            }
+            header.nonce = parameterValue;
+        } else if (matches("oauth_version", value, nameStart, nameLength)) {
+            if (null != header.version) {
+                return false;
+            }
+            header.version = parameterValue;
+        } else if (matches("oauth_token", value, nameStart, nameLength)) {
+            if (null != header.token) {
+                return false;
+            }
+            header.token = parameterValue;
+        }
+        // others, such as realm, are not signed, and are ignored
+        return true;
+    }
+
+    private static boolean matches(String name, String value, int start, int length) {
+        return name.length() == length && value.regionMatches(start, name, 0, length);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static int skipWhitespace(String value, int i, int length) {
+        while (i < length && isWhitespace(value.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Percent-decodes value from start to end as UTF-8, or returns null if an escape is malformed.
+     */
+    private static String percentDecode(String value, int start, int end) {
+        int percent = value.indexOf('%', start);
+        if (percent < 0 || percent >= end) {
+            return value.substring(start, end);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // should have been percent-encoded
+                return null;
+            } else if (c == '%') {
+                if (i + 2 >= end) {
+                    return null;
+                }
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low = Character.digit(value.charAt(i + 2), 16);
+                if (high < 0 || low < 0) {
+                    return null;
+                }
+                bytes.write((high << 4) | low);
+                i += 2;
+            } else {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), OAuthConstants.UTF_8_CHARSET);
+    }
+}
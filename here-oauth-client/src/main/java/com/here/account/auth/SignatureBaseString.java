@@ -0,0 +1,744 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.here.account.util.OAuthConstants;
+
+/**
+ * Builds the OAuth 1.0
+ * <a href="https://tools.ietf.org/html/rfc5849#section-3.4.1">signature base string</a>
+ * as UTF-8 bytes, into buffers that are reused by the same thread for every signature,
+ * so a signature creates next to no garbage.
+ *
+ * <p>
+ * Percent-encoding is table-driven, and produces exactly the bytes of
+ * <tt>URLEncoder.encode(s, "UTF-8").replaceAll("\\+", "%20")</tt>,
+ * which this SDK has always signed with.  Note that differs from
+ * <a href="https://tools.ietf.org/html/rfc3986#section-2.3">RFC3986</a>
+ * unreserved characters for '*', which is left as is, and '~', which is encoded.
+ *
+ * <p>
+ * Not thread-safe; use {@link #get()} to get the calling thread's instance.
+ */
+final class SignatureBaseString {
+
+    /**
+     * Buffers larger than this are not kept after use,
+     * so one very large request doesn't pin memory to a thread forever.
+     */
+    static final int MAXIMUM_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int INITIAL_PARAMETERS = 16;
+
+    /**
+     * Runs of up to this many parameters are sorted with insertion sort, and longer ones merged.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7',
+            '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /**
+     * The ASCII characters that are never percent-encoded.
+     */
+    private static final boolean[] UNENCODED = new boolean[128];
+    static {
+        for (int c = 'a'; c <= 'z'; c++) {
+            UNENCODED[c] = true;
+        }
+        for (int c = 'A'; c <= 'Z'; c++) {
+            UNENCODED[c] = true;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            UNENCODED[c] = true;
+        }
+        UNENCODED['-'] = true;
+        UNENCODED['_'] = true;
+        UNENCODED['.'] = true;
+        UNENCODED['*'] = true;
+    }
+
+    private static final ThreadLocal<SignatureBaseString> INSTANCES = new ThreadLocal<SignatureBaseString>() {
+        @Override
+        protected SignatureBaseString initialValue() {
+            return new SignatureBaseString();
+        }
+    };
+
+    /**
+     * Gets the calling thread's SignatureBaseString.
+     *
+     * @return the calling thread's SignatureBaseString
+     */
+    static SignatureBaseString get() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * The signature base string, as UTF-8 bytes.
+     */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * The percent-encoded parameter keys and values, back to back.
+     */
+    private byte[] parameterBytes = new byte[INITIAL_CAPACITY];
+    private int parameterBytesLength;
+
+    /**
+     * Per parameter, where its key starts, and where its key ends and value starts,
+     * in parameterBytes.  Its value ends where the next parameter starts.
+     */
+    private int[] keyStarts = new int[INITIAL_PARAMETERS + 1];
+    private int[] valueStarts = new int[INITIAL_PARAMETERS];
+    private int[] order = new int[INITIAL_PARAMETERS];
+    /**
+     * Scratch space for merging order, allocated once there are more parameters
+     * than {@link #INSERTION_SORT_THRESHOLD}.
+     */
+    private int[] mergeScratch;
+    private int parameterCount;
+
+    private SignatureBaseString() {
+    }
+
+    /**
+     * Builds the signature base string, replacing any previous one.
+     *
+     * @param consumerKey     the consumer key
+     * @param method          the HTTP method
+     * @param baseURL         the base url including the protocol, host and port.
+     * @param oauthTimestamp  the time stamp
+     * @param nonce           nonce
+     * @param signatureMethod signature method to be used - supported are HMAC-SHA1, HMAC-SHA256, ES512
+     * @param oauthVersion    the oauth_version value, or null to omit it
+     * @param formParams      the list of form parameters
+     * @param queryParams     list of query parameters
+     * @return this
+     */
+    SignatureBaseString build(String consumerKey, String method, String baseURL, long oauthTimestamp,
+            String nonce, SignatureMethod signatureMethod,
+            String oauthVersion,
+            Map<String, List<String>> formParams,
+            Map<String, List<String>> queryParams) {
+        reset();
+
+        // the OAuth parameters, then form and query parameters, each percent-encoded
+        addParameter("oauth_consumer_key", consumerKey);
+        addParameter("oauth_nonce", nonce);
+        addParameter("oauth_signature_method", signatureMethod.getOauth1SignatureMethod());
+        startParameter("oauth_timestamp");
+        appendParameterDigits(oauthTimestamp);
+        if (null != oauthVersion) {
+            addParameter("oauth_version", oauthVersion);
+        }
+        addParameters(formParams);
+        addParameters(queryParams);
+        keyStarts[parameterCount] = parameterBytesLength;
+        sortParameters();
+
+        // METHOD&encoded(baseURL)&encoded(k=v&k=v...)
+        appendUpperCase(method);
+        append((byte) '&');
+        appendEncodedBaseURL(baseURL);
+        append((byte) '&');
+        for (int i = 0; i < parameterCount; i++) {
+            int index = order[i];
+            if (i > 0) {
+                appendEncoded((byte) '&');
+            }
+            appendReencoded(keyStarts[index], valueStarts[index]);
+            appendEncoded((byte) '=');
+            appendReencoded(valueStarts[index], keyStarts[index + 1]);
+        }
+        return this;
+    }
+
+    /**
+     * The parts of a signature base string that are the same for every request
+     * to an endpoint: the method, the base URL, and the static parameters,
+     * already percent-encoded and sorted.
+     */
+    static final class Template {
+        /**
+         * METHOD&amp;encoded(baseURL)&amp;
+         */
+        private final byte[] prefix;
+
+        /**
+         * The static parameters' percent-encoded keys and values, back to back, in sorted order.
+         */
+        private final byte[] parameterBytes;
+        private final int[] keyStarts;
+        private final int[] valueStarts;
+
+        /**
+         * The static parameters' encoded(key=value), back to back, in sorted order.
+         */
+        private final byte[] reencodedBytes;
+        private final int[] reencodedStarts;
+
+        private Template(byte[] prefix, byte[] parameterBytes, int[] keyStarts, int[] valueStarts,
+                byte[] reencodedBytes, int[] reencodedStarts) {
+            this.prefix = prefix;
+            this.parameterBytes = parameterBytes;
+            this.keyStarts = keyStarts;
+            this.valueStarts = valueStarts;
+            this.reencodedBytes = reencodedBytes;
+            this.reencodedStarts = reencodedStarts;
+        }
+    }
+
+    /**
+     * Normalizes and encodes the base URL, and encodes and sorts the static parameters,
+     * once, for use by {@link #build(Template, long, String, Map)}.
+     *
+     * @param consumerKey     the consumer key
+     * @param method          the HTTP method
+     * @param baseURL         the base url including the protocol, host and port.
+     * @param signatureMethod signature method to be used - supported are HMAC-SHA1, HMAC-SHA256, ES512
+     * @param oauthVersion    the oauth_version value, or null to omit it
+     * @param staticParams    the parameters sent with every request, or null
+     * @return the template
+     */
+    static Template compile(String consumerKey, String method, String baseURL,
+            SignatureMethod signatureMethod, String oauthVersion,
+            Map<String, List<String>> staticParams) {
+        SignatureBaseString compiler = new SignatureBaseString();
+        compiler.addParameter("oauth_consumer_key", consumerKey);
+        compiler.addParameter("oauth_signature_method", signatureMethod.getOauth1SignatureMethod());
+        if (null != oauthVersion) {
+            compiler.addParameter("oauth_version", oauthVersion);
+        }
+        compiler.addParameters(staticParams);
+        compiler.keyStarts[compiler.parameterCount] = compiler.parameterBytesLength;
+        compiler.sortParameters();
+
+        compiler.appendUpperCase(method);
+        compiler.append((byte) '&');
+        compiler.appendEncodedBaseURL(baseURL);
+        compiler.append((byte) '&');
+        byte[] prefix = Arrays.copyOf(compiler.bytes, compiler.length);
+
+        // copy the parameters out in sorted order, each both encoded and re-encoded
+        int count = compiler.parameterCount;
+        byte[] parameterBytes = new byte[compiler.parameterBytesLength];
+        int[] keyStarts = new int[count + 1];
+        int[] valueStarts = new int[count];
+        int[] reencodedStarts = new int[count + 1];
+        int offset = 0;
+        compiler.length = 0;
+        for (int i = 0; i < count; i++) {
+            int index = compiler.order[i];
+            int start = compiler.keyStarts[index];
+            int end = compiler.keyStarts[index + 1];
+            keyStarts[i] = offset;
+            valueStarts[i] = offset + compiler.valueStarts[index] - start;
+            System.arraycopy(compiler.parameterBytes, start, parameterBytes, offset, end - start);
+            offset += end - start;
+
+            reencodedStarts[i] = compiler.length;
+            compiler.appendReencoded(start, compiler.valueStarts[index]);
+            compiler.appendEncoded((byte) '=');
+            compiler.appendReencoded(compiler.valueStarts[index], end);
+        }
+        keyStarts[count] = offset;
+        reencodedStarts[count] = compiler.length;
+        return new Template(prefix, parameterBytes, keyStarts, valueStarts,
+                Arrays.copyOf(compiler.bytes, compiler.length), reencodedStarts);
+    }
+
+    /**
+     * Builds the signature base string from a template, replacing any previous one.
+     * Only the nonce, timestamp and dynamic parameters are encoded and sorted;
+     * they are then merged with the template's already sorted static parameters.
+     *
+     * @param template        the template for the method, base URL, and static parameters
+     * @param oauthTimestamp  the time stamp
+     * @param nonce           nonce
+     * @param dynamicParams   the parameters particular to this request, or null
+     * @return this
+     */
+    SignatureBaseString build(Template template, long oauthTimestamp, String nonce,
+            Map<String, List<String>> dynamicParams) {
+        reset();
+
+        addParameter("oauth_nonce", nonce);
+        startParameter("oauth_timestamp");
+        appendParameterDigits(oauthTimestamp);
+        addParameters(dynamicParams);
+        keyStarts[parameterCount] = parameterBytesLength;
+        sortParameters();
+
+        ensureCapacity(template.prefix.length + template.reencodedBytes.length);
+        System.arraycopy(template.prefix, 0, bytes, 0, template.prefix.length);
+        length = template.prefix.length;
+        int staticCount = template.valueStarts.length;
+        int i = 0;
+        int j = 0;
+        while (i < staticCount || j < parameterCount) {
+            if (i + j > 0) {
+                appendEncoded((byte) '&');
+            }
+            if (j == parameterCount || (i < staticCount && compareParameters(template, i, order[j]) <= 0)) {
+                int start = template.reencodedStarts[i];
+                int reencodedLength = template.reencodedStarts[i + 1] - start;
+                ensureCapacity(reencodedLength);
+                System.arraycopy(template.reencodedBytes, start, bytes, length, reencodedLength);
+                length += reencodedLength;
+                i++;
+            } else {
+                int index = order[j];
+                appendReencoded(keyStarts[index], valueStarts[index]);
+                appendEncoded((byte) '=');
+                appendReencoded(valueStarts[index], keyStarts[index + 1]);
+                j++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets the buffer holding the signature base string, as UTF-8 bytes,
+     * from 0 to {@link #length()}.
+     * The buffer is overwritten by the next build.
+     *
+     * @return the buffer
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the length of the signature base string, in bytes
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, OAuthConstants.UTF_8_CHARSET);
+    }
+
+    /**
+     * Percent-encodes <tt>s</tt>, the same as
+     * <tt>URLEncoder.encode(s, "UTF-8").replaceAll("\\+", "%20")</tt>.
+     *
+     * @param s the string to encode
+     * @return the encoded string
+     */
+    static String urlEncode(String s) {
+        StringBuilder encoded = new StringBuilder(s.length() + 16);
+        urlEncode(s, encoded);
+        return encoded.toString();
+    }
+
+    /**
+     * Appends <tt>s</tt>, percent-encoded as by {@link #urlEncode(String)}, to <tt>out</tt>.
+     *
+     * @param s the string to encode
+     * @param out where to append it
+     */
+    static void urlEncode(String s, StringBuilder out) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (UNENCODED[c]) {
+                    out.append(c);
+                } else {
+                    appendPercentEncoded(c, out);
+                }
+            } else if (c < 0x800) {
+                appendPercentEncoded(0xC0 | (c >> 6), out);
+                appendPercentEncoded(0x80 | (c & 0x3F), out);
+            } else if (Character.isSurrogate(c)) {
+                int codePoint = codePointAt(s, i, length);
+                if (codePoint < 0) {
+                    appendPercentEncoded('?', out);
+                } else {
+                    appendPercentEncoded(0xF0 | (codePoint >> 18), out);
+                    appendPercentEncoded(0x80 | ((codePoint >> 12) & 0x3F), out);
+                    appendPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F), out);
+                    appendPercentEncoded(0x80 | (codePoint & 0x3F), out);
+                    i++;
+                }
+            } else {
+                appendPercentEncoded(0xE0 | (c >> 12), out);
+                appendPercentEncoded(0x80 | ((c >> 6) & 0x3F), out);
+                appendPercentEncoded(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    private static void appendPercentEncoded(int b, StringBuilder out) {
+        out.append('%').append((char) HEX[(b >> 4) & 0xF]).append((char) HEX[b & 0xF]);
+    }
+
+    /**
+     * Gets the supplementary code point of the surrogate pair starting at <tt>i</tt>,
+     * or -1 if there is no valid pair there.
+     * Unpaired surrogates encode as '?', as they do in String.getBytes.
+     */
+    private static int codePointAt(String s, int i, int length) {
+        char high = s.charAt(i);
+        if (Character.isHighSurrogate(high) && i + 1 < length) {
+            char low = s.charAt(i + 1);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(high, low);
+            }
+        }
+        return -1;
+    }
+
+    private void reset() {
+        length = 0;
+        parameterBytesLength = 0;
+        parameterCount = 0;
+        if (bytes.length > MAXIMUM_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        if (parameterBytes.length > MAXIMUM_RETAINED_CAPACITY) {
+            parameterBytes = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    private void addParameters(Map<String, List<String>> params) {
+        if (null != params && !params.isEmpty()) {
+            for (Entry<String, List<String>> entry : params.entrySet()) {
+                String key = entry.getKey();
+                List<String> values = entry.getValue();
+                for (int i = 0, size = values.size(); i < size; i++) {
+                    addParameter(key, values.get(i));
+                }
+            }
+        }
+    }
+
+    private void addParameter(String key, String value) {
+        startParameter(key);
+        appendParameterEncoded(value);
+    }
+
+    /**
+     * Starts a new parameter, and appends its encoded key.
+     * The value is appended next.
+     */
+    private void startParameter(String key) {
+        if (parameterCount == valueStarts.length) {
+            int capacity = parameterCount * 2;
+            keyStarts = Arrays.copyOf(keyStarts, capacity + 1);
+            valueStarts = Arrays.copyOf(valueStarts, capacity);
+            order = Arrays.copyOf(order, capacity);
+        }
+        keyStarts[parameterCount] = parameterBytesLength;
+        appendParameterEncoded(key);
+        valueStarts[parameterCount] = parameterBytesLength;
+        order[parameterCount] = parameterCount;
+        parameterCount++;
+    }
+
+    private void appendParameterEncoded(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (UNENCODED[c]) {
+                    appendParameterByte(c);
+                } else {
+                    appendParameterPercentEncoded(c);
+                }
+            } else if (c < 0x800) {
+                appendParameterPercentEncoded(0xC0 | (c >> 6));
+                appendParameterPercentEncoded(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                int codePoint = codePointAt(s, i, length);
+                if (codePoint < 0) {
+                    appendParameterPercentEncoded('?');
+                } else {
+                    appendParameterPercentEncoded(0xF0 | (codePoint >> 18));
+                    appendParameterPercentEncoded(0x80 | ((codePoint >> 12) & 0x3F));
+                    appendParameterPercentEncoded(0x80 | ((codePoint >> 6) & 0x3F));
+                    appendParameterPercentEncoded(0x80 | (codePoint & 0x3F));
+                    i++;
+                }
+            } else {
+                appendParameterPercentEncoded(0xE0 | (c >> 12));
+                appendParameterPercentEncoded(0x80 | ((c >> 6) & 0x3F));
+                appendParameterPercentEncoded(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void appendParameterDigits(long value) {
+        ensureParameterCapacity(20);
+        if (value < 0) {
+            parameterBytes[parameterBytesLength++] = '-';
+        } else {
+            value = -value;
+        }
+        // accumulate on the negative side, which also holds Long.MIN_VALUE
+        int start = parameterBytesLength;
+        do {
+            parameterBytes[parameterBytesLength++] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // digits were appended least significant first
+        for (int i = start, j = parameterBytesLength - 1; i < j; i++, j--) {
+            byte swap = parameterBytes[i];
+            parameterBytes[i] = parameterBytes[j];
+            parameterBytes[j] = swap;
+        }
+    }
+
+    private void appendParameterByte(int b) {
+        ensureParameterCapacity(1);
+        parameterBytes[parameterBytesLength++] = (byte) b;
+    }
+
+    private void appendParameterPercentEncoded(int b) {
+        ensureParameterCapacity(3);
+        parameterBytes[parameterBytesLength++] = '%';
+        parameterBytes[parameterBytesLength++] = HEX[(b >> 4) & 0xF];
+        parameterBytes[parameterBytesLength++] = HEX[b & 0xF];
+    }
+
+    private void ensureParameterCapacity(int additional) {
+        if (parameterBytesLength + additional > parameterBytes.length) {
+            parameterBytes = Arrays.copyOf(parameterBytes,
+                    Math.max(parameterBytes.length * 2, parameterBytesLength + additional));
+        }
+    }
+
+    /**
+     * Sorts the parameters by encoded key, then encoded value,
+     * as String.compareTo would; the encoded bytes are all ASCII.
+     */
+    private void sortParameters() {
+        if (parameterCount > INSERTION_SORT_THRESHOLD
+                && (null == mergeScratch || mergeScratch.length < parameterCount)) {
+            mergeScratch = new int[order.length];
+        }
+        mergeSort(0, parameterCount);
+    }
+
+    /**
+     * Sorts order[from, to) with a stable merge sort on the primitive indexes,
+     * merging through mergeScratch.
+     */
+    private void mergeSort(int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int index = order[i];
+                int j = i - 1;
+                while (j >= from && compareParameters(order[j], index) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = index;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(from, middle);
+        mergeSort(middle, to);
+        if (compareParameters(order[middle - 1], order[middle]) <= 0) {
+            // already in order
+            return;
+        }
+        System.arraycopy(order, from, mergeScratch, from, to - from);
+        int i = from;
+        int j = middle;
+        for (int k = from; k < to; k++) {
+            if (j == to || (i < middle && compareParameters(mergeScratch[i], mergeScratch[j]) <= 0)) {
+                order[k] = mergeScratch[i++];
+            } else {
+                order[k] = mergeScratch[j++];
+            }
+        }
+    }
+
+    private int compareParameters(int a, int b) {
+        int diff = compareRanges(parameterBytes, keyStarts[a], valueStarts[a],
+                parameterBytes, keyStarts[b], valueStarts[b]);
+        if (diff == 0) {
+            diff = compareRanges(parameterBytes, valueStarts[a], keyStarts[a + 1],
+                    parameterBytes, valueStarts[b], keyStarts[b + 1]);
+        }
+        return diff;
+    }
+
+    /**
+     * Compares static parameter <tt>a</tt> of the template with parameter <tt>b</tt>.
+     */
+    private int compareParameters(Template template, int a, int b) {
+        int diff = compareRanges(template.parameterBytes, template.keyStarts[a], template.valueStarts[a],
+                parameterBytes, keyStarts[b], valueStarts[b]);
+        if (diff == 0) {
+            diff = compareRanges(template.parameterBytes, template.valueStarts[a], template.keyStarts[a + 1],
+                    parameterBytes, valueStarts[b], keyStarts[b + 1]);
+        }
+        return diff;
+    }
+
+    private static int compareRanges(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        int aLength = aEnd - aStart;
+        int bLength = bEnd - bStart;
+        int limit = Math.min(aLength, bLength);
+        for (int i = 0; i < limit; i++) {
+            int diff = a[aStart + i] - b[bStart + i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Appends the method, upper-cased, and not encoded.
+     */
+    private void appendUpperCase(String method) {
+        int methodLength = method.length();
+        for (int i = 0; i < methodLength; i++) {
+            if (method.charAt(i) >= 0x80) {
+                // not an HTTP token; keep the locale-sensitive behavior
+                appendUtf8(method.toUpperCase());
+                return;
+            }
+        }
+        ensureCapacity(methodLength);
+        for (int i = 0; i < methodLength; i++) {
+            char c = method.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            bytes[length++] = (byte) c;
+        }
+    }
+
+    private void appendUtf8(String s) {
+        byte[] utf8 = s.getBytes(OAuthConstants.UTF_8_CHARSET);
+        ensureCapacity(utf8.length);
+        System.arraycopy(utf8, 0, bytes, length, utf8.length);
+        length += utf8.length;
+    }
+
+    /**
+     * Appends the baseURL, without the default port, percent-encoded.
+     */
+    private void appendEncodedBaseURL(String baseURL) {
+        int skipStart = 0;
+        int skipEnd = 0;
+        int index;
+        if (baseURL.startsWith("http:")) {
+            index = baseURL.indexOf(":80/", 4);
+            if (index > 0) {
+                skipStart = index;
+                skipEnd = index + 3;
+            }
+        } else if (baseURL.startsWith("https:")) {
+            index = baseURL.indexOf(":443/", 5);
+            if (index > 0) {
+                skipStart = index;
+                skipEnd = index + 4;
+            }
+        }
+        appendEncoded(baseURL, 0, skipStart == skipEnd ? baseURL.length() : skipStart);
+        if (skipStart != skipEnd) {
+            appendEncoded(baseURL, skipEnd, baseURL.length());
+        }
+    }
+
+    private void appendEncoded(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (UNENCODED[c]) {
+                    append((byte) c);
+                } else {
+                    appendEncoded((byte) c);
+                }
+            } else if (c < 0x800) {
+                appendEncoded((byte) (0xC0 | (c >> 6)));
+                appendEncoded((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                int codePoint = codePointAt(s, i, end);
+                if (codePoint < 0) {
+                    appendEncoded((byte) '?');
+                } else {
+                    appendEncoded((byte) (0xF0 | (codePoint >> 18)));
+                    appendEncoded((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    appendEncoded((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    appendEncoded((byte) (0x80 | (codePoint & 0x3F)));
+                    i++;
+                }
+            } else {
+                appendEncoded((byte) (0xE0 | (c >> 12)));
+                appendEncoded((byte) (0x80 | ((c >> 6) & 0x3F)));
+                appendEncoded((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Appends already percent-encoded parameter bytes, percent-encoded again.
+     * Encoded bytes are all unencoded characters or '%', so only '%' changes.
+     */
+    private void appendReencoded(int start, int end) {
+        ensureCapacity(3 * (end - start));
+        for (int i = start; i < end; i++) {
+            byte b = parameterBytes[i];
+            if (b == '%') {
+                bytes[length++] = '%';
+                bytes[length++] = '2';
+                bytes[length++] = '5';
+            } else {
+                bytes[length++] = b;
+            }
+        }
+    }
+
+    private void append(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+    }
+
+    private void appendEncoded(byte b) {
+        ensureCapacity(3);
+        bytes[length++] = '%';
+        bytes[length++] = HEX[(b >> 4) & 0xF];
+        bytes[length++] = HEX[b & 0xF];
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+        }
+    }
+}
@@ -16,20 +16,16 @@
 package com.here.account.auth;
 
 import com.here.account.util.OAuthConstants;
-import org.apache.commons.codec.binary.Base64;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
@@ -39,17 +35,49 @@ import static com.here.account.auth.SignatureMethod.ES512;
  * Compute OAuth1.0 signature using the given parameters.
  * This class is specific to HERE Account.
  * 
+ * <p>
+ * A SignatureCalculator derives its signing key material once, and keeps an 
+ * initialized {@link Mac} or {@link Signature} per thread and signature method, 
+ * so reuse one instance for all the signatures of a client.
+ * 
  * @author srrajago
  */
 public class SignatureCalculator {
     private final String consumerKey;
     private final String consumerSecret;
 
+    /**
+     * The HMAC-SHAn key, derived from the consumerSecret on first use.
+     */
+    private volatile byte[] hmacKeyBytes;
+
+    /**
+     * The ES512 private key, parsed from the consumerSecret on first use.
+     */
+    private volatile PrivateKey ellipticCurvePrivateKey;
+
+    /**
+     * Per thread, the Mac or Signature initialized with this calculator's key, 
+     * indexed by SignatureMethod ordinal.  
+     * Both reset to their initialized state after each signature.
+     */
+    private final ThreadLocal<Object[]> initializedSigners = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[SignatureMethod.values().length];
+        }
+    };
+
     /**
      * This is the constant for Elliptic Curve algorithm
      */
     public static final String ELLIPTIC_CURVE_ALGORITHM = "EC";
 
+    /**
+     * Room for the Authorization header, without resizing, for typical keys.
+     */
+    private static final int AUTH_HEADER_CAPACITY = 256;
+
     public SignatureCalculator(String clientAccessKeyId, String clientAccessKeySecret) {
         this.consumerKey = clientAccessKeyId;
         this.consumerSecret = clientAccessKeySecret;
@@ -100,11 +128,106 @@ public class SignatureCalculator {
             String oauthVersion,
             Map<String, List<String>> formParams, 
             Map<String, List<String>> queryParams) {
-        String signatureBaseString = computeSignatureBaseString(this.consumerKey, method, baseURL, oauthTimestamp, nonce, signatureMethod,
+        // the base string bytes go straight from this thread's buffer into the Mac
+        SignatureBaseString signatureBaseString = SignatureBaseString.get().build(
+                this.consumerKey, method, baseURL, oauthTimestamp, nonce, signatureMethod,
                 oauthVersion,
                 formParams,
                 queryParams);
-        return generateSignature(signatureBaseString.toString(), this.consumerSecret, signatureMethod);
+        return Base64.getEncoder().encodeToString(sign(signatureBaseString.getBytes(), 0, 
+                signatureBaseString.length(), signatureMethod));
+    }
+
+    /**
+     * Create a signing template for repeated requests to the same endpoint.
+     * The oauth_version is set to "1.0".
+     *
+     * @param method          the HTTP method
+     * @param baseURL         the base url including the protocol, host and port.
+     * @param signatureMethod signature method to be used - supported are HMAC-SHA1, HMAC-SHA256, ES512
+     * @param staticParams    the form and query parameters sent with every request, or null
+     * @return the signing template
+     */
+    public SigningTemplate newSigningTemplate(String method, String baseURL,
+            SignatureMethod signatureMethod, Map<String, List<String>> staticParams) {
+        return new SigningTemplate(this, method, baseURL, signatureMethod,
+                SignatureBaseString.compile(consumerKey, method, baseURL, signatureMethod,
+                        "1.0", staticParams));
+    }
+
+    /**
+     * Calculate the OAuth 1.0 signature from a signing template.
+     *
+     * @param signingTemplate the signing template, created by this calculator
+     * @param oauthTimestamp  the time stamp
+     * @param nonce           nonce
+     * @param dynamicParams   the parameters particular to this request, or null
+     * @return computed signature using the template's signature method.
+     */
+    String calculateSignature(SigningTemplate signingTemplate, long oauthTimestamp, String nonce,
+            Map<String, List<String>> dynamicParams) {
+        SignatureBaseString signatureBaseString = SignatureBaseString.get().build(
+                signingTemplate.getTemplate(), oauthTimestamp, nonce, dynamicParams);
+        return Base64.getEncoder().encodeToString(sign(signatureBaseString.getBytes(), 0,
+                signatureBaseString.length(), signingTemplate.getSignatureMethod()));
+    }
+
+    /**
+     * Signs with this calculator's cached key material, and this thread's
+     * initialized Mac or Signature.
+     * 
+     * @param bytesToSign the buffer holding the bytes to be signed
+     * @param offset where in the buffer the bytes to be signed start
+     * @param length the number of bytes to be signed
+     * @param signatureMethod signature method
+     * @return the signature bytes
+     */
+    byte[] sign(byte[] bytesToSign, int offset, int length, SignatureMethod signatureMethod) {
+        Object[] signers = initializedSigners.get();
+        int index = signatureMethod.ordinal();
+        try {
+            if (signatureMethod.equals(ES512)) {
+                Signature signature = (Signature) signers[index];
+                if (null == signature) {
+                    signature = Signature.getInstance(signatureMethod.getAlgorithm());
+                    signature.initSign(getEllipticCurvePrivateKey());
+                    signers[index] = signature;
+                }
+                signature.update(bytesToSign, offset, length);
+                return signature.sign();
+            } else {
+                Mac mac = (Mac) signers[index];
+                if (null == mac) {
+                    mac = Mac.getInstance(signatureMethod.getAlgorithm());
+                    mac.init(new SecretKeySpec(getHmacKeyBytes(), signatureMethod.getAlgorithm()));
+                    signers[index] = mac;
+                }
+                mac.update(bytesToSign, offset, length);
+                return mac.doFinal();
+            }
+        } catch (Exception e) {
+            // don't reuse a Mac or Signature left in an unknown state
+            signers[index] = null;
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private byte[] getHmacKeyBytes() {
+        byte[] keyBytes = hmacKeyBytes;
+        if (null == keyBytes) {
+            keyBytes = toHmacKeyBytes(consumerSecret);
+            hmacKeyBytes = keyBytes;
+        }
+        return keyBytes;
+    }
+
+    private PrivateKey getEllipticCurvePrivateKey() {
+        PrivateKey privateKey = ellipticCurvePrivateKey;
+        if (null == privateKey) {
+            privateKey = consumerSecretToEllipticCurvePrivateKey(consumerSecret);
+            ellipticCurvePrivateKey = privateKey;
+        }
+        return privateKey;
     }
 
     /**
@@ -117,13 +240,15 @@ public class SignatureCalculator {
      * @return the Authorization header for OAuth 1.0 calls.
      */
     public String constructAuthHeader(String signature, String nonce, long oauthTimestamp, SignatureMethod signatureMethod) {
-        return new StringBuilder().append("OAuth ")
+        StringBuilder authHeader = new StringBuilder(AUTH_HEADER_CAPACITY).append("OAuth ")
                 .append("oauth_consumer_key").append("=\"").append(consumerKey)
                 .append("\", ").append("oauth_signature_method").append("=\"").append(signatureMethod.getOauth1SignatureMethod())
-                .append("\", ").append("oauth_signature").append("=\"").append(urlEncode(signature))
-                .append("\", ").append("oauth_timestamp").append("=\"").append(oauthTimestamp)
-                .append("\", ").append("oauth_nonce").append("=\"").append(urlEncode(nonce))
-                .append("\", ").append("oauth_version").append("=\"").append("1.0").append("\"").toString();
+                .append("\", ").append("oauth_signature").append("=\"");
+        SignatureBaseString.urlEncode(signature, authHeader);
+        authHeader.append("\", ").append("oauth_timestamp").append("=\"").append(oauthTimestamp)
+                .append("\", ").append("oauth_nonce").append("=\"");
+        SignatureBaseString.urlEncode(nonce, authHeader);
+        return authHeader.append("\", ").append("oauth_version").append("=\"").append("1.0").append("\"").toString();
     }
 
     /**
@@ -198,48 +323,10 @@ public class SignatureCalculator {
                                      String oauthVersion,
                                      Map<String, List<String>> formParams,
                                      Map<String, List<String>> queryParams) {
-        //Create signature base with the http method and base url
-        StringBuilder signatureBaseString = new StringBuilder(100);
-        signatureBaseString.append(method.toUpperCase());
-        signatureBaseString.append('&');
-        signatureBaseString.append(urlEncode(normalizeBaseURL(baseURL)));
-
-        //create parameter set with OAuth parameters
-        OAuthParameterSet parameterSet = new OAuthParameterSet();
-        parameterSet.add("oauth_consumer_key", consumerKey);
-        parameterSet.add("oauth_nonce", nonce);
-        parameterSet.add("oauth_signature_method", signatureMethod.getOauth1SignatureMethod());
-        parameterSet.add("oauth_timestamp", String.valueOf(oauthTimestamp));
-        if (null != oauthVersion) {
-            parameterSet.add("oauth_version", oauthVersion);
-        }
-
-        //add form parameters
-        if (formParams != null && !formParams.isEmpty()) {
-            for (String key : formParams.keySet()) {
-                List<String> values = formParams.get(key);
-                for (String value : values) {
-                    parameterSet.add(key, value);
-                }
-            }
-        }
-
-        //add query parameters
-        if (queryParams != null && !queryParams.isEmpty()) {
-            for (String key : queryParams.keySet()) {
-                List<String> values = queryParams.get(key);
-                for (String value : values) {
-                    parameterSet.add(key, value);
-                }
-            }
-        }
-
-        //sort the parameters by the key and format them into key=value concatenated with &
-        String parameterString = parameterSet.sortAndConcat();
-        //combine the signature base and parameters
-        signatureBaseString.append('&');
-        signatureBaseString.append(urlEncode(parameterString));
-        return signatureBaseString.toString();
+        return SignatureBaseString.get().build(consumerKey, method, baseURL, oauthTimestamp, nonce, signatureMethod,
+                oauthVersion,
+                formParams,
+                queryParams).toString();
     }
 
     /**
@@ -268,11 +355,7 @@ public class SignatureCalculator {
      * but we require it to be "%20".
      */
     private static String urlEncode(String s) {
-        try {
-            return URLEncoder.encode(s, OAuthConstants.UTF_8_STRING).replaceAll("\\+", "%20");
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalArgumentException(e);
-        }
+        return SignatureBaseString.urlEncode(s);
     }
 
     /**
@@ -286,7 +369,7 @@ public class SignatureCalculator {
             Signature s = Signature.getInstance(algorithm);
             s.initSign(consumerSecretToEllipticCurvePrivateKey(key));
             s.update(bytesToSign);
-            return Base64.encodeBase64String(s.sign());
+            return Base64.getEncoder().encodeToString(s.sign());
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
         }
@@ -300,25 +383,66 @@ public class SignatureCalculator {
      */
     private static String computeHMACSignature(byte[] bytesToSign, String key, String algorithm) {
         try {
-            byte[] keyBytes = (urlEncode(key) + "&").getBytes(OAuthConstants.UTF_8_CHARSET);
+            byte[] keyBytes = toHmacKeyBytes(key);
             SecretKeySpec signingKey = new SecretKeySpec(keyBytes, algorithm);
 
             //generate signature based on the requested signature method
             Mac mac = Mac.getInstance(algorithm);
             mac.init(signingKey);
             byte[] signedBytes = mac.doFinal(bytesToSign);
-            return Base64.encodeBase64String(signedBytes);
+            return Base64.getEncoder().encodeToString(signedBytes);
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
         }
     }
 
+    /**
+     * Convert the consumer secret to the HMAC-SHAn key, per 
+     * <a href="http://tools.ietf.org/html/rfc5849#section-3.4.2">HMAC-SHA1</a>, 
+     * with an empty token secret.
+     */
+    static byte[] toHmacKeyBytes(String key) {
+        return (urlEncode(key) + "&").getBytes(OAuthConstants.UTF_8_CHARSET);
+    }
+
+    /**
+     * Decodes base64 as leniently as commons-codec did: either the standard or the URL-safe
+     * alphabet, padding optional, and characters outside the alphabet, such as line breaks, ignored.
+     *
+     * @param base64 the base64-encoded value
+     * @return the decoded bytes
+     */
+    static byte[] decodeBase64(String base64) {
+        try {
+            return Base64.getDecoder().decode(base64);
+        } catch (IllegalArgumentException e) {
+            StringBuilder buf = new StringBuilder(base64.length());
+            for (int i = 0; i < base64.length(); i++) {
+                char c = base64.charAt(i);
+                if ('-' == c) {
+                    c = '+';
+                } else if ('_' == c) {
+                    c = '/';
+                }
+                if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                        || '+' == c || '/' == c) {
+                    buf.append(c);
+                }
+            }
+            if (buf.length() % 4 == 1) {
+                // a lone trailing character carries no whole byte
+                buf.setLength(buf.length() - 1);
+            }
+            return Base64.getDecoder().decode(buf.toString());
+        }
+    }
+
     /**
      * Convert the consumer key to the elliptic curve private key
      */
     private static PrivateKey consumerSecretToEllipticCurvePrivateKey(String key) {
         try {
-            byte[] keyBytes = Base64.decodeBase64(key);
+            byte[] keyBytes = decodeBase64(key);
             PKCS8EncodedKeySpec privateSpec = new PKCS8EncodedKeySpec(keyBytes);
             KeyFactory kf = KeyFactory.getInstance("EC");
             return kf.generatePrivate(privateSpec);
@@ -328,23 +452,17 @@ public class SignatureCalculator {
     }
 
     /**
-     * Remove the default port from the baseURL
+     * Convert the base64-encoded X.509 verification key to the elliptic curve public key
      */
-    private static String normalizeBaseURL(String baseURL) {
-        int index;
-        if (baseURL.startsWith("http:")) {
-            index = baseURL.indexOf(":80/", 4);
-            if (index > 0) {
-                baseURL = baseURL.substring(0, index) + baseURL.substring(index + 3);
-            }
-        } else if (baseURL.startsWith("https:")) {
-            index = baseURL.indexOf(":443/", 5);
-            if (index > 0) {
-                baseURL = baseURL.substring(0, index) + baseURL.substring(index + 4);
-            }
+    static PublicKey toEllipticCurvePublicKey(String verificationKey) {
+        try {
+            byte[] keyBytes = decodeBase64(verificationKey);
+            X509EncodedKeySpec publicSpec = new X509EncodedKeySpec(keyBytes);
+            KeyFactory kf = KeyFactory.getInstance(ELLIPTIC_CURVE_ALGORITHM);
+            return kf.generatePublic(publicSpec);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
         }
-
-        return baseURL;
     }
 
     /**
@@ -353,12 +471,9 @@ public class SignatureCalculator {
     private static boolean verifyECDSASignature(String cipherText, String signature, String verificationKey, SignatureMethod signatureMethod) {
         try {
             //convert the verification key to EC public key
-            byte[] keyBytes = Base64.decodeBase64(verificationKey);
-            X509EncodedKeySpec publicSpec = new X509EncodedKeySpec(keyBytes);
-            KeyFactory kf = KeyFactory.getInstance(ELLIPTIC_CURVE_ALGORITHM);
-            PublicKey pubKey = kf.generatePublic(publicSpec);
+            PublicKey pubKey = toEllipticCurvePublicKey(verificationKey);
 
-            byte[] signatureBytes = Base64.decodeBase64(signature.getBytes(OAuthConstants.UTF_8_STRING));
+            byte[] signatureBytes = decodeBase64(signature);
             Signature s = Signature.getInstance(signatureMethod.getAlgorithm());
             s.initVerify(pubKey);
             s.update(cipherText.getBytes(OAuthConstants.UTF_8_STRING));
@@ -367,79 +482,4 @@ public class SignatureCalculator {
             throw new IllegalArgumentException(e);
         }
     }
-
-    /**
-     * Container class for Parameters.
-     */
-    private static final class OAuthParameterSet {
-
-        private final List<Parameter> allParameters = new ArrayList<>();
-
-        /**
-         * Add the given URL encoded key-value to the parameter list
-         *
-         * @param key   the parameter key
-         * @param value the parameter value
-         * @return the list with new parameter added.
-         */
-        private List<Parameter> add(String key, String value) {
-            allParameters.add(new Parameter(urlEncode(key), urlEncode(value)));
-            return allParameters;
-        }
-
-        /**
-         * Sort the parameters by their key and concat into key=value format with '&'
-         *
-         * @return the concatinated parameters in the sorted order.
-         */
-        private String sortAndConcat() {
-            Parameter[] params = new Parameter[allParameters.size()];
-            allParameters.toArray(params);
-            Arrays.sort(params);
-            StringBuilder encodedParams = new StringBuilder(100);
-
-            for (Parameter param : params) {
-                if (encodedParams.length() > 0) {
-                    encodedParams.append('&');
-                }
-                encodedParams.append(param.getKey()).append('=').append(param.getValue());
-            }
-            return encodedParams.toString();
-        }
-    }
-
-    /**
-     * Holds a tuple key-value pair.
-     * Implements <code>Comparable</code> for sorting by the key.
-     */
-    private static final class Parameter implements Comparable<Parameter> {
-        private final String key;
-        private final String value;
-
-        private Parameter(String key, String value) {
-            this.key = key;
-            this.value = value;
-        }
-
-        private String getKey() {
-            return key;
-        }
-
-        private String getValue() {
-            return value;
-        }
-
-        /**
-         * Compare the key, if the key is the same, compare by the value.
-         */
-        @Override
-        public int compareTo(Parameter other) {
-            int diff = this.key.compareTo(other.key);
-            if (diff == 0) {
-                diff = this.value.compareTo(other.value);
-            }
-
-            return diff;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A precompiled OAuth 1.0 signature for one method, base URL, consumer key,
+ * signature method, and set of static parameters.
+ * Get one from
+ * {@link SignatureCalculator#newSigningTemplate(String, String, SignatureMethod, Map)},
+ * and reuse it for every request to that endpoint.
+ *
+ * <p>
+ * The base URL is normalized and encoded, and the static parameters are
+ * encoded and sorted, once, when the template is created.
+ * Each signature then only encodes and sorts the timestamp, nonce, and the
+ * request's dynamic parameters, so it costs in proportion to those alone.
+ * The signatures are identical to those of
+ * {@link SignatureCalculator#calculateSignature(String, String, long, String, SignatureMethod, Map, Map)}
+ * with the static and dynamic parameters together.
+ *
+ * <p>
+ * A SigningTemplate is immutable and thread-safe.
+ */
+public final class SigningTemplate {
+
+    private final SignatureCalculator signatureCalculator;
+    private final String method;
+    private final String baseURL;
+    private final SignatureMethod signatureMethod;
+    private final SignatureBaseString.Template template;
+
+    SigningTemplate(SignatureCalculator signatureCalculator, String method, String baseURL,
+            SignatureMethod signatureMethod, SignatureBaseString.Template template) {
+        this.signatureCalculator = signatureCalculator;
+        this.method = method;
+        this.baseURL = baseURL;
+        this.signatureMethod = signatureMethod;
+        this.template = template;
+    }
+
+    /**
+     * @return the HTTP method this template signs
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the base URL this template signs, as given
+     */
+    public String getBaseURL() {
+        return baseURL;
+    }
+
+    /**
+     * @return the signature method
+     */
+    public SignatureMethod getSignatureMethod() {
+        return signatureMethod;
+    }
+
+    /**
+     * Calculate the OAuth 1.0 signature of a request,
+     * with oauth_version "1.0".
+     *
+     * @param oauthTimestamp the time stamp
+     * @param nonce          nonce
+     * @param dynamicParams  the form and query parameters particular to this request,
+     *                       in addition to the template's static parameters; may be null
+     * @return computed signature using the template's signature method.
+     */
+    public String calculateSignature(long oauthTimestamp, String nonce,
+            Map<String, List<String>> dynamicParams) {
+        return signatureCalculator.calculateSignature(this, oauthTimestamp, nonce, dynamicParams);
+    }
+
+    /**
+     * Construct the OAuth 1.0 authorization header for a signature calculated by this template.
+     *
+     * @param signature      the computed signature
+     * @param nonce          nonce parameter
+     * @param oauthTimestamp timestamp parameter
+     * @return the Authorization header for OAuth 1.0 calls.
+     */
+    public String constructAuthHeader(String signature, String nonce, long oauthTimestamp) {
+        return signatureCalculator.constructAuthHeader(signature, nonce, oauthTimestamp, signatureMethod);
+    }
+
+    SignatureBaseString.Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return true if this template signs requests with this method and base URL
+     */
+    boolean matches(String method, String baseURL) {
+        return this.method.equals(method) && this.baseURL.equals(baseURL);
+    }
+}
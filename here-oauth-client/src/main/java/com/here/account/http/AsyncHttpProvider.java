@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link HttpProvider} that can also execute requests without blocking the calling thread,
+ * such as on a few shared non-blocking I/O threads.
+ * Users of an HttpProvider check for this interface, and use
+ * {@link #executeAsync(HttpRequest)} where they would otherwise dedicate a thread
+ * to each blocking {@link #execute(HttpRequest)}.
+ */
+public interface AsyncHttpProvider extends HttpProvider {
+
+    /**
+     * Execute the <tt>httpRequest</tt>, without blocking.
+     * The request is one from this provider's
+     * {@link #getRequest(HttpRequestAuthorizer, String, String, java.util.Map)} methods.
+     *
+     * <p>
+     * The returned future is completed with the HttpResponse, typically on one of the
+     * provider's I/O threads, so dependent stages should not block.
+     * If there is trouble, it completes exceptionally with the same {@link HttpException}
+     * or {@link java.io.IOException} that {@link #execute(HttpRequest)} would have thrown.
+     * Cancelling it cancels the request, if it is still in flight.
+     *
+     * @param httpRequest the HttpRequest
+     * @return a future completed with the HttpResponse to the request
+     * @throws IllegalArgumentException if the httpRequest is not from this provider
+     */
+    CompletableFuture<HttpResponse> executeAsync(HttpRequest httpRequest);
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link HttpProvider.HttpResponse} whose body is already in memory,
+ * so it can be read from a ByteBuffer without copying, 
+ * such as by {@link ResponseBodyReader}.
+ * Providers returning these should bound the body's size while reading it,
+ * rather than leaving that to the ResponseBodyReader.
+ */
+public interface BufferedHttpResponse extends HttpProvider.HttpResponse {
+    
+    /**
+     * Gets the response body, as a ByteBuffer view of the buffered bytes; 
+     * each call returns a new view of the same bytes.
+     * 
+     * @return the response body, with no bytes remaining if there was no body
+     */
+    ByteBuffer getResponseBodyBuffer();
+    
+}
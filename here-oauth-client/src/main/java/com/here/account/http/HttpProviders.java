@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Factory methods for the {@link HttpProvider}s that depend on the Java runtime version.
+ */
+public final class HttpProviders {
+
+    /**
+     * The Java 11+ provider, only in the multi-release jar's <tt>META-INF/versions/11</tt>.
+     */
+    private static final String JAVA_NET_HTTP_CLIENT_PROVIDER_CLASS_NAME =
+            "com.here.account.http.java.JavaNetHttpClientProvider";
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private HttpProviders() {}
+
+    /**
+     * Builds a <tt>com.here.account.http.java.JavaNetHttpClientProvider</tt> with default settings,
+     * if running on Java 11 or later, where the <tt>java.net.http.HttpClient</tt> is available.
+     * Code compiled for Java 11 can instead use its builder directly, to change the settings.
+     *
+     * <pre>
+     * {@code
+           HttpProvider httpProvider = HttpProviders.javaNetHttpClientIfAvailable();
+           if (null == httpProvider) {
+               httpProvider = ApacheHttpClientProvider.builder().build();
+           }
+     * }
+     * </pre>
+     *
+     * @return the built AsyncHttpProvider, or null before Java 11
+     */
+    public static AsyncHttpProvider javaNetHttpClientIfAvailable() {
+        Class<?> providerClass;
+        try {
+            providerClass = Class.forName(JAVA_NET_HTTP_CLIENT_PROVIDER_CLASS_NAME, true,
+                    HttpProviders.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        try {
+            Object builder = providerClass.getMethod("builder").invoke(null);
+            return (AsyncHttpProvider) builder.getClass().getMethod("build").invoke(builder);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("trouble building " + JAVA_NET_HTTP_CLIENT_PROVIDER_CLASS_NAME, cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("trouble building " + JAVA_NET_HTTP_CLIENT_PROVIDER_CLASS_NAME, e);
+        }
+    }
+}
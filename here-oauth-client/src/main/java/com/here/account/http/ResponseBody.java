@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A response body read by a {@link ResponseBodyReader},
+ * in memory and no larger than the reader's maximum.
+ * Its bytes may be in a pooled array, which {@link #close()} returns to the pool,
+ * so don't use the buffer after closing.
+ */
+public final class ResponseBody implements Closeable {
+
+    private final ByteBuffer buffer;
+    private final ResponseBodyReader reader;
+    private byte[] pooledBytes;
+
+    ResponseBody(ByteBuffer buffer, ResponseBodyReader reader, byte[] pooledBytes) {
+        this.buffer = buffer;
+        this.reader = reader;
+        this.pooledBytes = pooledBytes;
+    }
+
+    /**
+     * Gets the body bytes, as a new ByteBuffer view of them.
+     * Heap buffers expose their backing array, for parsing without copying.
+     *
+     * @return the body, from the buffer's position to its limit
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Gets the number of body bytes.
+     *
+     * @return the body length
+     */
+    public int getLength() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Gets the body bytes as an InputStream, for parsers that need one.
+     *
+     * @return an InputStream reading the body
+     */
+    public InputStream getInputStream() {
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Returns the pooled array, if any, to the reader's pool.
+     */
+    @Override
+    public void close() {
+        byte[] bytes = pooledBytes;
+        if (null != bytes) {
+            pooledBytes = null;
+            reader.release(bytes);
+        }
+    }
+}
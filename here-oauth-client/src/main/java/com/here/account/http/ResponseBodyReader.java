@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads whole response bodies into memory, up to a maximum size,
+ * so a pathological response, such as a huge error page, cannot inflate the heap.
+ *
+ * <p>
+ * Bodies up to the pooled buffer size, which covers typical token responses,
+ * are read into arrays from a small bounded pool, returned by {@link ResponseBody#close()}.
+ * Bodies of a {@link BufferedHttpResponse} are not copied at all;
+ * the provider has already buffered them, so it bounds them with its own maximum,
+ * such as <tt>NioHttpProvider.Builder.setMaxResponseBodyBytes(..)</tt>.
+ * <pre>
+ * {@code
+       ResponseBodyReader reader = ResponseBodyReader.builder().setMaxBodyBytes(16 * 1024).build();
+       try (ResponseBody body = reader.read(httpResponse)) {
+           MyPojo pojo = JsonSerializer.toPojo(body.getBuffer(), MyPojo.class);
+       }
+ * }
+ * </pre>
+ *
+ * <p>
+ * A ResponseBodyReader is thread-safe; share one.
+ */
+public class ResponseBodyReader {
+
+    /**
+     * The default maximum size of a response body, 64 KB.
+     */
+    public static final int DEFAULT_MAX_BODY_BYTES = 64 * 1024;
+
+    /**
+     * The default size of the pooled arrays, 8 KB.
+     */
+    public static final int DEFAULT_POOLED_BUFFER_BYTES = 8 * 1024;
+
+    /**
+     * The default maximum number of idle pooled arrays.
+     */
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 16;
+
+    /**
+     * The largest array the JVM reliably allocates.
+     */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final ResponseBodyReader DEFAULT = builder().build();
+
+    /**
+     * Gets the shared reader with the default settings.
+     *
+     * @return the default reader
+     */
+    public static ResponseBodyReader getDefault() {
+        return DEFAULT;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+        private int pooledBufferBytes = DEFAULT_POOLED_BUFFER_BYTES;
+        private int maxPooledBuffers = DEFAULT_MAX_POOLED_BUFFERS;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum size of a response body; larger bodies fail with a
+         * {@link ResponseBodyTooLargeException}.
+         * Default {@value ResponseBodyReader#DEFAULT_MAX_BODY_BYTES}.
+         *
+         * @param maxBodyBytes the maximum number of body bytes; must be positive
+         * @return this
+         */
+        public Builder setMaxBodyBytes(int maxBodyBytes) {
+            if (maxBodyBytes <= 0 || maxBodyBytes >= MAX_ARRAY_LENGTH) {
+                throw new IllegalArgumentException("maxBodyBytes must be positive and less than "
+                        + MAX_ARRAY_LENGTH + ": " + maxBodyBytes);
+            }
+            this.maxBodyBytes = maxBodyBytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of the pooled arrays.  Bodies of unknown length start in one,
+         * and bodies that fit stay in it.
+         * Default {@value ResponseBodyReader#DEFAULT_POOLED_BUFFER_BYTES}.
+         *
+         * @param pooledBufferBytes the size of each pooled array; must be positive
+         * @return this
+         */
+        public Builder setPooledBufferBytes(int pooledBufferBytes) {
+            if (pooledBufferBytes <= 0) {
+                throw new IllegalArgumentException("pooledBufferBytes must be positive: " + pooledBufferBytes);
+            }
+            this.pooledBufferBytes = pooledBufferBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of idle arrays kept in the pool.
+         * Default {@value ResponseBodyReader#DEFAULT_MAX_POOLED_BUFFERS}.
+         *
+         * @param maxPooledBuffers the maximum number of idle arrays; 0 to not pool
+         * @return this
+         */
+        public Builder setMaxPooledBuffers(int maxPooledBuffers) {
+            if (maxPooledBuffers < 0) {
+                throw new IllegalArgumentException("maxPooledBuffers must not be negative: " + maxPooledBuffers);
+            }
+            this.maxPooledBuffers = maxPooledBuffers;
+            return this;
+        }
+
+        public ResponseBodyReader build() {
+            return new ResponseBodyReader(this);
+        }
+    }
+
+    private final int maxBodyBytes;
+    private final int pooledBufferBytes;
+    private final BlockingQueue<byte[]> pool;
+
+    private ResponseBodyReader(Builder builder) {
+        this.maxBodyBytes = builder.maxBodyBytes;
+        this.pooledBufferBytes = builder.pooledBufferBytes;
+        this.pool = builder.maxPooledBuffers > 0
+                ? new ArrayBlockingQueue<byte[]>(builder.maxPooledBuffers)
+                : null;
+    }
+
+    /**
+     * Gets the maximum size of a response body.
+     *
+     * @return the maximum number of body bytes
+     */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * Reads the whole response body, closing the response's InputStream.
+     * Close the returned body when done with it.
+     *
+     * @param httpResponse the response
+     * @return the response body, empty if there was none
+     * @throws ResponseBodyTooLargeException if the body is larger than the maximum,
+     *      in which case no more than the maximum plus one byte is read,
+     *      unless the response is a {@link BufferedHttpResponse}
+     * @throws IOException if trouble reading the body
+     */
+    public ResponseBody read(HttpProvider.HttpResponse httpResponse) throws IOException {
+        if (httpResponse instanceof BufferedHttpResponse) {
+            ByteBuffer buffer = ((BufferedHttpResponse) httpResponse).getResponseBodyBuffer();
+            if (buffer.remaining() > maxBodyBytes) {
+                throw new ResponseBodyTooLargeException(maxBodyBytes);
+            }
+            return new ResponseBody(buffer, this, null);
+        }
+
+        InputStream in = httpResponse.getResponseBody();
+        if (null == in) {
+            return new ResponseBody(ByteBuffer.wrap(new byte[0]), this, null);
+        }
+        try (InputStream closing = in) {
+            long contentLength = httpResponse.getContentLength();
+            if (contentLength > maxBodyBytes) {
+                // fail fast, without reading
+                throw new ResponseBodyTooLargeException(maxBodyBytes);
+            }
+            return readFully(in, contentLength);
+        }
+    }
+
+    private ResponseBody readFully(InputStream in, long contentLength) throws IOException {
+        byte[] bytes = contentLength > pooledBufferBytes
+                ? new byte[(int) contentLength + 1]
+                : acquire();
+        boolean pooled = bytes.length == pooledBufferBytes;
+        try {
+            int length = 0;
+            // read one byte past the maximum, to tell a body of exactly the maximum from a larger one
+            int limit = (int) Math.min(bytes.length, maxBodyBytes + 1L);
+            while (true) {
+                if (length == limit) {
+                    if (length > maxBodyBytes) {
+                        throw new ResponseBodyTooLargeException(maxBodyBytes);
+                    }
+                    int newLength = (int) Math.min(2L * bytes.length, maxBodyBytes + 1L);
+                    byte[] larger = Arrays.copyOf(bytes, newLength);
+                    if (pooled) {
+                        release(bytes);
+                        pooled = false;
+                    }
+                    bytes = larger;
+                    limit = newLength;
+                }
+                int n = in.read(bytes, length, limit - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+            ResponseBody body = new ResponseBody(ByteBuffer.wrap(bytes, 0, length), this, pooled ? bytes : null);
+            pooled = false;
+            return body;
+        } finally {
+            if (pooled) {
+                release(bytes);
+            }
+        }
+    }
+
+    private byte[] acquire() {
+        byte[] bytes = null != pool ? pool.poll() : null;
+        return null != bytes ? bytes : new byte[pooledBufferBytes];
+    }
+
+    /**
+     * Returns a pooled array to the pool, if the pool has room.
+     *
+     * @param bytes the array
+     */
+    void release(byte[] bytes) {
+        if (null != pool && bytes.length == pooledBufferBytes) {
+            pool.offer(bytes);
+        }
+    }
+}
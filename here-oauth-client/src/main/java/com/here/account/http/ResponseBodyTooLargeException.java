@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link ResponseBodyReader} if a response body is larger than its maximum.
+ */
+public class ResponseBodyTooLargeException extends IOException {
+
+    /**
+     * default.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBodyBytes;
+
+    public ResponseBodyTooLargeException(long maxBodyBytes) {
+        super("response body larger than the maximum of " + maxBodyBytes + " bytes");
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * Gets the maximum that was exceeded.
+     * 
+     * @return the maximum number of body bytes
+     */
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.apache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import com.here.account.http.AsyncHttpProvider;
+import com.here.account.http.HttpConstants;
+import com.here.account.http.HttpException;
+import com.here.account.http.HttpProvider;
+import com.here.account.http.ResponseBodyReader;
+import com.here.account.http.ResponseBodyTooLargeException;
+
+/**
+ * An {@link AsyncHttpProvider} that uses Apache HttpAsyncClient as the underlying implementation.
+ * Requests are multiplexed over a few non-blocking I/O threads,
+ * so many concurrent calls don't each need a thread blocked on a socket.
+ * See <a href="https://hc.apache.org/httpcomponents-asyncclient-4.1.x/">Apache HttpAsyncClient</a>
+ * for more information.
+ *
+ * <p>
+ * The org.apache.httpcomponents:httpasyncclient dependency is optional;
+ * add it to your project to use this class.
+ * Responses are buffered in memory before the future completes, up to a maximum size,
+ * which suits the small JSON bodies of token and API calls.
+ *
+ * <p>
+ * If you just want the default 5000 ms for both connection timeout and request timeout,
+ * just use the following example code:
+ * <pre>
+ * {@code
+       AsyncHttpProvider httpProvider = ApacheHttpAsyncClientProvider.builder().build();
+       // use httpProvider such as with HereAccount.getTokenEndpoint(..)...
+ * }
+ * </pre>
+ */
+public class ApacheHttpAsyncClientProvider implements AsyncHttpProvider {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private RequestConfig.Builder apacheConfigBuilder;
+        private int ioThreadCount;
+        private int maxResponseBodyBytes = ResponseBodyReader.DEFAULT_MAX_BODY_BYTES;
+
+        private Builder() {
+            apacheConfigBuilder = RequestConfig.custom();
+            setConnectionTimeoutInMs(HttpConstants.DEFAULT_CONNECTION_TIMEOUT_IN_MS);
+            setRequestTimeoutInMs(HttpConstants.DEFAULT_REQUEST_TIMEOUT_IN_MS);
+        }
+
+        public Builder setConnectionTimeoutInMs(int connectionTimeoutInMs) {
+            this.apacheConfigBuilder
+                .setConnectTimeout(connectionTimeoutInMs)
+                .setConnectionRequestTimeout(connectionTimeoutInMs);
+            return this;
+        }
+
+        public Builder setRequestTimeoutInMs(int requestTimeoutInMs) {
+            this.apacheConfigBuilder
+                .setSocketTimeout(requestTimeoutInMs);
+            return this;
+        }
+
+        /**
+         * Sets the number of non-blocking I/O threads shared by all requests.
+         * By default, one per available processor.
+         *
+         * @param ioThreadCount the number of I/O threads; must be positive
+         * @return this
+         */
+        public Builder setIoThreadCount(int ioThreadCount) {
+            if (ioThreadCount <= 0) {
+                throw new IllegalArgumentException("ioThreadCount must be positive: " + ioThreadCount);
+            }
+            this.ioThreadCount = ioThreadCount;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a response body.
+         * Larger responses fail with a {@link ResponseBodyTooLargeException},
+         * having buffered no more than this many bytes.
+         * Default {@value ResponseBodyReader#DEFAULT_MAX_BODY_BYTES}.
+         *
+         * @param maxResponseBodyBytes the maximum number of response body bytes; must be positive
+         * @return this
+         */
+        public Builder setMaxResponseBodyBytes(int maxResponseBodyBytes) {
+            if (maxResponseBodyBytes <= 0) {
+                throw new IllegalArgumentException("maxResponseBodyBytes must be positive: " + maxResponseBodyBytes);
+            }
+            this.maxResponseBodyBytes = maxResponseBodyBytes;
+            return this;
+        }
+
+        /**
+         * Build and start the async client.
+         *
+         * @return the built AsyncHttpProvider implementation for Apache httpasyncclient.
+         */
+        public AsyncHttpProvider build() {
+            IOReactorConfig.Builder ioReactorConfigBuilder = IOReactorConfig.custom();
+            if (ioThreadCount > 0) {
+                ioReactorConfigBuilder.setIoThreadCount(ioThreadCount);
+            }
+            // uses PoolingNHttpClientConnectionManager by default
+            CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClients.custom()
+                    .setDefaultRequestConfig(apacheConfigBuilder.build())
+                    .setDefaultIOReactorConfig(ioReactorConfigBuilder.build())
+                    .build();
+            httpAsyncClient.start();
+            return new ApacheHttpAsyncClientProvider(httpAsyncClient, true, maxResponseBodyBytes);
+        }
+    }
+
+    /**
+     * Buffers a response body, like the default consumer,
+     * but fails as soon as it is known to be larger than the maximum,
+     * whether from its <tt>Content-Length</tt> or from the bytes received so far.
+     */
+    private static class BoundedResponseConsumer
+            extends AbstractAsyncResponseConsumer<org.apache.http.HttpResponse> {
+
+        private final int maxBodyBytes;
+        private final ByteBuffer chunk = ByteBuffer.allocate(4096);
+        private volatile org.apache.http.HttpResponse response;
+        private volatile HttpEntity entity;
+        private volatile ContentType contentType;
+        private volatile ByteArrayOutputStream body;
+
+        private BoundedResponseConsumer(int maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        @Override
+        protected void onResponseReceived(org.apache.http.HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+            long contentLength = entity.getContentLength();
+            if (contentLength > maxBodyBytes) {
+                // fail fast, without reading
+                throw new ResponseBodyTooLargeException(maxBodyBytes);
+            }
+            this.entity = entity;
+            this.contentType = contentType;
+            this.body = new ByteArrayOutputStream(contentLength >= 0 ? (int) contentLength : chunk.capacity());
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            int n;
+            while ((n = decoder.read(chunk)) > 0) {
+                if (n > maxBodyBytes - body.size()) {
+                    throw new ResponseBodyTooLargeException(maxBodyBytes);
+                }
+                body.write(chunk.array(), 0, n);
+                ((Buffer) chunk).clear();
+            }
+        }
+
+        @Override
+        protected org.apache.http.HttpResponse buildResult(HttpContext context) {
+            if (null != entity) {
+                ByteArrayEntity bufferedEntity = new ByteArrayEntity(body.toByteArray(), contentType);
+                bufferedEntity.setContentEncoding(entity.getContentEncoding());
+                response.setEntity(bufferedEntity);
+            }
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            this.response = null;
+            this.entity = null;
+            this.contentType = null;
+            this.body = null;
+        }
+    }
+
+    private final CloseableHttpAsyncClient httpAsyncClient;
+    private final boolean doCloseHttpAsyncClient;
+    private final int maxResponseBodyBytes;
+
+    private ApacheHttpAsyncClientProvider(CloseableHttpAsyncClient httpAsyncClient,
+            boolean doCloseHttpAsyncClient, int maxResponseBodyBytes) {
+        this.httpAsyncClient = httpAsyncClient;
+        this.doCloseHttpAsyncClient = doCloseHttpAsyncClient;
+        this.maxResponseBodyBytes = maxResponseBodyBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            String requestBodyJson) {
+        return ApacheHttpClientProvider.newRequest(httpRequestAuthorizer, method, url, requestBodyJson, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            Map<String, List<String>> formParams) {
+        return ApacheHttpClientProvider.newRequest(httpRequestAuthorizer, method, url, null, formParams);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest httpRequest) {
+        HttpRequestBase httpRequestBase = ApacheHttpClientProvider.getHttpRequestBase(httpRequest, getClass());
+
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+        // non-blocking; the callback runs on an I/O thread
+        final Future<org.apache.http.HttpResponse> apacheFuture = httpAsyncClient.execute(
+                HttpAsyncMethods.create(httpRequestBase), new BoundedResponseConsumer(maxResponseBodyBytes),
+                new FutureCallback<org.apache.http.HttpResponse>() {
+
+            @Override
+            public void completed(org.apache.http.HttpResponse apacheHttpResponse) {
+                future.complete(new ApacheHttpClientProvider.ApacheHttpClientResponse(apacheHttpResponse));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(toExecuteException(e));
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+
+        });
+        future.whenComplete((response, t) -> {
+            if (future.isCancelled()) {
+                apacheFuture.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpResponse execute(HttpRequest httpRequest) throws HttpException, IOException {
+        CompletableFuture<HttpResponse> future = executeAsync(httpRequest);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted executing request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpException) {
+                throw (HttpException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new HttpException("trouble: " + cause, cause);
+        }
+    }
+
+    /**
+     * Maps a failure the way {@link ApacheHttpClientProvider#execute(HttpProvider.HttpRequest)} does.
+     */
+    private static Exception toExecuteException(Exception e) {
+        if (e instanceof ClientProtocolException || !(e instanceof IOException)) {
+            return new HttpException("trouble: " + e, e);
+        }
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (doCloseHttpAsyncClient && null != httpAsyncClient) {
+            httpAsyncClient.close();
+        }
+    }
+
+}
@@ -24,10 +24,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
@@ -40,9 +51,13 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpContext;
 
@@ -65,17 +80,41 @@ import com.here.account.http.HttpProvider;
  * }
  * </pre>
  * 
+ * <p>
+ * Under concurrent load, size the connection pool and pre-warm it, for example:
+ * <pre>
+ * {@code
+       HttpProvider httpProvider = ApacheHttpClientProvider.builder()
+               .setMaxConnectionsTotal(50)
+               .setMaxConnectionsPerRoute(20)
+               .setEvictIdleConnectionsAfterInMs(30000L)
+               .setPrewarm(tokenEndpointUrl, 4)
+               .build();
+ * }
+ * </pre>
+ * 
  * @author kmccrack
  *
  */
 public class ApacheHttpClientProvider implements HttpProvider {
     
+    private static final Logger LOG = Logger.getLogger(ApacheHttpClientProvider.class.getName());
+    
     public static Builder builder() {
         return new Builder();
     }
 
     public static class Builder {
         private RequestConfig.Builder apacheConfigBuilder;
+        private int connectionTimeoutInMs;
+        private int maxConnectionsTotal;
+        private int maxConnectionsPerRoute;
+        private long connectionTimeToLiveInMs = -1L;
+        private long evictIdleConnectionsAfterInMs;
+        private int validateAfterInactivityInMs = -1;
+        private long keepAliveInMs;
+        private String prewarmUrl;
+        private int prewarmConnectionCount;
     
         private Builder() {
             apacheConfigBuilder = RequestConfig.custom();
@@ -84,6 +123,7 @@ public class ApacheHttpClientProvider implements HttpProvider {
         }
     
         public Builder setConnectionTimeoutInMs(int connectionTimeoutInMs) {
+            this.connectionTimeoutInMs = connectionTimeoutInMs;
             this.apacheConfigBuilder
                 .setConnectTimeout(connectionTimeoutInMs)
                 .setConnectionRequestTimeout(connectionTimeoutInMs);
@@ -95,6 +135,121 @@ public class ApacheHttpClientProvider implements HttpProvider {
                 .setSocketTimeout(requestTimeoutInMs);
             return this;
         }
+        
+        /**
+         * Sets the maximum number of pooled connections, across all routes.
+         * By default, Apache HttpClient's default of 20.
+         * 
+         * @param maxConnectionsTotal the maximum number of connections; must be positive
+         * @return this
+         */
+        public Builder setMaxConnectionsTotal(int maxConnectionsTotal) {
+            if (maxConnectionsTotal <= 0) {
+                throw new IllegalArgumentException("maxConnectionsTotal must be positive: " + maxConnectionsTotal);
+            }
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of pooled connections to any one host, 
+         * which bounds the concurrent requests to the token endpoint.
+         * By default, Apache HttpClient's default of 2.
+         * 
+         * @param maxConnectionsPerRoute the maximum number of connections per route; must be positive
+         * @return this
+         */
+        public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            if (maxConnectionsPerRoute <= 0) {
+                throw new IllegalArgumentException("maxConnectionsPerRoute must be positive: " + maxConnectionsPerRoute);
+            }
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+        
+        /**
+         * Sets the total time to live of a pooled connection, after which it is 
+         * closed instead of reused, such as to follow DNS changes.
+         * By default, connections live as long as they are kept alive.
+         * 
+         * @param connectionTimeToLiveInMs the time to live; must be positive
+         * @return this
+         */
+        public Builder setConnectionTimeToLiveInMs(long connectionTimeToLiveInMs) {
+            if (connectionTimeToLiveInMs <= 0) {
+                throw new IllegalArgumentException("connectionTimeToLiveInMs must be positive: " + connectionTimeToLiveInMs);
+            }
+            this.connectionTimeToLiveInMs = connectionTimeToLiveInMs;
+            return this;
+        }
+        
+        /**
+         * Sets a background thread to close pooled connections idle for longer than 
+         * the specified time, as well as expired ones.
+         * By default, there is no such thread, and stale connections are only 
+         * noticed when leased.
+         * 
+         * @param evictIdleConnectionsAfterInMs the maximum idle time; must be positive
+         * @return this
+         */
+        public Builder setEvictIdleConnectionsAfterInMs(long evictIdleConnectionsAfterInMs) {
+            if (evictIdleConnectionsAfterInMs <= 0) {
+                throw new IllegalArgumentException("evictIdleConnectionsAfterInMs must be positive: " 
+                        + evictIdleConnectionsAfterInMs);
+            }
+            this.evictIdleConnectionsAfterInMs = evictIdleConnectionsAfterInMs;
+            return this;
+        }
+        
+        /**
+         * Sets the idle time after which a pooled connection is checked for 
+         * staleness before it is reused.
+         * By default, Apache HttpClient's default of 2000 ms.
+         * 
+         * @param validateAfterInactivityInMs the idle time; 0 or negative to never check
+         * @return this
+         */
+        public Builder setValidateAfterInactivityInMs(int validateAfterInactivityInMs) {
+            // the pool never checks at 0 or below; -1 is reserved for unset
+            this.validateAfterInactivityInMs = Math.max(0, validateAfterInactivityInMs);
+            return this;
+        }
+        
+        /**
+         * Sets how long an idle connection is kept alive for reuse. 
+         * A shorter <tt>Keep-Alive: timeout</tt> from the server is honored.
+         * By default, the server's <tt>Keep-Alive</tt> header, or indefinitely.
+         * 
+         * @param keepAliveInMs the keep alive time; must be positive
+         * @return this
+         */
+        public Builder setKeepAliveInMs(long keepAliveInMs) {
+            if (keepAliveInMs <= 0) {
+                throw new IllegalArgumentException("keepAliveInMs must be positive: " + keepAliveInMs);
+            }
+            this.keepAliveInMs = keepAliveInMs;
+            return this;
+        }
+        
+        /**
+         * Sets connections to open in {@link #build()}, such as to the token endpoint, 
+         * so the first requests don't each pay for the TCP and TLS handshakes.
+         * The connection count is capped at the maximum connections per route.
+         * Pre-warming is best effort; if it fails, requests connect as usual.
+         * 
+         * @param url a URL on the host to connect to, such as the token endpoint URL
+         * @param connectionCount the number of connections to open; must be positive
+         * @return this
+         */
+        public Builder setPrewarm(String url, int connectionCount) {
+            Objects.requireNonNull(url, "url is required");
+            if (connectionCount <= 0) {
+                throw new IllegalArgumentException("connectionCount must be positive: " + connectionCount);
+            }
+            this.prewarmUrl = url;
+            this.prewarmConnectionCount = connectionCount;
+            return this;
+        }
     
         /**
          * Build using builders, builders, and more builders.
@@ -102,20 +257,110 @@ public class ApacheHttpClientProvider implements HttpProvider {
          * @return the built HttpProvider implementation for Apache httpclient.
          */
         public HttpProvider build() {
-            // uses PoolingHttpClientConnectionManager by default
-            return new ApacheHttpClientProvider(HttpClientBuilder.create()
+            PoolingHttpClientConnectionManager connectionManager = 
+                    new PoolingHttpClientConnectionManager(connectionTimeToLiveInMs, TimeUnit.MILLISECONDS);
+            if (maxConnectionsTotal > 0) {
+                connectionManager.setMaxTotal(maxConnectionsTotal);
+            }
+            if (maxConnectionsPerRoute > 0) {
+                connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            }
+            if (validateAfterInactivityInMs >= 0) {
+                connectionManager.setValidateAfterInactivity(validateAfterInactivityInMs);
+            }
+            
+            HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
                     .setDefaultRequestConfig(apacheConfigBuilder
-                            .build())
-                    .build(), true);
+                            .build());
+            if (keepAliveInMs > 0) {
+                httpClientBuilder.setKeepAliveStrategy(new CappedKeepAliveStrategy(keepAliveInMs));
+            }
+            if (evictIdleConnectionsAfterInMs > 0) {
+                httpClientBuilder
+                        .evictExpiredConnections()
+                        .evictIdleConnections(evictIdleConnectionsAfterInMs, TimeUnit.MILLISECONDS);
+            }
+            CloseableHttpClient httpClient = httpClientBuilder.build();
+            
+            if (null != prewarmUrl) {
+                prewarm(connectionManager, prewarmUrl, 
+                        Math.min(prewarmConnectionCount, connectionManager.getDefaultMaxPerRoute()), 
+                        connectionTimeoutInMs, keepAliveInMs);
+            }
+            return new ApacheHttpClientProvider(httpClient, true);
+    
+        }
+    }
     
+    /**
+     * Uses the server's <tt>Keep-Alive</tt> header, but for no longer than the configured maximum.
+     */
+    private static class CappedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        
+        private final long keepAliveInMs;
+        
+        private CappedKeepAliveStrategy(long keepAliveInMs) {
+            this.keepAliveInMs = keepAliveInMs;
+        }
+
+        @Override
+        public long getKeepAliveDuration(org.apache.http.HttpResponse response, HttpContext context) {
+            long serverKeepAliveInMs = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+            return serverKeepAliveInMs > 0 ? Math.min(serverKeepAliveInMs, keepAliveInMs) : keepAliveInMs;
+        }
+    }
+    
+    /**
+     * Opens and pools <tt>connectionCount</tt> connections to the host of the <tt>url</tt>, 
+     * on the same route the HttpClient will use for it.
+     * All are leased before any is released, so each is a separate connection.
+     */
+    static void prewarm(HttpClientConnectionManager connectionManager, String url, 
+            int connectionCount, int connectionTimeoutInMs, long keepAliveInMs) {
+        HttpRoute route;
+        try {
+            HttpHost host = URIUtils.extractHost(new URI(url));
+            if (null == host) {
+                throw new IllegalArgumentException("no host in URL: " + url);
+            }
+            // as the DefaultRoutePlanner does
+            int port = DefaultSchemePortResolver.INSTANCE.resolve(host);
+            HttpHost target = new HttpHost(host.getHostName(), port, host.getSchemeName());
+            route = new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+        } catch (URISyntaxException | UnsupportedSchemeException e) {
+            throw new IllegalArgumentException("malformed URL: " + e, e);
+        }
+        
+        List<HttpClientConnection> connections = new ArrayList<HttpClientConnection>(connectionCount);
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                HttpClientConnection connection = connectionManager.requestConnection(route, null)
+                        .get(connectionTimeoutInMs, TimeUnit.MILLISECONDS);
+                connections.add(connection);
+                HttpClientContext context = HttpClientContext.create();
+                // includes the TLS handshake for https
+                connectionManager.connect(connection, route, connectionTimeoutInMs, context);
+                connectionManager.routeComplete(connection, route, context);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            LOG.warning("trouble pre-warming connections to " + route + ": " + e);
+        } finally {
+            for (HttpClientConnection connection : connections) {
+                // connections that did not open are discarded
+                connectionManager.releaseConnection(connection, null, keepAliveInMs, TimeUnit.MILLISECONDS);
+            }
         }
     }
 
-    private static class ApacheHttpClientRequest implements HttpRequest {
+    static class ApacheHttpClientRequest implements HttpRequest {
         
         private final HttpRequestBase httpRequestBase;
         
-        private ApacheHttpClientRequest(HttpRequestBase httpRequestBase) {
+        ApacheHttpClientRequest(HttpRequestBase httpRequestBase) {
             this.httpRequestBase = httpRequestBase;
         }
         
@@ -132,11 +377,11 @@ public class ApacheHttpClientProvider implements HttpProvider {
         }
     }
     
-    private static class ApacheHttpClientResponse implements HttpResponse {
+    static class ApacheHttpClientResponse implements HttpResponse {
         
         private final org.apache.http.HttpResponse apacheHttpResponse;
         
-        private ApacheHttpClientResponse(org.apache.http.HttpResponse apacheHttpResponse) {
+        ApacheHttpClientResponse(org.apache.http.HttpResponse apacheHttpResponse) {
             this.apacheHttpResponse = apacheHttpResponse;
         }
         
@@ -174,7 +419,7 @@ public class ApacheHttpClientProvider implements HttpProvider {
 
     }
 
-    private HttpRequestBase getRequestNoAuth(String method, String url, 
+    private static HttpRequestBase getRequestNoAuth(String method, String url, 
             String requestBodyJson, Map<String, List<String>> formParams) {
         URI uri;
         try {
@@ -226,7 +471,7 @@ public class ApacheHttpClientProvider implements HttpProvider {
         return apacheRequest;
     }
     
-    private void addApacheRequestEntity(HttpRequestBase apacheRequest, 
+    private static void addApacheRequestEntity(HttpRequestBase apacheRequest, 
             String method,
             String requestBodyJson,
             Map<String, List<String>> formParams) {
@@ -280,22 +525,7 @@ public class ApacheHttpClientProvider implements HttpProvider {
     @Override
     public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
             String requestBodyJson) {
-        HttpRequestBase apacheRequest = 
-                /*String method, String url, 
-            String requestBodyJson, Map<String, List<String>> formParams*/
-                getRequestNoAuth(method, url, requestBodyJson, null);
-        
-        ApacheHttpClientRequest request = new ApacheHttpClientRequest(apacheRequest);
-        
-        // OAuth1
-        // NOTE: because this example uses application/json, not forms, our request bodies are 
-        // never part of the OAuth1 Authorization header.
-        Map<String, List<String>> formParams = null;
-        httpRequestAuthorizer.authorize(request, method, url, formParams);
-
-        addApacheRequestEntity(apacheRequest, method, requestBodyJson, null);
-        
-        return request;
+        return newRequest(httpRequestAuthorizer, method, url, requestBodyJson, null);
     }
     
     /**
@@ -304,22 +534,43 @@ public class ApacheHttpClientProvider implements HttpProvider {
     @Override
     public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
             Map<String, List<String>> formParams) {
-        HttpRequestBase apacheRequest = 
-                /*String method, String url, 
-            String requestBodyJson, Map<String, List<String>> formParams*/
-                getRequestNoAuth(method, url, null, formParams);
+        return newRequest(httpRequestAuthorizer, method, url, null, formParams);
+    }
+    
+    /**
+     * Builds and authorizes the Apache request, with either a JSON or form body, 
+     * shared with {@link ApacheHttpAsyncClientProvider}.
+     */
+    static ApacheHttpClientRequest newRequest(HttpRequestAuthorizer httpRequestAuthorizer, 
+            String method, String url,
+            String requestBodyJson, Map<String, List<String>> formParams) {
+        HttpRequestBase apacheRequest = getRequestNoAuth(method, url, requestBodyJson, formParams);
         
         ApacheHttpClientRequest request = new ApacheHttpClientRequest(apacheRequest);
         
         // OAuth1
         // with application/x-www-form-urlencoded bodies, 
         // the request body is supposed to impact the signature.
+        // NOTE: application/json request bodies are never part of the OAuth1 Authorization header.
         httpRequestAuthorizer.authorize(request, method, url, formParams);
 
-        addApacheRequestEntity(apacheRequest, method, null, formParams);
+        addApacheRequestEntity(apacheRequest, method, requestBodyJson, formParams);
         
         return request;
     }
+    
+    /**
+     * Gets the Apache request of a request from {@link #newRequest}.
+     * 
+     * @throws IllegalArgumentException if the httpRequest is of another provider
+     */
+    static HttpRequestBase getHttpRequestBase(HttpRequest httpRequest, Class<?> providerClass) {
+        if (!(httpRequest instanceof ApacheHttpClientRequest)) {
+            throw new IllegalArgumentException("httpRequest is not of expected type; use "
+                    +providerClass+".getRequest(..) to get a request of the expected type");
+        }
+        return ((ApacheHttpClientRequest) httpRequest).getHttpRequestBase();
+    }
 
     private final CloseableHttpClient httpClient;
     private final boolean doCloseHttpClient;
@@ -342,11 +593,7 @@ public class ApacheHttpClientProvider implements HttpProvider {
 
     @Override
     public HttpResponse execute(HttpRequest httpRequest) throws HttpException, IOException {
-        if (!(httpRequest instanceof ApacheHttpClientRequest)) {
-            throw new IllegalArgumentException("httpRequest is not of expected type; use "
-                    +getClass()+".getRequest(..) to get a request of the expected type");
-        }
-        HttpRequestBase httpRequestBase = ((ApacheHttpClientRequest) httpRequest).getHttpRequestBase();
+        HttpRequestBase httpRequestBase = getHttpRequestBase(httpRequest, getClass());
         
         // we are stateless
         HttpContext httpContext = null;
@@ -282,7 +282,15 @@ public class JavaHttpProvider implements HttpProvider {
         return new JavaHttpResponse(statusCode, responseContentLength, inputStream);
     }
 
-    protected static byte[] getFormBody(Map<String, List<String>> formParams) throws UnsupportedEncodingException {
+    /**
+     * Encodes the form parameters as an <tt>application/x-www-form-urlencoded</tt> request body,
+     * as shared by the providers that don't have their own encoder.
+     * 
+     * @param formParams the form parameters
+     * @return the UTF-8 encoded request body
+     * @throws UnsupportedEncodingException if UTF-8 is unsupported
+     */
+    public static byte[] getFormBody(Map<String, List<String>> formParams) throws UnsupportedEncodingException {
         StringBuilder formBuf = new StringBuilder();
         boolean first = true;
         Set<Entry<String, List<String>>> formEntrySet = formParams.entrySet();
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.here.account.http.HttpException;
+import com.here.account.http.ResponseBodyTooLargeException;
+
+/**
+ * Reads one HTTP/1.1 response from a {@link NioConnection}:
+ * the status line, the headers this provider needs, and a body delimited by
+ * <tt>Content-Length</tt>, chunked <tt>Transfer-Encoding</tt>, or the end of the connection.
+ */
+final class HttpResponseReader {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private final NioConnection connection;
+    private final int maxBodyBytes;
+    private final StringBuilder line = new StringBuilder();
+
+    private int statusCode;
+    private boolean keepAlive;
+    private long contentLength;
+    private boolean chunked;
+
+    HttpResponseReader(NioConnection connection, int maxBodyBytes) {
+        this.connection = connection;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Whether the connection can be reused for another request, after the body is read.
+     *
+     * @return true if the connection can be reused
+     */
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Reads the status line and headers, skipping any interim 1xx responses.
+     *
+     * @throws HttpException if the response is malformed
+     * @throws IOException if trouble reading
+     */
+    void readHead() throws HttpException, IOException {
+        do {
+            String statusLine = readLine();
+            // HTTP/1.1 200 OK
+            int firstSpace = statusLine.indexOf(' ');
+            if (!statusLine.startsWith("HTTP/1.") || firstSpace < 0 || statusLine.length() < firstSpace + 4) {
+                throw new HttpException("malformed status line: " + statusLine);
+            }
+            try {
+                statusCode = Integer.parseInt(statusLine.substring(firstSpace + 1, firstSpace + 4));
+            } catch (NumberFormatException e) {
+                throw new HttpException("malformed status line: " + statusLine, e);
+            }
+            boolean http11 = statusLine.startsWith("HTTP/1.1");
+
+            contentLength = -1L;
+            chunked = false;
+            String connectionHeader = null;
+            String header;
+            while (!(header = readLine()).isEmpty()) {
+                int colon = header.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = header.substring(0, colon).trim();
+                String value = header.substring(colon + 1).trim();
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new HttpException("malformed Content-Length: " + value, e);
+                    }
+                } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                    chunked = value.toLowerCase().endsWith("chunked");
+                } else if ("Connection".equalsIgnoreCase(name)) {
+                    connectionHeader = value.toLowerCase();
+                }
+            }
+            keepAlive = http11
+                    ? null == connectionHeader || !connectionHeader.contains("close")
+                    : null != connectionHeader && connectionHeader.contains("keep-alive");
+        } while (statusCode >= 100 && statusCode < 200);
+    }
+
+    /**
+     * Reads the whole body, failing as soon as it is known to be larger than the maximum.
+     *
+     * @param hasBody false for responses to HEAD requests, which never have a body
+     * @return the body, possibly empty
+     * @throws HttpException if the response is malformed
+     * @throws ResponseBodyTooLargeException if the body is larger than the maximum
+     * @throws IOException if trouble reading
+     */
+    byte[] readBody(boolean hasBody) throws HttpException, IOException {
+        if (!hasBody || 204 == statusCode || 304 == statusCode) {
+            return new byte[0];
+        }
+        if (chunked) {
+            return readChunked();
+        }
+        if (contentLength >= 0) {
+            if (contentLength > maxBodyBytes) {
+                // fail fast, without allocating or reading
+                throw new ResponseBodyTooLargeException(maxBodyBytes);
+            }
+            byte[] body = new byte[(int) contentLength];
+            readFully(body, 0, body.length);
+            return body;
+        }
+        // delimited by the end of the connection
+        keepAlive = false;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (connection.getInbound().hasRemaining() || connection.fill()) {
+            ByteBuffer inbound = connection.getInbound();
+            int n = Math.min(buffer.length, inbound.remaining());
+            inbound.get(buffer, 0, n);
+            write(body, buffer, n);
+        }
+        return body.toByteArray();
+    }
+
+    private byte[] readChunked() throws HttpException, IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (true) {
+            String sizeLine = readLine();
+            int semicolon = sizeLine.indexOf(';');
+            int chunkSize;
+            try {
+                chunkSize = Integer.parseInt(
+                        (semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new HttpException("malformed chunk size: " + sizeLine, e);
+            }
+            if (0 == chunkSize) {
+                break;
+            }
+            if (chunkSize > maxBodyBytes - body.size()) {
+                throw new ResponseBodyTooLargeException(maxBodyBytes);
+            }
+            while (chunkSize > 0) {
+                int n = Math.min(buffer.length, chunkSize);
+                readFully(buffer, 0, n);
+                write(body, buffer, n);
+                chunkSize -= n;
+            }
+            // CRLF after the chunk data
+            readLine();
+        }
+        // trailers
+        while (!readLine().isEmpty()) {
+            // ignored
+        }
+        return body.toByteArray();
+    }
+
+    private void write(ByteArrayOutputStream body, byte[] buffer, int n) throws ResponseBodyTooLargeException {
+        if (n > maxBodyBytes - body.size()) {
+            throw new ResponseBodyTooLargeException(maxBodyBytes);
+        }
+        body.write(buffer, 0, n);
+    }
+
+    private void readFully(byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            // fill() can replace the inbound buffer with a larger one, so get it each time
+            ByteBuffer inbound = connection.getInbound();
+            if (!inbound.hasRemaining()) {
+                if (!connection.fill()) {
+                    throw new EOFException("connection closed before the end of the response body");
+                }
+                inbound = connection.getInbound();
+            }
+            int n = Math.min(length, inbound.remaining());
+            inbound.get(dst, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private String readLine() throws HttpException, IOException {
+        line.setLength(0);
+        ByteBuffer inbound = connection.getInbound();
+        while (true) {
+            if (!inbound.hasRemaining()) {
+                if (!connection.fill()) {
+                    throw new EOFException("connection closed before the end of the response head");
+                }
+                // fill() can replace the inbound buffer with a larger one
+                inbound = connection.getInbound();
+            }
+            char c = (char) (inbound.get() & 0xff);
+            if ('\n' == c) {
+                int length = line.length();
+                if (length > 0 && '\r' == line.charAt(length - 1)) {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new HttpException("response line too long");
+            }
+            line.append(c);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.nio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * One persistent connection, a non-blocking {@link SocketChannel} with its own
+ * {@link Selector} for timeouts, and an {@link SSLEngine} for https.
+ * All socket I/O goes through direct ByteBuffers.
+ *
+ * <p>
+ * A connection is used by one request at a time; it is not thread-safe.
+ * Buffer methods are called through {@link Buffer}, to run on Java 8 when compiled on a later JDK.
+ */
+final class NioConnection implements Closeable {
+
+    private static final int PLAIN_BUFFER_SIZE = 8192;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final String poolKey;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey selectionKey;
+    private final int timeoutInMs;
+    private final SSLEngine sslEngine;
+
+    /**
+     * Received application bytes, in read mode between {@link #fill()} calls.
+     */
+    private ByteBuffer inbound;
+    /**
+     * Application bytes to send, plain only.
+     */
+    private final ByteBuffer outbound;
+    /**
+     * Received TLS records not yet unwrapped, in write mode.
+     */
+    private ByteBuffer netIn;
+    /**
+     * Wrapped TLS records to send.
+     */
+    private final ByteBuffer netOut;
+
+    private long idleSinceMillis;
+
+    private NioConnection(String poolKey, SocketChannel channel, Selector selector,
+            int timeoutInMs, SSLEngine sslEngine) throws IOException {
+        this.poolKey = poolKey;
+        this.channel = channel;
+        this.selector = selector;
+        this.selectionKey = channel.register(selector, 0);
+        this.timeoutInMs = timeoutInMs;
+        this.sslEngine = sslEngine;
+        if (null == sslEngine) {
+            inbound = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            outbound = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            netIn = null;
+            netOut = null;
+        } else {
+            inbound = ByteBuffer.allocateDirect(sslEngine.getSession().getApplicationBufferSize());
+            outbound = null;
+            netIn = ByteBuffer.allocateDirect(sslEngine.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocateDirect(sslEngine.getSession().getPacketBufferSize());
+        }
+        ((Buffer) inbound).flip();
+    }
+
+    /**
+     * Connects, and for https, completes the TLS handshake with hostname verification.
+     *
+     * @param poolKey the key of the pool to return this connection to
+     * @param host the host
+     * @param port the port
+     * @param sslContext the SSLContext for https, or null for http
+     * @param connectionTimeoutInMs the TCP connect timeout
+     * @param timeoutInMs the timeout of each subsequent read or write
+     * @return the connection
+     * @throws IOException if trouble connecting
+     */
+    static NioConnection open(String poolKey, String host, int port, SSLContext sslContext,
+            int connectionTimeoutInMs, int timeoutInMs) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        Selector selector = null;
+        NioConnection connection = null;
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            SSLEngine sslEngine = null;
+            if (null != sslContext) {
+                sslEngine = sslContext.createSSLEngine(host, port);
+                sslEngine.setUseClientMode(true);
+                SSLParameters sslParameters = sslEngine.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslEngine.setSSLParameters(sslParameters);
+            }
+            connection = new NioConnection(poolKey, channel, selector, timeoutInMs, sslEngine);
+            // resolve here, for an UnknownHostException rather than an UnresolvedAddressException
+            connection.connect(new InetSocketAddress(InetAddress.getByName(host), port), connectionTimeoutInMs);
+            if (null != sslEngine) {
+                sslEngine.beginHandshake();
+                connection.handshake();
+            }
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            if (null != connection) {
+                connection.close();
+            } else {
+                channel.close();
+                if (null != selector) {
+                    selector.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void connect(InetSocketAddress address, int connectionTimeoutInMs) throws IOException {
+        if (!channel.connect(address)) {
+            selectionKey.interestOps(SelectionKey.OP_CONNECT);
+            if (0 == selector.select(Math.max(1, connectionTimeoutInMs))) {
+                throw new SocketTimeoutException("connect timed out to " + address);
+            }
+            selector.selectedKeys().clear();
+            channel.finishConnect();
+        }
+    }
+
+    String getPoolKey() {
+        return poolKey;
+    }
+
+    long getIdleSinceMillis() {
+        return idleSinceMillis;
+    }
+
+    void setIdleSinceMillis(long idleSinceMillis) {
+        this.idleSinceMillis = idleSinceMillis;
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Whether an idle connection was closed or written to by the server,
+     * in which case it must not be reused.
+     *
+     * @return true if the connection is stale
+     */
+    boolean isStale() {
+        if (!channel.isOpen() || inbound.hasRemaining() || (null != netIn && netIn.position() > 0)) {
+            return true;
+        }
+        try {
+            // non-blocking; an idle connection has nothing to read
+            if (null == netIn) {
+                ((Buffer) inbound).clear();
+            }
+            ByteBuffer probe = null != netIn ? netIn : inbound;
+            int n = channel.read(probe);
+            if (null == netIn) {
+                ((Buffer) inbound).flip();
+            }
+            return 0 != n;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Gets the received application bytes; read from it until it has none remaining,
+     * then {@link #fill()} it again.
+     * Get it again after each fill, which can replace it with a larger buffer.
+     *
+     * @return the inbound buffer, in read mode
+     */
+    ByteBuffer getInbound() {
+        return inbound;
+    }
+
+    /**
+     * Receives more application bytes into the inbound buffer, which must have none remaining.
+     *
+     * @return false if the server closed the connection
+     * @throws IOException if trouble reading
+     */
+    boolean fill() throws IOException {
+        ((Buffer) inbound).clear();
+        int n;
+        if (null == sslEngine) {
+            n = readNet(inbound);
+        } else {
+            n = unwrapSome();
+        }
+        ((Buffer) inbound).flip();
+        return n > 0;
+    }
+
+    /**
+     * Sends all of the bytes.
+     *
+     * @param bytes the bytes to send
+     * @throws IOException if trouble writing
+     */
+    void write(byte[] bytes) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        if (null == sslEngine) {
+            while (src.hasRemaining()) {
+                ((Buffer) outbound).clear();
+                int length = Math.min(outbound.remaining(), src.remaining());
+                outbound.put(bytes, src.position(), length);
+                ((Buffer) src).position(src.position() + length);
+                ((Buffer) outbound).flip();
+                writeNet(outbound);
+            }
+        } else {
+            while (src.hasRemaining()) {
+                wrap(src);
+            }
+        }
+    }
+
+    private void wrap(ByteBuffer src) throws IOException {
+        ((Buffer) netOut).clear();
+        SSLEngineResult result = sslEngine.wrap(src, netOut);
+        if (SSLEngineResult.Status.CLOSED == result.getStatus()) {
+            throw new SSLException("TLS connection closed");
+        }
+        ((Buffer) netOut).flip();
+        writeNet(netOut);
+        if (HandshakeStatus.NEED_TASK == result.getHandshakeStatus()) {
+            runDelegatedTasks();
+        }
+    }
+
+    /**
+     * Unwraps into the inbound buffer, in write mode, until some application bytes arrive.
+     *
+     * @return the number of application bytes, or -1 if the server closed the connection
+     */
+    private int unwrapSome() throws IOException {
+        while (true) {
+            ((Buffer) netIn).flip();
+            SSLEngineResult result = sslEngine.unwrap(netIn, inbound);
+            netIn.compact();
+            switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW:
+                ensureNetInCapacity();
+                if (readNet(netIn) < 0) {
+                    return -1;
+                }
+                break;
+            case BUFFER_OVERFLOW:
+                // only when the session's application buffer size grew
+                ByteBuffer larger = ByteBuffer.allocateDirect(sslEngine.getSession().getApplicationBufferSize());
+                ((Buffer) inbound).flip();
+                larger.put(inbound);
+                inbound = larger;
+                break;
+            case CLOSED:
+                return inbound.position() > 0 ? inbound.position() : -1;
+            default:
+                break;
+            }
+            HandshakeStatus handshakeStatus = result.getHandshakeStatus();
+            if (HandshakeStatus.NOT_HANDSHAKING != handshakeStatus && HandshakeStatus.FINISHED != handshakeStatus) {
+                // such as TLS 1.3 post-handshake messages
+                handshake();
+            }
+            if (inbound.position() > 0) {
+                return inbound.position();
+            }
+        }
+    }
+
+    private void handshake() throws IOException {
+        HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+        while (HandshakeStatus.FINISHED != handshakeStatus && HandshakeStatus.NOT_HANDSHAKING != handshakeStatus) {
+            switch (handshakeStatus) {
+            case NEED_TASK:
+                runDelegatedTasks();
+                handshakeStatus = sslEngine.getHandshakeStatus();
+                break;
+            case NEED_WRAP:
+                ((Buffer) netOut).clear();
+                SSLEngineResult wrapResult = sslEngine.wrap(EMPTY, netOut);
+                ((Buffer) netOut).flip();
+                writeNet(netOut);
+                if (SSLEngineResult.Status.CLOSED == wrapResult.getStatus()) {
+                    throw new SSLException("TLS connection closed during handshake");
+                }
+                handshakeStatus = wrapResult.getHandshakeStatus();
+                break;
+            default:
+                // NEED_UNWRAP, and NEED_UNWRAP_AGAIN since Java 9
+                ((Buffer) netIn).flip();
+                SSLEngineResult unwrapResult = sslEngine.unwrap(netIn, inbound);
+                netIn.compact();
+                switch (unwrapResult.getStatus()) {
+                case BUFFER_UNDERFLOW:
+                    ensureNetInCapacity();
+                    if (readNet(netIn) < 0) {
+                        throw new EOFException("connection closed during TLS handshake");
+                    }
+                    break;
+                case CLOSED:
+                    throw new SSLException("TLS connection closed during handshake");
+                default:
+                    break;
+                }
+                handshakeStatus = unwrapResult.getHandshakeStatus();
+                break;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while (null != (task = sslEngine.getDelegatedTask())) {
+            task.run();
+        }
+    }
+
+    private void ensureNetInCapacity() {
+        int packetBufferSize = sslEngine.getSession().getPacketBufferSize();
+        if (netIn.capacity() < packetBufferSize) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(packetBufferSize);
+            ((Buffer) netIn).flip();
+            larger.put(netIn);
+            netIn = larger;
+        }
+    }
+
+    private void writeNet(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (0 == channel.write(src)) {
+                await(SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private int readNet(ByteBuffer dst) throws IOException {
+        while (true) {
+            int n = channel.read(dst);
+            if (0 != n) {
+                return n;
+            }
+            await(SelectionKey.OP_READ);
+        }
+    }
+
+    private void await(int interestOps) throws IOException {
+        selectionKey.interestOps(interestOps);
+        int selected = selector.select(Math.max(1, timeoutInMs));
+        selector.selectedKeys().clear();
+        if (0 == selected) {
+            throw new SocketTimeoutException("timed out after " + timeoutInMs + " ms");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        try {
+            if (null != sslEngine && channel.isConnected()) {
+                // best effort close_notify, without waiting for the reply
+                sslEngine.closeOutbound();
+                ((Buffer) netOut).clear();
+                sslEngine.wrap(EMPTY, netOut);
+                ((Buffer) netOut).flip();
+                channel.write(netOut);
+            }
+        } catch (IOException e) {
+            // closing anyway
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+
+import com.here.account.http.BufferedHttpResponse;
+import com.here.account.http.HttpConstants;
+import com.here.account.http.HttpException;
+import com.here.account.http.HttpProvider;
+import com.here.account.http.ResponseBodyReader;
+import com.here.account.http.ResponseBodyTooLargeException;
+import com.here.account.http.java.JavaHttpProvider;
+
+/**
+ * A compact {@link HttpProvider} with no dependencies beyond the JDK's NIO and
+ * {@link javax.net.ssl.SSLEngine}, using neither Apache HttpClient nor
+ * <tt>HttpURLConnection</tt>.
+ * It speaks just enough HTTP/1.1 for the small request and response pairs of the
+ * token endpoint, and keeps connections alive for reuse, so repeated requests
+ * skip the TCP and TLS handshakes.
+ *
+ * <p>
+ * Requests are not pipelined: each connection carries one request at a time,
+ * and concurrent requests use separate connections.
+ * Proxies and redirects are not supported, and responses are buffered in memory,
+ * up to a maximum size.
+ * <pre>
+ * {@code
+       HttpProvider httpProvider = NioHttpProvider.builder().build();
+       // use httpProvider such as with HereAccessTokenProviders...
+ * }
+ * </pre>
+ */
+public class NioHttpProvider implements HttpProvider {
+
+    /**
+     * The default maximum number of idle connections kept per host.
+     */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * The default time an idle connection is kept for reuse.
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME_IN_MS = 30000L;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int connectionTimeoutInMs = HttpConstants.DEFAULT_CONNECTION_TIMEOUT_IN_MS;
+        private int requestTimeoutInMs = HttpConstants.DEFAULT_REQUEST_TIMEOUT_IN_MS;
+        private int maxIdleConnectionsPerHost = DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST;
+        private long maxIdleTimeInMs = DEFAULT_MAX_IDLE_TIME_IN_MS;
+        private int maxResponseBodyBytes = ResponseBodyReader.DEFAULT_MAX_BODY_BYTES;
+        private SSLContext sslContext;
+
+        private Builder() {
+        }
+
+        public Builder setConnectionTimeoutInMs(int connectionTimeoutInMs) {
+            this.connectionTimeoutInMs = connectionTimeoutInMs;
+            return this;
+        }
+
+        /**
+         * Sets the timeout of each read or write while executing a request,
+         * like a socket timeout.
+         *
+         * @param requestTimeoutInMs the timeout
+         * @return this
+         */
+        public Builder setRequestTimeoutInMs(int requestTimeoutInMs) {
+            this.requestTimeoutInMs = requestTimeoutInMs;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of idle connections kept per host for reuse;
+         * connections beyond this are closed after their response.
+         * Default {@value NioHttpProvider#DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST}.
+         *
+         * @param maxIdleConnectionsPerHost the maximum; 0 to never reuse connections
+         * @return this
+         */
+        public Builder setMaxIdleConnectionsPerHost(int maxIdleConnectionsPerHost) {
+            if (maxIdleConnectionsPerHost < 0) {
+                throw new IllegalArgumentException("maxIdleConnectionsPerHost must not be negative: "
+                        + maxIdleConnectionsPerHost);
+            }
+            this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept for reuse.
+         * Keep this below the server's keep-alive timeout.
+         * Default {@value NioHttpProvider#DEFAULT_MAX_IDLE_TIME_IN_MS} ms.
+         *
+         * @param maxIdleTimeInMs the maximum idle time; must be positive
+         * @return this
+         */
+        public Builder setMaxIdleTimeInMs(long maxIdleTimeInMs) {
+            if (maxIdleTimeInMs <= 0) {
+                throw new IllegalArgumentException("maxIdleTimeInMs must be positive: " + maxIdleTimeInMs);
+            }
+            this.maxIdleTimeInMs = maxIdleTimeInMs;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a response body.
+         * Larger responses fail with a {@link ResponseBodyTooLargeException},
+         * having buffered no more than this many bytes.
+         * Default {@value ResponseBodyReader#DEFAULT_MAX_BODY_BYTES}.
+         *
+         * @param maxResponseBodyBytes the maximum number of response body bytes; must be positive
+         * @return this
+         */
+        public Builder setMaxResponseBodyBytes(int maxResponseBodyBytes) {
+            if (maxResponseBodyBytes <= 0) {
+                throw new IllegalArgumentException("maxResponseBodyBytes must be positive: " + maxResponseBodyBytes);
+            }
+            this.maxResponseBodyBytes = maxResponseBodyBytes;
+            return this;
+        }
+
+        /**
+         * Sets the SSLContext for https URLs.
+         * By default, the JDK's default SSLContext.
+         *
+         * @param sslContext the SSLContext
+         * @return this
+         */
+        public Builder setSslContext(SSLContext sslContext) {
+            this.sslContext = Objects.requireNonNull(sslContext, "sslContext is required");
+            return this;
+        }
+
+        /**
+         * Build the NIO provider.
+         *
+         * @return the built HttpProvider
+         */
+        public HttpProvider build() {
+            SSLContext sslContext = this.sslContext;
+            if (null == sslContext) {
+                try {
+                    sslContext = SSLContext.getDefault();
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("no default SSLContext: " + e, e);
+                }
+            }
+            return new NioHttpProvider(connectionTimeoutInMs, requestTimeoutInMs,
+                    maxIdleConnectionsPerHost, maxIdleTimeInMs, maxResponseBodyBytes, sslContext);
+        }
+    }
+
+    private static class NioHttpRequest implements HttpRequest {
+
+        private final String method;
+        private final URI uri;
+        private final String contentType;
+        private final byte[] body;
+        private String authorizationHeader;
+
+        private NioHttpRequest(String method, URI uri, String contentType, byte[] body) {
+            this.method = method;
+            this.uri = uri;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addAuthorizationHeader(String value) {
+            this.authorizationHeader = value;
+        }
+    }
+
+    private static class NioHttpResponse implements BufferedHttpResponse {
+
+        private final int statusCode;
+        private final byte[] body;
+
+        private NioHttpResponse(int statusCode, byte[] body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getContentLength() {
+            return body.length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public InputStream getResponseBody() throws IOException {
+            return new ByteArrayInputStream(body);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ByteBuffer getResponseBodyBuffer() {
+            return ByteBuffer.wrap(body);
+        }
+    }
+
+    private final int connectionTimeoutInMs;
+    private final int requestTimeoutInMs;
+    private final int maxIdleConnectionsPerHost;
+    private final long maxIdleTimeInMs;
+    private final int maxResponseBodyBytes;
+    private final SSLContext sslContext;
+    private final ConcurrentMap<String, Deque<NioConnection>> idleConnections =
+            new ConcurrentHashMap<String, Deque<NioConnection>>();
+    private volatile boolean closed;
+
+    private NioHttpProvider(int connectionTimeoutInMs, int requestTimeoutInMs,
+            int maxIdleConnectionsPerHost, long maxIdleTimeInMs, int maxResponseBodyBytes, SSLContext sslContext) {
+        this.connectionTimeoutInMs = connectionTimeoutInMs;
+        this.requestTimeoutInMs = requestTimeoutInMs;
+        this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+        this.maxIdleTimeInMs = maxIdleTimeInMs;
+        this.maxResponseBodyBytes = maxResponseBodyBytes;
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            String requestBodyJson) {
+        NioHttpRequest httpRequest = new NioHttpRequest(method, toUri(url),
+                null != requestBodyJson ? HttpConstants.CONTENT_TYPE_JSON : null,
+                null != requestBodyJson ? requestBodyJson.getBytes(HttpConstants.ENCODING_CHARSET) : null);
+        // application/json request bodies are never part of the OAuth1 Authorization header
+        httpRequestAuthorizer.authorize(httpRequest, method, url, null);
+        return httpRequest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            Map<String, List<String>> formParams) {
+        byte[] body = null;
+        if (null != formParams) {
+            try {
+                body = JavaHttpProvider.getFormBody(formParams);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        NioHttpRequest httpRequest = new NioHttpRequest(method, toUri(url),
+                null != formParams ? HttpConstants.CONTENT_TYPE_FORM_URLENCODED : null, body);
+        // with application/x-www-form-urlencoded bodies,
+        // the request body is supposed to impact the signature.
+        httpRequestAuthorizer.authorize(httpRequest, method, url, formParams);
+        return httpRequest;
+    }
+
+    private static URI toUri(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("malformed URL: " + e, e);
+        }
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            throw new IllegalArgumentException("no support for URL scheme=" + scheme);
+        }
+        if (null == uri.getHost()) {
+            throw new IllegalArgumentException("malformed URL, no host: " + url);
+        }
+        return uri;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpResponse execute(HttpRequest httpRequest) throws HttpException, IOException {
+        if (!(httpRequest instanceof NioHttpRequest)) {
+            throw new IllegalArgumentException("httpRequest is not of expected type; use "
+                    +getClass()+".getRequest(..) to get a request of the expected type");
+        }
+        if (closed) {
+            throw new IllegalStateException("httpProvider is closed");
+        }
+        NioHttpRequest request = (NioHttpRequest) httpRequest;
+        URI uri = request.uri;
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (https ? 443 : 80);
+        String poolKey = (https ? "https://" : "http://") + uri.getHost() + ":" + port;
+
+        NioConnection connection = leaseIdleConnection(poolKey);
+        if (null == connection) {
+            connection = NioConnection.open(poolKey, uri.getHost(), port, https ? sslContext : null,
+                    connectionTimeoutInMs, requestTimeoutInMs);
+        }
+        boolean reusable = false;
+        try {
+            connection.write(getRequestBytes(request, uri.getHost(), port, https));
+
+            HttpResponseReader responseReader = new HttpResponseReader(connection, maxResponseBodyBytes);
+            responseReader.readHead();
+            byte[] body = responseReader.readBody(!"HEAD".equals(request.method));
+            reusable = responseReader.isKeepAlive();
+            return new NioHttpResponse(responseReader.getStatusCode(), body);
+        } finally {
+            if (reusable) {
+                releaseConnection(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private static byte[] getRequestBytes(NioHttpRequest request, String host, int port, boolean https) {
+        String path = request.uri.getRawPath();
+        String query = request.uri.getRawQuery();
+        StringBuilder head = new StringBuilder(256)
+            .append(request.method).append(' ')
+            .append(null == path || path.isEmpty() ? "/" : path)
+            .append(null != query ? "?" : "").append(null != query ? query : "")
+            .append(" HTTP/1.1\r\n")
+            .append("Host: ").append(host);
+        if (port != (https ? 443 : 80)) {
+            head.append(':').append(port);
+        }
+        head.append("\r\n");
+        if (null != request.authorizationHeader) {
+            head.append(HttpConstants.AUTHORIZATION_HEADER).append(": ")
+                .append(request.authorizationHeader).append("\r\n");
+        }
+        if (null != request.contentType) {
+            head.append(HttpConstants.CONTENT_TYPE_HEADER).append(": ")
+                .append(request.contentType).append("\r\n");
+        }
+        int bodyLength = null != request.body ? request.body.length : 0;
+        if (null != request.body || !("GET".equals(request.method) || "HEAD".equals(request.method))) {
+            head.append(HttpConstants.CONTENT_LENGTH_HEADER).append(": ").append(bodyLength).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (0 == bodyLength) {
+            return headBytes;
+        }
+        // one write, so the request goes in as few packets as possible
+        byte[] bytes = new byte[headBytes.length + bodyLength];
+        System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+        System.arraycopy(request.body, 0, bytes, headBytes.length, bodyLength);
+        return bytes;
+    }
+
+    /**
+     * Gets the most recently used idle connection that is still usable, closing any others
+     * found expired or stale along the way.
+     */
+    private NioConnection leaseIdleConnection(String poolKey) {
+        Deque<NioConnection> connections = idleConnections.get(poolKey);
+        if (null == connections) {
+            return null;
+        }
+        NioConnection connection;
+        long now = System.currentTimeMillis();
+        while (null != (connection = connections.pollFirst())) {
+            if (now - connection.getIdleSinceMillis() < maxIdleTimeInMs && !connection.isStale()) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void releaseConnection(NioConnection connection) {
+        Deque<NioConnection> connections = idleConnections.get(connection.getPoolKey());
+        if (null == connections) {
+            connections = new ConcurrentLinkedDeque<NioConnection>();
+            Deque<NioConnection> existing = idleConnections.putIfAbsent(connection.getPoolKey(), connections);
+            if (null != existing) {
+                connections = existing;
+            }
+        }
+        long now = System.currentTimeMillis();
+        // leasing takes the most recently used from the head, so under steady use the oldest
+        // at the tail are never reached there; close those that have outlived the idle time
+        NioConnection oldest;
+        while (null != (oldest = connections.pollLast())) {
+            if (now - oldest.getIdleSinceMillis() < maxIdleTimeInMs) {
+                connections.offerLast(oldest);
+                break;
+            }
+            oldest.close();
+        }
+        // size() is approximate under contention, which only matters for the bound
+        if (closed || connections.size() >= maxIdleConnectionsPerHost) {
+            connection.close();
+            return;
+        }
+        connection.setIdleSinceMillis(now);
+        connections.offerFirst(connection);
+        if (closed && connections.remove(connection)) {
+            connection.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Deque<NioConnection> connections : idleConnections.values()) {
+            NioConnection connection;
+            while (null != (connection = connections.pollFirst())) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.here.account.util.Clock;
+import com.here.account.util.JsonSerializer;
+
+/**
+ * A persistent store of still-valid HERE Access Tokens, so that a restarted process
+ * can start serving immediately with the token it had before, instead of waiting
+ * on the token endpoint.
+ * Use it via {@link HereAccount.TokenEndpointBuilder#setTokenStore(FileTokenStore)}.
+ *
+ * <p>
+ * Each token is a small JSON file, named by the SHA-256 of its key
+ * (client credentials, grant_type, scope, and expires_in), holding the token
+ * and its absolute expiration time.
+ * Files are written to a temporary file and atomically renamed into place,
+ * so readers, including other processes, never see a partial token.
+ * The directory and files are readable only by their owner, where the file
+ * system supports POSIX permissions.
+ *
+ * <p>
+ * Processes on the same host can also share tokens through the store, via
+ * {@link HereAccount.TokenEndpointBuilder#setSharedAcrossProcesses(boolean)}.
+ * A process refreshes a token while holding a lease, an exclusive
+ * {@link FileLock} on the token's lock file.  Other processes wait for the lease,
+ * then find the new token in the store rather than requesting their own.
+ * The operating system releases the lease of a process that dies, so another
+ * process takes over; a lease held longer than the lease timeout is ignored.
+ *
+ * <p>
+ * Problems reading or writing the store are logged, and otherwise ignored;
+ * the token endpoint is used instead.
+ */
+public class FileTokenStore {
+
+    private static final Logger LOG = Logger.getLogger(FileTokenStore.class.getName());
+
+    /**
+     * Tokens expiring sooner than this are not loaded.
+     */
+    public static final long MINIMUM_REMAINING_SECONDS = 60L;
+
+    /**
+     * Default maximum time, in milliseconds, to wait for another process's lease: 30 seconds.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30000L;
+
+    private static final long LEASE_POLL_MILLIS = 20L;
+
+    private static final String SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private static final String ACCESS_TOKEN = "access_token";
+    private static final String TOKEN_TYPE = "token_type";
+    private static final String REFRESH_TOKEN = "refresh_token";
+    private static final String ID_TOKEN = "id_token";
+    private static final String EXPIRES_AT_MILLIS = "expires_at_millis";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY =
+            PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE =
+            PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Gets the default directory, <tt>~/.here/tokens</tt>.
+     *
+     * @return the default directory
+     */
+    public static File getDefaultDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".here"), "tokens");
+    }
+
+    /**
+     * A FileLock is held by the whole JVM, so threads of this JVM take turns 
+     * on one monitor per lock file before trying for it.
+     */
+    private static final ConcurrentMap<Path, Object> JVM_LEASES = new ConcurrentHashMap<Path, Object>();
+
+    /**
+     * Gets a token, while holding the lease for its key.
+     */
+    interface TokenSupplier {
+
+        /**
+         * @return the token
+         * @throws AccessTokenException if you had trouble authenticating your request to the authorization server,
+         *      or the authorization server rejected your request
+         * @throws RequestExecutionException if trouble processing the request
+         * @throws ResponseParsingException if trouble parsing the response
+         */
+        AccessTokenResponse get() throws AccessTokenException, RequestExecutionException, ResponseParsingException;
+    }
+
+    private final Clock clock;
+    private final Path directory;
+    private final long leaseTimeoutMillis;
+
+    /**
+     * Construct a FileTokenStore in the {@link #getDefaultDirectory()}.
+     */
+    public FileTokenStore() {
+        this(getDefaultDirectory());
+    }
+
+    /**
+     * Construct a FileTokenStore in the specified directory,
+     * which is created if necessary.
+     *
+     * @param directory the directory holding the token files
+     */
+    public FileTokenStore(File directory) {
+        this(Clock.SYSTEM, directory);
+    }
+
+    /**
+     * Construct a FileTokenStore with the specified clock.
+     * Use this if you want to inject your own clock, such as during unit tests.
+     *
+     * @param clock the implementation of a clock you want to use
+     * @param directory the directory holding the token files
+     */
+    public FileTokenStore(Clock clock, File directory) {
+        this(clock, directory, DEFAULT_LEASE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Construct a FileTokenStore with the specified clock and lease timeout.
+     *
+     * @param clock the implementation of a clock you want to use
+     * @param directory the directory holding the token files
+     * @param leaseTimeoutMillis the maximum time in milliseconds to wait for
+     *      another process's lease before refreshing anyway
+     */
+    public FileTokenStore(Clock clock, File directory, long leaseTimeoutMillis) {
+        Objects.requireNonNull(clock, "clock cannot be null");
+        Objects.requireNonNull(directory, "directory cannot be null");
+        if (leaseTimeoutMillis < 0) {
+            throw new IllegalArgumentException("leaseTimeoutMillis cannot be negative: " + leaseTimeoutMillis);
+        }
+        this.clock = clock;
+        this.directory = directory.toPath();
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    /**
+     * Loads the token stored for the key, if it has at least
+     * {@link #MINIMUM_REMAINING_SECONDS} left.
+     * The returned token's expires_in is its remaining lifetime.
+     *
+     * @param key the token key
+     * @return the still-valid token, or null if there is none
+     */
+    AccessTokenResponse load(String key) {
+        Path file = getFile(key);
+        Map<String, Object> map;
+        try (InputStream in = Files.newInputStream(file)) {
+            map = JsonSerializer.toMap(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("trouble reading stored token " + file + ": " + e);
+            return null;
+        }
+
+        Object accessToken = map.get(ACCESS_TOKEN);
+        Object expiresAtMillis = map.get(EXPIRES_AT_MILLIS);
+        if (!(accessToken instanceof String) || !(expiresAtMillis instanceof Number)) {
+            LOG.warning("ignoring malformed stored token " + file);
+            return null;
+        }
+        long remainingSeconds = TimeUnit.MILLISECONDS.toSeconds(
+                ((Number) expiresAtMillis).longValue() - clock.currentTimeMillis());
+        if (remainingSeconds < MINIMUM_REMAINING_SECONDS) {
+            return null;
+        }
+        return new AccessTokenResponse((String) accessToken,
+                (String) map.get(TOKEN_TYPE),
+                remainingSeconds,
+                (String) map.get(REFRESH_TOKEN),
+                (String) map.get(ID_TOKEN));
+    }
+
+    /**
+     * Stores the token for the key, replacing any previous token.
+     * Tokens without an expires_in are not stored.
+     *
+     * @param key the token key
+     * @param accessTokenResponse the token
+     */
+    void store(String key, AccessTokenResponse accessTokenResponse) {
+        if (null == accessTokenResponse.getExpiresIn() || null == accessTokenResponse.getAccessToken()) {
+            return;
+        }
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(ACCESS_TOKEN, accessTokenResponse.getAccessToken());
+        map.put(TOKEN_TYPE, accessTokenResponse.getTokenType());
+        map.put(REFRESH_TOKEN, accessTokenResponse.getRefreshToken());
+        map.put(ID_TOKEN, accessTokenResponse.getIdToken());
+        map.put(EXPIRES_AT_MILLIS, accessTokenResponse.getStartTimeMilliseconds()
+                + TimeUnit.SECONDS.toMillis(accessTokenResponse.getExpiresIn()));
+
+        Path file = getFile(key);
+        Path tempFile = null;
+        try {
+            createDirectory();
+            tempFile = Files.createTempFile(directory, file.getFileName().toString(), TEMP_SUFFIX);
+            setOwnerOnly(tempFile, OWNER_ONLY_FILE);
+            Files.write(tempFile, JsonSerializer.toJson(map).getBytes(JsonSerializer.CHARSET));
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("trouble storing token " + file + ": " + e);
+        } finally {
+            if (null != tempFile) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    LOG.warning("trouble deleting " + tempFile + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the token stored for the key, if any.
+     *
+     * @param key the token key
+     */
+    void remove(String key) {
+        Path file = getFile(key);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warning("trouble removing stored token " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Gets a token from <tt>supplier</tt> while holding the lease for the key, 
+     * so that at most one process on this host gets the token at a time.
+     * If the lease isn't acquired within the lease timeout, or the lock file 
+     * can't be used, the supplier is called anyway.
+     *
+     * @param key the token key
+     * @param supplier gets the token; typically checks the store first
+     * @return the token
+     * @throws AccessTokenException if you had trouble authenticating your request to the authorization server,
+     *      or the authorization server rejected your request
+     * @throws RequestExecutionException if trouble processing the request
+     * @throws ResponseParsingException if trouble parsing the response
+     */
+    AccessTokenResponse withLease(String key, TokenSupplier supplier)
+            throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+        Path lockFile = directory.resolve(sha256Hex(key) + LOCK_SUFFIX).toAbsolutePath();
+        Object jvmLease = JVM_LEASES.computeIfAbsent(lockFile, (Path path) -> new Object());
+        synchronized (jvmLease) {
+            FileChannel channel = null;
+            FileLock fileLock = null;
+            try {
+                createDirectory();
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                setOwnerOnly(lockFile, OWNER_ONLY_FILE);
+                fileLock = acquireLease(channel);
+                if (null == fileLock) {
+                    LOG.warning("timed out waiting for lease " + lockFile + ", taking over");
+                }
+            } catch (IOException | OverlappingFileLockException e) {
+                LOG.warning("trouble acquiring lease " + lockFile + ": " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestExecutionException(e);
+            }
+            try {
+                return supplier.get();
+            } finally {
+                release(lockFile, fileLock, channel);
+            }
+        }
+    }
+
+    private FileLock acquireLease(FileChannel channel) throws IOException, InterruptedException {
+        // elapsed time, not the clock's wall time
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis);
+        while (true) {
+            FileLock fileLock = channel.tryLock();
+            if (null != fileLock || System.nanoTime() - deadlineNanos >= 0) {
+                return fileLock;
+            }
+            Thread.sleep(LEASE_POLL_MILLIS);
+        }
+    }
+
+    private static void release(Path lockFile, FileLock fileLock, FileChannel channel) {
+        try {
+            if (null != fileLock) {
+                fileLock.release();
+            }
+            if (null != channel) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOG.warning("trouble releasing lease " + lockFile + ": " + e);
+        }
+    }
+
+    /**
+     * Gets the directory holding the token files.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    /**
+     * Gets the file for the key; its name is the hex SHA-256 of the key,
+     * so the key, which identifies the client, is not disclosed.
+     *
+     * @param key the token key
+     * @return the file
+     */
+    Path getFile(String key) {
+        return directory.resolve(sha256Hex(key) + SUFFIX);
+    }
+
+    private void createDirectory() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            setOwnerOnly(directory, OWNER_ONLY_DIRECTORY);
+        }
+    }
+
+    private static void setOwnerOnly(Path path, Set<PosixFilePermission> permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system; rely on the directory's default access control
+        }
+    }
+
+    private static String sha256Hex(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(JsonSerializer.CHARSET));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
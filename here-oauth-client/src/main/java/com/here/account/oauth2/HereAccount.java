@@ -17,12 +17,33 @@ package com.here.account.oauth2;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.here.account.auth.OAuth1Signer;
+import com.here.account.http.AsyncHttpProvider;
 import com.here.account.http.HttpException;
 import com.here.account.http.HttpProvider;
-import com.here.account.util.JsonSerializer;
+import com.here.account.http.ResponseBody;
+import com.here.account.http.ResponseBodyReader;
+import com.here.account.http.ResponseBodyTooLargeException;
+import com.here.account.util.CircuitBreaker;
+import com.here.account.util.ExponentialBackoff;
+import com.here.account.util.RefreshPolicy;
 import com.here.account.util.RefreshableResponseProvider;
 
 /**
@@ -86,6 +107,19 @@ import com.here.account.util.RefreshableResponseProvider;
    }
  * </pre>
  * </li>
+ * <li>
+ * Get an auto refreshing HERE Access Token, without waiting on it during startup:
+ * <pre>
+ * {@code
+        // returns immediately; the token is requested in the background
+        Fresh<AccessTokenResponse> freshToken = tokenEndpoint.requestAutoRefreshingTokenLazily(
+                new ClientCredentialsGrantRequest());
+        
+        // waits only if the token has not arrived yet
+        String hereAccessToken = freshToken.get().getAccessToken();
+   }
+ * </pre>
+ * </li>
  * </ul>
  * 
  * <p>
@@ -111,6 +145,21 @@ import com.here.account.util.RefreshableResponseProvider;
  * </ul>
  * 
  * <p>
+ * If your application is asynchronous, and must not block its threads on the 
+ * HTTP round trip to the authorization server, use the non-blocking variants 
+ * with an {@code Executor} of your choosing:
+ * <pre>
+ * {@code
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                ApacheHttpClientProvider.builder().build(), 
+                new OAuth1ClientCredentialsProvider.FromFile(new File("credentials.properties")),
+                myExecutor);
+        tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest())
+                .thenAccept(response -> useToken(response.getAccessToken()));
+   }
+ * </pre>
+ * 
+ * <p>
  * The above examples use the JavaHttpProvider.
  * Another example HttpProvider from this project below uses pure-Java.  
  * <pre>
@@ -147,36 +196,330 @@ public class HereAccount {
     public static TokenEndpoint getTokenEndpoint(
             HttpProvider httpProvider,
             ClientCredentialsProvider clientCredentialsProvider) {
-        return new TokenEndpointImpl( httpProvider, clientCredentialsProvider);
+        return getTokenEndpoint(httpProvider, clientCredentialsProvider, null);
     }
     
     /**
-     * Get a RefreshableResponseProvider where when you invoke 
-     * {@link RefreshableResponseProvider#getUnexpiredResponse()}, 
-     * you will always get a current HERE Access Token, 
-     * for the grant_type=client_credentials use case, for 
-     * confidential clients.
+     * Same as {@link #getTokenEndpoint(HttpProvider, ClientCredentialsProvider)}, 
+     * but the non-blocking calls such as 
+     * {@link TokenEndpoint#requestTokenAsync(AccessTokenRequest)} 
+     * run on the specified <tt>executor</tt>.
      * 
-     * @param tokenEndpoint the token endpoint to request tokens
-     * @return the refreshable response provider presenting an always "fresh" client_credentials-based HERE Access Token.
-     * @throws AccessTokenException if you had trouble authenticating your request to the authorization server, 
-     *      or the authorization server rejected your request
-     * @throws RequestExecutionException if trouble processing the request
-     * @throws ResponseParsingException if trouble parsing the response
+     * @param httpProvider the HTTP-layer provider implementation
+     * @param clientCredentialsProvider identifies the token endpoint URL and
+     *     client credentials to be injected into requests
+     * @param executor optional.  the Executor for non-blocking token requests.
+     *     if null, a shared, bounded pool of daemon threads is used.
+     * @return a {@code TokenEndpoint} representing access for the provided client
      */
-    private static RefreshableResponseProvider<AccessTokenResponse> getRefreshableClientTokenProvider(
-            TokenEndpoint tokenEndpoint) 
-            throws AccessTokenException, RequestExecutionException, ResponseParsingException {
-        return new RefreshableResponseProvider<>(
-                null,
-                tokenEndpoint.requestToken(new ClientCredentialsGrantRequest()),
-                (AccessTokenResponse previous) -> {
-                    try {
-                        return tokenEndpoint.requestToken(new ClientCredentialsGrantRequest());
-                    } catch (AccessTokenException | RequestExecutionException | ResponseParsingException e) {
-                        throw new RuntimeException("trouble refresh: " + e, e);
+    public static TokenEndpoint getTokenEndpoint(
+            HttpProvider httpProvider,
+            ClientCredentialsProvider clientCredentialsProvider,
+            Executor executor) {
+        return tokenEndpointBuilder()
+                .setHttpProvider(httpProvider)
+                .setClientCredentialsProvider(clientCredentialsProvider)
+                .setExecutor(executor)
+                .build();
+    }
+    
+    /**
+     * Get a builder for a {@link TokenEndpoint}, for when you want to configure 
+     * more than the HTTP-layer provider and client credentials.
+     * 
+     * @return the builder
+     */
+    public static TokenEndpointBuilder tokenEndpointBuilder() {
+        return new TokenEndpointBuilder();
+    }
+    
+    /**
+     * Builds a {@link TokenEndpoint}.
+     * At a minimum you must set the {@link HttpProvider} and the 
+     * {@link ClientCredentialsProvider}.
+     */
+    public static class TokenEndpointBuilder {
+        private HttpProvider httpProvider;
+        private ClientCredentialsProvider clientCredentialsProvider;
+        private Executor executor;
+        private boolean coalesceRequests;
+        private TokenCache tokenCache;
+        private RefreshPolicy refreshPolicy;
+        private Long softWindowMillis;
+        private long blockingRefreshTimeoutMillis;
+        private ExponentialBackoff retryBackoff;
+        private CircuitBreaker circuitBreaker;
+        private FileTokenStore tokenStore;
+        private boolean sharedAcrossProcesses;
+        private long presignLeadMillis;
+        private ResponseBodyReader responseBodyReader;
+        
+        private TokenEndpointBuilder() {
+        }
+        
+        /**
+         * Sets the HTTP-layer provider implementation.
+         * 
+         * @param httpProvider the HTTP-layer provider implementation
+         * @return this
+         */
+        public TokenEndpointBuilder setHttpProvider(HttpProvider httpProvider) {
+            this.httpProvider = httpProvider;
+            return this;
+        }
+        
+        /**
+         * Sets the provider of the token endpoint URL and client credentials.
+         * 
+         * @param clientCredentialsProvider identifies the token endpoint URL and
+         *     client credentials to be injected into requests
+         * @return this
+         */
+        public TokenEndpointBuilder setClientCredentialsProvider(
+                ClientCredentialsProvider clientCredentialsProvider) {
+            this.clientCredentialsProvider = clientCredentialsProvider;
+            return this;
+        }
+        
+        /**
+         * Sets the Executor for non-blocking token requests, 
+         * and for the refreshes of auto-refreshing tokens.
+         * If not set, or set to null, a shared, bounded pool of daemon threads is used.
+         * 
+         * @param executor the Executor for non-blocking token requests and refreshes
+         * @return this
+         */
+        public TokenEndpointBuilder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+        
+        /**
+         * If true, concurrent identical token requests, meaning the same 
+         * grant_type, scope, and expires_in, share one in-flight HTTP call 
+         * and one parsed {@link AccessTokenResponse}, 
+         * so N simultaneous callers cost one round trip instead of N.
+         * Defaults to false.
+         * 
+         * @param coalesceRequests true to coalesce concurrent identical requests
+         * @return this
+         */
+        public TokenEndpointBuilder setCoalesceRequests(boolean coalesceRequests) {
+            this.coalesceRequests = coalesceRequests;
+            return this;
+        }
+        
+        /**
+         * Sets the cache of auto-refreshing tokens.  When set, 
+         * {@link TokenEndpoint#requestAutoRefreshingToken(AccessTokenRequest)} 
+         * returns the cached token for the same client credentials, grant_type, 
+         * scope, and expires_in, if there is one, instead of requesting and 
+         * refreshing another.
+         * Share one TokenCache across TokenEndpoints to share tokens across them.
+         * 
+         * @param tokenCache the cache of auto-refreshing tokens
+         * @return this
+         */
+        public TokenEndpointBuilder setTokenCache(TokenCache tokenCache) {
+            this.tokenCache = tokenCache;
+            return this;
+        }
+        
+        /**
+         * Sets when auto-refreshing tokens are refreshed.  
+         * Defaults to {@link RefreshPolicy#DEFAULT}.
+         * To spread the token requests of a fleet of processes, use a 
+         * {@link RefreshPolicy.FractionOfLifetime} with some jitter.
+         * 
+         * @param refreshPolicy the refresh policy
+         * @return this
+         */
+        public TokenEndpointBuilder setRefreshPolicy(RefreshPolicy refreshPolicy) {
+            this.refreshPolicy = refreshPolicy;
+            return this;
+        }
+        
+        /**
+         * Enables stale-while-revalidate for auto-refreshing tokens, so that 
+         * {@link Fresh#get()} never returns an expired token, even when 
+         * scheduled refreshes have been failing.
+         * Within <tt>softWindowMillis</tt> before expiration, {@link Fresh#get()} 
+         * returns the current token immediately and triggers one background refresh.
+         * Once expired, callers block on a single refresh, waiting at most 
+         * <tt>blockingRefreshTimeoutMillis</tt> for another caller's refresh, 
+         * and get an IllegalStateException if it fails.
+         * 
+         * @param softWindowMillis the milliseconds before expiration to trigger a background refresh
+         * @param blockingRefreshTimeoutMillis the maximum milliseconds to wait for a 
+         *     refresh of an expired token
+         * @return this
+         * @see RefreshableResponseProvider.Builder#setStaleWhileRevalidate(long, long)
+         */
+        public TokenEndpointBuilder setStaleWhileRevalidate(long softWindowMillis, 
+                long blockingRefreshTimeoutMillis) {
+            if (softWindowMillis < 0) {
+                throw new IllegalArgumentException("softWindowMillis cannot be negative: " + softWindowMillis);
+            }
+            if (blockingRefreshTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("blockingRefreshTimeoutMillis must be positive: " 
+                        + blockingRefreshTimeoutMillis);
+            }
+            this.softWindowMillis = softWindowMillis;
+            this.blockingRefreshTimeoutMillis = blockingRefreshTimeoutMillis;
+            return this;
+        }
+        
+        /**
+         * Sets the backoff between retries of failed refreshes of auto-refreshing tokens.
+         * If not set, failed refreshes are retried every 10 seconds.
+         * 
+         * @param retryBackoff the backoff between retries
+         * @return this
+         */
+        public TokenEndpointBuilder setRetryBackoff(ExponentialBackoff retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+        
+        /**
+         * Sets the circuit breaker consulted before each refresh of an auto-refreshing token.
+         * It is shared by all the auto-refreshing tokens of the built TokenEndpoint, 
+         * and may also be shared with other TokenEndpoints.
+         * 
+         * @param circuitBreaker the circuit breaker
+         * @return this
+         */
+        public TokenEndpointBuilder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+        
+        /**
+         * Sets the persistent store of auto-refreshing tokens.  When set, 
+         * {@link TokenEndpoint#requestAutoRefreshingToken(AccessTokenRequest)} 
+         * starts from a still-valid stored token, if there is one, instead of 
+         * waiting on the token endpoint, and every new token is stored.
+         * Only tokens of OAuth1.0 client credentials, which have a stable 
+         * identity across restarts, are stored.
+         * 
+         * @param tokenStore the persistent store of tokens
+         * @return this
+         */
+        public TokenEndpointBuilder setTokenStore(FileTokenStore tokenStore) {
+            this.tokenStore = tokenStore;
+            return this;
+        }
+        
+        /**
+         * If true, processes on this host using the same client credentials share 
+         * auto-refreshing tokens through the {@link #setTokenStore(FileTokenStore) token store}.
+         * One process at a time requests a new token, while holding a file lock; 
+         * the others wait for it and use the token it stored, 
+         * so the host makes one token request per refresh instead of one per process.
+         * Requires a token store.  Defaults to false.
+         * 
+         * @param sharedAcrossProcesses true to share tokens across processes
+         * @return this
+         */
+        public TokenEndpointBuilder setSharedAcrossProcesses(boolean sharedAcrossProcesses) {
+            this.sharedAcrossProcesses = sharedAcrossProcesses;
+            return this;
+        }
+        
+        /**
+         * If positive, the Authorization header of each scheduled refresh of an auto-refreshing 
+         * token is signed <tt>presignLeadMillis</tt> ahead of the refresh, on a background thread, 
+         * so that the refresh itself does not wait on the signature.
+         * Only applies to OAuth1.0 client credentials.
+         * If the presigned header is unused, or too old, by the time of the request, 
+         * the request is signed as usual.
+         * Defaults to 0, for no presigning.
+         * 
+         * @param presignLeadMillis how many milliseconds ahead of a scheduled refresh to sign it, 
+         *      from 0 up to {@link OAuth1Signer#MAXIMUM_PRESIGNED_AGE_MILLIS}
+         * @return this
+         */
+        public TokenEndpointBuilder setPresignRefreshes(long presignLeadMillis) {
+            if (presignLeadMillis < 0 || presignLeadMillis >= OAuth1Signer.MAXIMUM_PRESIGNED_AGE_MILLIS) {
+                throw new IllegalArgumentException("presignLeadMillis must be from 0 up to " 
+                        + OAuth1Signer.MAXIMUM_PRESIGNED_AGE_MILLIS + ": " + presignLeadMillis);
+            }
+            this.presignLeadMillis = presignLeadMillis;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum size of a token endpoint response body, including error responses.
+         * Larger responses fail with a {@link ResponseParsingException}, 
+         * having read no more than this many bytes.
+         * Defaults to {@link ResponseBodyReader#DEFAULT_MAX_BODY_BYTES}.
+         * 
+         * @param maxResponseBodyBytes the maximum number of response body bytes; must be positive
+         * @return this
+         */
+        public TokenEndpointBuilder setMaxResponseBodyBytes(int maxResponseBodyBytes) {
+            this.responseBodyReader = ResponseBodyReader.builder()
+                    .setMaxBodyBytes(maxResponseBodyBytes)
+                    .build();
+            return this;
+        }
+        
+        /**
+         * Build the TokenEndpoint.
+         * 
+         * @return a {@code TokenEndpoint} representing access for the configured client
+         */
+        public TokenEndpoint build() {
+            Objects.requireNonNull(httpProvider, "httpProvider is required");
+            Objects.requireNonNull(clientCredentialsProvider, "clientCredentialsProvider is required");
+            if (sharedAcrossProcesses) {
+                Objects.requireNonNull(tokenStore, "tokenStore is required to share across processes");
+            }
+            return new TokenEndpointImpl(this);
+        }
+    }
+    
+    /**
+     * Number of threads of the shared pool for non-blocking token requests, 
+     * when the caller doesn't supply an Executor.
+     */
+    static final int DEFAULT_EXECUTOR_THREADS = 16;
+    
+    /**
+     * Maximum number of token requests queued for a thread of the shared pool;
+     * beyond that, non-blocking requests fail with a {@link RequestExecutionException}.
+     */
+    static final int DEFAULT_EXECUTOR_QUEUE_CAPACITY = 1024;
+    
+    /**
+     * Lazily holds the Executor used for non-blocking token requests, 
+     * when the caller doesn't supply one.
+     * Its threads and queue are bounded, so a burst of requests to a slow 
+     * token endpoint cannot start a thread per request.
+     */
+    private static class DefaultExecutorHolder {
+        private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+                DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS, 
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_EXECUTOR_QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "here-auth-async-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
                     }
                 });
+        
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+    
+    //@VisibleForTesting
+    static ThreadPoolExecutor getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
     }
     
     /**
@@ -185,58 +528,407 @@ public class HereAccount {
     private static class TokenEndpointImpl implements TokenEndpoint {
         public static final String HTTP_METHOD_POST = "POST";
         
+        /**
+         * Distinguishes the credentials of endpoints whose client authorizer 
+         * has no stable identity, so their cached tokens are never shared.
+         */
+        private static final AtomicLong ANONYMOUS_CREDENTIALS_COUNT = new AtomicLong();
+        
         private final HttpProvider httpProvider;
         private final String url;
         private final HttpProvider.HttpRequestAuthorizer clientAuthorizer;
+        private final Executor executor;
+        
+        /**
+         * If non-null, the token requests currently in flight, keyed by their form parameters, 
+         * so that concurrent identical requests can share one round trip.
+         */
+        private final ConcurrentMap<Map<String, List<String>>, CompletableFuture<AccessTokenResponse>> inFlightRequests;
+        
+        private final TokenCache tokenCache;
+        private final RefreshPolicy refreshPolicy;
+        private final Long softWindowMillis;
+        private final long blockingRefreshTimeoutMillis;
+        private final ExponentialBackoff retryBackoff;
+        private final CircuitBreaker circuitBreaker;
+        
+        /**
+         * Identifies the client credentials in {@link #tokenCache} keys.
+         */
+        private final String credentialsId;
+        
+        /**
+         * Stores the tokens of credentials with a stable identity, if set.
+         */
+        private final FileTokenStore tokenStore;
+        private final boolean sharedAcrossProcesses;
+        
+        /**
+         * If positive, how many milliseconds ahead of each scheduled refresh its request is signed.
+         */
+        private final long presignLeadMillis;
+        
+        /**
+         * Reads response bodies, bounded in size, into pooled buffers.
+         */
+        private final ResponseBodyReader responseBodyReader;
         
         /**
          * Construct a new ability to obtain authorization from the HERE authorization server.
          * 
-         * @param httpProvider the HTTP-layer provider implementation
-         * @param urlStart the protocol, host, and port portion of the HERE authorization server endpoint you want to call.
-         * @param clientId see also <a href="https://tools.ietf.org/html/rfc6749#section-2.3.1">client_id</a>; 
-         *     as recommended by the RFC, we don't provide this in the body, but make it part of the request signature.
-         * @param clientSecret see also <a href="https://tools.ietf.org/html/rfc6749#section-2.3.1">client_secret</a>; 
-         *     as recommended by the RFC, we don't provide this in the body, but make it part of the request signature.
+         * @param builder the configured builder; the httpProvider and clientCredentialsProvider 
+         *     are required.  The client credentials are never provided in the body, 
+         *     but are made part of the request signature, as recommended by the RFC.
          */
-        private TokenEndpointImpl(HttpProvider httpProvider, ClientCredentialsProvider clientCredentialsProvider) {
-            this.httpProvider = httpProvider;
-            this.url = clientCredentialsProvider.getTokenEndpointUrl();
-            this.clientAuthorizer = clientCredentialsProvider.getClientAuthorizer();
+        private TokenEndpointImpl(TokenEndpointBuilder builder) {
+            this.httpProvider = builder.httpProvider;
+            this.url = builder.clientCredentialsProvider.getTokenEndpointUrl();
+            this.clientAuthorizer = builder.clientCredentialsProvider.getClientAuthorizer();
+            this.executor = null != builder.executor ? builder.executor : DefaultExecutorHolder.EXECUTOR;
+            this.inFlightRequests = builder.coalesceRequests 
+                    ? new ConcurrentHashMap<Map<String, List<String>>, CompletableFuture<AccessTokenResponse>>() 
+                    : null;
+            this.tokenCache = builder.tokenCache;
+            this.refreshPolicy = builder.refreshPolicy;
+            this.softWindowMillis = builder.softWindowMillis;
+            this.blockingRefreshTimeoutMillis = builder.blockingRefreshTimeoutMillis;
+            this.retryBackoff = builder.retryBackoff;
+            this.circuitBreaker = builder.circuitBreaker;
+            boolean stableCredentialsId = clientAuthorizer instanceof OAuth1Signer;
+            this.credentialsId = stableCredentialsId 
+                    ? getCredentialsId((OAuth1Signer) clientAuthorizer)
+                    : "anonymous-" + ANONYMOUS_CREDENTIALS_COUNT.incrementAndGet();
+            this.tokenStore = stableCredentialsId ? builder.tokenStore : null;
+            this.sharedAcrossProcesses = builder.sharedAcrossProcesses;
+            this.presignLeadMillis = stableCredentialsId ? builder.presignLeadMillis : 0L;
+            this.responseBodyReader = null != builder.responseBodyReader 
+                    ? builder.responseBodyReader : ResponseBodyReader.getDefault();
+        }
+        
+        /**
+         * Get a RefreshableResponseProvider where when you invoke 
+         * {@link RefreshableResponseProvider#getUnexpiredResponse()}, 
+         * you will always get a current HERE Access Token, 
+         * for the specified request, such as the grant_type=client_credentials use case, for 
+         * confidential clients.
+         * The initial token comes from the {@link #tokenStore}, if it has one, 
+         * otherwise from the token endpoint.
+         * 
+         * @param request the token request, used for the initial token and every refresh
+         * @return the refreshable response provider presenting an always "fresh" HERE Access Token.
+         * @throws AccessTokenException if you had trouble authenticating your request to the authorization server, 
+         *      or the authorization server rejected your request
+         * @throws RequestExecutionException if trouble processing the request
+         * @throws ResponseParsingException if trouble parsing the response
+         */
+        private RefreshableResponseProvider<AccessTokenResponse> getRefreshableClientTokenProvider(
+                AccessTokenRequest request) 
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+            if (null == tokenStore) {
+                return getRefreshableClientTokenProvider(request, requestToken(request));
+            }
+            
+            final String storeKey = getCacheKey(request);
+            AccessTokenResponse initialToken = tokenStore.load(storeKey);
+            if (null == initialToken) {
+                initialToken = requestStoredToken(request, storeKey, null);
+            }
+            return newRefresherBuilder(request)
+                    .setInitialToken(initialToken)
+                    .setRefreshTokenFunction((AccessTokenResponse previous) -> {
+                        try {
+                            return requestStoredToken(request, storeKey, previous);
+                        } catch (AccessTokenException | RequestExecutionException | ResponseParsingException e) {
+                            throw new RuntimeException("trouble refresh: " + e, e);
+                        }
+                    })
+                    .build();
+        }
+        
+        /**
+         * Get a RefreshableResponseProvider that starts from the initial token, 
+         * and refreshes it from the token endpoint.  The {@link #tokenStore} is not used.
+         * 
+         * @param request the token request of every refresh
+         * @param initialToken the initial token
+         * @return the refreshable response provider presenting an always "fresh" HERE Access Token.
+         */
+        private RefreshableResponseProvider<AccessTokenResponse> getRefreshableClientTokenProvider(
+                AccessTokenRequest request, AccessTokenResponse initialToken) {
+            return newRefresherBuilder(request)
+                    .setInitialToken(initialToken)
+                    .setRefreshTokenFunction((AccessTokenResponse previous) -> {
+                        try {
+                            return requestToken(request);
+                        } catch (AccessTokenException | RequestExecutionException | ResponseParsingException e) {
+                            throw new RuntimeException("trouble refresh: " + e, e);
+                        }
+                    })
+                    .build();
+        }
+        
+        /**
+         * Requests a new token and stores it.
+         * If sharing across processes, first waits for the lease, 
+         * and uses the token another process stored meanwhile, if any.
+         * 
+         * @param request the token request
+         * @param storeKey the {@link #tokenStore} key
+         * @param previous the token being replaced, or null
+         * @return the new token
+         * @throws AccessTokenException if you had trouble authenticating your request to the authorization server, 
+         *      or the authorization server rejected your request
+         * @throws RequestExecutionException if trouble processing the request
+         * @throws ResponseParsingException if trouble parsing the response
+         */
+        private AccessTokenResponse requestStoredToken(AccessTokenRequest request, String storeKey, 
+                AccessTokenResponse previous) 
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+            if (!sharedAcrossProcesses) {
+                AccessTokenResponse token = requestToken(request);
+                tokenStore.store(storeKey, token);
+                return token;
+            }
+            return tokenStore.withLease(storeKey, () -> {
+                AccessTokenResponse stored = tokenStore.load(storeKey);
+                if (null != stored 
+                        && (null == previous || !stored.getAccessToken().equals(previous.getAccessToken()))) {
+                    // another process refreshed while we waited for the lease
+                    return stored;
+                }
+                AccessTokenResponse token = requestToken(request);
+                tokenStore.store(storeKey, token);
+                return token;
+            });
+        }
+        
+        /**
+         * Gets a builder for the RefreshableResponseProvider of an auto-refreshing token, 
+         * configured with this endpoint's refresh options.
+         * 
+         * @param request the token request of every refresh
+         * @return the builder
+         */
+        private RefreshableResponseProvider.Builder<AccessTokenResponse> newRefresherBuilder(
+                AccessTokenRequest request) {
+            RefreshableResponseProvider.Builder<AccessTokenResponse> refresherBuilder = 
+                    RefreshableResponseProvider.<AccessTokenResponse>builder()
+                    .setRefreshPolicy(refreshPolicy)
+                    .setRefreshExecutor(executor)
+                    .setRetryBackoff(retryBackoff)
+                    .setCircuitBreaker(circuitBreaker);
+            if (null != softWindowMillis) {
+                refresherBuilder.setStaleWhileRevalidate(softWindowMillis, blockingRefreshTimeoutMillis);
+            }
+            if (presignLeadMillis > 0) {
+                final OAuth1Signer signer = (OAuth1Signer) clientAuthorizer;
+                refresherBuilder.setBeforeRefresh(
+                        () -> signer.presign(HTTP_METHOD_POST, url, request.toFormParams()), 
+                        presignLeadMillis);
+            }
+            return refresherBuilder;
+        }
+        
+        /**
+         * Identifies the client credentials by the accessKeyId, the signature method, 
+         * and a fingerprint of the secret, so that endpoints sharing a {@link TokenCache} 
+         * or {@link FileTokenStore} only share tokens obtained with the same credentials.
+         * 
+         * @param oauth1Signer the client authorizer
+         * @return the credentials id
+         */
+        private static String getCredentialsId(OAuth1Signer oauth1Signer) {
+            return oauth1Signer.getAccessKeyId() + '\n' + oauth1Signer.getSignatureMethod() 
+                + '\n' + oauth1Signer.getAccessKeySecretFingerprint();
+        }
+        
+        /**
+         * Gets the {@link #tokenCache} key for the request: 
+         * the token endpoint url and client credentials, plus the request's 
+         * grant_type, scope, and expires_in.
+         * 
+         * @param request the token request
+         * @return the cache key
+         */
+        private String getCacheKey(AccessTokenRequest request) {
+            return url + '\n' + credentialsId + '\n' + request.getGrantType() 
+                + '\n' + request.getScope() + '\n' + request.getExpiresIn();
         }
 
         @Override
         public AccessTokenResponse requestToken(AccessTokenRequest authorizationRequest) 
                 throws AccessTokenException, RequestExecutionException, ResponseParsingException {
-            String method = HTTP_METHOD_POST;
+            if (null == inFlightRequests) {
+                return doRequestToken(authorizationRequest);
+            }
             
-            // OAuth2.0 uses application/x-www-form-urlencoded
-            HttpProvider.HttpRequest apacheRequest = httpProvider.getRequest(
-                    clientAuthorizer, method, url, authorizationRequest.toFormParams());
+            Map<String, List<String>> key = authorizationRequest.toFormParams();
+            CompletableFuture<AccessTokenResponse> ours = new CompletableFuture<AccessTokenResponse>();
+            CompletableFuture<AccessTokenResponse> inFlight = inFlightRequests.putIfAbsent(key, ours);
+            if (null != inFlight) {
+                // an identical request is already on the wire; share its outcome
+                return awaitInFlight(inFlight);
+            }
+            
+            try {
+                AccessTokenResponse response = doRequestToken(authorizationRequest);
+                ours.complete(response);
+                return response;
+            } catch (AccessTokenException | RequestExecutionException | ResponseParsingException 
+                    | RuntimeException | Error e) {
+                ours.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlightRequests.remove(key, ours);
+            }
+        }
+        
+        /**
+         * Waits for the shared, in-flight request to complete, and returns its response, 
+         * or throws the same exception its initiating caller got.
+         * 
+         * @param inFlight the in-flight request's future
+         * @return the shared response
+         * @throws AccessTokenException if the shared request got an error response
+         * @throws RequestExecutionException if trouble processing the shared request
+         * @throws ResponseParsingException if trouble parsing the shared response
+         */
+        private static AccessTokenResponse awaitInFlight(CompletableFuture<AccessTokenResponse> inFlight) 
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+            try {
+                return inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestExecutionException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof AccessTokenException) {
+                    throw (AccessTokenException) cause;
+                } else if (cause instanceof RequestExecutionException) {
+                    throw (RequestExecutionException) cause;
+                } else if (cause instanceof ResponseParsingException) {
+                    throw (ResponseParsingException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RequestExecutionException(cause);
+            }
+        }
+        
+        /**
+         * Signs, executes, and parses the token request, without coalescing.
+         * 
+         * @param authorizationRequest the token request
+         * @return the Access Token
+         * @throws AccessTokenException if you had trouble authenticating your request to the authorization server, 
+         *      or the authorization server rejected your request
+         * @throws RequestExecutionException if trouble processing the request
+         * @throws ResponseParsingException if trouble parsing the response
+         */
+        private AccessTokenResponse doRequestToken(AccessTokenRequest authorizationRequest) 
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+            HttpProvider.HttpRequest apacheRequest = getTokenHttpRequest(authorizationRequest);
             
             // blocking
             HttpProvider.HttpResponse apacheResponse = null;
-            InputStream jsonInputStream = null;
             try {
                 apacheResponse = httpProvider.execute(apacheRequest);
-                jsonInputStream = apacheResponse.getResponseBody();
+            } catch (ResponseBodyTooLargeException e) {
+                // from providers that bound the body themselves, as the responseBodyReader would
+                throw new ResponseParsingException(e);
             } catch (IOException | HttpException e) {
                 throw new RequestExecutionException(e);
             }
+            return parseTokenResponse(apacheResponse);
+        }
+        
+        /**
+         * Signs, executes, and parses the token request, without coalescing or blocking.
+         * The request is signed on the calling thread, and its response parsed 
+         * on the asyncHttpProvider's I/O thread.
+         * 
+         * @param asyncHttpProvider the {@link #httpProvider}
+         * @param authorizationRequest the token request
+         * @return a future completed with the Access Token, or exceptionally with the same 
+         *      exception {@link #doRequestToken(AccessTokenRequest)} would have thrown
+         */
+        private CompletableFuture<AccessTokenResponse> doRequestTokenAsync(AsyncHttpProvider asyncHttpProvider, 
+                AccessTokenRequest authorizationRequest) {
+            CompletableFuture<AccessTokenResponse> future = new CompletableFuture<AccessTokenResponse>();
+            CompletableFuture<HttpProvider.HttpResponse> responseFuture;
+            try {
+                responseFuture = asyncHttpProvider.executeAsync(getTokenHttpRequest(authorizationRequest));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+            responseFuture.whenComplete((apacheResponse, t) -> {
+                if (null != t) {
+                    future.completeExceptionally(t instanceof ResponseBodyTooLargeException
+                            ? new ResponseParsingException((ResponseBodyTooLargeException) t)
+                            : t instanceof IOException || t instanceof HttpException
+                            ? new RequestExecutionException(t) : t);
+                    return;
+                }
+                try {
+                    future.complete(parseTokenResponse(apacheResponse));
+                } catch (Exception | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+        
+        /**
+         * Gets the signed token request.
+         * 
+         * @param authorizationRequest the token request
+         * @return the HttpRequest to execute
+         */
+        private HttpProvider.HttpRequest getTokenHttpRequest(AccessTokenRequest authorizationRequest) {
+            String method = HTTP_METHOD_POST;
+            
+            // OAuth2.0 uses application/x-www-form-urlencoded
+            return httpProvider.getRequest(
+                    clientAuthorizer, method, url, authorizationRequest.toFormParams());
+        }
+        
+        /**
+         * Parses the token response, closing its body.
+         * The body is read with the {@link #responseBodyReader}, so it is bounded in size.
+         * 
+         * @param apacheResponse the token endpoint's response
+         * @return the Access Token
+         * @throws AccessTokenException if the authorization server rejected the request
+         * @throws RequestExecutionException if trouble reading the response
+         * @throws ResponseParsingException if trouble parsing the response, 
+         *      or if it is larger than the maximum response body size
+         */
+        private AccessTokenResponse parseTokenResponse(HttpProvider.HttpResponse apacheResponse) 
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+            ResponseBody body;
+            try {
+                body = responseBodyReader.read(apacheResponse);
+            } catch (ResponseBodyTooLargeException e) {
+                throw new ResponseParsingException(e);
+            } catch (IOException e) {
+                throw new RequestExecutionException(e);
+            }
             
             int statusCode = apacheResponse.getStatusCode();
             try {
                 if (200 == statusCode) {
                     try {
-                        return JsonSerializer.toPojo(jsonInputStream,
-                                                     AccessTokenResponse.class);
+                        return TokenResponseCodec.readAccessTokenResponse(body.getBuffer());
                     } catch (IOException ioe) {
                         throw new ResponseParsingException(ioe);
                     }
                 } else {
                     try {
                         // parse the error response
-                        ErrorResponse errorResponse = JsonSerializer.toPojo(jsonInputStream, ErrorResponse.class);
+                        ErrorResponse errorResponse = TokenResponseCodec.readErrorResponse(body.getBuffer());
                         throw new AccessTokenException(statusCode, errorResponse);
                     } catch (IOException ioe) {
                         // if there is trouble parsing the error
@@ -244,17 +936,126 @@ public class HereAccount {
                     }
                 }
             } finally {
-                nullSafeCloseThrowingUnchecked(jsonInputStream);
+                body.close();
             }
         }
         
         @Override
         public Fresh<AccessTokenResponse> requestAutoRefreshingToken(AccessTokenRequest request) 
                 throws AccessTokenException, RequestExecutionException, ResponseParsingException {
-            final RefreshableResponseProvider<AccessTokenResponse> refresher = HereAccount.getRefreshableClientTokenProvider(this);
+            if (null != tokenCache) {
+                return tokenCache.get(getCacheKey(request), 
+                        () -> getRefreshableClientTokenProvider(request));
+            }
+            final RefreshableResponseProvider<AccessTokenResponse> refresher = 
+                    getRefreshableClientTokenProvider(request);
             return () -> refresher.getUnexpiredResponse();
         }
         
+        @Override
+        public CompletableFuture<AccessTokenResponse> requestTokenAsync(AccessTokenRequest request) {
+            if (!(httpProvider instanceof AsyncHttpProvider)) {
+                return requestTokenAsync(request, executor);
+            }
+            AsyncHttpProvider asyncHttpProvider = (AsyncHttpProvider) httpProvider;
+            if (null == inFlightRequests) {
+                return doRequestTokenAsync(asyncHttpProvider, request);
+            }
+            
+            Map<String, List<String>> key = request.toFormParams();
+            CompletableFuture<AccessTokenResponse> ours = new CompletableFuture<AccessTokenResponse>();
+            CompletableFuture<AccessTokenResponse> inFlight = inFlightRequests.putIfAbsent(key, ours);
+            if (null != inFlight) {
+                // an identical request is already on the wire; share its outcome
+                return copyOf(inFlight);
+            }
+            doRequestTokenAsync(asyncHttpProvider, request).whenComplete((response, t) -> {
+                inFlightRequests.remove(key, ours);
+                if (null != t) {
+                    ours.completeExceptionally(t);
+                } else {
+                    ours.complete(response);
+                }
+            });
+            return copyOf(ours);
+        }
+        
+        /**
+         * A future completed the same way as the shared future, so that 
+         * one caller completing or cancelling theirs doesn't affect the others.
+         * 
+         * @param shared the shared future
+         * @return the copy
+         */
+        private static CompletableFuture<AccessTokenResponse> copyOf(CompletableFuture<AccessTokenResponse> shared) {
+            CompletableFuture<AccessTokenResponse> copy = new CompletableFuture<AccessTokenResponse>();
+            shared.whenComplete((response, t) -> {
+                if (null != t) {
+                    copy.completeExceptionally(t);
+                } else {
+                    copy.complete(response);
+                }
+            });
+            return copy;
+        }
+        
+        /**
+         * {@inheritDoc}
+         * 
+         * <p>
+         * The initial token is obtained via {@link #requestTokenAsync(AccessTokenRequest)}, 
+         * so with an {@link AsyncHttpProvider} no thread waits for it.
+         * With a {@link TokenCache} or {@link FileTokenStore}, whose lookups can block, 
+         * {@link #requestAutoRefreshingToken(AccessTokenRequest)} runs on this endpoint's Executor instead.
+         */
+        @Override
+        public CompletableFuture<Fresh<AccessTokenResponse>> requestAutoRefreshingTokenAsync(
+                AccessTokenRequest request) {
+            if (null != tokenCache || null != tokenStore) {
+                return supplyAsync(() -> requestAutoRefreshingToken(request), executor);
+            }
+            return requestTokenAsync(request).thenApply((AccessTokenResponse initialToken) -> {
+                final RefreshableResponseProvider<AccessTokenResponse> refresher = 
+                        getRefreshableClientTokenProvider(request, initialToken);
+                return () -> refresher.getUnexpiredResponse();
+            });
+        }
+        
+        /**
+         * Runs the blocking token call on the executor.
+         * 
+         * @param <T> the type of the result
+         * @param call the blocking token call
+         * @param executor the Executor to run the call on
+         * @return a future completed with the call's result, or exceptionally with 
+         *      the same exception the call threw
+         */
+        private static <T> CompletableFuture<T> supplyAsync(TokenCall<T> call, Executor executor) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(call.call());
+                    } catch (Exception e) {
+                        // the caller sees the same checked exceptions as from the blocking call
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new RequestExecutionException(e));
+            }
+            return future;
+        }
+        
+        /**
+         * A blocking call to the token endpoint.
+         * 
+         * @param <T> the type of the result
+         */
+        private interface TokenCall<T> {
+            T call() throws AccessTokenException, RequestExecutionException, ResponseParsingException;
+        }
+        
     }
    
     /**
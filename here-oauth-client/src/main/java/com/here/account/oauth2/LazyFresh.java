@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link Fresh} whose auto-refreshing token is requested in the background, 
+ * via {@link TokenEndpoint#requestAutoRefreshingTokenAsync(AccessTokenRequest)}.
+ */
+class LazyFresh implements Fresh<AccessTokenResponse> {
+    private final TokenEndpoint tokenEndpoint;
+    private final AccessTokenRequest request;
+    private volatile CompletableFuture<Fresh<AccessTokenResponse>> initial;
+    
+    LazyFresh(TokenEndpoint tokenEndpoint, AccessTokenRequest request) {
+        this.tokenEndpoint = tokenEndpoint;
+        this.request = request;
+        this.initial = tokenEndpoint.requestAutoRefreshingTokenAsync(request);
+    }
+    
+    @Override
+    public AccessTokenResponse get() {
+        CompletableFuture<Fresh<AccessTokenResponse>> current = initial;
+        try {
+            return current.get().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for initial token", e);
+        } catch (ExecutionException e) {
+            // retry in the background, once per failure, for the next get()
+            synchronized (this) {
+                if (initial == current) {
+                    initial = tokenEndpoint.requestAutoRefreshingTokenAsync(request);
+                }
+            }
+            throw new IllegalStateException("trouble getting initial token: " + e.getCause(), 
+                    e.getCause());
+        }
+    }
+}
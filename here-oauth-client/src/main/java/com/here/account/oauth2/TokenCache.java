@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+import com.here.account.util.Clock;
+import com.here.account.util.RefreshableResponseProvider;
+
+/**
+ * A bounded cache of auto-refreshing HERE Access Tokens, keyed by
+ * client credentials, grant_type, scope, and expires_in.
+ * Use one {@code TokenCache} across your {@link TokenEndpoint}s,
+ * via {@link HereAccount.TokenEndpointBuilder#setTokenCache(TokenCache)},
+ * so that repeated calls to
+ * {@link TokenEndpoint#requestAutoRefreshingToken(AccessTokenRequest)}
+ * for the same client and scope share one refreshing token,
+ * instead of each creating its own.
+ *
+ * <p>
+ * When the cache is full, the least recently used token is evicted.
+ * Tokens that have not been used for longer than the maximum idle time
+ * are also evicted.  Evicted tokens stop refreshing.
+ * A {@link Fresh} whose token was evicted transparently re-requests a new
+ * token the next time it is used.
+ * Concurrent cache misses for the same key share one token request.
+ */
+public class TokenCache {
+
+    private static final Logger LOG = Logger.getLogger(TokenCache.class.getName());
+
+    /**
+     * Default maximum number of tokens held.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 100;
+
+    /**
+     * Default maximum time, in milliseconds, a token is kept without being used: 24 hours.
+     */
+    public static final long DEFAULT_MAXIMUM_IDLE_MILLIS = 24L * 60L * 60L * 1000L;
+
+    /**
+     * Creates the RefreshableResponseProvider for a cache miss.
+     */
+    interface Loader {
+
+        /**
+         * Requests the initial token and starts refreshing it.
+         *
+         * @return the refreshable response provider
+         * @throws AccessTokenException if you had trouble authenticating your request to the authorization server,
+         *      or the authorization server rejected your request
+         * @throws RequestExecutionException if trouble processing the request
+         * @throws ResponseParsingException if trouble parsing the response
+         */
+        RefreshableResponseProvider<AccessTokenResponse> load()
+                throws AccessTokenException, RequestExecutionException, ResponseParsingException;
+    }
+
+    /**
+     * A cached, refreshing token, and when it was last used.
+     */
+    private static class CacheEntry {
+        private final RefreshableResponseProvider<AccessTokenResponse> refresher;
+        private volatile long lastAccessMillis;
+        private volatile boolean evicted;
+
+        private CacheEntry(RefreshableResponseProvider<AccessTokenResponse> refresher, long nowMillis) {
+            this.refresher = refresher;
+            this.lastAccessMillis = nowMillis;
+        }
+    }
+
+    /**
+     * The {@link Fresh} handed to callers.  Every {@link #get()} records the use
+     * of its entry; if the entry was evicted, a new one is loaded through the cache.
+     */
+    private class CachedFresh implements Fresh<AccessTokenResponse> {
+        private final String key;
+        private final Loader loader;
+        private volatile CacheEntry cacheEntry;
+
+        private CachedFresh(String key, Loader loader, CacheEntry cacheEntry) {
+            this.key = key;
+            this.loader = loader;
+            this.cacheEntry = cacheEntry;
+        }
+
+        @Override
+        public AccessTokenResponse get() {
+            CacheEntry current = cacheEntry;
+            if (current.evicted) {
+                try {
+                    current = getEntry(key, loader);
+                } catch (AccessTokenException | RequestExecutionException | ResponseParsingException e) {
+                    throw new RuntimeException("trouble reloading evicted token: " + e, e);
+                }
+                cacheEntry = current;
+            } else {
+                current.lastAccessMillis = clock.currentTimeMillis();
+            }
+            return current.refresher.getUnexpiredResponse();
+        }
+    }
+
+    private final Clock clock;
+    private final int maximumSize;
+    private final long maximumIdleMillis;
+    private final Map<String, CacheEntry> entries = new HashMap<String, CacheEntry>();
+
+    /**
+     * The cache misses currently loading, so that concurrent misses for a key
+     * share one load.  Guarded by the entries lock.
+     */
+    private final Map<String, CompletableFuture<CacheEntry>> loading =
+            new HashMap<String, CompletableFuture<CacheEntry>>();
+
+    /**
+     * Construct a TokenCache with the {@link #DEFAULT_MAXIMUM_SIZE} and
+     * {@link #DEFAULT_MAXIMUM_IDLE_MILLIS}.
+     */
+    public TokenCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_IDLE_MILLIS);
+    }
+
+    /**
+     * Construct a TokenCache.
+     *
+     * @param maximumSize the maximum number of tokens held; must be positive
+     * @param maximumIdleMillis the maximum time in milliseconds a token is kept
+     *      without being used; must be positive
+     */
+    public TokenCache(int maximumSize, long maximumIdleMillis) {
+        this(Clock.SYSTEM, maximumSize, maximumIdleMillis);
+    }
+
+    /**
+     * Construct a TokenCache with the specified clock.
+     * Use this if you want to inject your own clock, such as during unit tests.
+     *
+     * @param clock the implementation of a clock you want to use
+     * @param maximumSize the maximum number of tokens held; must be positive
+     * @param maximumIdleMillis the maximum time in milliseconds a token is kept
+     *      without being used; must be positive
+     */
+    public TokenCache(Clock clock, int maximumSize, long maximumIdleMillis) {
+        Objects.requireNonNull(clock, "clock cannot be null");
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        if (maximumIdleMillis <= 0) {
+            throw new IllegalArgumentException("maximumIdleMillis must be positive: " + maximumIdleMillis);
+        }
+        this.clock = clock;
+        this.maximumSize = maximumSize;
+        this.maximumIdleMillis = maximumIdleMillis;
+    }
+
+    /**
+     * Gets the cached token for the key, loading it on a cache miss.
+     *
+     * @param key the cache key; identifies the client credentials, grant_type, scope, and expires_in
+     * @param loader creates the refreshing token on a cache miss
+     * @return the Fresh token
+     * @throws AccessTokenException if you had trouble authenticating your request to the authorization server,
+     *      or the authorization server rejected your request
+     * @throws RequestExecutionException if trouble processing the request
+     * @throws ResponseParsingException if trouble parsing the response
+     */
+    Fresh<AccessTokenResponse> get(String key, Loader loader)
+            throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+        return new CachedFresh(key, loader, getEntry(key, loader));
+    }
+
+    private CacheEntry getEntry(String key, Loader loader)
+            throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+        CompletableFuture<CacheEntry> ours = new CompletableFuture<CacheEntry>();
+        CompletableFuture<CacheEntry> inFlight;
+        try {
+            synchronized (entries) {
+                evictIdle(evicted);
+                CacheEntry cacheEntry = entries.get(key);
+                if (null != cacheEntry) {
+                    cacheEntry.lastAccessMillis = clock.currentTimeMillis();
+                    return cacheEntry;
+                }
+                inFlight = loading.putIfAbsent(key, ours);
+            }
+        } finally {
+            shutdown(evicted);
+        }
+        if (null != inFlight) {
+            // another thread is already loading the same key; share its outcome
+            return awaitLoad(inFlight);
+        }
+
+        // load outside of the lock; the network call can be slow
+        try {
+            RefreshableResponseProvider<AccessTokenResponse> refresher = loader.load();
+            CacheEntry loaded = new CacheEntry(refresher, clock.currentTimeMillis());
+            try {
+                synchronized (entries) {
+                    if (loading.remove(key, ours)) {
+                        entries.put(key, loaded);
+                        evictOverflow(key, evicted);
+                    } else {
+                        // invalidated while loading; its Fresh reloads on first use
+                        evicted.add(loaded);
+                    }
+                }
+            } finally {
+                shutdown(evicted);
+            }
+            ours.complete(loaded);
+            return loaded;
+        } catch (AccessTokenException | RequestExecutionException | ResponseParsingException
+                | RuntimeException | Error e) {
+            synchronized (entries) {
+                loading.remove(key, ours);
+            }
+            ours.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for another thread's load of the same key, and returns its entry,
+     * or throws the same exception its loader threw.
+     *
+     * @param inFlight the other thread's load
+     * @return the loaded entry
+     * @throws AccessTokenException if the shared load got an error response
+     * @throws RequestExecutionException if trouble processing the shared load's request
+     * @throws ResponseParsingException if trouble parsing the shared load's response
+     */
+    private CacheEntry awaitLoad(CompletableFuture<CacheEntry> inFlight)
+            throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+        CacheEntry loaded;
+        try {
+            loaded = inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestExecutionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AccessTokenException) {
+                throw (AccessTokenException) cause;
+            } else if (cause instanceof RequestExecutionException) {
+                throw (RequestExecutionException) cause;
+            } else if (cause instanceof ResponseParsingException) {
+                throw (ResponseParsingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RequestExecutionException(cause);
+        }
+        loaded.lastAccessMillis = clock.currentTimeMillis();
+        return loaded;
+    }
+
+    /**
+     * Removes, and stops refreshing, all tokens that have been idle for longer than the
+     * maximum idle time.  This happens automatically on every cache lookup, but you
+     * can call this method periodically to release idle tokens sooner.
+     */
+    public void cleanUp() {
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+        synchronized (entries) {
+            evictIdle(evicted);
+        }
+        shutdown(evicted);
+    }
+
+    /**
+     * Removes, and stops refreshing, all tokens.
+     * Tokens still loading are not cached, and are stopped as soon as they load,
+     * so their {@link Fresh}es request new tokens on first use.
+     */
+    public void invalidateAll() {
+        List<CacheEntry> evicted;
+        synchronized (entries) {
+            evicted = new ArrayList<CacheEntry>(entries.values());
+            entries.clear();
+            loading.clear();
+        }
+        shutdown(evicted);
+    }
+
+    /**
+     * Gets the number of tokens currently held.
+     *
+     * @return the number of tokens currently held
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Must hold the entries lock.
+     */
+    private void evictIdle(List<CacheEntry> evicted) {
+        long nowMillis = clock.currentTimeMillis();
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry cacheEntry = iterator.next();
+            if (nowMillis - cacheEntry.lastAccessMillis > maximumIdleMillis) {
+                iterator.remove();
+                evicted.add(cacheEntry);
+            }
+        }
+    }
+
+    /**
+     * Must hold the entries lock.
+     */
+    private void evictOverflow(String keepKey, List<CacheEntry> evicted) {
+        while (entries.size() > maximumSize) {
+            Entry<String, CacheEntry> leastRecentlyUsed = null;
+            for (Entry<String, CacheEntry> entry : entries.entrySet()) {
+                if (keepKey.equals(entry.getKey())) {
+                    continue;
+                }
+                if (null == leastRecentlyUsed
+                        || entry.getValue().lastAccessMillis < leastRecentlyUsed.getValue().lastAccessMillis) {
+                    leastRecentlyUsed = entry;
+                }
+            }
+            entries.remove(leastRecentlyUsed.getKey());
+            evicted.add(leastRecentlyUsed.getValue());
+        }
+    }
+
+    private static void shutdown(List<CacheEntry> evicted) {
+        for (CacheEntry cacheEntry : evicted) {
+            cacheEntry.evicted = true;
+            try {
+                cacheEntry.refresher.shutdown();
+            } catch (RuntimeException e) {
+                LOG.warning("trouble shutting down evicted token refresher " + e);
+            }
+        }
+    }
+}
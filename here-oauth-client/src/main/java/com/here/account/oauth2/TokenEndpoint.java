@@ -15,6 +15,12 @@
  */
 package com.here.account.oauth2;
 
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * A {@code TokenEndpoint} directly corresponds to the token endpoint as specified in
  * the OAuth2.0 Specification.  See
@@ -57,5 +63,115 @@ public interface TokenEndpoint {
      */
     Fresh<AccessTokenResponse> requestAutoRefreshingToken(AccessTokenRequest request) 
             throws AccessTokenException, RequestExecutionException, ResponseParsingException;
+    
+    /**
+     * Non-blocking version of {@link #requestToken(AccessTokenRequest)}.
+     * The signing, HTTP round trip, and JSON parsing all happen on the 
+     * {@code Executor} this endpoint was configured with, so the calling thread 
+     * is never blocked.
+     * If this endpoint's HttpProvider is an {@link com.here.account.http.AsyncHttpProvider},
+     * no Executor thread is used either: the request is signed on the calling thread,
+     * and its round trip and parsing happen on the provider's I/O threads.
+     *
+     * <p>
+     * If the request fails, the returned future completes exceptionally with the 
+     * same {@link AccessTokenException}, {@link RequestExecutionException}, or 
+     * {@link ResponseParsingException} that {@link #requestToken(AccessTokenRequest)} 
+     * would have thrown.
+     *
+     * <p>
+     * The default implementation runs {@link #requestToken(AccessTokenRequest)} 
+     * on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param request the token request
+     * @return a future completed with the Access Token that can be used as Bearer token 
+     *      for HERE Service requests
+     */
+    default CompletableFuture<AccessTokenResponse> requestTokenAsync(AccessTokenRequest request) {
+        return requestTokenAsync(request, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Non-blocking version of {@link #requestToken(AccessTokenRequest)}, 
+     * running on the specified <tt>executor</tt>.
+     *
+     * @param request the token request
+     * @param executor the Executor on which to sign, execute, and parse the request
+     * @return a future completed with the Access Token that can be used as Bearer token 
+     *      for HERE Service requests
+     * @see #requestTokenAsync(AccessTokenRequest)
+     */
+    default CompletableFuture<AccessTokenResponse> requestTokenAsync(AccessTokenRequest request, 
+            Executor executor) {
+        Objects.requireNonNull(executor, "executor cannot be null");
+        CompletableFuture<AccessTokenResponse> future = new CompletableFuture<AccessTokenResponse>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(requestToken(request));
+                } catch (Exception e) {
+                    // the caller sees the same checked exceptions as from the blocking call
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RequestExecutionException(e));
+        }
+        return future;
+    }
+    
+    /**
+     * Non-blocking version of {@link #requestAutoRefreshingToken(AccessTokenRequest)}.
+     * Once the initial token arrives, the returned future completes with the {@link Fresh} 
+     * wrapped Access Token, which is refreshed in the background from then on.
+     * 
+     * <p>
+     * The default implementation runs {@link #requestAutoRefreshingToken(AccessTokenRequest)} 
+     * on the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param request the token request
+     * @return a future completed with a {@link Fresh} wrapped Access Token 
+     *      that can be used as Bearer token for HERE Service requests
+     */
+    default CompletableFuture<Fresh<AccessTokenResponse>> requestAutoRefreshingTokenAsync(
+            AccessTokenRequest request) {
+        CompletableFuture<Fresh<AccessTokenResponse>> future = new CompletableFuture<Fresh<AccessTokenResponse>>();
+        try {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    future.complete(requestAutoRefreshingToken(request));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RequestExecutionException(e));
+        }
+        return future;
+    }
+    
+    /**
+     * Lazy version of {@link #requestAutoRefreshingToken(AccessTokenRequest)}.
+     * The {@link Fresh} wrapped Access Token is returned immediately, 
+     * while the initial token is obtained in the background, 
+     * so you can overlap the token request with the rest of your startup.
+     * The first calls to {@link Fresh#get()} wait only if the initial token 
+     * has not arrived yet.
+     * 
+     * <p>
+     * If the initial request fails, {@link Fresh#get()} throws an IllegalStateException 
+     * and the request is retried in the background.
+     * 
+     * <p>
+     * The default implementation requests the initial token via 
+     * {@link #requestAutoRefreshingTokenAsync(AccessTokenRequest)}.
+     *
+     * @param request the token request
+     * @return a {@link Fresh} wrapped Access Token that can be used as Bearer token 
+     *      for HERE Service requests
+     */
+    default Fresh<AccessTokenResponse> requestAutoRefreshingTokenLazily(AccessTokenRequest request) {
+        return new LazyFresh(this, request);
+    }
                                                                 
 }
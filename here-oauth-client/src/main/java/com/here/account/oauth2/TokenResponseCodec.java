@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import com.here.account.util.JsonTokenizer;
+import com.here.account.util.JsonTokenizer.Token;
+
+/**
+ * Parses token endpoint responses with hand-written {@link JsonTokenizer} loops,
+ * straight into {@link AccessTokenResponse} and {@link ErrorResponse},
+ * without reflection, intermediate maps, or a dependency on Jackson.
+ *
+ * <p>
+ * It accepts what {@link com.here.account.util.JsonSerializer#toPojo(ByteBuffer, Class)} accepts
+ * for these types: unknown properties are skipped, and scalar values are coerced,
+ * such as <tt>"expires_in":"3600"</tt>.  Like databind, it skips a leading UTF-8 byte order mark,
+ * and ignores any content after the object.
+ */
+final class TokenResponseCodec {
+
+    private TokenResponseCodec() {
+    }
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Parses a successful token endpoint response.
+     *
+     * @param json the JSON bytes, from the buffer's position to its limit
+     * @return the Access Token response
+     * @throws IOException if the JSON is malformed, or not an object of the expected types
+     */
+    static AccessTokenResponse readAccessTokenResponse(ByteBuffer json) throws IOException {
+        String accessToken = null;
+        String tokenType = null;
+        Long expiresIn = null;
+        String refreshToken = null;
+        String idToken = null;
+        JsonTokenizer tokenizer = startObject(json);
+        String name;
+        while (null != (name = tokenizer.nextFieldName())) {
+            Token token = tokenizer.nextToken();
+            switch (name) {
+            case "access_token":
+                accessToken = stringValue(tokenizer, token);
+                break;
+            case "token_type":
+                tokenType = stringValue(tokenizer, token);
+                break;
+            case "expires_in":
+                expiresIn = longValue(tokenizer, token);
+                break;
+            case "refresh_token":
+                refreshToken = stringValue(tokenizer, token);
+                break;
+            case "id_token":
+                idToken = stringValue(tokenizer, token);
+                break;
+            default:
+                tokenizer.skipChildren();
+                break;
+            }
+        }
+        // as with databind, anything after the object is not read
+        return new AccessTokenResponse(accessToken, tokenType, expiresIn, refreshToken, idToken);
+    }
+
+    /**
+     * Parses an error response from the token endpoint.
+     *
+     * @param json the JSON bytes, from the buffer's position to its limit
+     * @return the error response
+     * @throws IOException if the JSON is malformed, or not an object of the expected types
+     */
+    static ErrorResponse readErrorResponse(ByteBuffer json) throws IOException {
+        String error = null;
+        String errorDescription = null;
+        String errorId = null;
+        Integer httpStatus = null;
+        Integer errorCode = null;
+        String message = null;
+        JsonTokenizer tokenizer = startObject(json);
+        String name;
+        while (null != (name = tokenizer.nextFieldName())) {
+            Token token = tokenizer.nextToken();
+            switch (name) {
+            case "error":
+                error = stringValue(tokenizer, token);
+                break;
+            case "error_description":
+                errorDescription = stringValue(tokenizer, token);
+                break;
+            case "errorId":
+                errorId = stringValue(tokenizer, token);
+                break;
+            case "httpStatus":
+                httpStatus = intValue(tokenizer, token);
+                break;
+            case "errorCode":
+                errorCode = intValue(tokenizer, token);
+                break;
+            case "message":
+                message = stringValue(tokenizer, token);
+                break;
+            default:
+                tokenizer.skipChildren();
+                break;
+            }
+        }
+        // as with databind, anything after the object is not read
+        return new ErrorResponse(error, errorDescription, errorId, httpStatus, errorCode, message);
+    }
+
+    private static JsonTokenizer startObject(ByteBuffer json) throws IOException {
+        if (startsWithBom(json)) {
+            json = json.duplicate();
+            ((Buffer) json).position(json.position() + UTF8_BOM.length);
+        }
+        JsonTokenizer tokenizer = JsonTokenizer.forBuffer(json);
+        Token token = tokenizer.nextToken();
+        if (Token.START_OBJECT != token) {
+            throw tokenizer.error("expected a JSON object, actual " + token);
+        }
+        return tokenizer;
+    }
+
+    private static boolean startsWithBom(ByteBuffer json) {
+        if (json.remaining() < UTF8_BOM.length) {
+            return false;
+        }
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (UTF8_BOM[i] != json.get(json.position() + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stringValue(JsonTokenizer tokenizer, Token token) throws IOException {
+        if (token.isScalarValue()) {
+            return Token.VALUE_NULL == token ? null : tokenizer.getText();
+        }
+        throw tokenizer.error("expected a string for " + tokenizer.getCurrentName() + ", actual " + token);
+    }
+
+    private static Long longValue(JsonTokenizer tokenizer, Token token) throws IOException {
+        String text;
+        switch (token) {
+        case VALUE_NULL:
+            return null;
+        case VALUE_NUMBER:
+            text = tokenizer.getText();
+            break;
+        case VALUE_STRING:
+            text = tokenizer.getText().trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            break;
+        default:
+            throw tokenizer.error("expected a number for " + tokenizer.getCurrentName() + ", actual " + token);
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // a fraction or exponent truncates, as with Jackson
+            try {
+                double value = Double.parseDouble(text);
+                if (value >= Long.MIN_VALUE && value <= Long.MAX_VALUE) {
+                    return (long) value;
+                }
+            } catch (NumberFormatException notANumber) {
+                // fall through
+            }
+            throw tokenizer.error("expected a number for " + tokenizer.getCurrentName() + ", actual " + text);
+        }
+    }
+
+    private static Integer intValue(JsonTokenizer tokenizer, Token token) throws IOException {
+        Long value = longValue(tokenizer, token);
+        if (null == value) {
+            return null;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw tokenizer.error("number out of range for " + tokenizer.getCurrentName() + ": " + value);
+        }
+        return value.intValue();
+    }
+}
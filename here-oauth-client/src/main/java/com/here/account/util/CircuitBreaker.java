@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * A circuit breaker that stops calls to an unhealthy endpoint.
+ * One CircuitBreaker can be shared by all the callers of the same endpoint.
+ *
+ * <p>
+ * While {@link State#CLOSED}, calls are allowed.
+ * After <tt>failureThreshold</tt> consecutive failures, the breaker is
+ * {@link State#OPEN}, and calls are rejected for <tt>openMillis</tt>.
+ * Then it is {@link State#HALF_OPEN}: a single trial call is allowed.
+ * If the trial succeeds the breaker closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * The state of a CircuitBreaker.
+     */
+    public enum State {
+        /**
+         * Healthy; calls are allowed.
+         */
+        CLOSED,
+        /**
+         * Unhealthy; calls are rejected.
+         */
+        OPEN,
+        /**
+         * Possibly recovered; one trial call is allowed.
+         */
+        HALF_OPEN
+    }
+
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean trialInProgress;
+
+    /**
+     * Construct a CircuitBreaker.
+     *
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param openMillis the milliseconds calls are rejected before a trial call is allowed
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(Clock.SYSTEM, failureThreshold, openMillis);
+    }
+
+    /**
+     * Construct a CircuitBreaker with the specified clock.
+     * Use this if you want to inject your own clock, such as during unit tests.
+     *
+     * @param clock the implementation of a clock you want to use
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param openMillis the milliseconds calls are rejected before a trial call is allowed
+     */
+    public CircuitBreaker(Clock clock, int failureThreshold, long openMillis) {
+        Objects.requireNonNull(clock, "clock cannot be null");
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+        }
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("openMillis must be positive: " + openMillis);
+        }
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Asks whether a call may be made now.  If true, the caller must report the
+     * outcome with {@link #recordSuccess()} or {@link #recordFailure()}.
+     *
+     * @return true if the call is allowed
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (clock.currentTimeMillis() - openedAtMillis < openMillis) {
+                return false;
+            }
+            LOG.info("circuit breaker half-open, allowing a trial call");
+            state = State.HALF_OPEN;
+            trialInProgress = true;
+            return true;
+        case HALF_OPEN:
+        default:
+            if (trialInProgress) {
+                return false;
+            }
+            trialInProgress = true;
+            return true;
+        }
+    }
+
+    /**
+     * Records a successful call; closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        if (State.CLOSED != state) {
+            LOG.info("circuit breaker closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    /**
+     * Records a failed call; may open the breaker.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInProgress = false;
+        if (State.HALF_OPEN == state
+                || (State.CLOSED == state && consecutiveFailures >= failureThreshold)) {
+            LOG.warning("circuit breaker open after " + consecutiveFailures + " consecutive failures");
+            state = State.OPEN;
+            openedAtMillis = clock.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Gets the current state.
+     * An {@link State#OPEN} breaker whose open time has elapsed reports
+     * {@link State#OPEN} until the next {@link #allowRequest()}.
+     *
+     * @return the current state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the number of consecutive failed calls.
+     *
+     * @return the number of consecutive failed calls
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Gets the milliseconds until an open breaker allows a trial call.
+     *
+     * @return the milliseconds until a trial call is allowed, or 0 if not open
+     */
+    public synchronized long getRemainingOpenMillis() {
+        if (State.OPEN != state) {
+            return 0L;
+        }
+        return Math.max(0L, openedAtMillis + openMillis - clock.currentTimeMillis());
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.here.account.util;
 
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -22,7 +24,8 @@ import java.util.concurrent.TimeUnit;
  * An interface to a clock that can be used to read the 
  * {@link #currentTimeMillis()} and that can be used to 
  * {@link #schedule(ScheduledExecutorService, Runnable, long)} a Runnable 
- * for execution against it.
+ * for execution against it, optionally {@link #scheduleCancellable(ScheduledExecutorService, Runnable, long) 
+ * cancellable}.
  * 
  * @author kmccrack
  *
@@ -57,6 +60,21 @@ public interface Clock {
                 );
 
         }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Future<?> scheduleCancellable(ScheduledExecutorService scheduledExecutorService, 
+                Runnable runnable,
+                long millisecondsInTheFutureToSchedule
+                ) {
+            return scheduledExecutorService.schedule(
+                    runnable,
+                    millisecondsInTheFutureToSchedule,
+                    TimeUnit.MILLISECONDS
+                );
+        }
     };
 
     /**
@@ -79,5 +97,29 @@ public interface Clock {
             Runnable runnable,
             long millisecondsInTheFutureToSchedule
             );
+
+    /**
+     * Schedules <tt>runnable</tt> like 
+     * {@link #schedule(ScheduledExecutorService, Runnable, long)}, 
+     * and returns a handle that can cancel it.
+     * Once cancelled, the runnable does not run, and is no longer referenced by the handle.
+     * 
+     * <p>
+     * The default implementation schedules a {@link FutureTask} wrapping the runnable.
+     * 
+     * @param scheduledExecutorService the ScheduledExecutorService to submit the runnable to
+     * @param runnable the runnable to execute on a schedule
+     * @param millisecondsInTheFutureToSchedule the schedule of milliseconds in the future, 
+     *      approximating when the runnable should run.
+     * @return the handle to the scheduled runnable
+     */
+    default Future<?> scheduleCancellable(ScheduledExecutorService scheduledExecutorService, 
+            Runnable runnable,
+            long millisecondsInTheFutureToSchedule
+            ) {
+        FutureTask<Void> task = new FutureTask<Void>(runnable, null);
+        schedule(scheduledExecutorService, task, millisecondsInTheFutureToSchedule);
+        return task;
+    }
 }
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with full jitter, for retrying failed refreshes.
+ * The delay before retry number <tt>n</tt> (starting at 1) is uniformly random
+ * between 0 and <tt>min(maximumMillis, initialMillis * 2^(n-1))</tt>,
+ * so that a fleet of processes failing together does not retry together.
+ */
+public class ExponentialBackoff {
+
+    private final long initialMillis;
+    private final long maximumMillis;
+    private final Random random;
+
+    /**
+     * Construct an ExponentialBackoff.
+     *
+     * @param initialMillis the upper bound of the first retry delay, in milliseconds
+     * @param maximumMillis the cap on the upper bound of any retry delay, in milliseconds
+     */
+    public ExponentialBackoff(long initialMillis, long maximumMillis) {
+        this(initialMillis, maximumMillis, null);
+    }
+
+    /**
+     * Construct an ExponentialBackoff with the specified source of randomness.
+     * Use this if you want to inject your own Random, such as during unit tests.
+     *
+     * @param initialMillis the upper bound of the first retry delay, in milliseconds
+     * @param maximumMillis the cap on the upper bound of any retry delay, in milliseconds
+     * @param random the source of randomness, or null for {@link ThreadLocalRandom}
+     */
+    public ExponentialBackoff(long initialMillis, long maximumMillis, Random random) {
+        if (initialMillis <= 0) {
+            throw new IllegalArgumentException("initialMillis must be positive: " + initialMillis);
+        }
+        if (maximumMillis < initialMillis) {
+            throw new IllegalArgumentException("maximumMillis " + maximumMillis
+                    + " cannot be less than initialMillis " + initialMillis);
+        }
+        this.initialMillis = initialMillis;
+        this.maximumMillis = maximumMillis;
+        this.random = random;
+    }
+
+    /**
+     * Gets the upper bound of the delay before the specified retry, before jitter.
+     *
+     * @param retry the retry number, starting at 1
+     * @return the capped exponential delay in milliseconds
+     */
+    public long getMaximumDelayMillis(int retry) {
+        int doublings = Math.max(0, retry - 1);
+        // beyond 62 doublings the shift overflows; the cap applies long before that
+        if (doublings >= 62 || initialMillis > (maximumMillis >> doublings)) {
+            return maximumMillis;
+        }
+        return initialMillis << doublings;
+    }
+
+    /**
+     * Gets a random delay before the specified retry.
+     *
+     * @param retry the retry number, starting at 1
+     * @return the delay in milliseconds, between 0 and {@link #getMaximumDelayMillis(int)}
+     */
+    public long getDelayMillis(int retry) {
+        long maximumDelayMillis = getMaximumDelayMillis(retry);
+        double uniform = null != random ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+        return (long) (uniform * (maximumDelayMillis + 1));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * The jackson-databind {@link JsonCodec}, also backing
+ * {@link JsonSerializer}'s POJO conversions.
+ * Only this class refers to jackson-databind,
+ * so the rest of the SDK loads without it.
+ */
+public class JacksonJsonCodec implements JsonCodec {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    static {
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * ObjectReaders and ObjectWriters are immutable and resolve their (de)serializers once,
+     * so reuse them rather than going through the ObjectMapper on each call.
+     */
+    private static final ObjectReader mapReader = objectMapper.readerFor(HashMap.class);
+    private static final ObjectWriter writer = objectMapper.writer();
+    private static final ConcurrentMap<Class<?>, ObjectReader> pojoReaders =
+            new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+    private static ObjectReader getReader(Class<?> pojoClass) {
+        ObjectReader reader = pojoReaders.get(pojoClass);
+        if (null == reader) {
+            reader = objectMapper.readerFor(pojoClass);
+            ObjectReader existing = pojoReaders.putIfAbsent(pojoClass, reader);
+            if (null != existing) {
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> toMap(InputStream jsonInputStream) throws IOException {
+        return mapReader.readValue(jsonInputStream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toJson(Map<String, Object> mapObject) throws JsonProcessingException {
+        return writer.writeValueAsString(mapObject);
+    }
+
+    static <T> T toPojo(InputStream jsonInputStream, Class<T> pojoClass) throws IOException {
+        return getReader(pojoClass).readValue(jsonInputStream);
+    }
+
+    static <T> T toPojo(ByteBuffer jsonBuffer, Class<T> pojoClass) throws IOException {
+        if (jsonBuffer.hasArray()) {
+            return getReader(pojoClass).readValue(jsonBuffer.array(),
+                    jsonBuffer.arrayOffset() + jsonBuffer.position(), jsonBuffer.remaining());
+        }
+        byte[] bytes = new byte[jsonBuffer.remaining()];
+        jsonBuffer.duplicate().get(bytes);
+        return getReader(pojoClass).readValue(bytes);
+    }
+
+    static String objectToJson(Object object) throws JsonProcessingException {
+        return writer.writeValueAsString(object);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The service provider interface behind {@link JsonSerializer}'s map conversions.
+ *
+ * <p>
+ * {@link JsonSerializer} uses the first implementation registered in a
+ * <tt>META-INF/services/com.here.account.util.JsonCodec</tt> file,
+ * otherwise {@link JacksonJsonCodec} if jackson-databind is on the classpath,
+ * otherwise the dependency-free {@link MinimalJsonCodec}.
+ * Implementations must be thread-safe and have a public no-argument constructor.
+ */
+public interface JsonCodec {
+
+    /**
+     * Converts the input JSON object to a Map.
+     * Numbers are Integer, Long, BigInteger or Double, arrays are Lists,
+     * and objects are Maps.
+     *
+     * @param jsonInputStream the input stream to the JSON object
+     * @return its Map representation
+     * @throws IOException if trouble deserializing
+     */
+    Map<String, Object> toMap(InputStream jsonInputStream) throws IOException;
+
+    /**
+     * Converts the input map to its JSON object representation.
+     *
+     * @param mapObject the JSON's Map representation
+     * @return the JSON String representation of the input
+     * @throws IOException if trouble serializing, such as an unsupported value type
+     */
+    String toJson(Map<String, Object> mapObject) throws IOException;
+
+}
@@ -17,19 +17,22 @@ package com.here.account.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ServiceLoader;
 
 /**
- * A jackson-based JSON serializer and deserializer.
+ * A JSON serializer and deserializer.
+ * 
+ * <p>
+ * Map conversions go through the {@link JsonCodec} from {@link #getCodec()}:
+ * jackson-databind when it is on the classpath, otherwise the built-in {@link MinimalJsonCodec},
+ * so jackson-databind is an optional dependency.
+ * POJO conversions always require jackson-databind.
+ * Every method reports trouble as an IOException, whichever codec is in use;
+ * from Jackson, these are its <tt>JsonProcessingException</tt>s.
  * 
  * @author kmccrack
  *
@@ -46,11 +49,54 @@ public class JsonSerializer {
      */
     public static final Charset CHARSET = Charset.forName(CHARSET_STRING);
     
-    private static ObjectMapper objectMapper = new ObjectMapper();
-
-    static {
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final String OBJECT_MAPPER_CLASS_NAME = "com.fasterxml.jackson.databind.ObjectMapper";
+    
+    /**
+     * Lazily chooses the codec, on first use rather than when the constants are loaded.
+     */
+    private static class CodecHolder {
+        private static final JsonCodec codec = loadCodec();
+    }
+    
+    static JsonCodec loadCodec() {
+        Iterator<JsonCodec> codecs = ServiceLoader.load(JsonCodec.class, 
+                JsonSerializer.class.getClassLoader()).iterator();
+        if (codecs.hasNext()) {
+            return codecs.next();
+        }
+        return isJacksonAvailable() ? new JacksonJsonCodec() : new MinimalJsonCodec();
+    }
+    
+    /**
+     * Gets the codec for the map conversions: the first registered in a 
+     * <tt>META-INF/services/com.here.account.util.JsonCodec</tt> file, 
+     * otherwise {@link JacksonJsonCodec} if jackson-databind is on the classpath, 
+     * otherwise {@link MinimalJsonCodec}.
+     * 
+     * @return the codec
+     */
+    public static JsonCodec getCodec() {
+        return CodecHolder.codec;
+    }
+    
+    /**
+     * Checks whether jackson-databind is on the classpath, without initializing it.
+     * 
+     * @return true if jackson-databind is available
+     */
+    public static boolean isJacksonAvailable() {
+        try {
+            Class.forName(OBJECT_MAPPER_CLASS_NAME, false, JsonSerializer.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+    
+    private static void requireJackson() {
+        if (!isJacksonAvailable()) {
+            throw new UnsupportedOperationException("POJO conversions require jackson-databind on the classpath");
+        }
     }
     
     /**
@@ -61,22 +107,42 @@ public class JsonSerializer {
      * @throws IOException if trouble deserializing
      */
     public static Map<String, Object> toMap(InputStream jsonInputStream) throws IOException {
-        return (HashMap<String, Object>) objectMapper.readValue(jsonInputStream, HashMap.class);
+        return getCodec().toMap(jsonInputStream);
     }
     
     /**
      * Converts the input JSON InputStream, to a POJO of the class specified as pojoClass.
+     * Requires jackson-databind.
      * 
      * @param <T> the type of the POJO
      * @param jsonInputStream the input stream to the JSON object
      * @param pojoClass the class to deserialize into
      * @return the instance of the pojoClass with member variables populated
-     * @throws JsonParseException if trouble parsing
-     * @throws JsonMappingException if trouble mapping
+     * @throws IOException if trouble deserializing, such as a 
+     *      <tt>JsonParseException</tt> or <tt>JsonMappingException</tt> from the jackson deserializer
+     * @throws UnsupportedOperationException if jackson-databind is not on the classpath
+     */
+    public static <T> T toPojo (InputStream jsonInputStream, Class<T> pojoClass) throws IOException {
+        requireJackson();
+        return JacksonJsonCodec.toPojo(jsonInputStream, pojoClass);
+    }
+    
+    /**
+     * Converts the JSON bytes from the position to the limit of the input ByteBuffer, 
+     * to a POJO of the class specified as pojoClass.
+     * Heap buffers are parsed in place, without copying; the buffer's position is unchanged.
+     * Requires jackson-databind.
+     * 
+     * @param <T> the type of the POJO
+     * @param jsonBuffer the JSON bytes, such as a {@link com.here.account.http.ResponseBody#getBuffer()}
+     * @param pojoClass the class to deserialize into
+     * @return the instance of the pojoClass with member variables populated
      * @throws IOException if trouble deserializing
+     * @throws UnsupportedOperationException if jackson-databind is not on the classpath
      */
-    public static <T> T toPojo (InputStream jsonInputStream, Class<T> pojoClass) throws JsonParseException, JsonMappingException, IOException {
-        return objectMapper.readValue(jsonInputStream, pojoClass);
+    public static <T> T toPojo(ByteBuffer jsonBuffer, Class<T> pojoClass) throws IOException {
+        requireJackson();
+        return JacksonJsonCodec.toPojo(jsonBuffer, pojoClass);
     }
     
     /**
@@ -84,22 +150,26 @@ public class JsonSerializer {
      * 
      * @param mapObject the json's Map representation
      * @return the JSON String representation of the input.
-     * @throws JsonProcessingException if an exception from the jackson serializer
+     * @throws IOException if trouble serializing, such as a 
+     *      <tt>JsonProcessingException</tt> from the jackson serializer
      */
-    public static String toJson(Map<String, Object> mapObject) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(mapObject);
+    public static String toJson(Map<String, Object> mapObject) throws IOException {
+        return getCodec().toJson(mapObject);
     }
     
     /**
      * Converts the input POJO object to its JSON string.
+     * Requires jackson-databind.
      * 
      * @param object the object to serialize into a JSON string.
      * @return the JSON string representation of the object.
-     * @throws JsonProcessingException if there's trouble serializing object 
-     *      to a JSON string.
+     * @throws IOException if there's trouble serializing object 
+     *      to a JSON string, such as a <tt>JsonProcessingException</tt> from the jackson serializer
+     * @throws UnsupportedOperationException if jackson-databind is not on the classpath
      */
-    public static String objectToJson(Object object) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(object);
+    public static String objectToJson(Object object) throws IOException {
+        requireJackson();
+        return JacksonJsonCodec.objectToJson(object);
     }
 
 }
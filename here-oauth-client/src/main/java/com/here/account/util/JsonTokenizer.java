@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal, dependency-free pull parser over UTF-8 JSON bytes,
+ * in the style of Jackson's <tt>JsonParser</tt>, for code that must run without Jackson.
+ * <pre>
+ * {@code
+       JsonTokenizer tokenizer = JsonTokenizer.forBuffer(body.getBuffer());
+       if (JsonTokenizer.Token.START_OBJECT == tokenizer.nextToken()) {
+           String name;
+           while (null != (name = tokenizer.nextFieldName())) {
+               JsonTokenizer.Token token = tokenizer.nextToken();
+               // use the value, or skip it
+               tokenizer.skipChildren();
+           }
+       }
+ * }
+ * </pre>
+ *
+ * <p>
+ * It is strict RFC 8259 JSON: malformed input, including content after the root value,
+ * fails with an IOException.
+ * A JsonTokenizer is not thread-safe.
+ */
+public final class JsonTokenizer {
+
+    /**
+     * The JSON tokens.
+     */
+    public enum Token {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        FIELD_NAME,
+        VALUE_STRING,
+        VALUE_NUMBER,
+        VALUE_TRUE,
+        VALUE_FALSE,
+        VALUE_NULL;
+
+        /**
+         * @return true for strings, numbers, booleans and null
+         */
+        public boolean isScalarValue() {
+            return ordinal() >= VALUE_STRING.ordinal();
+        }
+    }
+
+    /**
+     * The maximum nesting of objects and arrays,
+     * so hostile input cannot exhaust the stack of recursive consumers.
+     */
+    public static final int MAX_DEPTH = 256;
+
+    // what the next token may be
+    private static final int VALUE = 0;
+    private static final int FIRST_VALUE_OR_END = 1;
+    private static final int FIELD_NAME = 2;
+    private static final int FIRST_FIELD_NAME_OR_END = 3;
+    private static final int COLON = 4;
+    private static final int COMMA_OR_END = 5;
+    private static final int DONE = 6;
+
+    private final byte[] bytes;
+    private final int end;
+    private int pos;
+
+    private boolean[] inObject = new boolean[16];
+    private int depth;
+    private int state = VALUE;
+
+    private Token token;
+    private String text;
+    private String currentName;
+    private boolean integral;
+
+    /**
+     * Creates a tokenizer over the bytes from offset to offset + length, without copying them.
+     *
+     * @param bytes the UTF-8 JSON bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     */
+    public JsonTokenizer(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + ", array length " + bytes.length);
+        }
+        this.bytes = bytes;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Creates a tokenizer over the bytes from the buffer's position to its limit.
+     * Heap buffers are parsed in place; the buffer's position is unchanged.
+     *
+     * @param json the UTF-8 JSON bytes
+     * @return the tokenizer
+     */
+    public static JsonTokenizer forBuffer(ByteBuffer json) {
+        if (json.hasArray()) {
+            return new JsonTokenizer(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+        byte[] copy = new byte[json.remaining()];
+        json.duplicate().get(copy);
+        return new JsonTokenizer(copy, 0, copy.length);
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return the next token, or null after the root value
+     * @throws IOException if the JSON is malformed
+     */
+    public Token nextToken() throws IOException {
+        skipWhitespace();
+        if (DONE == state) {
+            if (pos < end) {
+                throw error("unexpected content after the root value");
+            }
+            token = null;
+            text = null;
+            return null;
+        }
+        if (pos >= end) {
+            throw error(null == token ? "no content" : "unexpected end of input");
+        }
+        byte b = bytes[pos];
+        switch (state) {
+        case COLON:
+            if (':' != b) {
+                throw error("expected ':'");
+            }
+            pos++;
+            skipWhitespace();
+            return readValue();
+        case COMMA_OR_END:
+            boolean object = inObject[depth - 1];
+            if (',' == b) {
+                pos++;
+                skipWhitespace();
+                return object ? readFieldName() : readValue();
+            }
+            if ((object ? '}' : ']') == b) {
+                pos++;
+                return endContainer();
+            }
+            throw error(object ? "expected ',' or '}'" : "expected ',' or ']'");
+        case FIRST_FIELD_NAME_OR_END:
+            if ('}' == b) {
+                pos++;
+                return endContainer();
+            }
+            return readFieldName();
+        case FIELD_NAME:
+            return readFieldName();
+        case FIRST_VALUE_OR_END:
+            if (']' == b) {
+                pos++;
+                return endContainer();
+            }
+            return readValue();
+        default:
+            return readValue();
+        }
+    }
+
+    /**
+     * Advances to the next token, returning the field name if it is a {@link Token#FIELD_NAME}.
+     *
+     * @return the field name, or null if the next token is not a field name,
+     *      such as the {@link Token#END_OBJECT}
+     * @throws IOException if the JSON is malformed
+     */
+    public String nextFieldName() throws IOException {
+        return Token.FIELD_NAME == nextToken() ? text : null;
+    }
+
+    /**
+     * If the current token starts an object or array, advances to the token ending it;
+     * otherwise does nothing.
+     *
+     * @throws IOException if the JSON is malformed
+     */
+    public void skipChildren() throws IOException {
+        if (Token.START_OBJECT != token && Token.START_ARRAY != token) {
+            return;
+        }
+        int targetDepth = depth - 1;
+        while (depth > targetDepth) {
+            nextToken();
+        }
+    }
+
+    /**
+     * @return the current token, or null before the first or after the last
+     */
+    public Token getCurrentToken() {
+        return token;
+    }
+
+    /**
+     * Gets the text of the current token: the field name, the string value,
+     * the number as written, or the literal, such as <tt>true</tt>.
+     *
+     * @return the text of the current token
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the most recent field name, for messages
+     */
+    public String getCurrentName() {
+        return currentName;
+    }
+
+    /**
+     * @return true if the current {@link Token#VALUE_NUMBER} has no fraction or exponent
+     */
+    public boolean isIntegralNumber() {
+        return Token.VALUE_NUMBER == token && integral;
+    }
+
+    /**
+     * Gets the current {@link Token#VALUE_NUMBER} as the narrowest of
+     * Integer, Long or BigInteger if integral, otherwise as a Double, as Jackson does.
+     *
+     * @return the number
+     * @throws IOException if the current token is not a number
+     */
+    public Number getNumberValue() throws IOException {
+        if (Token.VALUE_NUMBER != token) {
+            throw error("expected a number, actual " + token);
+        }
+        if (!integral) {
+            return Double.valueOf(text);
+        }
+        // up to 9 digits always fits an int, up to 18 a long
+        int digits = text.length() - ('-' == text.charAt(0) ? 1 : 0);
+        if (digits <= 9) {
+            return Integer.valueOf(text);
+        }
+        if (digits <= 18) {
+            long value = Long.parseLong(text);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+        BigInteger value = new BigInteger(text);
+        return value.bitLength() < 64 ? (Number) value.longValue() : value;
+    }
+
+    /**
+     * Creates an IOException describing malformed JSON at the current offset.
+     *
+     * @param message what was wrong
+     * @return the exception to throw
+     */
+    public IOException error(String message) {
+        return new IOException("malformed JSON: " + message + " at offset " + pos);
+    }
+
+    private Token readFieldName() throws IOException {
+        if (pos >= end || '"' != bytes[pos]) {
+            throw error("expected a field name");
+        }
+        text = readString();
+        currentName = text;
+        state = COLON;
+        return token = Token.FIELD_NAME;
+    }
+
+    private Token readValue() throws IOException {
+        if (pos >= end) {
+            throw error("unexpected end of input");
+        }
+        byte b = bytes[pos];
+        switch (b) {
+        case '{':
+            pos++;
+            startContainer(true);
+            state = FIRST_FIELD_NAME_OR_END;
+            text = "{";
+            return token = Token.START_OBJECT;
+        case '[':
+            pos++;
+            startContainer(false);
+            state = FIRST_VALUE_OR_END;
+            text = "[";
+            return token = Token.START_ARRAY;
+        case '"':
+            text = readString();
+            return scalar(Token.VALUE_STRING);
+        case 't':
+            readLiteral("true");
+            return scalar(Token.VALUE_TRUE);
+        case 'f':
+            readLiteral("false");
+            return scalar(Token.VALUE_FALSE);
+        case 'n':
+            readLiteral("null");
+            return scalar(Token.VALUE_NULL);
+        default:
+            if ('-' == b || (b >= '0' && b <= '9')) {
+                readNumber();
+                return scalar(Token.VALUE_NUMBER);
+            }
+            throw error("unexpected character '" + (char) (b & 0xff) + "'");
+        }
+    }
+
+    private Token scalar(Token scalar) {
+        state = 0 == depth ? DONE : COMMA_OR_END;
+        return token = scalar;
+    }
+
+    private void startContainer(boolean object) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw error("nested deeper than " + MAX_DEPTH);
+        }
+        if (depth == inObject.length) {
+            boolean[] larger = new boolean[2 * depth];
+            System.arraycopy(inObject, 0, larger, 0, depth);
+            inObject = larger;
+        }
+        inObject[depth++] = object;
+    }
+
+    private Token endContainer() {
+        boolean object = inObject[--depth];
+        state = 0 == depth ? DONE : COMMA_OR_END;
+        text = object ? "}" : "]";
+        return token = object ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (' ' != b && '\n' != b && '\r' != b && '\t' != b) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        int length = literal.length();
+        if (end - pos < length) {
+            throw error("unexpected end of input");
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[pos + i] != literal.charAt(i)) {
+                throw error("expected " + literal);
+            }
+        }
+        pos += length;
+        text = literal;
+    }
+
+    private void readNumber() throws IOException {
+        int start = pos;
+        if ('-' == bytes[pos]) {
+            pos++;
+        }
+        if (pos < end && '0' == bytes[pos]) {
+            pos++;
+        } else if (0 == skipDigits()) {
+            throw error("expected a digit");
+        }
+        integral = true;
+        if (pos < end && '.' == bytes[pos]) {
+            pos++;
+            integral = false;
+            if (0 == skipDigits()) {
+                throw error("expected a digit");
+            }
+        }
+        if (pos < end && ('e' == bytes[pos] || 'E' == bytes[pos])) {
+            pos++;
+            integral = false;
+            if (pos < end && ('+' == bytes[pos] || '-' == bytes[pos])) {
+                pos++;
+            }
+            if (0 == skipDigits()) {
+                throw error("expected a digit");
+            }
+        }
+        text = new String(bytes, start, pos - start, StandardCharsets.US_ASCII);
+    }
+
+    private int skipDigits() {
+        int start = pos;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private String readString() throws IOException {
+        int start = ++pos;
+        StringBuilder buf = null;
+        while (pos < end) {
+            byte b = bytes[pos];
+            if ('"' == b) {
+                String segment = new String(bytes, start, pos - start, StandardCharsets.UTF_8);
+                pos++;
+                return null == buf ? segment : buf.append(segment).toString();
+            } else if ('\\' == b) {
+                if (null == buf) {
+                    buf = new StringBuilder();
+                }
+                buf.append(new String(bytes, start, pos - start, StandardCharsets.UTF_8));
+                pos++;
+                buf.append(readEscape());
+                start = pos;
+            } else if ((b & 0xff) < 0x20) {
+                throw error("unescaped control character in string");
+            } else {
+                pos++;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (pos >= end) {
+            throw error("unterminated string");
+        }
+        byte b = bytes[pos++];
+        switch (b) {
+        case '"':
+            return '"';
+        case '\\':
+            return '\\';
+        case '/':
+            return '/';
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            if (end - pos < 4) {
+                throw error("unterminated string");
+            }
+            int c = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(bytes[pos++], 16);
+                if (digit < 0) {
+                    throw error("invalid \\u escape");
+                }
+                c = (c << 4) | digit;
+            }
+            return (char) c;
+        default:
+            throw error("invalid escape '\\" + (char) (b & 0xff) + "'");
+        }
+    }
+}
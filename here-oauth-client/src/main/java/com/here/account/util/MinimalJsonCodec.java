@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dependency-free {@link JsonCodec}, built on {@link JsonTokenizer},
+ * for the small documents this SDK reads and writes.
+ * It is used when jackson-databind is not on the classpath,
+ * so it avoids Jackson's class loading and initialization at startup.
+ *
+ * <p>
+ * It writes Maps, Iterables and arrays, CharSequences, Numbers, Booleans,
+ * Characters, Enums and nulls; other values fail with an IOException.
+ */
+public class MinimalJsonCodec implements JsonCodec {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> toMap(InputStream jsonInputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = jsonInputStream.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        byte[] bytes = out.toByteArray();
+        JsonTokenizer tokenizer = new JsonTokenizer(bytes, 0, bytes.length);
+        JsonTokenizer.Token token = tokenizer.nextToken();
+        if (JsonTokenizer.Token.START_OBJECT != token) {
+            throw tokenizer.error("expected a JSON object, actual " + token);
+        }
+        Map<String, Object> map = readObject(tokenizer);
+        tokenizer.nextToken();
+        return map;
+    }
+
+    private static Map<String, Object> readObject(JsonTokenizer tokenizer) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        String name;
+        while (null != (name = tokenizer.nextFieldName())) {
+            map.put(name, readValue(tokenizer, tokenizer.nextToken()));
+        }
+        return map;
+    }
+
+    private static Object readValue(JsonTokenizer tokenizer, JsonTokenizer.Token token) throws IOException {
+        switch (token) {
+        case START_OBJECT:
+            return readObject(tokenizer);
+        case START_ARRAY:
+            List<Object> list = new ArrayList<Object>();
+            while (JsonTokenizer.Token.END_ARRAY != (token = tokenizer.nextToken())) {
+                list.add(readValue(tokenizer, token));
+            }
+            return list;
+        case VALUE_STRING:
+            return tokenizer.getText();
+        case VALUE_NUMBER:
+            return tokenizer.getNumberValue();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return null;
+        default:
+            throw tokenizer.error("unexpected " + token);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toJson(Map<String, Object> mapObject) throws IOException {
+        StringBuilder json = new StringBuilder(128);
+        writeValue(json, mapObject, 0);
+        return json.toString();
+    }
+
+    private static void writeValue(StringBuilder json, Object value, int depth) throws IOException {
+        if (depth > JsonTokenizer.MAX_DEPTH) {
+            throw new IOException("nested deeper than " + JsonTokenizer.MAX_DEPTH);
+        }
+        if (null == value) {
+            json.append("null");
+        } else if (value instanceof CharSequence || value instanceof Character || value instanceof Enum) {
+            writeString(json, value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        } else if (value instanceof Number) {
+            writeNumber(json, (Number) value);
+        } else if (value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                writeString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                writeValue(json, entry.getValue(), depth + 1);
+            }
+            json.append('}');
+        } else if (value instanceof Iterable) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                writeValue(json, element, depth + 1);
+            }
+            json.append(']');
+        } else if (value.getClass().isArray()) {
+            json.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                writeValue(json, Array.get(value, i), depth + 1);
+            }
+            json.append(']');
+        } else {
+            throw new IOException("cannot write " + value.getClass().getName()
+                    + " as JSON without jackson-databind");
+        }
+    }
+
+    private static void writeNumber(StringBuilder json, Number number) {
+        if ((number instanceof Double && !Double.isFinite(number.doubleValue()))
+                || (number instanceof Float && !Float.isFinite(number.floatValue()))) {
+            // not representable as a JSON number
+            writeString(json, number.toString());
+        } else {
+            json.append(number);
+        }
+    }
+
+    private static void writeString(StringBuilder json, String s) {
+        json.append('"');
+        int start = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String escape;
+            if ('"' == c) {
+                escape = "\\\"";
+            } else if ('\\' == c) {
+                escape = "\\\\";
+            } else if (c >= 0x20) {
+                continue;
+            } else if ('\n' == c) {
+                escape = "\\n";
+            } else if ('\r' == c) {
+                escape = "\\r";
+            } else if ('\t' == c) {
+                escape = "\\t";
+            } else if ('\b' == c) {
+                escape = "\\b";
+            } else if ('\f' == c) {
+                escape = "\\f";
+            } else {
+                escape = String.format("\\u%04X", (int) c);
+            }
+            json.append(s, start, i).append(escape);
+            start = i + 1;
+        }
+        json.append(s, start, length).append('"');
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
+
+/**
+ * Decides when a {@link RefreshableResponseProvider} refreshes its
+ * {@link ExpiringResponse}.
+ *
+ * <p>
+ * The default, {@link FixedLeadTime}, refreshes a fixed number of seconds before
+ * expiration.  Every process that obtained its response at the same time then
+ * refreshes at the same time.
+ * To spread the refreshes of a fleet of processes, use {@link FractionOfLifetime}
+ * with some jitter.
+ */
+public interface RefreshPolicy {
+
+    /**
+     * Refresh 10 seconds before expiration, but no sooner than 30 seconds.
+     */
+    RefreshPolicy DEFAULT = new FixedLeadTime(
+            RefreshableResponseProvider.REFRESH_BACKOFF_SECONDS,
+            RefreshableResponseProvider.MIN_REFRESH_SECONDS);
+
+    /**
+     * Gets the milliseconds from now until the response should be refreshed.
+     *
+     * @param response the current, just-obtained response
+     * @return the milliseconds until refresh
+     */
+    long getRefreshDelayMillis(ExpiringResponse response);
+
+    /**
+     * Refreshes a fixed lead time before expiration.
+     */
+    public static class FixedLeadTime implements RefreshPolicy {
+        private final long leadSeconds;
+        private final long minimumSeconds;
+
+        /**
+         * Construct a FixedLeadTime policy.
+         *
+         * @param leadSeconds the seconds before expiration to refresh
+         * @param minimumSeconds the minimum seconds to wait before refreshing,
+         *      regardless of expiration
+         */
+        public FixedLeadTime(long leadSeconds, long minimumSeconds) {
+            if (leadSeconds < 0) {
+                throw new IllegalArgumentException("leadSeconds cannot be negative: " + leadSeconds);
+            }
+            if (minimumSeconds < 0) {
+                throw new IllegalArgumentException("minimumSeconds cannot be negative: " + minimumSeconds);
+            }
+            this.leadSeconds = leadSeconds;
+            this.minimumSeconds = minimumSeconds;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getRefreshDelayMillis(ExpiringResponse response) {
+            return TimeUnit.SECONDS.toMillis(
+                    Math.max(response.getExpiresIn() - leadSeconds, minimumSeconds));
+        }
+    }
+
+    /**
+     * Refreshes after a fraction of the response lifetime,
+     * plus or minus a random jitter, also expressed as a fraction of the lifetime.
+     * For example, a fraction of 0.75 and jitter of 0.1 refreshes a 1-hour token
+     * uniformly between 39 and 51 minutes after it was obtained.
+     */
+    public static class FractionOfLifetime implements RefreshPolicy {
+        /**
+         * Never refresh sooner than this, in milliseconds.
+         */
+        static final long MINIMUM_DELAY_MILLIS = 1000L;
+
+        private final double fraction;
+        private final double jitter;
+        private final Random random;
+
+        /**
+         * Construct a FractionOfLifetime policy.
+         *
+         * @param fraction the fraction of the lifetime after which to refresh,
+         *      greater than 0 and less than 1
+         * @param jitter the maximum random deviation, as a fraction of the lifetime,
+         *      from 0 up to the smaller of fraction and (1 - fraction)
+         */
+        public FractionOfLifetime(double fraction, double jitter) {
+            this(fraction, jitter, null);
+        }
+
+        /**
+         * Construct a FractionOfLifetime policy with the specified source of randomness.
+         * Use this if you want to inject your own Random, such as during unit tests.
+         *
+         * @param fraction the fraction of the lifetime after which to refresh,
+         *      greater than 0 and less than 1
+         * @param jitter the maximum random deviation, as a fraction of the lifetime,
+         *      from 0 up to the smaller of fraction and (1 - fraction)
+         * @param random the source of randomness, or null for {@link ThreadLocalRandom}
+         */
+        public FractionOfLifetime(double fraction, double jitter, Random random) {
+            if (!(fraction > 0.0 && fraction < 1.0)) {
+                throw new IllegalArgumentException("fraction must be between 0 and 1: " + fraction);
+            }
+            if (!(jitter >= 0.0 && jitter <= Math.min(fraction, 1.0 - fraction))) {
+                throw new IllegalArgumentException("jitter must be between 0 and "
+                        + Math.min(fraction, 1.0 - fraction) + ": " + jitter);
+            }
+            this.fraction = fraction;
+            this.jitter = jitter;
+            this.random = random;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getRefreshDelayMillis(ExpiringResponse response) {
+            long lifetimeMillis = TimeUnit.SECONDS.toMillis(response.getExpiresIn());
+            double offset = 0.0;
+            if (jitter > 0.0) {
+                double uniform = null != random ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+                // uniform in [-jitter, +jitter)
+                offset = (2.0 * uniform - 1.0) * jitter;
+            }
+            long delayMillis = (long) (lifetimeMillis * (fraction + offset));
+            return Math.max(delayMillis, MINIMUM_DELAY_MILLIS);
+        }
+    }
+}
@@ -16,10 +16,17 @@
 package com.here.account.util;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
@@ -28,8 +35,10 @@ import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
  * Use this class if you want to always have an unexpired view of an expiring response object 
  * (within reason we expect that each request calls {@link #getUnexpiredResponse()} which is 
  * intended to execute quickly).
- * Strategy is to use a dedicated thread-scheduled executor service, to retrieve and set your 
- * ExpiringResponse to be always up-to-date.
+ * Strategy is to use a scheduler, to retrieve and set your 
+ * ExpiringResponse to be always up-to-date.  By default the process-wide 
+ * {@link SharedRefreshScheduler} is used, so that many providers share a few threads; 
+ * alternatively you can specify a dedicated ScheduledExecutorService.
  * 
  * <p>
  * Token provider which handles refreshing tokens on a configurable interval.
@@ -40,6 +49,15 @@ import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
  * continues to be valid.
  * 
  * <p>
+ * Optionally, with {@link Builder#setStaleWhileRevalidate(long, long)}, 
+ * {@link #getUnexpiredResponse()} itself also watches expiration, 
+ * in case scheduled refreshes have been failing.
+ * Within a soft window before expiration it returns the current response and 
+ * triggers a background refresh; once expired it waits, for a bounded time, 
+ * on a single background refresh rather than return an expired response.
+ * A successful background refresh reschedules the next scheduled refresh.
+ * 
+ * <p>
  * Adapted from HERE DG class RefreshableTokenAuthenticationProvider.
  * 
  * @author kmccrack
@@ -58,7 +76,8 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
    */
   static final long REFRESH_BACKOFF_SECONDS = 10;
   /**
-   * number of seconds to wait before refreshing a token previous refresh call failed
+   * number of seconds to wait before refreshing a token previous refresh call failed, 
+   * unless a retry backoff is configured
    */
   static final long RETRY_FAIL_SECONDS = 10;
 
@@ -70,13 +89,54 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
    * refresh is scheduled at this fixed interval in milliseconds.
    */
   private final Long refreshIntervalMillis;
-  private boolean started;
+  private final RefreshPolicy refreshPolicy;
+  /**
+   * If specified, the milliseconds before expiration within which 
+   * {@link #getUnexpiredResponse()} triggers a background refresh.
+   */
+  private final Long softWindowMillis;
+  /**
+   * The maximum milliseconds {@link #getUnexpiredResponse()} waits for the 
+   * background refresh of an expired response.
+   */
+  private final long blockingRefreshTimeoutMillis;
+  /**
+   * If specified, the backoff between retries of failed refreshes.
+   */
+  private final ExponentialBackoff retryBackoff;
+  /**
+   * If specified, stops refreshes while the refresh endpoint is unhealthy.
+   */
+  private final CircuitBreaker circuitBreaker;
+  /**
+   * If specified, run this many milliseconds before each scheduled refresh, 
+   * to prepare for it.
+   */
+  private final Runnable beforeRefresh;
+  private final long beforeRefreshLeadMillis;
+  /**
+   * If not null, refreshes run on this Executor, rather than on the scheduler's thread.
+   */
+  private final Executor refreshExecutor;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  /**
+   * The scheduled refresh and its beforeRefresh task, cancelled on {@link #shutdown()}.
+   */
+  private volatile Future<?> scheduledRefresh;
+  private volatile Future<?> scheduledBeforeRefresh;
+  /**
+   * The refresh in progress, if any, so concurrent triggers share one refresh.
+   */
+  private final AtomicReference<CompletableFuture<T>> inFlightRefresh = 
+          new AtomicReference<CompletableFuture<T>>();
+  private volatile boolean started;
   private volatile T refreshToken;  //volatile so consistent across threads
   private Clock clock;
 
   /**
    * Create a RefreshableResponseProvider with optional refreshIntervalMillis, initialToken, 
    * and refreshTokenFunction.
+   * Refreshes are scheduled on the process-wide {@link SharedRefreshScheduler}.
    * 
    * @param refreshIntervalMillis optional.  only specify during tests, not in real code.  
    *     if you want to ignore the normal response 
@@ -92,10 +152,10 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
       final T initialToken,
       final ResponseRefresher<T> refreshTokenFunction
   ) {
-      this(Clock.SYSTEM, refreshIntervalMillis, 
-              initialToken, refreshTokenFunction,
-              getScheduledExecutorServiceSize1()
-              );
+      this(RefreshableResponseProvider.<T>builder()
+              .setRefreshIntervalMillis(refreshIntervalMillis)
+              .setInitialToken(initialToken)
+              .setRefreshTokenFunction(refreshTokenFunction));
   }
   
   /**
@@ -126,21 +186,257 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
           final ResponseRefresher<T> refreshTokenFunction,
           final ScheduledExecutorService scheduledExecutorService
       ) {
-      Objects.requireNonNull(clock, "clock cannot be null");
-      Objects.requireNonNull(initialToken, "initialToken cannot be null");
-      Objects.requireNonNull(refreshTokenFunction, "refreshTokenFunction cannot be null");
-      Objects.requireNonNull(scheduledExecutorService, "scheduledExecutorService cannot be null");
+      this(RefreshableResponseProvider.<T>builder()
+              .setClock(Objects.requireNonNull(clock, "clock cannot be null"))
+              .setRefreshIntervalMillis(refreshIntervalMillis)
+              .setInitialToken(initialToken)
+              .setRefreshTokenFunction(refreshTokenFunction)
+              .setScheduledExecutorService(
+                      Objects.requireNonNull(scheduledExecutorService, "scheduledExecutorService cannot be null")));
+  }
+  
+  private RefreshableResponseProvider(Builder<T> builder) {
+      Objects.requireNonNull(builder.initialToken, "initialToken cannot be null");
+      Objects.requireNonNull(builder.refreshTokenFunction, "refreshTokenFunction cannot be null");
       
-      this.clock = clock;
-      this.refreshIntervalMillis = refreshIntervalMillis;
-      this.refreshToken = initialToken;
-      this.refreshTokenFunction = refreshTokenFunction;
+      if (null != builder.clock) {
+          this.clock = builder.clock;
+          this.scheduledExecutorService = null != builder.scheduledExecutorService 
+                  ? builder.scheduledExecutorService 
+                  : getScheduledExecutorServiceSize1();
+      } else if (null != builder.scheduledExecutorService) {
+          this.clock = Clock.SYSTEM;
+          this.scheduledExecutorService = builder.scheduledExecutorService;
+      } else {
+          // share the process-wide scheduler rather than a thread per provider
+          this.clock = SharedRefreshScheduler.getInstance().getClock();
+          this.scheduledExecutorService = null;
+      }
+      // keep blocking refreshes off the shared scheduler's few worker threads
+      this.refreshExecutor = null != builder.refreshExecutor || null != scheduledExecutorService
+              ? builder.refreshExecutor
+              : SharedRefreshScheduler.getDefaultRefreshExecutor();
+      this.refreshIntervalMillis = builder.refreshIntervalMillis;
+      this.refreshPolicy = null != builder.refreshPolicy ? builder.refreshPolicy : RefreshPolicy.DEFAULT;
+      this.softWindowMillis = builder.softWindowMillis;
+      this.blockingRefreshTimeoutMillis = builder.blockingRefreshTimeoutMillis;
+      this.retryBackoff = builder.retryBackoff;
+      this.circuitBreaker = builder.circuitBreaker;
+      this.beforeRefresh = builder.beforeRefresh;
+      this.beforeRefreshLeadMillis = builder.beforeRefreshLeadMillis;
+      this.refreshToken = builder.initialToken;
+      this.refreshTokenFunction = builder.refreshTokenFunction;
 
-      this.scheduledExecutorService = scheduledExecutorService;
       this.started = true;
       scheduleTokenRefresh(nextRefreshInterval());
   }
 
+  /**
+   * Get a builder for a RefreshableResponseProvider, for when you want to configure 
+   * more than the constructors allow.
+   * 
+   * @param <T> the response type that expires periodically
+   * @return the builder
+   */
+  public static <T extends ExpiringResponse> Builder<T> builder() {
+      return new Builder<T>();
+  }
+  
+  /**
+   * Builds a {@link RefreshableResponseProvider}.
+   * At a minimum you must set the initialToken and the refreshTokenFunction.
+   * 
+   * @param <T> the response type that expires periodically
+   */
+  public static class Builder<T extends ExpiringResponse> {
+      private Clock clock;
+      private ScheduledExecutorService scheduledExecutorService;
+      private Long refreshIntervalMillis;
+      private RefreshPolicy refreshPolicy;
+      private Long softWindowMillis;
+      private long blockingRefreshTimeoutMillis;
+      private ExponentialBackoff retryBackoff;
+      private CircuitBreaker circuitBreaker;
+      private Runnable beforeRefresh;
+      private long beforeRefreshLeadMillis;
+      private Executor refreshExecutor;
+      private T initialToken;
+      private ResponseRefresher<T> refreshTokenFunction;
+      
+      private Builder() {
+      }
+      
+      /**
+       * Sets the clock.  
+       * If neither the clock nor the scheduledExecutorService are set, 
+       * refreshes are scheduled on the process-wide {@link SharedRefreshScheduler}.
+       * 
+       * @param clock the implementation of a clock you want to use
+       * @return this
+       */
+      public Builder<T> setClock(Clock clock) {
+          this.clock = clock;
+          return this;
+      }
+      
+      /**
+       * Sets a dedicated ScheduledExecutorService to refresh on, 
+       * which is shut down on {@link RefreshableResponseProvider#shutdown()}.
+       * 
+       * @param scheduledExecutorService the ScheduledExecutorService to refresh on
+       * @return this
+       */
+      public Builder<T> setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+          this.scheduledExecutorService = scheduledExecutorService;
+          return this;
+      }
+      
+      /**
+       * Sets a fixed refresh interval, overriding the refreshPolicy.
+       * Only specify during tests, not in real code.
+       * 
+       * @param refreshIntervalMillis the fixed refresh interval in milliseconds, or null
+       * @return this
+       */
+      public Builder<T> setRefreshIntervalMillis(Long refreshIntervalMillis) {
+          this.refreshIntervalMillis = refreshIntervalMillis;
+          return this;
+      }
+      
+      /**
+       * Sets when to refresh.  Defaults to {@link RefreshPolicy#DEFAULT}.
+       * 
+       * @param refreshPolicy the refresh policy
+       * @return this
+       */
+      public Builder<T> setRefreshPolicy(RefreshPolicy refreshPolicy) {
+          this.refreshPolicy = refreshPolicy;
+          return this;
+      }
+      
+      /**
+       * Enables stale-while-revalidate in {@link RefreshableResponseProvider#getUnexpiredResponse()}, 
+       * a safety net for when scheduled refreshes fail.
+       * Within <tt>softWindowMillis</tt> before expiration, the current response is 
+       * returned immediately and a background refresh is triggered.
+       * Once expired, callers wait on a single background refresh shared by all callers, 
+       * at most <tt>blockingRefreshTimeoutMillis</tt> each.
+       * If that refresh fails or times out, an IllegalStateException is thrown 
+       * instead of returning the expired response.
+       * 
+       * @param softWindowMillis the milliseconds before expiration to trigger a background refresh
+       * @param blockingRefreshTimeoutMillis the maximum milliseconds to wait for a 
+       *     refresh of an expired response
+       * @return this
+       */
+      public Builder<T> setStaleWhileRevalidate(long softWindowMillis, long blockingRefreshTimeoutMillis) {
+          if (softWindowMillis < 0) {
+              throw new IllegalArgumentException("softWindowMillis cannot be negative: " + softWindowMillis);
+          }
+          if (blockingRefreshTimeoutMillis <= 0) {
+              throw new IllegalArgumentException("blockingRefreshTimeoutMillis must be positive: " 
+                      + blockingRefreshTimeoutMillis);
+          }
+          this.softWindowMillis = softWindowMillis;
+          this.blockingRefreshTimeoutMillis = blockingRefreshTimeoutMillis;
+          return this;
+      }
+      
+      /**
+       * Sets the backoff between retries of failed refreshes.
+       * If not set, failed refreshes are retried every 10 seconds.
+       * 
+       * @param retryBackoff the backoff between retries
+       * @return this
+       */
+      public Builder<T> setRetryBackoff(ExponentialBackoff retryBackoff) {
+          this.retryBackoff = retryBackoff;
+          return this;
+      }
+      
+      /**
+       * Sets the circuit breaker consulted before each refresh.
+       * While it is open, refreshes fail without calling the refreshTokenFunction.
+       * The circuit breaker may be shared with other providers refreshing from 
+       * the same endpoint.
+       * 
+       * @param circuitBreaker the circuit breaker
+       * @return this
+       */
+      public Builder<T> setCircuitBreaker(CircuitBreaker circuitBreaker) {
+          this.circuitBreaker = circuitBreaker;
+          return this;
+      }
+      
+      /**
+       * Sets a task run <tt>leadMillis</tt> before each scheduled refresh, 
+       * such as preparing the refresh request off the refresh's critical path.
+       * Refreshes scheduled sooner than <tt>leadMillis</tt> from now run without it.
+       * 
+       * @param beforeRefresh the task to run before each scheduled refresh
+       * @param leadMillis how many milliseconds before the refresh to run it; must be positive
+       * @return this
+       */
+      public Builder<T> setBeforeRefresh(Runnable beforeRefresh, long leadMillis) {
+          Objects.requireNonNull(beforeRefresh, "beforeRefresh cannot be null");
+          if (leadMillis <= 0) {
+              throw new IllegalArgumentException("leadMillis must be positive: " + leadMillis);
+          }
+          this.beforeRefresh = beforeRefresh;
+          this.beforeRefreshLeadMillis = leadMillis;
+          return this;
+      }
+      
+      /**
+       * Sets the Executor that refreshes run on.  
+       * The scheduler then only hands each refresh to it, 
+       * so a slow or blocking refresh never holds up the scheduler's threads, 
+       * such as the few shared by the {@link SharedRefreshScheduler}.
+       * By default, refreshes scheduled on the SharedRefreshScheduler run on its bounded
+       * {@link SharedRefreshScheduler#getDefaultRefreshExecutor()}, 
+       * and refreshes scheduled on your own ScheduledExecutorService run on its thread.
+       * 
+       * @param refreshExecutor the Executor to refresh on
+       * @return this
+       */
+      public Builder<T> setRefreshExecutor(Executor refreshExecutor) {
+          this.refreshExecutor = refreshExecutor;
+          return this;
+      }
+      
+      /**
+       * Sets the initial value of an active token.
+       * 
+       * @param initialToken the initial value of an active token
+       * @return this
+       */
+      public Builder<T> setInitialToken(T initialToken) {
+          this.initialToken = initialToken;
+          return this;
+      }
+      
+      /**
+       * Sets the ability to refresh and get a new token prior to the 
+       * previous one expiring.
+       * 
+       * @param refreshTokenFunction the refresh function
+       * @return this
+       */
+      public Builder<T> setRefreshTokenFunction(ResponseRefresher<T> refreshTokenFunction) {
+          this.refreshTokenFunction = refreshTokenFunction;
+          return this;
+      }
+      
+      /**
+       * Build the RefreshableResponseProvider, which schedules its first refresh.
+       * 
+       * @return the RefreshableResponseProvider
+       */
+      public RefreshableResponseProvider<T> build() {
+          return new RefreshableResponseProvider<T>(this);
+      }
+  }
+
   /*---- public -------------------------------------------------------------*/
 
   /**
@@ -192,18 +488,46 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
   }
   
   /**
-   * Shutdown the background threads
+   * Shutdown the background threads, and cancel the scheduled refresh.
    */
   public void shutdown() {
     if (started) {
       try {
         LOG.info("Shutting down refresh token thread");
-        scheduledExecutorService.shutdown();
+        if (null != scheduledExecutorService) {
+          scheduledExecutorService.shutdown();
+        }
       } finally {
         started = false;
+        cancelScheduledRefresh();
       }
     }
   }
+  
+  /**
+   * Cancels the scheduled refresh, if any, 
+   * so that the scheduler no longer references this provider.
+   */
+  private void cancelScheduledRefresh() {
+    cancel(scheduledBeforeRefresh);
+    cancel(scheduledRefresh);
+  }
+  
+  private static void cancel(Future<?> scheduled) {
+    if (null != scheduled) {
+      scheduled.cancel(false);
+    }
+  }
+
+  /**
+   * Gets the number of consecutive failed refreshes, including refreshes 
+   * rejected by an open circuit breaker.  It is 0 after a successful refresh.
+   * 
+   * @return the number of consecutive failed refreshes
+   */
+  public int getConsecutiveFailures() {
+    return consecutiveFailures.get();
+  }
 
   /*---- TokenAuthenticationProvider ----------------------------------------*/
 
@@ -219,10 +543,42 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
    * It is assumed that your code always comes back to this method, for every 
    * API request.
    * 
+   * <p>
+   * With stale-while-revalidate enabled, this triggers a background refresh if the response 
+   * is about to expire, and waits for a background refresh if it has expired.
+   * 
    * @return the unexpired response
+   * @throws IllegalStateException with stale-while-revalidate enabled, if the response 
+   *     expired and could not be refreshed in time
    */
   public T getUnexpiredResponse() {
-      return refreshToken;
+      T current = refreshToken;
+      if (null == softWindowMillis || !started) {
+          return current;
+      }
+      long expiresAtMillis = current.getStartTimeMilliseconds() 
+              + TimeUnit.SECONDS.toMillis(current.getExpiresIn());
+      long nowMillis = clock.currentTimeMillis();
+      if (nowMillis < expiresAtMillis - softWindowMillis) {
+          return current;
+      }
+      if (nowMillis < expiresAtMillis) {
+          startRefresh(false);
+          return current;
+      }
+      
+      // expired; every caller waits, with a deadline, for one background refresh
+      try {
+          return startRefresh(false).get(blockingRefreshTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("interrupted waiting for refresh of expired response", e);
+      } catch (ExecutionException e) {
+          throw new IllegalStateException("trouble refreshing expired response: " + e.getCause(), e.getCause());
+      } catch (TimeoutException e) {
+          throw new IllegalStateException("timed out after " + blockingRefreshTimeoutMillis 
+                  + " ms waiting for refresh of expired response", e);
+      }
   }
 
   /*---- private ------------------------------------------------------------*/
@@ -236,10 +592,7 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
       return refreshIntervalMillis;
     }
 
-    //remove a few seconds to give time to refresh before token expires
-    return TimeUnit.SECONDS.toMillis(
-        Math.max(refreshToken.getExpiresIn() - REFRESH_BACKOFF_SECONDS, MIN_REFRESH_SECONDS)
-    );
+    return refreshPolicy.getRefreshDelayMillis(refreshToken);
   }
 
   /**
@@ -251,19 +604,50 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
       return;
     }
 
+    if (null != beforeRefresh && millis > beforeRefreshLeadMillis) {
+      scheduledBeforeRefresh = clock.scheduleCancellable(scheduledExecutorService, new Runnable() {
+          @Override
+          public void run() {
+            if (started) {
+              try {
+                beforeRefresh.run();
+              } catch (RuntimeException exp) {
+                LOG.warning("trouble preparing token refresh " + exp);
+              }
+            }
+          }
+        }, millis - beforeRefreshLeadMillis);
+    }
+
     LOG.info("Scheduling next token refresh in " + millis + " milliseconds");
-    clock.schedule(scheduledExecutorService, new Runnable() {
+    scheduledRefresh = clock.scheduleCancellable(scheduledExecutorService, new Runnable() {
         @Override
         public void run() {
           refreshToken();
         }
       }, millis);
+    if (!started) {
+      // shut down while scheduling
+      cancelScheduledRefresh();
+    }
+  }
+
+  /**
+   * Replace the scheduled refresh with one the specified milliseconds from now.
+   */
+  private synchronized void rescheduleTokenRefresh(long millis) {
+    cancelScheduledRefresh();
+    scheduleTokenRefresh(millis);
   }
 
   /**
    * Execute the token refresh.
    */
   private void refreshToken() {
+    if (!started) {
+      // a refresh scheduled before shutdown
+      return;
+    }
     LOG.info(
         String.format(
             "Refreshing HERE auth token (idle %s seconds)",
@@ -271,15 +655,102 @@ public class RefreshableResponseProvider<T extends ExpiringResponse> {
         )
     );
 
-    try {
-      this.refreshToken = refreshTokenFunction.refresh(refreshToken);
-      scheduleTokenRefresh(nextRefreshInterval());
-    } catch (Exception exp) {
-      LOG.warning("Failed to refresh HERE token " + exp);
-      scheduleTokenRefresh(
-          Math.min(nextRefreshInterval(), RETRY_FAIL_SECONDS)  //try again within time window if call failed
-      );
+    // if getUnexpiredResponse() already triggered a refresh, share it;
+    // a successful refresh schedules the next one itself
+    startRefresh(null == refreshExecutor).whenComplete((T response, Throwable exp) -> {
+      if (null != exp) {
+        LOG.warning("Failed to refresh HERE token " + exp);
+        scheduleTokenRefresh(nextRetryInterval());
+      }
+    });
+  }
+  
+  /**
+   * Determine the interval to schedule the retry of a failed refresh
+   */
+  //@VisibleForTesting
+  long nextRetryInterval() {
+    long millis;
+    if (null != retryBackoff) {
+      millis = retryBackoff.getDelayMillis(consecutiveFailures.get());
+    } else {
+      //try again within time window if call failed
+      millis = Math.min(nextRefreshInterval(), TimeUnit.SECONDS.toMillis(RETRY_FAIL_SECONDS));
+    }
+    if (null != circuitBreaker) {
+      // no point retrying before the circuit breaker allows a trial call
+      millis = Math.max(millis, circuitBreaker.getRemainingOpenMillis());
+    }
+    return millis;
+  }
+  
+  /**
+   * Starts a refresh, unless one is already in progress.
+   * Once a new refresh succeeds, the scheduled refresh is replaced by one 
+   * for the new response.
+   * 
+   * @param inline true to run a new refresh on the calling thread, 
+   *     false to run it on the refreshExecutor, if specified, otherwise on the scheduler
+   * @return the refresh in progress
+   */
+  private CompletableFuture<T> startRefresh(boolean inline) {
+    final CompletableFuture<T> ours = new CompletableFuture<T>();
+    CompletableFuture<T> existing;
+    while (null == (existing = inFlightRefresh.get())) {
+      if (inFlightRefresh.compareAndSet(null, ours)) {
+        break;
+      }
+    }
+    if (null != existing) {
+      return existing;
+    }
+    ours.thenRun(() -> rescheduleTokenRefresh(nextRefreshInterval()));
+    
+    Runnable refresh = new Runnable() {
+      @Override
+      public void run() {
+        if (null != circuitBreaker && !circuitBreaker.allowRequest()) {
+          consecutiveFailures.incrementAndGet();
+          inFlightRefresh.compareAndSet(ours, null);
+          ours.completeExceptionally(new IllegalStateException("circuit breaker open, not refreshing"));
+          return;
+        }
+        try {
+          T refreshed = refreshTokenFunction.refresh(refreshToken);
+          refreshToken = refreshed;
+          consecutiveFailures.set(0);
+          if (null != circuitBreaker) {
+            circuitBreaker.recordSuccess();
+          }
+          inFlightRefresh.compareAndSet(ours, null);
+          ours.complete(refreshed);
+        } catch (Throwable exp) {
+          // even an Error must clear the in-flight refresh, end a circuit breaker trial, 
+          // and reach the callers through the future, or no refresh would ever run again
+          consecutiveFailures.incrementAndGet();
+          if (null != circuitBreaker) {
+            circuitBreaker.recordFailure();
+          }
+          inFlightRefresh.compareAndSet(ours, null);
+          ours.completeExceptionally(exp);
+        }
+      }
+    };
+    if (inline) {
+      refresh.run();
+    } else {
+      try {
+        if (null != refreshExecutor) {
+          refreshExecutor.execute(refresh);
+        } else {
+          clock.schedule(scheduledExecutorService, refresh, 0L);
+        }
+      } catch (RuntimeException exp) {
+        inFlightRefresh.compareAndSet(ours, null);
+        ours.completeExceptionally(exp);
+      }
     }
+    return ours;
   }
 }
 
@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A process-wide scheduler for token refreshes, so that thousands of
+ * {@link RefreshableResponseProvider}s do not each need their own thread.
+ *
+ * <p>
+ * Scheduled tasks are held in a hashed timer wheel, advanced by a single
+ * "here-auth-refresh-timer" thread once per tick.
+ * Due tasks are handed to a small, fixed-size pool of "here-auth-refresh"
+ * worker threads, which perform the actual refreshes.
+ * Scheduling and cancelling are O(1), and the thread count does not grow
+ * with the number of scheduled tasks.
+ * Tasks run no earlier than their delay, and typically within one tick after it.
+ * Due tasks queue for a free worker without bound, so tasks should be short;
+ * hand blocking work, such as a token request, to another Executor,
+ * as {@link RefreshableResponseProvider.Builder#setRefreshExecutor(java.util.concurrent.Executor)} does,
+ * or to the bounded {@link #getDefaultRefreshExecutor()}.
+ *
+ * <p>
+ * Use {@link #getClock()} to get a {@link Clock} that schedules onto this
+ * scheduler.
+ */
+public class SharedRefreshScheduler {
+
+    private static final Logger LOG = Logger.getLogger(SharedRefreshScheduler.class.getName());
+
+    /**
+     * Default timer wheel tick duration, in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 100L;
+
+    /**
+     * Default number of timer wheel buckets.
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * Default number of worker threads running due tasks.
+     */
+    public static final int DEFAULT_WORKER_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Number of threads of the {@link #getDefaultRefreshExecutor()}.
+     */
+    public static final int DEFAULT_REFRESH_THREADS = 8;
+
+    /**
+     * Maximum number of refreshes queued for a thread of the {@link #getDefaultRefreshExecutor()}.
+     */
+    public static final int DEFAULT_REFRESH_QUEUE_CAPACITY = 1024;
+
+    private static class InstanceHolder {
+        private static final SharedRefreshScheduler INSTANCE = new SharedRefreshScheduler(
+                DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, DEFAULT_WORKER_THREADS);
+    }
+
+    /**
+     * Gets the process-wide SharedRefreshScheduler.
+     * Its threads are daemon threads, and are started on first use.
+     *
+     * @return the process-wide SharedRefreshScheduler
+     */
+    public static SharedRefreshScheduler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static class RefreshExecutorHolder {
+        private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+                DEFAULT_REFRESH_THREADS, DEFAULT_REFRESH_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_REFRESH_QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "here-auth-refresh-io-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Gets the process-wide Executor for blocking refreshes,
+     * used by {@link RefreshableResponseProvider}s scheduled on the {@link #getInstance()}
+     * that do not set their own refreshExecutor, so that slow token requests
+     * do not hold up the worker threads.
+     * It has at most {@link #DEFAULT_REFRESH_THREADS} daemon threads, which time out when idle,
+     * and queues at most {@link #DEFAULT_REFRESH_QUEUE_CAPACITY} refreshes;
+     * beyond that it throws a RejectedExecutionException, and the refresh is retried later.
+     *
+     * @return the bounded Executor for blocking refreshes
+     */
+    public static Executor getDefaultRefreshExecutor() {
+        return RefreshExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * A handle to a scheduled task.
+     */
+    public static class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        /**
+         * Deadline in nanoseconds, relative to the scheduler start time.
+         */
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the task, if it has not yet been run.
+         *
+         * @return true if the task was cancelled by this call
+         */
+        public boolean cancel() {
+            return state.compareAndSet(ST_INIT, ST_CANCELLED);
+        }
+
+        /**
+         * @return true if the task was cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        /**
+         * @return true if the task was handed to a worker thread to run
+         */
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(ST_INIT, ST_EXPIRED);
+        }
+    }
+
+    /**
+     * A task scheduled by the {@link #getClock()}, which on cancel also cancels its Timeout.
+     */
+    private static class CancellableTask extends FutureTask<Void> {
+        private volatile Timeout timeout;
+
+        private CancellableTask(Runnable runnable) {
+            super(runnable, null);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Timeout scheduled = timeout;
+            if (cancelled && null != scheduled) {
+                scheduled.cancel();
+            }
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final LinkedList<Timeout>[] wheel;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ThreadPoolExecutor workers;
+    private final Thread tickThread;
+    private final Clock clock;
+
+    private volatile long startNanos;
+    private volatile boolean started;
+    private volatile boolean shutdown;
+
+    /**
+     * Construct a SharedRefreshScheduler.
+     * Most callers should instead use {@link #getInstance()}.
+     *
+     * @param tickMillis the timer wheel tick duration, in milliseconds;
+     *      tasks run within about one tick after their delay
+     * @param wheelSize the number of timer wheel buckets; rounded up to a power of 2
+     * @param workerThreads the number of worker threads running due tasks
+     */
+    @SuppressWarnings("unchecked")
+    public SharedRefreshScheduler(long tickMillis, int wheelSize, int workerThreads) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in (0, 2^30]: " + wheelSize);
+        }
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be positive: " + workerThreads);
+        }
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int normalizedWheelSize = Integer.highestOneBit(wheelSize);
+        if (normalizedWheelSize < wheelSize) {
+            normalizedWheelSize <<= 1;
+        }
+        this.mask = normalizedWheelSize - 1;
+        this.wheel = new LinkedList[normalizedWheelSize];
+        for (int i = 0; i < normalizedWheelSize; i++) {
+            wheel[i] = new LinkedList<Timeout>();
+        }
+
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "here-auth-refresh-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        this.tickThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTicks();
+            }
+        }, "here-auth-refresh-timer");
+        this.tickThread.setDaemon(true);
+
+        this.clock = new Clock() {
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            /**
+             * {@inheritDoc}
+             * The <tt>scheduledExecutorService</tt> is ignored, and may be null.
+             */
+            @Override
+            public void schedule(ScheduledExecutorService scheduledExecutorService, Runnable runnable,
+                    long millisecondsInTheFutureToSchedule) {
+                SharedRefreshScheduler.this.schedule(runnable, millisecondsInTheFutureToSchedule);
+            }
+
+            /**
+             * {@inheritDoc}
+             * The <tt>scheduledExecutorService</tt> is ignored, and may be null.
+             * Cancelling the handle also cancels the task's {@link Timeout}.
+             */
+            @Override
+            public Future<?> scheduleCancellable(ScheduledExecutorService scheduledExecutorService,
+                    Runnable runnable, long millisecondsInTheFutureToSchedule) {
+                CancellableTask task = new CancellableTask(runnable);
+                task.timeout = SharedRefreshScheduler.this.schedule(task, millisecondsInTheFutureToSchedule);
+                return task;
+            }
+
+        };
+    }
+
+    /**
+     * Gets a system Clock whose
+     * {@link Clock#schedule(ScheduledExecutorService, Runnable, long)}
+     * ignores its ScheduledExecutorService, and instead schedules onto this
+     * SharedRefreshScheduler.
+     *
+     * @return the Clock scheduling onto this SharedRefreshScheduler
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Schedules <tt>task</tt> to run on a worker thread,
+     * <tt>delayMillis</tt> in the future.
+     *
+     * @param task the task to run
+     * @param delayMillis the milliseconds in the future to run the task
+     * @return the handle to the scheduled task, which can be used to cancel it
+     * @throws IllegalStateException if this scheduler was shut down
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (null == task) {
+            throw new NullPointerException("task cannot be null");
+        }
+        if (shutdown) {
+            throw new IllegalStateException("SharedRefreshScheduler was shut down");
+        }
+        ensureStarted();
+        long deadlineNanos = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis)) - startNanos;
+        Timeout timeout = new Timeout(task, deadlineNanos);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Gets the number of tasks scheduled, but not yet run or found cancelled.
+     *
+     * @return the number of pending tasks
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the timer thread and worker threads.  Pending tasks never run.
+     * Do not shut down the {@link #getInstance()} scheduler;
+     * it is shared by the whole process.
+     */
+    public void shutdown() {
+        shutdown = true;
+        tickThread.interrupt();
+        workers.shutdown();
+    }
+
+    private void ensureStarted() {
+        if (!started) {
+            synchronized (this) {
+                if (!started) {
+                    startNanos = System.nanoTime();
+                    tickThread.start();
+                    started = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The timer thread loop.  Only the timer thread touches the wheel.
+     */
+    private void runTicks() {
+        long tick = 0;
+        while (!shutdown) {
+            long deadlineNanos = tickNanos * (tick + 1);
+            long sleepNanos = startNanos + deadlineNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            transferPendingTimeouts(tick);
+            expireTimeouts(wheel[(int) (tick & mask)], deadlineNanos);
+            tick++;
+        }
+    }
+
+    private void transferPendingTimeouts(long tick) {
+        Timeout timeout;
+        while (null != (timeout = pendingTimeouts.poll())) {
+            if (timeout.isCancelled()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            long calculatedTick = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+            // never schedule into a bucket already passed
+            long ticks = Math.max(calculatedTick, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(LinkedList<Timeout> bucket, long deadlineNanos) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+                pendingCount.decrementAndGet();
+            } else if (timeout.remainingRounds <= 0 && timeout.deadlineNanos <= deadlineNanos) {
+                iterator.remove();
+                pendingCount.decrementAndGet();
+                if (timeout.expire()) {
+                    run(timeout.task);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private void run(final Runnable task) {
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.warning("trouble running scheduled refresh " + e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warning("SharedRefreshScheduler was shut down, not running scheduled refresh");
+        }
+    }
+}
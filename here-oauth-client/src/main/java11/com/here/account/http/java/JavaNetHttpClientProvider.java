@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import com.here.account.http.AsyncHttpProvider;
+import com.here.account.http.BufferedHttpResponse;
+import com.here.account.http.HttpConstants;
+import com.here.account.http.HttpException;
+import com.here.account.http.ResponseBodyReader;
+import com.here.account.http.ResponseBodyTooLargeException;
+
+/**
+ * A pure-Java {@link AsyncHttpProvider} using the Java 11+ {@link HttpClient},
+ * with HTTP/2 stream multiplexing, connection reuse, and non-blocking
+ * {@link #executeAsync(HttpRequest)}, and no dependencies.
+ *
+ * <p>
+ * This class is only in the multi-release jar's <tt>META-INF/versions/11</tt>.
+ * Code that also runs on Java 8 can choose a provider at runtime with
+ * {@link com.here.account.http.HttpProviders#javaNetHttpClientIfAvailable()}:
+ * <pre>
+ * {@code
+       HttpProvider httpProvider = HttpProviders.javaNetHttpClientIfAvailable();
+       if (null == httpProvider) {
+           httpProvider = ApacheHttpClientProvider.builder().build();
+       }
+ * }
+ * </pre>
+ *
+ * <p>
+ * Responses are buffered in memory, up to a maximum size,
+ * which suits the small JSON bodies of token and API calls.
+ */
+public class JavaNetHttpClientProvider implements AsyncHttpProvider {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int connectionTimeoutInMs = HttpConstants.DEFAULT_CONNECTION_TIMEOUT_IN_MS;
+        private int requestTimeoutInMs = HttpConstants.DEFAULT_REQUEST_TIMEOUT_IN_MS;
+        private boolean http2 = true;
+        private int maxResponseBodyBytes = ResponseBodyReader.DEFAULT_MAX_BODY_BYTES;
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        public Builder setConnectionTimeoutInMs(int connectionTimeoutInMs) {
+            this.connectionTimeoutInMs = connectionTimeoutInMs;
+            return this;
+        }
+
+        public Builder setRequestTimeoutInMs(int requestTimeoutInMs) {
+            this.requestTimeoutInMs = requestTimeoutInMs;
+            return this;
+        }
+
+        /**
+         * Sets whether to prefer HTTP/2, default true.
+         * With HTTP/2, concurrent requests to a host share one connection.
+         *
+         * @param http2 true to prefer HTTP/2, false for HTTP/1.1 only
+         * @return this
+         */
+        public Builder setHttp2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a response body.
+         * Larger responses fail with a {@link ResponseBodyTooLargeException},
+         * having buffered no more than this many bytes.
+         * Default {@value ResponseBodyReader#DEFAULT_MAX_BODY_BYTES}.
+         *
+         * @param maxResponseBodyBytes the maximum number of response body bytes; must be positive
+         * @return this
+         */
+        public Builder setMaxResponseBodyBytes(int maxResponseBodyBytes) {
+            if (maxResponseBodyBytes <= 0) {
+                throw new IllegalArgumentException("maxResponseBodyBytes must be positive: " + maxResponseBodyBytes);
+            }
+            this.maxResponseBodyBytes = maxResponseBodyBytes;
+            return this;
+        }
+
+        /**
+         * Sets the Executor for the client's asynchronous tasks and callbacks.
+         * If unset, the HttpClient's default is used.
+         *
+         * @param executor the executor
+         * @return this
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Build the java.net.http based provider.
+         *
+         * @return the built AsyncHttpProvider
+         */
+        public AsyncHttpProvider build() {
+            HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+                    .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofMillis(connectionTimeoutInMs))
+                    .followRedirects(HttpClient.Redirect.NEVER);
+            if (null != executor) {
+                httpClientBuilder.executor(executor);
+            }
+            return new JavaNetHttpClientProvider(httpClientBuilder.build(),
+                    Duration.ofMillis(requestTimeoutInMs), maxResponseBodyBytes);
+        }
+    }
+
+    private static class JavaNetHttpRequest implements HttpRequest {
+
+        private final java.net.http.HttpRequest.Builder builder;
+
+        private JavaNetHttpRequest(java.net.http.HttpRequest.Builder builder) {
+            this.builder = builder;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addAuthorizationHeader(String value) {
+            builder.header(HttpConstants.AUTHORIZATION_HEADER, value);
+        }
+    }
+
+    private static class JavaNetHttpResponse implements BufferedHttpResponse {
+
+        private final int statusCode;
+        private final byte[] body;
+
+        private JavaNetHttpResponse(java.net.http.HttpResponse<byte[]> response) {
+            this.statusCode = response.statusCode();
+            this.body = response.body();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getContentLength() {
+            return null != body ? body.length : 0L;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public InputStream getResponseBody() throws IOException {
+            return null != body ? new ByteArrayInputStream(body) : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ByteBuffer getResponseBodyBuffer() {
+            return null != body ? ByteBuffer.wrap(body) : ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * Buffers a response body, failing as soon as it is known to be larger than the maximum,
+     * whether from its <tt>Content-Length</tt> or from the bytes received so far.
+     */
+    private static class BoundedBodySubscriber implements BodySubscriber<byte[]> {
+
+        private final int maxBodyBytes;
+        private final long contentLength;
+        private final ByteArrayOutputStream body;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+        private Flow.Subscription subscription;
+
+        private BoundedBodySubscriber(int maxBodyBytes, long contentLength) {
+            this.maxBodyBytes = maxBodyBytes;
+            this.contentLength = contentLength;
+            this.body = new ByteArrayOutputStream(contentLength >= 0 && contentLength <= maxBodyBytes
+                    ? (int) contentLength : 4096);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (contentLength > maxBodyBytes) {
+                // fail fast, without reading
+                tooLarge();
+                return;
+            }
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (result.isDone()) {
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                int n = buffer.remaining();
+                if (n > maxBodyBytes - body.size()) {
+                    tooLarge();
+                    return;
+                }
+                if (buffer.hasArray()) {
+                    body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+                } else {
+                    byte[] bytes = new byte[n];
+                    buffer.get(bytes);
+                    body.write(bytes, 0, n);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onComplete() {
+            result.complete(body.toByteArray());
+        }
+
+        private void tooLarge() {
+            subscription.cancel();
+            result.completeExceptionally(new ResponseBodyTooLargeException(maxBodyBytes));
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final BodyHandler<byte[]> bodyHandler;
+
+    private JavaNetHttpClientProvider(HttpClient httpClient, Duration requestTimeout, int maxResponseBodyBytes) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.bodyHandler = responseInfo -> new BoundedBodySubscriber(maxResponseBodyBytes,
+                responseInfo.headers().firstValueAsLong(HttpConstants.CONTENT_LENGTH_HEADER).orElse(-1L));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            String requestBodyJson) {
+        java.net.http.HttpRequest.Builder builder = newBuilder(url);
+        BodyPublisher bodyPublisher;
+        if (null == requestBodyJson) {
+            bodyPublisher = BodyPublishers.noBody();
+        } else {
+            builder.header(HttpConstants.CONTENT_TYPE_HEADER, HttpConstants.CONTENT_TYPE_JSON);
+            bodyPublisher = BodyPublishers.ofString(requestBodyJson, HttpConstants.ENCODING_CHARSET);
+        }
+        builder.method(method, bodyPublisher);
+
+        JavaNetHttpRequest httpRequest = new JavaNetHttpRequest(builder);
+        // application/json request bodies are never part of the OAuth1 Authorization header
+        httpRequestAuthorizer.authorize(httpRequest, method, url, null);
+        return httpRequest;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+            Map<String, List<String>> formParams) {
+        java.net.http.HttpRequest.Builder builder = newBuilder(url);
+        BodyPublisher bodyPublisher;
+        if (null == formParams) {
+            bodyPublisher = BodyPublishers.noBody();
+        } else {
+            builder.header(HttpConstants.CONTENT_TYPE_HEADER, HttpConstants.CONTENT_TYPE_FORM_URLENCODED);
+            try {
+                bodyPublisher = BodyPublishers.ofByteArray(JavaHttpProvider.getFormBody(formParams));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        builder.method(method, bodyPublisher);
+
+        JavaNetHttpRequest httpRequest = new JavaNetHttpRequest(builder);
+        // with application/x-www-form-urlencoded bodies,
+        // the request body is supposed to impact the signature.
+        httpRequestAuthorizer.authorize(httpRequest, method, url, formParams);
+        return httpRequest;
+    }
+
+    private java.net.http.HttpRequest.Builder newBuilder(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("malformed URL: " + e, e);
+        }
+        return java.net.http.HttpRequest.newBuilder(uri).timeout(requestTimeout);
+    }
+
+    private java.net.http.HttpRequest toJavaNetHttpRequest(HttpRequest httpRequest) {
+        if (!(httpRequest instanceof JavaNetHttpRequest)) {
+            throw new IllegalArgumentException("httpRequest is not of expected type; use "
+                    +getClass()+".getRequest(..) to get a request of the expected type");
+        }
+        return ((JavaNetHttpRequest) httpRequest).builder.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HttpResponse execute(HttpRequest httpRequest) throws HttpException, IOException {
+        java.net.http.HttpRequest request = toJavaNetHttpRequest(httpRequest);
+        try {
+            // blocking
+            return new JavaNetHttpResponse(httpClient.send(request, bodyHandler));
+        } catch (IOException e) {
+            // send(..) wraps the body subscriber's failure in a new IOException
+            if (e.getCause() instanceof ResponseBodyTooLargeException) {
+                throw (ResponseBodyTooLargeException) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted executing request");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest httpRequest) {
+        java.net.http.HttpRequest request = toJavaNetHttpRequest(httpRequest);
+
+        CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+        CompletableFuture<java.net.http.HttpResponse<byte[]>> sent =
+                httpClient.sendAsync(request, bodyHandler);
+        sent.whenComplete((response, t) -> {
+            if (null == t) {
+                future.complete(new JavaNetHttpResponse(response));
+                return;
+            }
+            Throwable cause = t instanceof CompletionException && null != t.getCause() ? t.getCause() : t;
+            future.completeExceptionally(cause instanceof IOException
+                    ? cause : new HttpException("trouble: " + cause, cause));
+        });
+        future.whenComplete((response, t) -> {
+            if (future.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        // the HttpClient releases its connections when no longer referenced
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.util.JsonSerializer;
+
+public class BatchSignatureVerifierTest {
+
+    private static final String ACCESS_KEY_ID = "access-key-id";
+    private static final String ACCESS_KEY_SECRET = "access-key-secret";
+    private static final String URL = "https://account.api.here.com/oauth2/token";
+
+    private ForkJoinPool forkJoinPool;
+    private Map<String, String> verificationKeys;
+
+    @Before
+    public void setUp() {
+        forkJoinPool = new ForkJoinPool(4);
+        verificationKeys = new HashMap<String, String>();
+        verificationKeys.put(ACCESS_KEY_ID, ACCESS_KEY_SECRET);
+    }
+
+    @After
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    private BatchSignatureVerifier.Builder builder() {
+        return BatchSignatureVerifier.builder()
+                .setForkJoinPool(forkJoinPool)
+                .setRecordsPerTask(7)
+                .setVerificationKeyProvider(new OAuth1Verifier.VerificationKeyProvider() {
+                    @Override
+                    public String getVerificationKey(String consumerKey) {
+                        return verificationKeys.get(consumerKey);
+                    }
+                });
+    }
+
+    private static String record(String consumerKey, String consumerSecret, SignatureMethod signatureMethod,
+            String nonce, String scope) throws IOException {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        formParams.put("scope", Collections.singletonList(scope));
+        long timestamp = 1480000000L;
+        String signature = new SignatureCalculator(consumerKey, consumerSecret).calculateSignature(
+                "POST", URL, timestamp, nonce, signatureMethod, formParams, null);
+
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("consumerKey", consumerKey);
+        record.put("method", "POST");
+        record.put("baseURL", URL);
+        record.put("timestamp", timestamp);
+        record.put("nonce", nonce);
+        record.put("signatureMethod", signatureMethod.getOauth1SignatureMethod());
+        record.put("signature", signature);
+        record.put("formParams", formParams);
+        record.put("loggedBy", Collections.singletonMap("host", "a"));
+        return JsonSerializer.toJson(record);
+    }
+
+    private static String record(String nonce) throws IOException {
+        return record(ACCESS_KEY_ID, ACCESS_KEY_SECRET, SignatureMethod.HMACSHA256, nonce, "openid");
+    }
+
+    @Test
+    public void test_verify_allValid() throws IOException {
+        StringBuilder records = new StringBuilder();
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            records.append(record(i % 2 == 0 ? SignatureMethod.HMACSHA256 : SignatureMethod.HMACSHA1, i))
+                    .append('\n');
+        }
+        BatchSignatureVerifier.Report report = builder().build().verify(
+                new ByteArrayInputStream(records.toString().getBytes(JsonSerializer.CHARSET)));
+        assertEquals(count, report.getRecordCount());
+        assertEquals(count, report.getValidCount());
+        assertEquals(0, report.getFailureCount());
+        assertTrue(report.getFailures().isEmpty());
+        assertTrue(report.getRecordsPerSecond() > 0);
+    }
+
+    private static String record(SignatureMethod signatureMethod, int i) throws IOException {
+        return record(ACCESS_KEY_ID, ACCESS_KEY_SECRET, signatureMethod, "nonce" + i, "scope" + i);
+    }
+
+    @Test
+    public void test_verify_ES512() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp521r1"));
+        KeyPair pair = generator.generateKeyPair();
+        verificationKeys.put("ec", Base64.encodeBase64String(pair.getPublic().getEncoded()));
+        String privateKey = Base64.encodeBase64String(pair.getPrivate().getEncoded());
+
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            records.append(record("ec", privateKey, SignatureMethod.ES512, "nonce" + i, "openid")).append('\n');
+        }
+        BatchSignatureVerifier.Report report = builder().build().verify(new StringReader(records.toString()));
+        assertEquals(20, report.getValidCount());
+        assertEquals(0, report.getFailureCount());
+    }
+
+    @Test
+    public void test_verify_failures() throws IOException {
+        String tampered = record("tampered").replace("openid", "all");
+        String records = record("a") + "\n"
+                + "\n"
+                + "not json\n"
+                + tampered + "\n"
+                + record("someone-else", ACCESS_KEY_SECRET, SignatureMethod.HMACSHA256, "b", "openid") + "\n"
+                + record("c").replace("HMAC-SHA256", "RSA-SHA1") + "\n"
+                + "{\"consumerKey\":\"access-key-id\"}\n"
+                + record("d") + "\n";
+        BatchSignatureVerifier.Report report = builder().build().verify(new StringReader(records));
+        assertEquals(7, report.getRecordCount());
+        assertEquals(2, report.getValidCount());
+        assertEquals(5, report.getFailureCount());
+
+        List<BatchSignatureVerifier.Failure> failures = report.getFailures();
+        assertEquals(5, failures.size());
+        assertEquals(3, failures.get(0).getRecordNumber());
+        assertEquals(BatchSignatureVerifier.Reason.MALFORMED_RECORD, failures.get(0).getReason());
+        assertNull(failures.get(0).getConsumerKey());
+        assertEquals(4, failures.get(1).getRecordNumber());
+        assertEquals(BatchSignatureVerifier.Reason.INVALID_SIGNATURE, failures.get(1).getReason());
+        assertEquals("tampered", failures.get(1).getNonce());
+        assertEquals(BatchSignatureVerifier.Reason.UNKNOWN_CONSUMER_KEY, failures.get(2).getReason());
+        assertEquals("someone-else", failures.get(2).getConsumerKey());
+        assertEquals(BatchSignatureVerifier.Reason.UNSUPPORTED_SIGNATURE_METHOD, failures.get(3).getReason());
+        assertEquals(7, failures.get(4).getRecordNumber());
+        assertEquals(BatchSignatureVerifier.Reason.MALFORMED_RECORD, failures.get(4).getReason());
+    }
+
+    @Test
+    public void test_verify_recordForms() throws IOException {
+        String valid = record("a");
+        String records = valid.replace("[\"client_credentials\"]", "\"client_credentials\"")
+                        .replace("[\"openid\"]", "\"openid\"") + "\n"
+                + valid.replace("1480000000", "1480000000.5") + "\n"
+                + valid.replace("1480000000", "\"1480000000\"") + "\n"
+                + valid.replace("\"formParams\":{", "\"formParams\":{\"x\":[1],") + "\n"
+                + valid + " {}\n";
+        BatchSignatureVerifier.Report report = builder().build().verify(new StringReader(records));
+        assertEquals(5, report.getRecordCount());
+        assertEquals(1, report.getValidCount());
+        for (BatchSignatureVerifier.Failure failure : report.getFailures()) {
+            assertEquals(failure.toString(), BatchSignatureVerifier.Reason.MALFORMED_RECORD, failure.getReason());
+        }
+    }
+
+    @Test
+    public void test_verify_maximumReportedFailures() throws IOException {
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            records.append("{}\n");
+        }
+        BatchSignatureVerifier.Report report = builder().setMaximumReportedFailures(10).build()
+                .verify(new StringReader(records.toString()));
+        assertEquals(100, report.getFailureCount());
+        assertEquals(10, report.getFailures().size());
+        // the lowest numbered, however the tasks finished
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, report.getFailures().get(i).getRecordNumber());
+        }
+    }
+
+    @Test
+    public void test_verify_readerThrows() throws IOException {
+        final AtomicInteger lookups = new AtomicInteger();
+        BatchSignatureVerifier verifier = builder()
+                .setVerificationKeyProvider(new OAuth1Verifier.VerificationKeyProvider() {
+                    @Override
+                    public String getVerificationKey(String consumerKey) {
+                        try {
+                            Thread.sleep(20L);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        lookups.incrementAndGet();
+                        return null;
+                    }
+                }).build();
+        StringBuilder records = new StringBuilder();
+        for (int i = 0; i < 14; i++) {
+            // unknown consumers, so every record looks up its key
+            records.append(record("unknown" + i, ACCESS_KEY_SECRET, SignatureMethod.HMACSHA256, "nonce" + i,
+                    "openid")).append('\n');
+        }
+        final BufferedReader lines = new BufferedReader(new StringReader(records.toString()));
+        try {
+            verifier.verify(new BufferedReader(new StringReader("")) {
+                @Override
+                public String readLine() throws IOException {
+                    String line = lines.readLine();
+                    if (null == line) {
+                        throw new IOException("connection reset");
+                    }
+                    return line;
+                }
+            });
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+        // the tasks already queued finished before verify threw
+        assertEquals(14, lookups.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_verify_verificationKeyProviderThrows() throws IOException {
+        BatchSignatureVerifier verifier = builder()
+                .setVerificationKeyProvider(new OAuth1Verifier.VerificationKeyProvider() {
+                    @Override
+                    public String getVerificationKey(String consumerKey) {
+                        throw new IllegalStateException("key store unavailable");
+                    }
+                }).build();
+        verifier.verify(new StringReader(record("a") + "\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_build_recordsPerTask() {
+        builder().setRecordsPerTask(0).build();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class OAuth1ClientCredentialsProviderTest {
+
+    private static Properties getProperties(String signatureMethod) {
+        Properties properties = new Properties();
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.TOKEN_ENDPOINT_URL_PROPERTY,
+                "https://www.example.com/oauth2/token");
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.ACCESS_KEY_ID_PROPERTY, "id");
+        properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.ACCESS_KEY_SECRET_PROPERTY, "secret");
+        if (null != signatureMethod) {
+            properties.setProperty(OAuth1ClientCredentialsProvider.FromProperties.SIGNATURE_METHOD_PROPERTY,
+                    signatureMethod);
+        }
+        return properties;
+    }
+
+    private static SignatureMethod getSignatureMethod(String signatureMethod) {
+        OAuth1ClientCredentialsProvider provider =
+                new OAuth1ClientCredentialsProvider.FromProperties(getProperties(signatureMethod));
+        return ((OAuth1Signer) provider.getClientAuthorizer()).getSignatureMethod();
+    }
+
+    @Test
+    public void test_signatureMethod_default() {
+        assertEquals(SignatureMethod.HMACSHA256, getSignatureMethod(null));
+        assertEquals(SignatureMethod.HMACSHA256, getSignatureMethod(" "));
+        OAuth1ClientCredentialsProvider provider = new OAuth1ClientCredentialsProvider(
+                "https://www.example.com/oauth2/token", "id", "secret");
+        assertEquals(SignatureMethod.HMACSHA256, ((OAuth1Signer) provider.getClientAuthorizer()).getSignatureMethod());
+    }
+
+    @Test
+    public void test_signatureMethod_fromProperties() {
+        assertEquals(SignatureMethod.ES512, getSignatureMethod("ES512"));
+        assertEquals(SignatureMethod.HMACSHA1, getSignatureMethod("HMAC-SHA1"));
+        assertEquals(SignatureMethod.HMACSHA256, getSignatureMethod("hmacsha256"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_signatureMethod_unsupported() {
+        getSignatureMethod("RSA-SHA1");
+    }
+}
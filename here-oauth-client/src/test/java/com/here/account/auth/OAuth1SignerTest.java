@@ -15,13 +15,18 @@
  */
 package com.here.account.auth;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -254,5 +259,99 @@ public class OAuth1SignerTest {
         return Base64.encodeBase64String(signatureBytes);
     }
 
-
+    @Test
+    public void test_presign_usedOnce() {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        oauth1Signer.presign("POST", url, formParams);
+        
+        clockCurrentTimeMillis = 5000L;
+        oauth1Signer.authorize(httpRequest, "POST", url, new HashMap<String, List<String>>(formParams));
+        assertTrue("presigned header wasn't used: " + httpRequest.getAuthorizationHeader(), 
+                httpRequest.getAuthorizationHeader().contains("oauth_timestamp=\"0\""));
+        
+        oauth1Signer.authorize(httpRequest, "POST", url, formParams);
+        assertTrue("presigned header was used twice: " + httpRequest.getAuthorizationHeader(), 
+                httpRequest.getAuthorizationHeader().contains("oauth_timestamp=\"5\""));
+    }
+    
+    @Test
+    public void test_presign_nullMatchesEmpty() {
+        oauth1Signer.presign(method, url, null);
+        clockCurrentTimeMillis = 5000L;
+        oauth1Signer.authorize(httpRequest, method, url, Collections.<String, List<String>>emptyMap());
+        assertTrue("presigned header wasn't used: " + httpRequest.getAuthorizationHeader(), 
+                httpRequest.getAuthorizationHeader().contains("oauth_timestamp=\"0\""));
+    }
+    
+    @Test
+    public void test_presign_mismatchSignsInline() {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("scope", Collections.singletonList("a"));
+        oauth1Signer.presign(method, url, formParams);
+        clockCurrentTimeMillis = 5000L;
+        oauth1Signer.authorize(httpRequest, method, url, null);
+        assertTrue("timestamp wasn't from inline signing: " + httpRequest.getAuthorizationHeader(), 
+                httpRequest.getAuthorizationHeader().contains("oauth_timestamp=\"5\""));
+    }
+    
+    @Test
+    public void test_presign_tooOldSignsInline() {
+        oauth1Signer.presign(method, url, null);
+        clockCurrentTimeMillis = OAuth1Signer.MAXIMUM_PRESIGNED_AGE_MILLIS + 1000L;
+        oauth1Signer.authorize(httpRequest, method, url, null);
+        String expectedTimestamp = "oauth_timestamp=\"" + (clockCurrentTimeMillis / 1000L) + "\"";
+        assertTrue("timestamp wasn't from inline signing: " + httpRequest.getAuthorizationHeader(), 
+                httpRequest.getAuthorizationHeader().contains(expectedTimestamp));
+    }
+    
+    @Test
+    public void test_getAccessKeySecretFingerprint() {
+        String fingerprint = new OAuth1Signer(clock, accessKeyId, accessKeySecret).getAccessKeySecretFingerprint();
+        assertEquals(fingerprint, new OAuth1Signer(clock, "other", accessKeySecret).getAccessKeySecretFingerprint());
+        assertTrue("expected a different fingerprint for a different secret", !fingerprint.equals(
+                new OAuth1Signer(clock, accessKeyId, accessKeySecret + "x").getAccessKeySecretFingerprint()));
+        assertTrue("fingerprint disclosed the secret", !fingerprint.contains(accessKeySecret));
+        // 32 bytes of SHA-256, base64url encoded without padding
+        assertEquals(43, fingerprint.length());
+    }
+    
+    @Test
+    public void test_ES512_verifies() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp521r1"));
+        KeyPair pair = generator.generateKeyPair();
+        String privateKey = Base64.encodeBase64String(pair.getPrivate().getEncoded());
+        final String publicKey = Base64.encodeBase64String(pair.getPublic().getEncoded());
+        
+        final OAuth1Signer signer = new OAuth1Signer(clock, accessKeyId, privateKey, SignatureMethod.ES512);
+        assertEquals(SignatureMethod.ES512, signer.getSignatureMethod());
+        final Map<String, List<String>> formParams = 
+                Collections.singletonMap("grant_type", Collections.singletonList("client_credentials"));
+        
+        // sign concurrently, each thread with its own Signature
+        Thread[] threads = new Thread[4];
+        final String[] headers = new String[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                MyHttpRequest request = new MyHttpRequest();
+                signer.authorize(request, "POST", url, formParams);
+                headers[index] = request.getAuthorizationHeader();
+            });
+            threads[i].start();
+        }
+        Pattern pattern = Pattern.compile("\\A.*oauth_signature=\\\"([^\\\"]+).*oauth_nonce=\\\"([^\\\"]+).*\\z");
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertTrue(headers[i], headers[i].contains("oauth_signature_method=\"ES512\""));
+            Matcher matcher = pattern.matcher(headers[i]);
+            assertTrue("pattern wasn't matched: " + headers[i], matcher.matches());
+            String signature = URLDecoder.decode(matcher.group(1), OAuthConstants.UTF_8_STRING);
+            String nonce = URLDecoder.decode(matcher.group(2), OAuthConstants.UTF_8_STRING);
+            assertTrue("signature didn't verify: " + headers[i], 
+                    SignatureCalculator.verifySignature(accessKeyId, "POST", url, 0L, nonce, 
+                            SignatureMethod.ES512, formParams, null, signature, publicKey));
+        }
+    }
 }
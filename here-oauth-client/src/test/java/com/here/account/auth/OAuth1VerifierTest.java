@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.http.HttpProvider.HttpRequest;
+import com.here.account.util.Clock;
+
+public class OAuth1VerifierTest {
+
+    private static final String ACCESS_KEY_ID = "access-key-id";
+    private static final String ACCESS_KEY_SECRET = "access-key-secret";
+    private static final String METHOD = "POST";
+    private static final String URL = "https://account.api.here.com/oauth2/token";
+
+    private long currentTimeMillis = 1480000000000L;
+    private Clock clock;
+    private Map<String, List<String>> formParams;
+
+    @Before
+    public void setUp() {
+        this.clock = new Clock() {
+
+            @Override
+            public long currentTimeMillis() {
+                return currentTimeMillis;
+            }
+
+            @Override
+            public void schedule(ScheduledExecutorService scheduledExecutorService, Runnable runnable,
+                    long millisecondsInTheFutureToSchedule) {
+            }
+
+        };
+        this.formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+    }
+
+    private String sign(OAuth1Signer signer) {
+        final String[] authorizationHeader = new String[1];
+        signer.authorize(new HttpRequest() {
+            @Override
+            public void addAuthorizationHeader(String value) {
+                authorizationHeader[0] = value;
+            }
+        }, METHOD, URL, formParams);
+        return authorizationHeader[0];
+    }
+
+    private String sign() {
+        return sign(new OAuth1Signer(clock, ACCESS_KEY_ID, ACCESS_KEY_SECRET));
+    }
+
+    private OAuth1Verifier.Builder builder(final String verificationKey) {
+        return OAuth1Verifier.builder()
+                .setClock(clock)
+                .setVerificationKeyProvider(new OAuth1Verifier.VerificationKeyProvider() {
+                    @Override
+                    public String getVerificationKey(String consumerKey) {
+                        return ACCESS_KEY_ID.equals(consumerKey) ? verificationKey : null;
+                    }
+                });
+    }
+
+    private OAuth1Verifier.Result verify(OAuth1Verifier verifier, String authorizationHeader) {
+        return verifier.verify(METHOD, URL, formParams, null, authorizationHeader);
+    }
+
+    @Test
+    public void test_verify_HMACSHA256() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign()));
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign()));
+    }
+
+    @Test
+    public void test_verify_HMACSHA1() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign(new OAuth1Signer(clock, ACCESS_KEY_ID, ACCESS_KEY_SECRET,
+                SignatureMethod.HMACSHA1));
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_ES512() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp521r1"));
+        KeyPair pair = generator.generateKeyPair();
+        OAuth1Signer signer = new OAuth1Signer(clock, ACCESS_KEY_ID,
+                Base64.encodeBase64String(pair.getPrivate().getEncoded()), SignatureMethod.ES512);
+
+        OAuth1Verifier verifier = builder(Base64.encodeBase64String(pair.getPublic().getEncoded())).build();
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign(signer)));
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign(signer)));
+    }
+
+    @Test
+    public void test_verify_replayedNonce() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign();
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+        assertEquals(OAuth1Verifier.Result.REPLAYED_NONCE, verify(verifier, authorizationHeader));
+
+        // still a replay, later in the window
+        currentTimeMillis += OAuth1Verifier.DEFAULT_MAXIMUM_SKEW_SECONDS * 1000L;
+        assertEquals(OAuth1Verifier.Result.REPLAYED_NONCE, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_timestampOutOfRange() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).setMaximumSkewSeconds(60L).build();
+        String authorizationHeader = sign();
+        currentTimeMillis += 61000L;
+        assertEquals(OAuth1Verifier.Result.TIMESTAMP_OUT_OF_RANGE, verify(verifier, authorizationHeader));
+        currentTimeMillis -= 122000L;
+        assertEquals(OAuth1Verifier.Result.TIMESTAMP_OUT_OF_RANGE, verify(verifier, authorizationHeader));
+        currentTimeMillis += 61000L;
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_invalidSignature() {
+        OAuth1Verifier verifier = builder("wrong-secret").build();
+        assertEquals(OAuth1Verifier.Result.INVALID_SIGNATURE, verify(verifier, sign()));
+
+        verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign();
+        formParams.put("scope", Collections.singletonList("tampered"));
+        assertEquals(OAuth1Verifier.Result.INVALID_SIGNATURE, verify(verifier, authorizationHeader));
+        // a forgery doesn't use up the nonce
+        formParams.remove("scope");
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_unknownConsumerKey() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign(new OAuth1Signer(clock, "someone-else", ACCESS_KEY_SECRET));
+        assertEquals(OAuth1Verifier.Result.UNKNOWN_CONSUMER_KEY, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_malformedHeader() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign();
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER, verify(verifier, null));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER, verify(verifier, "Bearer abc"));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER, verify(verifier, "OAuth"));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER,
+                verify(verifier, authorizationHeader + ",oauth_nonce=\"again\""));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER,
+                verify(verifier, authorizationHeader.replace("oauth_nonce=\"", "oauth_nonce=\"%zz")));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER,
+                verify(verifier, authorizationHeader.substring(0, authorizationHeader.length() - 1)));
+        assertEquals(OAuth1Verifier.Result.MALFORMED_HEADER,
+                verify(verifier, authorizationHeader.replaceAll("oauth_timestamp=\"[0-9]*\"",
+                        "oauth_timestamp=\"soon\"")));
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_ignoresRealm() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign().replaceFirst("OAuth ", "OAuth realm=\"Example\", ");
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, authorizationHeader));
+    }
+
+    @Test
+    public void test_verify_unsupportedParameter() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).build();
+        String authorizationHeader = sign();
+        assertEquals(OAuth1Verifier.Result.UNSUPPORTED_PARAMETER,
+                verify(verifier, authorizationHeader.replace("oauth_version=\"1.0\"", "oauth_version=\"2.0\"")));
+        assertEquals(OAuth1Verifier.Result.UNSUPPORTED_PARAMETER,
+                verify(verifier, authorizationHeader.replace("HMAC-SHA256", "RSA-SHA1")));
+        assertEquals(OAuth1Verifier.Result.UNSUPPORTED_PARAMETER,
+                verify(verifier, authorizationHeader + ",oauth_token=\"token\""));
+    }
+
+    @Test
+    public void test_verify_nonceCacheFull() {
+        OAuth1Verifier verifier = builder(ACCESS_KEY_SECRET).setMaximumNoncesPerSecond(1).build();
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign()));
+        assertEquals(OAuth1Verifier.Result.NONCE_CACHE_FULL, verify(verifier, sign()));
+
+        // the next second has room
+        currentTimeMillis += 1000L;
+        assertEquals(OAuth1Verifier.Result.VALID, verify(verifier, sign()));
+    }
+
+    @Test
+    public void test_verify_evictsLeastRecentlyUsedKey() {
+        final Map<String, Integer> lookups = new HashMap<String, Integer>();
+        OAuth1Verifier verifier = OAuth1Verifier.builder()
+                .setClock(clock)
+                .setMaximumCachedKeys(2)
+                .setVerificationKeyProvider(new OAuth1Verifier.VerificationKeyProvider() {
+                    @Override
+                    public String getVerificationKey(String consumerKey) {
+                        Integer count = lookups.get(consumerKey);
+                        lookups.put(consumerKey, null == count ? 1 : count + 1);
+                        return ACCESS_KEY_SECRET;
+                    }
+                })
+                .build();
+        // the frequently used consumer stays cached while others cycle through
+        for (int i = 0; i < 5; i++) {
+            assertEquals(OAuth1Verifier.Result.VALID,
+                    verify(verifier, sign(new OAuth1Signer(clock, ACCESS_KEY_ID, ACCESS_KEY_SECRET))));
+            assertEquals(OAuth1Verifier.Result.VALID,
+                    verify(verifier, sign(new OAuth1Signer(clock, "other-" + i, ACCESS_KEY_SECRET))));
+        }
+        assertEquals(Integer.valueOf(1), lookups.get(ACCESS_KEY_ID));
+
+        // the least recently used consumer was evicted
+        assertEquals(OAuth1Verifier.Result.VALID,
+                verify(verifier, sign(new OAuth1Signer(clock, "other-0", ACCESS_KEY_SECRET))));
+        assertEquals(Integer.valueOf(2), lookups.get("other-0"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void test_build_verificationKeyProviderRequired() {
+        OAuth1Verifier.builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_build_maximumSkewSecondsTooLarge() {
+        builder(ACCESS_KEY_SECRET).setMaximumSkewSeconds(3601L).build();
+    }
+}
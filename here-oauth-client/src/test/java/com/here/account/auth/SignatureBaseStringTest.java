@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.here.account.util.OAuthConstants;
+
+public class SignatureBaseStringTest {
+
+    private static final String ASCII_SAMPLES = "aZ09-_.*~ +&=%/?:!'()@#$\"";
+
+    /**
+     * The percent-encoding this SDK has always signed with.
+     */
+    private static String expectedUrlEncode(String s) throws UnsupportedEncodingException {
+        return URLEncoder.encode(s, OAuthConstants.UTF_8_STRING).replaceAll("\\+", "%20");
+    }
+
+    /**
+     * The signature base string as this SDK has always computed it, with Strings.
+     */
+    private static String expectedBaseString(String consumerKey, String method, String baseURL, long timestamp,
+            String nonce, SignatureMethod signatureMethod, String oauthVersion,
+            Map<String, List<String>> formParams, Map<String, List<String>> queryParams)
+            throws UnsupportedEncodingException {
+        List<String[]> parameters = new ArrayList<String[]>();
+        parameters.add(new String[] {"oauth_consumer_key", expectedUrlEncode(consumerKey)});
+        parameters.add(new String[] {"oauth_nonce", expectedUrlEncode(nonce)});
+        parameters.add(new String[] {"oauth_signature_method",
+                expectedUrlEncode(signatureMethod.getOauth1SignatureMethod())});
+        parameters.add(new String[] {"oauth_timestamp", String.valueOf(timestamp)});
+        if (null != oauthVersion) {
+            parameters.add(new String[] {"oauth_version", expectedUrlEncode(oauthVersion)});
+        }
+        for (Map<String, List<String>> params : Arrays.asList(formParams, queryParams)) {
+            if (null != params) {
+                for (Map.Entry<String, List<String>> entry : params.entrySet()) {
+                    for (String value : entry.getValue()) {
+                        parameters.add(new String[] {expectedUrlEncode(entry.getKey()), expectedUrlEncode(value)});
+                    }
+                }
+            }
+        }
+        Collections.sort(parameters, (a, b) -> {
+            int diff = a[0].compareTo(b[0]);
+            return diff != 0 ? diff : a[1].compareTo(b[1]);
+        });
+        StringBuilder parameterString = new StringBuilder();
+        for (String[] parameter : parameters) {
+            if (parameterString.length() > 0) {
+                parameterString.append('&');
+            }
+            parameterString.append(parameter[0]).append('=').append(parameter[1]);
+        }
+
+        String normalizedURL = baseURL;
+        int index;
+        if (baseURL.startsWith("http:") && (index = baseURL.indexOf(":80/", 4)) > 0) {
+            normalizedURL = baseURL.substring(0, index) + baseURL.substring(index + 3);
+        } else if (baseURL.startsWith("https:") && (index = baseURL.indexOf(":443/", 5)) > 0) {
+            normalizedURL = baseURL.substring(0, index) + baseURL.substring(index + 4);
+        }
+        return method.toUpperCase() + "&" + expectedUrlEncode(normalizedURL)
+                + "&" + expectedUrlEncode(parameterString.toString());
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(5)) {
+            case 0:
+                // unencoded, and reserved, ASCII
+                s.append(ASCII_SAMPLES.charAt(random.nextInt(ASCII_SAMPLES.length())));
+                break;
+            case 1:
+                s.append((char) random.nextInt(0x80));
+                break;
+            case 2:
+                s.append((char) (0x80 + random.nextInt(0x800 - 0x80)));
+                break;
+            case 3:
+                s.append((char) (0x800 + random.nextInt(0xD800 - 0x800)));
+                break;
+            default:
+                // a valid surrogate pair, or sometimes an unpaired surrogate
+                s.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                if (random.nextInt(10) == 0) {
+                    s.append((char) (0xD800 + random.nextInt(0x800)));
+                }
+                break;
+            }
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void test_urlEncode_matchesURLEncoder() throws UnsupportedEncodingException {
+        Random random = new Random(42L);
+        for (int i = 0; i < 2000; i++) {
+            String s = randomString(random, 20);
+            assertEquals(expectedUrlEncode(s), SignatureBaseString.urlEncode(s));
+        }
+    }
+
+    @Test
+    public void test_urlEncode_unpairedSurrogates() throws UnsupportedEncodingException {
+        String[] strings = {"\uD800", "a\uDC00b", "\uDC00\uD800", "x\uD83D"};
+        for (String s : strings) {
+            assertEquals(expectedUrlEncode(s), SignatureBaseString.urlEncode(s));
+        }
+    }
+
+    @Test
+    public void test_build_matchesStrings() throws UnsupportedEncodingException {
+        Random random = new Random(7L);
+        String[] urls = {"https://account.api.here.com/oauth2/token",
+                "https://account.api.here.com:443/oauth2/token",
+                "http://localhost:80/oauth2/token?x=y",
+                "http://localhost:8080/oauth2/token"};
+        for (int i = 0; i < 500; i++) {
+            Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+            int count = random.nextInt(i % 10 == 0 ? 50 : 5);
+            for (int j = 0; j < count; j++) {
+                // few distinct keys, so some sort by value
+                String key = random.nextBoolean() ? "k" + random.nextInt(3) : randomString(random, 8);
+                List<String> values = formParams.get(key);
+                if (null == values) {
+                    values = new ArrayList<String>();
+                    formParams.put(key, values);
+                }
+                values.add(randomString(random, 12));
+            }
+            Map<String, List<String>> queryParams = random.nextBoolean() ? null
+                    : Collections.singletonMap("q", Arrays.asList(randomString(random, 5)));
+            String consumerKey = randomString(random, 10);
+            String url = urls[random.nextInt(urls.length)];
+            long timestamp = random.nextInt();
+            String nonce = randomString(random, 6);
+            String method = random.nextBoolean() ? "post" : "GET";
+            String version = random.nextBoolean() ? "1.0" : null;
+
+            String expected = expectedBaseString(consumerKey, method, url, timestamp, nonce,
+                    SignatureMethod.HMACSHA256, version, formParams, queryParams);
+            SignatureBaseString actual = SignatureBaseString.get().build(consumerKey, method, url, timestamp, nonce,
+                    SignatureMethod.HMACSHA256, version, formParams, queryParams);
+            assertEquals(expected, actual.toString());
+            assertEquals(expected.getBytes(OAuthConstants.UTF_8_CHARSET).length, actual.length());
+        }
+    }
+
+    @Test
+    public void test_build_manyParameters() throws UnsupportedEncodingException {
+        Random random = new Random(11L);
+        for (int count : new int[] {33, 64, 65, 1000}) {
+            Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+            for (int j = 0; j < count; j++) {
+                // few distinct keys, and some presorted runs, so merges compare values too
+                String key = j % 3 == 0 ? "k" + random.nextInt(4) : "p" + String.format("%04d", j);
+                List<String> values = formParams.get(key);
+                if (null == values) {
+                    values = new ArrayList<String>();
+                    formParams.put(key, values);
+                }
+                values.add(randomString(random, 6));
+            }
+            String expected = expectedBaseString("key", "POST", "https://example.com/", 1L, "nonce",
+                    SignatureMethod.HMACSHA256, "1.0", formParams, null);
+            assertEquals(expected, SignatureBaseString.get().build("key", "POST", "https://example.com/", 1L,
+                    "nonce", SignatureMethod.HMACSHA256, "1.0", formParams, null).toString());
+        }
+    }
+
+    @Test
+    public void test_build_timestampBounds() throws UnsupportedEncodingException {
+        for (long timestamp : new long[] {0L, 9L, 10L, Long.MAX_VALUE, -1L, Long.MIN_VALUE}) {
+            assertEquals(expectedBaseString("key", "POST", "https://example.com/", timestamp, "nonce",
+                    SignatureMethod.ES512, "1.0", null, null),
+                    SignatureBaseString.get().build("key", "POST", "https://example.com/", timestamp, "nonce",
+                            SignatureMethod.ES512, "1.0", null, null).toString());
+        }
+    }
+
+    @Test
+    public void test_build_largeRequestNotRetained() {
+        char[] large = new char[SignatureBaseString.MAXIMUM_RETAINED_CAPACITY];
+        Arrays.fill(large, ' ');
+        Map<String, List<String>> formParams = Collections.singletonMap("large",
+                Arrays.asList(new String(large)));
+        SignatureBaseString baseString = SignatureBaseString.get().build("key", "POST", "https://example.com/",
+                1L, "nonce", SignatureMethod.HMACSHA256, "1.0", formParams, null);
+        assertTrue(baseString.getBytes().length > SignatureBaseString.MAXIMUM_RETAINED_CAPACITY);
+
+        baseString = SignatureBaseString.get().build("key", "POST", "https://example.com/",
+                1L, "nonce", SignatureMethod.HMACSHA256, "1.0", null, null);
+        assertTrue(baseString.getBytes().length <= SignatureBaseString.MAXIMUM_RETAINED_CAPACITY);
+    }
+}
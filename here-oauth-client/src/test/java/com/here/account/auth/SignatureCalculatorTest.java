@@ -173,8 +173,59 @@ public class SignatureCalculatorTest {
         assertTrue(verified);
     }
 
+    @Test
+    public void testSignatureHmacReusedCalculator() throws Exception {
+        final SignatureCalculator sc = new SignatureCalculator(consumerKey, consumerSecret);
+        // alternate methods, so each thread's cached Macs are reused in turn
+        for (int i = 0; i < 3; i++) {
+            assertEquals(simpleSha256, 
+                    sc.calculateSignature(method, baseURL, timestamp, nonce, SignatureMethod.HMACSHA256, null, null));
+            assertEquals(computeSHA1SignatureUsingLibrary(baseURL, null, null), 
+                    sc.calculateSignature(method, baseURL, timestamp, nonce, SignatureMethod.HMACSHA1, null, null));
+            assertEquals(withFormParamSha256, 
+                    sc.calculateSignature(method, baseURL, timestamp, nonce, SignatureMethod.HMACSHA256, params, null));
+        }
+        
+        Thread[] threads = new Thread[4];
+        final String[] actual = new String[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    actual[index] = sc.calculateSignature(method, baseURL, timestamp, nonce, 
+                            SignatureMethod.HMACSHA256, params, params);
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertEquals(withFormAndQueryParamSha256, actual[i]);
+        }
+    }
+
     /////////////////////////////////////// ES512 Tests //////////////////////////////////////////////////////////////////
 
+    @Test
+    public void testSignatureES512ReusedCalculator() {
+        KeyPair pair = generateES512KeyPair();
+        String keyBase64 = Base64.encodeBase64String(pair.getPrivate().getEncoded());
+        String publicKeyBase64 = Base64.encodeBase64String(pair.getPublic().getEncoded());
+
+        SignatureCalculator sc = new SignatureCalculator(consumerKey, keyBase64);
+        for (int i = 0; i < 3; i++) {
+            String signature = sc.calculateSignature(method, baseURL, timestamp + i, nonce, SignatureMethod.ES512, params, null);
+            assertTrue(SignatureCalculator.verifySignature(consumerKey, method, baseURL, timestamp + i, nonce, 
+                    SignatureMethod.ES512, params, null, signature, publicKeyBase64));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSignatureES512BadKey() {
+        SignatureCalculator sc = new SignatureCalculator(consumerKey, "bm90IGEga2V5");
+        sc.calculateSignature(method, baseURL, timestamp, nonce, SignatureMethod.ES512, null, null);
+    }
+
     @Test
     public void testSignatureES512() {
         KeyPair pair = generateES512KeyPair();
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import com.here.account.util.Clock;
+
+public class SigningTemplateTest {
+
+    private static final String CONSUMER_KEY = "access-key-id";
+    private static final String CONSUMER_SECRET = "access-key-secret";
+    private static final String URL = "https://account.api.here.com:443/oauth2/token";
+
+    private static void put(Map<String, List<String>> params, String key, String value) {
+        List<String> values = params.get(key);
+        if (null == values) {
+            values = new ArrayList<String>();
+            params.put(key, values);
+        }
+        values.add(value);
+    }
+
+    @Test
+    public void test_calculateSignature_matchesWithoutTemplate() {
+        SignatureCalculator calculator = new SignatureCalculator(CONSUMER_KEY, CONSUMER_SECRET);
+        Random random = new Random(3L);
+        String[] keys = {"grant_type", "scope", "a", "z", "oauth_z", "expires in", "é"};
+        for (SignatureMethod signatureMethod : Arrays.asList(SignatureMethod.HMACSHA1, SignatureMethod.HMACSHA256)) {
+            for (int i = 0; i < 200; i++) {
+                Map<String, List<String>> staticParams = new HashMap<String, List<String>>();
+                Map<String, List<String>> dynamicParams = new HashMap<String, List<String>>();
+                Map<String, List<String>> allParams = new HashMap<String, List<String>>();
+                int count = random.nextInt(8);
+                for (int j = 0; j < count; j++) {
+                    String key = keys[random.nextInt(keys.length)];
+                    String value = "v" + random.nextInt(4);
+                    put(random.nextBoolean() ? staticParams : dynamicParams, key, value);
+                    put(allParams, key, value);
+                }
+                String method = random.nextBoolean() ? "POST" : "get";
+                long timestamp = random.nextInt(Integer.MAX_VALUE);
+                String nonce = "n" + random.nextInt(100);
+
+                SigningTemplate signingTemplate = calculator.newSigningTemplate(method, URL,
+                        signatureMethod, staticParams);
+                assertEquals(calculator.calculateSignature(method, URL, timestamp, nonce, signatureMethod,
+                        allParams, null),
+                        signingTemplate.calculateSignature(timestamp, nonce, dynamicParams));
+            }
+        }
+    }
+
+    @Test
+    public void test_calculateSignature_ES512() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp521r1"));
+        KeyPair pair = generator.generateKeyPair();
+        SignatureCalculator calculator = new SignatureCalculator(CONSUMER_KEY,
+                Base64.encodeBase64String(pair.getPrivate().getEncoded()));
+
+        Map<String, List<String>> staticParams = new HashMap<String, List<String>>();
+        put(staticParams, "grant_type", "client_credentials");
+        Map<String, List<String>> dynamicParams = new HashMap<String, List<String>>();
+        put(dynamicParams, "scope", "openid");
+        Map<String, List<String>> allParams = new HashMap<String, List<String>>(staticParams);
+        allParams.putAll(dynamicParams);
+
+        SigningTemplate signingTemplate = calculator.newSigningTemplate("POST", URL, SignatureMethod.ES512,
+                staticParams);
+        String signature = signingTemplate.calculateSignature(1L, "nonce", dynamicParams);
+        assertEquals(true, SignatureCalculator.verifySignature(CONSUMER_KEY, "POST", URL, 1L, "nonce",
+                SignatureMethod.ES512, allParams, null, signature,
+                Base64.encodeBase64String(pair.getPublic().getEncoded())));
+    }
+
+    @Test
+    public void test_constructAuthHeader() {
+        SignatureCalculator calculator = new SignatureCalculator(CONSUMER_KEY, CONSUMER_SECRET);
+        SigningTemplate signingTemplate = calculator.newSigningTemplate("POST", URL, SignatureMethod.HMACSHA256,
+                null);
+        String signature = signingTemplate.calculateSignature(1L, "nonce", null);
+        assertEquals(calculator.constructAuthHeader(signature, "nonce", 1L, SignatureMethod.HMACSHA256),
+                signingTemplate.constructAuthHeader(signature, "nonce", 1L));
+    }
+
+    @Test
+    public void test_OAuth1Signer_reusesTemplates() {
+        OAuth1Signer signer = new OAuth1Signer(Clock.SYSTEM, CONSUMER_KEY, CONSUMER_SECRET);
+        SigningTemplate post = signer.getSigningTemplate("POST", URL);
+        SigningTemplate get = signer.getSigningTemplate("GET", URL);
+        assertNotSame(post, get);
+        assertSame(post, signer.getSigningTemplate("POST", URL));
+        assertSame(get, signer.getSigningTemplate("GET", URL));
+
+        // many distinct urls don't break signing, nor evict the template in use
+        for (int i = 0; i < 2 * OAuth1Signer.MAXIMUM_SIGNING_TEMPLATES; i++) {
+            SigningTemplate signingTemplate = signer.getSigningTemplate("POST", URL + i);
+            assertEquals(URL + i, signingTemplate.getBaseURL());
+            assertSame(post, signer.getSigningTemplate("POST", URL));
+        }
+        assertNotSame("expected the least recently used evicted", get, signer.getSigningTemplate("GET", URL));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.here.account.http.HttpProvider.HttpResponse;
+
+public class ResponseBodyReaderTest {
+
+    /**
+     * A response streaming the body, which records whether its stream was closed.
+     */
+    private static class StreamingResponse implements HttpResponse {
+        private final long contentLength;
+        private final InputStream body;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        StreamingResponse(long contentLength, byte[] body) {
+            this.contentLength = contentLength;
+            this.body = null == body ? null : new ByteArrayInputStream(body) {
+                @Override
+                public void close() throws IOException {
+                    closed.set(true);
+                }
+            };
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 200;
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public InputStream getResponseBody() throws IOException {
+            return body;
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] toArray(ResponseBody body) {
+        ByteBuffer buffer = body.getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void test_read_pooled() throws IOException {
+        ResponseBodyReader reader = ResponseBodyReader.builder().build();
+        byte[] expected = bytes(100);
+        StreamingResponse response = new StreamingResponse(-1L, expected);
+        byte[] array;
+        try (ResponseBody body = reader.read(response)) {
+            assertEquals(100, body.getLength());
+            assertTrue(Arrays.equals(expected, toArray(body)));
+            array = body.getBuffer().array();
+            assertEquals(ResponseBodyReader.DEFAULT_POOLED_BUFFER_BYTES, array.length);
+        }
+        assertTrue("stream was not closed", response.closed.get());
+
+        // the array went back to the pool, and is reused
+        try (ResponseBody body = reader.read(new StreamingResponse(3L, bytes(3)))) {
+            assertSame(array, body.getBuffer().array());
+            assertTrue(Arrays.equals(bytes(3), toArray(body)));
+        }
+    }
+
+    @Test
+    public void test_read_growsBeyondPooled() throws IOException {
+        ResponseBodyReader reader = ResponseBodyReader.builder()
+                .setPooledBufferBytes(16)
+                .setMaxBodyBytes(1000)
+                .build();
+        byte[] expected = bytes(1000);
+        try (ResponseBody body = reader.read(new StreamingResponse(-1L, expected))) {
+            assertTrue(Arrays.equals(expected, toArray(body)));
+        }
+        try (ResponseBody body = reader.read(new StreamingResponse(1000L, expected))) {
+            assertTrue(Arrays.equals(expected, toArray(body)));
+        }
+    }
+
+    @Test
+    public void test_read_tooLarge() throws IOException {
+        ResponseBodyReader reader = ResponseBodyReader.builder()
+                .setPooledBufferBytes(16)
+                .setMaxBodyBytes(100)
+                .build();
+        try (ResponseBody body = reader.read(new StreamingResponse(-1L, bytes(100)))) {
+            assertEquals(100, body.getLength());
+        }
+        StreamingResponse response = new StreamingResponse(-1L, bytes(101));
+        try {
+            reader.read(response);
+            fail("expected ResponseBodyTooLargeException");
+        } catch (ResponseBodyTooLargeException e) {
+            assertEquals(100L, e.getMaxBodyBytes());
+        }
+        assertTrue("stream was not closed", response.closed.get());
+    }
+
+    @Test
+    public void test_read_contentLengthTooLarge() throws IOException {
+        ResponseBodyReader reader = ResponseBodyReader.builder().setMaxBodyBytes(100).build();
+        HttpResponse response = new StreamingResponse(101L, null) {
+            @Override
+            public InputStream getResponseBody() throws IOException {
+                return new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new AssertionError("should fail before reading");
+                    }
+                };
+            }
+        };
+        try {
+            reader.read(response);
+            fail("expected ResponseBodyTooLargeException");
+        } catch (ResponseBodyTooLargeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_read_noBody() throws IOException {
+        try (ResponseBody body = ResponseBodyReader.getDefault().read(new StreamingResponse(0L, null))) {
+            assertEquals(0, body.getLength());
+            assertEquals(-1, body.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void test_read_buffered_notCopied() throws IOException {
+        final byte[] bytes = bytes(50);
+        BufferedHttpResponse response = new BufferedHttpResponse() {
+            @Override
+            public int getStatusCode() {
+                return 200;
+            }
+
+            @Override
+            public long getContentLength() {
+                return bytes.length;
+            }
+
+            @Override
+            public InputStream getResponseBody() throws IOException {
+                throw new AssertionError("should use the buffer");
+            }
+
+            @Override
+            public ByteBuffer getResponseBodyBuffer() {
+                return ByteBuffer.wrap(bytes);
+            }
+        };
+        try (ResponseBody body = ResponseBodyReader.getDefault().read(response)) {
+            assertSame(bytes, body.getBuffer().array());
+        }
+        try {
+            ResponseBodyReader.builder().setMaxBodyBytes(49).build().read(response);
+            fail("expected ResponseBodyTooLargeException");
+        } catch (ResponseBodyTooLargeException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_maxBodyBytes_notPositive() {
+        ResponseBodyReader.builder().setMaxBodyBytes(0);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.apache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.http.AsyncHttpProvider;
+import com.here.account.http.HttpException;
+import com.here.account.http.HttpProvider.HttpRequest;
+import com.here.account.http.HttpProvider.HttpRequestAuthorizer;
+import com.here.account.http.HttpProvider.HttpResponse;
+import com.here.account.http.ResponseBodyTooLargeException;
+import com.sun.net.httpserver.HttpServer;
+
+public class ApacheHttpAsyncClientProviderTest {
+
+    private static final String RESPONSE_BODY = "{\"access_token\":\"12345\"}";
+
+    private HttpServer httpServer;
+    private AsyncHttpProvider httpProvider;
+    private String url;
+    private HttpRequestAuthorizer httpRequestAuthorizer;
+    private volatile String requestBody;
+    private volatile String authorizationHeader;
+    private volatile boolean chunked;
+
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/oauth2/token", exchange -> {
+            authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+            requestBody = readFully(exchange.getRequestBody());
+            byte[] body = RESPONSE_BODY.getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.start();
+        url = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/oauth2/token";
+        httpProvider = ApacheHttpAsyncClientProvider.builder().setIoThreadCount(1).build();
+        httpRequestAuthorizer = (httpRequest, method, url, formParams) ->
+                httpRequest.addAuthorizationHeader("OAuth test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpProvider.close();
+        httpServer.stop(0);
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+
+    private HttpRequest formRequest() {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        return httpProvider.getRequest(httpRequestAuthorizer, "POST", url, formParams);
+    }
+
+    @Test
+    public void test_executeAsync() throws Exception {
+        HttpResponse response = httpProvider.executeAsync(formRequest()).get();
+        assertEquals(200, response.getStatusCode());
+        assertEquals(RESPONSE_BODY.length(), response.getContentLength());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+        assertEquals("grant_type=client_credentials", requestBody);
+        assertEquals("OAuth test", authorizationHeader);
+    }
+
+    @Test
+    public void test_execute() throws Exception {
+        HttpResponse response = httpProvider.execute(
+                httpProvider.getRequest(httpRequestAuthorizer, "POST", url, "{\"foo\":\"bar\"}"));
+        assertEquals(200, response.getStatusCode());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+        assertEquals("{\"foo\":\"bar\"}", requestBody);
+    }
+
+    @Test
+    public void test_executeAsync_concurrent() throws Exception {
+        // many requests in flight at once, on a single I/O thread
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<CompletableFuture<HttpResponse>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(httpProvider.executeAsync(formRequest()));
+        }
+        for (CompletableFuture<HttpResponse> future : futures) {
+            assertEquals(200, future.get().getStatusCode());
+        }
+    }
+
+    @Test
+    public void test_executeAsync_connectionRefused() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        url = "http://127.0.0.1:" + port + "/oauth2/token";
+        try {
+            httpProvider.executeAsync(formRequest()).get();
+            fail("expected connection refused");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue("expected IOException, actual " + cause,
+                    cause instanceof IOException && !(cause instanceof HttpException));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wrongRequestClass() {
+        httpProvider.executeAsync(value -> {
+            // no-op
+        });
+    }
+
+    @Test
+    public void test_executeAsync_responseBodyTooLarge() throws Exception {
+        httpProvider.close();
+        httpProvider = ApacheHttpAsyncClientProvider.builder()
+                .setIoThreadCount(1)
+                .setMaxResponseBodyBytes(RESPONSE_BODY.length() - 1)
+                .build();
+        for (boolean chunked : new boolean[] {false, true}) {
+            this.chunked = chunked;
+            try {
+                httpProvider.executeAsync(formRequest()).get();
+                fail("expected ResponseBodyTooLargeException, chunked=" + chunked);
+            } catch (ExecutionException e) {
+                assertTrue("expected ResponseBodyTooLargeException, actual " + e.getCause(),
+                        e.getCause() instanceof ResponseBodyTooLargeException);
+            }
+        }
+
+        httpProvider.close();
+        httpProvider = ApacheHttpAsyncClientProvider.builder()
+                .setIoThreadCount(1)
+                .setMaxResponseBodyBytes(RESPONSE_BODY.length())
+                .build();
+        HttpResponse response = httpProvider.execute(formRequest());
+        assertEquals(RESPONSE_BODY.length(), response.getContentLength());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+    }
+}
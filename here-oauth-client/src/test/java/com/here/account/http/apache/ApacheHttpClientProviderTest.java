@@ -15,18 +15,27 @@
  */
 package com.here.account.http.apache;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpDelete;
@@ -47,6 +56,7 @@ import com.here.account.http.HttpException;
 import com.here.account.http.HttpProvider;
 import com.here.account.http.HttpProvider.HttpRequest;
 import com.here.account.http.HttpProvider.HttpRequestAuthorizer;
+import com.here.account.http.HttpProvider.HttpResponse;
 
 public class ApacheHttpClientProviderTest {
     
@@ -208,6 +218,173 @@ public class ApacheHttpClientProviderTest {
         }
     }
     
+    /**
+     * A minimal HTTP/1.1 server that keeps connections alive, and counts them.
+     */
+    static class KeepAliveServer implements AutoCloseable {
+        
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        
+        KeepAliveServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        connectionCount.incrementAndGet();
+                        Thread handler = new Thread(() -> serve(socket));
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        
+        private static void serve(Socket socket) {
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+                OutputStream out = s.getOutputStream();
+                String line;
+                while (null != (line = in.readLine())) {
+                    int contentLength = 0;
+                    while (null != line && !line.isEmpty()) {
+                        if (line.toLowerCase().startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                        }
+                        line = in.readLine();
+                    }
+                    for (int i = 0; i < contentLength; i++) {
+                        in.read();
+                    }
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}".getBytes("UTF-8"));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+        
+        String getUrl() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/oauth2/token";
+        }
+        
+        /**
+         * Connects complete in the backlog before they are accepted, 
+         * so wait briefly for the expected count.
+         */
+        int getConnectionCount(int expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (connectionCount.get() < expected && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            return connectionCount.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+    
+    private static void executeAndConsume(HttpProvider httpProvider, HttpRequest httpRequest) 
+            throws HttpException, IOException {
+        HttpResponse response = httpProvider.execute(httpRequest);
+        assertEquals(200, response.getStatusCode());
+        try (InputStream body = response.getResponseBody()) {
+            while (body.read() >= 0) {
+                // drain, so the connection returns to the pool
+            }
+        }
+    }
+    
+    @Test
+    public void test_prewarm_reused() throws Exception {
+        try (KeepAliveServer server = new KeepAliveServer();
+                HttpProvider httpProvider = ApacheHttpClientProvider.builder()
+                    .setMaxConnectionsPerRoute(4)
+                    .setKeepAliveInMs(60000L)
+                    .setPrewarm(server.getUrl(), 1)
+                    .build()) {
+            assertEquals("connections after pre-warm", 1, server.getConnectionCount(1));
+            for (int i = 0; i < 3; i++) {
+                executeAndConsume(httpProvider, 
+                        httpProvider.getRequest(httpRequestAuthorizer, "POST", server.getUrl(), "{}"));
+            }
+            assertEquals("the pre-warmed connection should be reused", 1, server.getConnectionCount(1));
+        }
+    }
+    
+    @Test
+    public void test_prewarm_cappedAtMaxConnectionsPerRoute() throws Exception {
+        try (KeepAliveServer server = new KeepAliveServer();
+                HttpProvider httpProvider = ApacheHttpClientProvider.builder()
+                    .setMaxConnectionsTotal(10)
+                    .setMaxConnectionsPerRoute(3)
+                    .setPrewarm(server.getUrl(), 5)
+                    .build()) {
+            assertEquals(3, server.getConnectionCount(3));
+        }
+    }
+    
+    @Test
+    public void test_prewarm_connectionRefused() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        // best effort, so the provider is still built
+        try (HttpProvider httpProvider = ApacheHttpClientProvider.builder()
+                    .setConnectionTimeoutInMs(1000)
+                    .setPrewarm("http://127.0.0.1:" + port + "/oauth2/token", 2)
+                    .build()) {
+            assertTrue("httpProvider was null", null != httpProvider);
+        }
+    }
+    
+    @Test
+    public void test_poolSettings() throws Exception {
+        try (KeepAliveServer server = new KeepAliveServer();
+                HttpProvider httpProvider = ApacheHttpClientProvider.builder()
+                    .setMaxConnectionsTotal(10)
+                    .setMaxConnectionsPerRoute(5)
+                    .setConnectionTimeToLiveInMs(60000L)
+                    .setEvictIdleConnectionsAfterInMs(30000L)
+                    .setValidateAfterInactivityInMs(1000)
+                    .setKeepAliveInMs(30000L)
+                    .build()) {
+            executeAndConsume(httpProvider, 
+                    httpProvider.getRequest(httpRequestAuthorizer, "GET", server.getUrl(), (String) null));
+            executeAndConsume(httpProvider, 
+                    httpProvider.getRequest(httpRequestAuthorizer, "GET", server.getUrl(), (String) null));
+            assertEquals(1, server.getConnectionCount(1));
+        }
+    }
+    
+    @Test
+    public void test_validateAfterInactivity_negativeNeverChecks() throws Exception {
+        ApacheHttpClientProvider.Builder builder = ApacheHttpClientProvider.builder()
+                .setValidateAfterInactivityInMs(-1);
+        Field field = ApacheHttpClientProvider.Builder.class.getDeclaredField("validateAfterInactivityInMs");
+        field.setAccessible(true);
+        // applied to the pool as 0, rather than left at Apache HttpClient's default
+        assertEquals(0, field.getInt(builder));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_maxConnectionsPerRoute_notPositive() {
+        ApacheHttpClientProvider.builder().setMaxConnectionsPerRoute(0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_prewarm_notPositive() {
+        ApacheHttpClientProvider.builder().setPrewarm("https://account.api.here.com/oauth2/token", 0);
+    }
+    
     protected void verifyApacheType(String method, Class<?> clazz) throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException, ClassNotFoundException {
         httpRequest = httpProvider.getRequest(httpRequestAuthorizer, method, url, formParams);
 
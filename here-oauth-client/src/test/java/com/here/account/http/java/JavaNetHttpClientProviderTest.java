@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.http.AsyncHttpProvider;
+import com.here.account.http.HttpException;
+import com.here.account.http.HttpProviders;
+import com.here.account.http.HttpProvider.HttpRequest;
+import com.here.account.http.HttpProvider.HttpRequestAuthorizer;
+import com.here.account.http.HttpProvider.HttpResponse;
+import com.here.account.http.ResponseBodyTooLargeException;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The JavaNetHttpClientProvider is only compiled for Java 11, into <tt>META-INF/versions/11</tt>,
+ * so these tests reach it through {@link HttpProviders}, or reflectively,
+ * and are skipped unless that directory is on the classpath.
+ */
+public class JavaNetHttpClientProviderTest {
+
+    private static final String PROVIDER_CLASS_NAME = "com.here.account.http.java.JavaNetHttpClientProvider";
+
+    private static final String RESPONSE_BODY = "{\"access_token\":\"12345\"}";
+
+    private HttpServer httpServer;
+    private AsyncHttpProvider httpProvider;
+    private String url;
+    private HttpRequestAuthorizer httpRequestAuthorizer;
+    private volatile String requestBody;
+    private volatile String contentType;
+    private volatile String authorizationHeader;
+    private volatile boolean chunked;
+
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/oauth2/token", exchange -> {
+            authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+            contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            requestBody = readFully(exchange.getRequestBody());
+            byte[] body = RESPONSE_BODY.getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.start();
+        url = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/oauth2/token";
+        httpRequestAuthorizer = (httpRequest, method, url, formParams) ->
+                httpRequest.addAuthorizationHeader("OAuth test");
+        httpProvider = HttpProviders.javaNetHttpClientIfAvailable();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (null != httpProvider) {
+            httpProvider.close();
+        }
+        httpServer.stop(0);
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+
+    private static boolean isProviderClassAvailable() {
+        try {
+            Class.forName(PROVIDER_CLASS_NAME);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static AsyncHttpProvider buildWithMaxResponseBodyBytes(int maxResponseBodyBytes)
+            throws ReflectiveOperationException {
+        Object builder = Class.forName(PROVIDER_CLASS_NAME).getMethod("builder").invoke(null);
+        builder.getClass().getMethod("setMaxResponseBodyBytes", int.class).invoke(builder, maxResponseBodyBytes);
+        return (AsyncHttpProvider) builder.getClass().getMethod("build").invoke(builder);
+    }
+
+    private HttpRequest formRequest() {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        return httpProvider.getRequest(httpRequestAuthorizer, "POST", url, formParams);
+    }
+
+    @Test
+    public void test_javaNetHttpClientIfAvailable() {
+        if (isProviderClassAvailable()) {
+            assertEquals(PROVIDER_CLASS_NAME, httpProvider.getClass().getName());
+        } else {
+            assertNull("expected no provider without the Java 11 classes", httpProvider);
+        }
+    }
+
+    @Test
+    public void test_executeAsync() throws Exception {
+        Assume.assumeNotNull(httpProvider);
+        HttpResponse response = httpProvider.executeAsync(formRequest()).get();
+        assertEquals(200, response.getStatusCode());
+        assertEquals(RESPONSE_BODY.length(), response.getContentLength());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+        assertEquals("grant_type=client_credentials", requestBody);
+        assertEquals("application/x-www-form-urlencoded", contentType);
+        assertEquals("OAuth test", authorizationHeader);
+    }
+
+    @Test
+    public void test_execute() throws Exception {
+        Assume.assumeNotNull(httpProvider);
+        HttpResponse response = httpProvider.execute(
+                httpProvider.getRequest(httpRequestAuthorizer, "POST", url, "{\"foo\":\"bar\"}"));
+        assertEquals(200, response.getStatusCode());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+        assertEquals("{\"foo\":\"bar\"}", requestBody);
+        assertEquals("application/json", contentType);
+    }
+
+    @Test
+    public void test_executeAsync_concurrent() throws Exception {
+        Assume.assumeNotNull(httpProvider);
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<CompletableFuture<HttpResponse>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(httpProvider.executeAsync(formRequest()));
+        }
+        for (CompletableFuture<HttpResponse> future : futures) {
+            assertEquals(200, future.get().getStatusCode());
+        }
+    }
+
+    @Test
+    public void test_executeAsync_connectionRefused() throws Exception {
+        Assume.assumeNotNull(httpProvider);
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        url = "http://127.0.0.1:" + port + "/oauth2/token";
+        try {
+            httpProvider.executeAsync(formRequest()).get();
+            fail("expected connection refused");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue("expected IOException, actual " + cause,
+                    cause instanceof IOException && !(cause instanceof HttpException));
+        }
+    }
+
+    @Test
+    public void test_execute_responseBodyTooLarge() throws Exception {
+        Assume.assumeNotNull(httpProvider);
+        httpProvider.close();
+        httpProvider = buildWithMaxResponseBodyBytes(RESPONSE_BODY.length() - 1);
+        for (boolean chunked : new boolean[] {false, true}) {
+            this.chunked = chunked;
+            try {
+                httpProvider.execute(formRequest());
+                fail("expected ResponseBodyTooLargeException, chunked=" + chunked);
+            } catch (ResponseBodyTooLargeException e) {
+                assertEquals(RESPONSE_BODY.length() - 1, e.getMaxBodyBytes());
+            }
+            try {
+                httpProvider.executeAsync(formRequest()).get();
+                fail("expected ResponseBodyTooLargeException, chunked=" + chunked);
+            } catch (ExecutionException e) {
+                assertTrue("expected ResponseBodyTooLargeException, actual " + e.getCause(),
+                        e.getCause() instanceof ResponseBodyTooLargeException);
+            }
+        }
+
+        httpProvider.close();
+        httpProvider = buildWithMaxResponseBodyBytes(RESPONSE_BODY.length());
+        assertEquals(RESPONSE_BODY, readFully(httpProvider.execute(formRequest()).getResponseBody()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wrongRequestClass() {
+        Assume.assumeNotNull(httpProvider);
+        httpProvider.executeAsync(value -> {
+            // no-op
+        });
+    }
+}
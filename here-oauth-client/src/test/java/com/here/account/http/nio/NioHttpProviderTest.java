@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.http.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.http.HttpProvider;
+import com.here.account.http.HttpProvider.HttpRequest;
+import com.here.account.http.HttpProvider.HttpRequestAuthorizer;
+import com.here.account.http.HttpProvider.HttpResponse;
+import com.here.account.http.ResponseBodyTooLargeException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+public class NioHttpProviderTest {
+
+    private static final String RESPONSE_BODY = "{\"access_token\":\"12345\"}";
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private HttpServer httpServer;
+    private HttpProvider httpProvider;
+    private HttpRequestAuthorizer httpRequestAuthorizer;
+    private final Set<Integer> remotePorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private volatile String requestBody;
+    private volatile String contentType;
+    private volatile String authorizationHeader;
+    private volatile boolean chunked;
+    private volatile boolean connectionClose;
+    private volatile long delayInMs;
+
+    @Before
+    public void setUp() {
+        httpRequestAuthorizer = (httpRequest, method, url, formParams) ->
+                httpRequest.addAuthorizationHeader("OAuth test");
+        httpProvider = NioHttpProvider.builder().build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpProvider.close();
+        if (null != httpServer) {
+            httpServer.stop(0);
+        }
+    }
+
+    private String startServer(HttpServer server) throws IOException {
+        httpServer = server;
+        httpServer.createContext("/oauth2/token", this::handle);
+        httpServer.start();
+        String scheme = httpServer instanceof HttpsServer ? "https" : "http";
+        return scheme + "://127.0.0.1:" + httpServer.getAddress().getPort() + "/oauth2/token";
+    }
+
+    private String startServer() throws IOException {
+        return startServer(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        remotePorts.add(exchange.getRemoteAddress().getPort());
+        authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+        contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        requestBody = readFully(exchange.getRequestBody());
+        if (delayInMs > 0) {
+            try {
+                Thread.sleep(delayInMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (connectionClose) {
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        byte[] body = RESPONSE_BODY.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+
+    private HttpRequest formRequest(String url) {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        return httpProvider.getRequest(httpRequestAuthorizer, "POST", url, formParams);
+    }
+
+    private void verifyResponse(HttpResponse response) throws IOException {
+        assertEquals(200, response.getStatusCode());
+        assertEquals(RESPONSE_BODY.length(), response.getContentLength());
+        assertEquals(RESPONSE_BODY, readFully(response.getResponseBody()));
+    }
+
+    @Test
+    public void test_execute_form_keepAlive() throws Exception {
+        String url = startServer();
+        for (int i = 0; i < 3; i++) {
+            verifyResponse(httpProvider.execute(formRequest(url)));
+        }
+        assertEquals("grant_type=client_credentials", requestBody);
+        assertEquals("application/x-www-form-urlencoded", contentType);
+        assertEquals("OAuth test", authorizationHeader);
+        assertEquals("expected one persistent connection, remote ports " + remotePorts, 1, remotePorts.size());
+    }
+
+    @Test
+    public void test_execute_json() throws Exception {
+        String url = startServer();
+        verifyResponse(httpProvider.execute(
+                httpProvider.getRequest(httpRequestAuthorizer, "POST", url, "{\"foo\":\"bar\"}")));
+        assertEquals("{\"foo\":\"bar\"}", requestBody);
+        assertEquals("application/json", contentType);
+    }
+
+    @Test
+    public void test_execute_chunked() throws Exception {
+        chunked = true;
+        String url = startServer();
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void test_execute_connectionClose() throws Exception {
+        connectionClose = true;
+        String url = startServer();
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        assertEquals(2, remotePorts.size());
+    }
+
+    @Test
+    public void test_execute_noIdleConnections() throws Exception {
+        httpProvider = NioHttpProvider.builder().setMaxIdleConnectionsPerHost(0).build();
+        String url = startServer();
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        verifyResponse(httpProvider.execute(formRequest(url)));
+        assertEquals(2, remotePorts.size());
+    }
+
+    @Test
+    public void test_execute_responseBodyTooLarge() throws Exception {
+        httpProvider = NioHttpProvider.builder().setMaxResponseBodyBytes(RESPONSE_BODY.length() - 1).build();
+        String url = startServer();
+        for (boolean chunked : new boolean[] {false, true}) {
+            this.chunked = chunked;
+            try {
+                httpProvider.execute(formRequest(url));
+                fail("expected ResponseBodyTooLargeException, chunked=" + chunked);
+            } catch (ResponseBodyTooLargeException e) {
+                assertEquals(RESPONSE_BODY.length() - 1, e.getMaxBodyBytes());
+            }
+        }
+
+        httpProvider = NioHttpProvider.builder().setMaxResponseBodyBytes(RESPONSE_BODY.length()).build();
+        verifyResponse(httpProvider.execute(formRequest(url)));
+    }
+
+    @Test
+    public void test_execute_evictsExpiredOnRelease() throws Exception {
+        httpProvider = NioHttpProvider.builder().setMaxIdleTimeInMs(300L).build();
+        String url = startServer();
+        // two overlapping requests leave two idle connections
+        delayInMs = 200L;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> httpProvider.execute(formRequest(url))));
+            }
+            for (Future<HttpResponse> future : futures) {
+                verifyResponse(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, idleConnections(url).size());
+
+        // steady use keeps leasing the most recently used connection, never reaching the other
+        delayInMs = 0L;
+        for (int i = 0; i < 6; i++) {
+            verifyResponse(httpProvider.execute(formRequest(url)));
+            Thread.sleep(100L);
+        }
+        assertEquals(1, idleConnections(url).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Deque<NioConnection> idleConnections(String url) throws Exception {
+        Field field = NioHttpProvider.class.getDeclaredField("idleConnections");
+        field.setAccessible(true);
+        Map<String, Deque<NioConnection>> idleConnections =
+                (Map<String, Deque<NioConnection>>) field.get(httpProvider);
+        return idleConnections.get(url.substring(0, url.indexOf('/', "http://".length())));
+    }
+
+    @Test
+    public void test_execute_https() throws Exception {
+        SSLContext sslContext = createSelfSignedSslContext();
+        HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        String url = startServer(httpsServer);
+
+        httpProvider = NioHttpProvider.builder().setSslContext(sslContext).build();
+        for (int i = 0; i < 3; i++) {
+            verifyResponse(httpProvider.execute(formRequest(url)));
+        }
+        assertEquals("grant_type=client_credentials", requestBody);
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void test_execute_https_untrusted() throws Exception {
+        SSLContext sslContext = createSelfSignedSslContext();
+        HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        String url = startServer(httpsServer);
+
+        try {
+            // the default trust store does not trust the self-signed certificate
+            httpProvider.execute(formRequest(url));
+            fail("expected SSLException");
+        } catch (SSLException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void test_execute_timeout() throws Exception {
+        delayInMs = 2000L;
+        String url = startServer();
+        httpProvider = NioHttpProvider.builder().setRequestTimeoutInMs(200).build();
+        httpProvider.execute(formRequest(url));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_execute_connectionRefused() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        httpProvider.execute(formRequest("http://127.0.0.1:" + port + "/oauth2/token"));
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void test_execute_unknownHost() throws Exception {
+        httpProvider.execute(formRequest("https://unknown-host.invalid/oauth2/token"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_wrongRequestClass() throws Exception {
+        httpProvider.execute(value -> {
+            // no-op
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unsupportedScheme() {
+        formRequest("ftp://127.0.0.1/oauth2/token");
+    }
+
+    /**
+     * Generates a self-signed certificate for 127.0.0.1 with the JDK's keytool,
+     * and returns an SSLContext that both presents and trusts it.
+     */
+    private static SSLContext createSelfSignedSslContext() throws Exception {
+        File keytool = new File(System.getProperty("java.home"), "bin/keytool");
+        Assume.assumeTrue("no keytool at " + keytool, keytool.canExecute());
+        File keyStoreFile = File.createTempFile("nio-http-provider", ".p12");
+        assertTrue(keyStoreFile.delete());
+        try {
+            Process process = new ProcessBuilder(keytool.getPath(), "-genkeypair",
+                    "-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                    "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                    "-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+                    "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                    .redirectErrorStream(true)
+                    .start();
+            String output = readFully(process.getInputStream());
+            assertEquals("keytool failed: " + output, 0, process.waitFor());
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = new FileInputStream(keyStoreFile)) {
+                keyStore.load(in, PASSWORD);
+            }
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(
+                    KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, PASSWORD);
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+                    TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(keyStore);
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+            return sslContext;
+        } finally {
+            keyStoreFile.delete();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.here.account.util.TestClock;
+
+public class FileTokenStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    
+    private TestClock clock;
+    private File directory;
+    private FileTokenStore tokenStore;
+    
+    @Before
+    public void setUp() {
+        clock = new TestClock();
+        directory = new File(temporaryFolder.getRoot(), "tokens");
+        tokenStore = new FileTokenStore(clock, directory);
+    }
+    
+    @Test
+    public void test_missing() {
+        assertNull(tokenStore.load("key"));
+    }
+    
+    @Test
+    public void test_storeAndLoad() {
+        AccessTokenResponse stored = new AccessTokenResponse("12345", "bearer", 3600L, "refresh", "id");
+        tokenStore.store("key", stored);
+        
+        clock.setCurrentTimeMillis(stored.getStartTimeMilliseconds() + 600000L);
+        AccessTokenResponse loaded = tokenStore.load("key");
+        assertEquals("12345", loaded.getAccessToken());
+        assertEquals("bearer", loaded.getTokenType());
+        assertEquals("refresh", loaded.getRefreshToken());
+        assertEquals("id", loaded.getIdToken());
+        assertEquals("expected the remaining lifetime", 3000L, (long) loaded.getExpiresIn());
+        
+        assertNull("expected a different key to miss", tokenStore.load("other"));
+    }
+    
+    @Test
+    public void test_nearlyExpired() {
+        AccessTokenResponse stored = new AccessTokenResponse("12345", "bearer", 3600L, null, null);
+        tokenStore.store("key", stored);
+        clock.setCurrentTimeMillis(stored.getStartTimeMilliseconds() + 3600000L 
+                - (FileTokenStore.MINIMUM_REMAINING_SECONDS - 1) * 1000L);
+        assertNull(tokenStore.load("key"));
+    }
+    
+    @Test
+    public void test_replaceAndRemove() {
+        tokenStore.store("key", new AccessTokenResponse("12345", "bearer", 3600L, null, null));
+        tokenStore.store("key", new AccessTokenResponse("67890", "bearer", 3600L, null, null));
+        assertEquals("67890", tokenStore.load("key").getAccessToken());
+        assertEquals("expected no leftover temp files", 1, directory.list().length);
+        
+        tokenStore.remove("key");
+        assertNull(tokenStore.load("key"));
+    }
+    
+    @Test
+    public void test_fileNameHidesKey() {
+        Path file = tokenStore.getFile("https://example.com/oauth2/token\naccessKeyId");
+        assertFalse(file.getFileName().toString().contains("accessKeyId"));
+        assertTrue(file.getFileName().toString().matches("[0-9a-f]{64}\\.json"));
+    }
+    
+    @Test
+    public void test_malformed() throws Exception {
+        Files.createDirectories(directory.toPath());
+        Files.write(tokenStore.getFile("key"), "not json".getBytes("UTF-8"));
+        assertNull(tokenStore.load("key"));
+    }
+    
+    @Test
+    public void test_ownerOnly() throws Exception {
+        tokenStore.store("key", new AccessTokenResponse("12345", "bearer", 3600L, null, null));
+        Set<PosixFilePermission> permissions;
+        try {
+            permissions = Files.getPosixFilePermissions(tokenStore.getFile("key"));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system
+            return;
+        }
+        assertEquals(PosixFilePermissions.fromString("rw-------"), permissions);
+    }
+    
+    @Test
+    public void test_withLease_oneRequestPerRefresh() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final AccessTokenResponse previous = new AccessTokenResponse("previous", "bearer", 3600L, null, null);
+        FileTokenStore.TokenSupplier supplier = () -> {
+            AccessTokenResponse stored = tokenStore.load("key");
+            if (null != stored && !stored.getAccessToken().equals(previous.getAccessToken())) {
+                return stored;
+            }
+            requests.incrementAndGet();
+            AccessTokenResponse token = new AccessTokenResponse("new", "bearer", 3600L, null, null);
+            tokenStore.store("key", token);
+            return token;
+        };
+        
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<AccessTokenResponse>> futures = new ArrayList<Future<AccessTokenResponse>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> tokenStore.withLease("key", supplier)));
+            }
+            for (Future<AccessTokenResponse> future : futures) {
+                assertEquals("new", future.get().getAccessToken());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals("expected one token request", 1, requests.get());
+    }
+    
+    @Test
+    public void test_withLease_heldByOtherProcess() throws Exception {
+        FileTokenStore impatientTokenStore = new FileTokenStore(clock, directory, 50L);
+        impatientTokenStore.store("key", new AccessTokenResponse("12345", "bearer", 3600L, null, null));
+        Path lockFile = directory.toPath().resolve(
+                impatientTokenStore.getFile("key").getFileName().toString().replace(".json", ".lock"));
+        // within one JVM a held lease shows as an OverlappingFileLockException, 
+        // from another JVM as a timeout; either way the supplier still runs
+        try (FileChannel channel = FileChannel.open(lockFile, 
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock fileLock = channel.lock()) {
+            AccessTokenResponse token = impatientTokenStore.withLease("key", () -> impatientTokenStore.load("key"));
+            assertEquals("12345", token.getAccessToken());
+        }
+    }
+}
@@ -19,12 +19,26 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -33,9 +47,14 @@ import org.mockito.Mockito;
 import org.mockito.stubbing.OngoingStubbing;
 
 import com.here.account.auth.OAuth1ClientCredentialsProvider;
+import com.here.account.auth.SignatureMethod;
+import com.here.account.http.AsyncHttpProvider;
 import com.here.account.http.HttpException;
 import com.here.account.http.HttpProvider;
+import com.here.account.http.HttpProvider.HttpRequest;
+import com.here.account.http.HttpProvider.HttpRequestAuthorizer;
 import com.here.account.http.HttpProvider.HttpResponse;
+import com.here.account.http.ResponseBodyTooLargeException;
 
 public class HereAccountTest extends AbstractCredentialTezt {
     
@@ -151,6 +170,26 @@ public class HereAccountTest extends AbstractCredentialTezt {
         }
     }
     
+    @Test
+    public void testGetTokenResponseTooLarge() throws Exception {
+        final String responseBody = "{\"error\":\"unauthorized_client\"}";
+        TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(mockHttpProvider(dummyResponse(400, 
+                                               -1L, 
+                                               new ByteArrayInputStream(responseBody.getBytes("UTF-8")))))
+                .setClientCredentialsProvider(new OAuth1ClientCredentialsProvider(url, accessKeyId, "mySecret"))
+                .setMaxResponseBodyBytes(responseBody.length() - 1)
+                .build();
+        
+        try {
+            tokenEndpoint.requestToken(new ClientCredentialsGrantRequest());
+            Assert.fail("Expected ResponseParsingException");
+        } catch (ResponseParsingException e) {
+            assertTrue("expected ResponseBodyTooLargeException, actual " + e.getCause(), 
+                    e.getCause() instanceof ResponseBodyTooLargeException);
+        }
+    }
+    
     @Test
     public void testGetTokenValidErrorResponse() throws Exception {
         final String error = "unauthorized_client";
@@ -243,6 +282,20 @@ public class HereAccountTest extends AbstractCredentialTezt {
         }
     }
     
+    @Test
+    public void testGetTokenResponseBodyTooLargeExecuting() throws Exception {
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                mockThrowingHttpProvider(new ResponseBodyTooLargeException(1024)),
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        try {
+            tokenEndpoint.requestToken(new ClientCredentialsGrantRequest());
+            Assert.fail("Expected ResponseParsingException");
+        } catch (ResponseParsingException rpe) {
+            
+        }
+    }
+    
     @Test
     public void testGetFreshTokenVerifyRefresh() throws Exception {
         // first token expires after 30 seconds (minimum refresh time)
@@ -276,6 +329,501 @@ public class HereAccountTest extends AbstractCredentialTezt {
     }
     
     
+    @Test
+    public void testRequestTokenAsync() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                mockHttpProvider(dummyResponse(200, 
+                                               validToken.getBytes().length, 
+                                               new ByteArrayInputStream(validToken.getBytes("UTF-8")))),
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        AccessTokenResponse response = tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest()).get();
+        Assert.assertEquals("12345", response.getAccessToken());
+    }
+    
+    @Test
+    public void testRequestTokenAsyncRunsOnExecutor() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        final AtomicInteger executions = new AtomicInteger();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executions.incrementAndGet();
+                command.run();
+            }
+        };
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                mockHttpProvider(dummyResponse(200, 
+                                               validToken.getBytes().length, 
+                                               new ByteArrayInputStream(validToken.getBytes("UTF-8")))),
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret),
+                executor);
+        
+        AccessTokenResponse response = tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest()).get();
+        Assert.assertEquals("12345", response.getAccessToken());
+        Assert.assertEquals(1, executions.get());
+    }
+    
+    @Test
+    public void testDefaultExecutorBounded() {
+        ThreadPoolExecutor executor = HereAccount.getDefaultExecutor();
+        Assert.assertEquals(HereAccount.DEFAULT_EXECUTOR_THREADS, executor.getCorePoolSize());
+        Assert.assertEquals(HereAccount.DEFAULT_EXECUTOR_THREADS, executor.getMaximumPoolSize());
+        Assert.assertTrue(executor.allowsCoreThreadTimeOut());
+        Assert.assertEquals(HereAccount.DEFAULT_EXECUTOR_QUEUE_CAPACITY, 
+                executor.getQueue().size() + executor.getQueue().remainingCapacity());
+    }
+    
+    @Test
+    public void testRequestTokenAsyncValidErrorResponse() throws Exception {
+        final String error = "unauthorized_client";
+        final String responseBody = "{\"error\":\""+error+"\"}";
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                mockHttpProvider(dummyResponse(400, 
+                                               responseBody.getBytes().length, 
+                                               new ByteArrayInputStream(responseBody.getBytes("UTF-8")))),
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, "mySecret"));
+        
+        try {
+            tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest()).get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue("expected AccessTokenException, actual "+cause, cause instanceof AccessTokenException);
+            String actualError = ((AccessTokenException) cause).getErrorResponse().getError();
+            assertTrue("error was expected "+error+", actual "+actualError, 
+                    error.equals(actualError));
+        }
+    }
+    
+    @Test
+    public void testRequestTokenAsyncUsesAsyncHttpProvider() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<HttpResponse>();
+        AsyncHttpProvider asyncHttpProvider = Mockito.mock(AsyncHttpProvider.class);
+        Mockito.when(asyncHttpProvider.executeAsync(Mockito.any())).thenReturn(responseFuture);
+        final AtomicInteger executions = new AtomicInteger();
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                asyncHttpProvider,
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret),
+                command -> {
+                    executions.incrementAndGet();
+                    command.run();
+                });
+        
+        CompletableFuture<AccessTokenResponse> future = 
+                tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest());
+        Assert.assertFalse("completed before the response", future.isDone());
+        
+        responseFuture.complete(dummyResponse(200, 
+                validToken.getBytes().length, 
+                new ByteArrayInputStream(validToken.getBytes("UTF-8"))));
+        Assert.assertEquals("12345", future.get().getAccessToken());
+        // no thread was dedicated to the blocking call
+        Assert.assertEquals(0, executions.get());
+        Mockito.verify(asyncHttpProvider, Mockito.never()).execute(Mockito.any());
+    }
+    
+    @Test
+    public void testRequestTokenAsyncAsyncHttpProviderFailure() throws Exception {
+        AsyncHttpProvider asyncHttpProvider = Mockito.mock(AsyncHttpProvider.class);
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<HttpResponse>();
+        responseFuture.completeExceptionally(new IOException("connection refused"));
+        Mockito.when(asyncHttpProvider.executeAsync(Mockito.any())).thenReturn(responseFuture);
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                asyncHttpProvider,
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        try {
+            tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest()).get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue("expected RequestExecutionException, actual "+cause, 
+                    cause instanceof RequestExecutionException);
+        }
+    }
+    
+    @Test
+    public void testRequestTokenAsyncAsyncHttpProviderCoalesces() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<HttpResponse>();
+        AsyncHttpProvider asyncHttpProvider = Mockito.mock(AsyncHttpProvider.class);
+        Mockito.when(asyncHttpProvider.executeAsync(Mockito.any())).thenReturn(responseFuture);
+        TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(asyncHttpProvider)
+                .setClientCredentialsProvider(new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret))
+                .setCoalesceRequests(true)
+                .build();
+        
+        CompletableFuture<AccessTokenResponse> first = 
+                tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest());
+        CompletableFuture<AccessTokenResponse> second = 
+                tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest());
+        // cancelling one caller's future doesn't affect the other
+        second.cancel(false);
+        responseFuture.complete(dummyResponse(200, 
+                validToken.getBytes().length, 
+                new ByteArrayInputStream(validToken.getBytes("UTF-8"))));
+        
+        Assert.assertEquals("12345", first.get().getAccessToken());
+        Mockito.verify(asyncHttpProvider, Mockito.times(1)).executeAsync(Mockito.any());
+    }
+    
+    @Test
+    public void testRequestAutoRefreshingTokenAsync() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                mockHttpProvider(dummyResponse(200, 
+                                               validToken.getBytes().length, 
+                                               new ByteArrayInputStream(validToken.getBytes("UTF-8")))),
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        Fresh<AccessTokenResponse> freshToken = tokenEndpoint.requestAutoRefreshingTokenAsync(
+                new ClientCredentialsGrantRequest()).get();
+        Assert.assertEquals("12345", freshToken.get().getAccessToken());
+    }
+    
+    @Test
+    public void testRequestAutoRefreshingTokenAsyncUsesAsyncHttpProvider() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        CompletableFuture<HttpResponse> responseFuture = new CompletableFuture<HttpResponse>();
+        AsyncHttpProvider asyncHttpProvider = Mockito.mock(AsyncHttpProvider.class);
+        Mockito.when(asyncHttpProvider.executeAsync(Mockito.any())).thenReturn(responseFuture);
+        final AtomicInteger executions = new AtomicInteger();
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(
+                asyncHttpProvider,
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret),
+                command -> {
+                    executions.incrementAndGet();
+                    command.run();
+                });
+        
+        CompletableFuture<Fresh<AccessTokenResponse>> future = 
+                tokenEndpoint.requestAutoRefreshingTokenAsync(new ClientCredentialsGrantRequest());
+        Assert.assertFalse("completed before the response", future.isDone());
+        
+        responseFuture.complete(dummyResponse(200, 
+                validToken.getBytes().length, 
+                new ByteArrayInputStream(validToken.getBytes("UTF-8"))));
+        Assert.assertEquals("12345", future.get().get().getAccessToken());
+        // the initial token came through requestTokenAsync, not a blocking call on the executor
+        Assert.assertEquals(0, executions.get());
+        Mockito.verify(asyncHttpProvider, Mockito.never()).execute(Mockito.any());
+    }
+    
+    @Test
+    public void testRequestAutoRefreshingTokenLazily() throws Exception {
+        final String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpProvider httpProvider = Mockito.mock(HttpProvider.class);
+        Mockito.when(httpProvider.execute(Mockito.any())).thenAnswer((invocation) -> {
+            release.await(5, TimeUnit.SECONDS);
+            return dummyResponse(200, validToken.getBytes().length, 
+                    new ByteArrayInputStream(validToken.getBytes("UTF-8")));
+        });
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(httpProvider,
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        // returns before the token endpoint responds
+        Fresh<AccessTokenResponse> freshToken = tokenEndpoint.requestAutoRefreshingTokenLazily(
+                new ClientCredentialsGrantRequest());
+        release.countDown();
+        Assert.assertEquals("12345", freshToken.get().getAccessToken());
+        Assert.assertEquals("12345", freshToken.get().getAccessToken());
+        Mockito.verify(httpProvider, Mockito.times(1)).execute(Mockito.any());
+    }
+    
+    @Test
+    public void testRequestAutoRefreshingTokenLazilyRetries() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        HttpProvider httpProvider = Mockito.mock(HttpProvider.class);
+        Mockito.when(httpProvider.execute(Mockito.any()))
+                .thenThrow(new IOException("simulate unable to connect"))
+                .thenReturn(dummyResponse(200, validToken.getBytes().length, 
+                        new ByteArrayInputStream(validToken.getBytes("UTF-8"))));
+        TokenEndpoint tokenEndpoint = HereAccount.getTokenEndpoint(httpProvider,
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret));
+        
+        Fresh<AccessTokenResponse> freshToken = tokenEndpoint.requestAutoRefreshingTokenLazily(
+                new ClientCredentialsGrantRequest());
+        try {
+            freshToken.get();
+            Assert.fail("expected the failed initial request");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue("unexpected cause " + e.getCause(), 
+                    e.getCause() instanceof RequestExecutionException);
+        }
+        Assert.assertEquals("12345", freshToken.get().getAccessToken());
+    }
+    
+    @Test
+    public void testTokenEndpointDefaultAsyncMethods() throws Exception {
+        final AccessTokenResponse token = new AccessTokenResponse("12345", "bearer", 30L, null, null);
+        final AtomicInteger requests = new AtomicInteger();
+        // an implementation written before the non-blocking methods were added
+        TokenEndpoint tokenEndpoint = new TokenEndpoint() {
+            @Override
+            public AccessTokenResponse requestToken(AccessTokenRequest request) 
+                    throws RequestExecutionException {
+                if (1 == requests.incrementAndGet()) {
+                    throw new RequestExecutionException("simulate unable to connect");
+                }
+                return token;
+            }
+
+            @Override
+            public Fresh<AccessTokenResponse> requestAutoRefreshingToken(AccessTokenRequest request) 
+                    throws AccessTokenException, RequestExecutionException, ResponseParsingException {
+                AccessTokenResponse response = requestToken(request);
+                return () -> response;
+            }
+        };
+        
+        try {
+            tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest()).get();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue("unexpected cause " + e.getCause(), e.getCause() instanceof RequestExecutionException);
+        }
+        Assert.assertSame(token, tokenEndpoint.requestTokenAsync(new ClientCredentialsGrantRequest(), 
+                Runnable::run).get());
+        Assert.assertSame(token, tokenEndpoint.requestAutoRefreshingTokenAsync(
+                new ClientCredentialsGrantRequest()).get().get());
+        Assert.assertSame(token, tokenEndpoint.requestAutoRefreshingTokenLazily(
+                new ClientCredentialsGrantRequest()).get());
+    }
+    
+    @Test
+    public void testTokenCacheSharesAutoRefreshingToken() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        String otherToken = "{"
+                + " \"access_token\": \"67890\","
+                + " \"expires_in\": 30"
+                + "}";
+        HttpProvider httpProvider = mockHttpProvider(
+                dummyResponse(200, validToken.getBytes().length, 
+                        new ByteArrayInputStream(validToken.getBytes("UTF-8"))),
+                dummyResponse(200, otherToken.getBytes().length, 
+                        new ByteArrayInputStream(otherToken.getBytes("UTF-8"))));
+        TokenCache tokenCache = new TokenCache();
+        try {
+            TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                    .setHttpProvider(httpProvider)
+                    .setClientCredentialsProvider(
+                            new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret))
+                    .setTokenCache(tokenCache)
+                    .build();
+            Fresh<AccessTokenResponse> fresh1 = tokenEndpoint.requestAutoRefreshingToken(
+                    new ClientCredentialsGrantRequest());
+            Fresh<AccessTokenResponse> fresh2 = tokenEndpoint.requestAutoRefreshingToken(
+                    new ClientCredentialsGrantRequest());
+            Assert.assertEquals("12345", fresh1.get().getAccessToken());
+            Assert.assertEquals("12345", fresh2.get().getAccessToken());
+            Mockito.verify(httpProvider, Mockito.times(1)).execute(Mockito.any());
+            
+            // a different expires_in is a different token
+            Fresh<AccessTokenResponse> fresh3 = tokenEndpoint.requestAutoRefreshingToken(
+                    new ClientCredentialsGrantRequest().setExpiresIn(60L));
+            Assert.assertEquals("67890", fresh3.get().getAccessToken());
+            Assert.assertEquals(2, tokenCache.size());
+        } finally {
+            tokenCache.invalidateAll();
+        }
+    }
+    
+    @Test
+    public void testTokenCacheSeparatesCredentials() throws Exception {
+        List<HttpResponse> responses = new ArrayList<HttpResponse>();
+        for (int i = 0; i < 3; i++) {
+            String token = "{\"access_token\": \"token" + i + "\", \"expires_in\": 30}";
+            responses.add(dummyResponse(200, token.getBytes().length, 
+                    new ByteArrayInputStream(token.getBytes("UTF-8"))));
+        }
+        HttpProvider httpProvider = mockHttpProvider(responses.toArray(new HttpResponse[responses.size()]));
+        TokenCache tokenCache = new TokenCache();
+        try {
+            List<String> accessTokens = new ArrayList<String>();
+            for (OAuth1ClientCredentialsProvider clientCredentialsProvider : new OAuth1ClientCredentialsProvider[] {
+                    new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret),
+                    // the same accessKeyId with another secret, such as after a key rotation
+                    new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret + "-rotated"),
+                    new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret, SignatureMethod.HMACSHA1)}) {
+                TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                        .setHttpProvider(httpProvider)
+                        .setClientCredentialsProvider(clientCredentialsProvider)
+                        .setTokenCache(tokenCache)
+                        .build();
+                accessTokens.add(tokenEndpoint.requestAutoRefreshingToken(new ClientCredentialsGrantRequest())
+                        .get().getAccessToken());
+            }
+            Assert.assertEquals(Arrays.asList("token0", "token1", "token2"), accessTokens);
+            Assert.assertEquals(3, tokenCache.size());
+        } finally {
+            tokenCache.invalidateAll();
+        }
+    }
+    
+    @Test
+    public void testTokenStoreWarmRestart() throws Exception {
+        String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 3600"
+                + "}";
+        File directory = Files.createTempDirectory("tokens").toFile();
+        FileTokenStore tokenStore = new FileTokenStore(directory);
+        OAuth1ClientCredentialsProvider clientCredentialsProvider = 
+                new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret);
+        
+        TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(mockHttpProvider(dummyResponse(200, validToken.getBytes().length, 
+                        new ByteArrayInputStream(validToken.getBytes("UTF-8")))))
+                .setClientCredentialsProvider(clientCredentialsProvider)
+                .setTokenStore(tokenStore)
+                .build();
+        Assert.assertEquals("12345", tokenEndpoint.requestAutoRefreshingToken(
+                new ClientCredentialsGrantRequest()).get().getAccessToken());
+        
+        // as if restarted: no token endpoint call
+        HttpProvider restartedHttpProvider = Mockito.mock(HttpProvider.class);
+        TokenEndpoint restartedTokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(restartedHttpProvider)
+                .setClientCredentialsProvider(clientCredentialsProvider)
+                .setTokenStore(tokenStore)
+                .build();
+        try {
+            Assert.assertEquals("12345", restartedTokenEndpoint.requestAutoRefreshingToken(
+                    new ClientCredentialsGrantRequest()).get().getAccessToken());
+            Mockito.verify(restartedHttpProvider, Mockito.never()).execute(Mockito.any());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+    
+    @Test
+    public void testCoalesceRequests() throws Exception {
+        final String validToken = "{"
+                + " \"access_token\": \"12345\","
+                + " \"expires_in\": 30"
+                + "}";
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpProvider blockingHttpProvider = new HttpProvider() {
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+                    String requestBodyJson) {
+                return null;
+            }
+
+            @Override
+            public HttpRequest getRequest(HttpRequestAuthorizer httpRequestAuthorizer, String method, String url,
+                    Map<String, List<String>> formParams) {
+                return null;
+            }
+
+            @Override
+            public HttpResponse execute(HttpRequest httpRequest) throws HttpException, IOException {
+                executions.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return dummyResponse(200, validToken.getBytes().length, 
+                        new ByteArrayInputStream(validToken.getBytes("UTF-8")));
+            }
+            
+        };
+        final TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(blockingHttpProvider)
+                .setClientCredentialsProvider(new OAuth1ClientCredentialsProvider(url, accessKeyId, accessKeySecret))
+                .setCoalesceRequests(true)
+                .build();
+        
+        int numThreads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<AccessTokenResponse>> futures = new ArrayList<Future<AccessTokenResponse>>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executorService.submit(
+                        () -> tokenEndpoint.requestToken(new ClientCredentialsGrantRequest())));
+            }
+            // give every caller time to join the in-flight request
+            Thread.sleep(500L);
+            release.countDown();
+            
+            AccessTokenResponse first = futures.get(0).get();
+            for (Future<AccessTokenResponse> future : futures) {
+                assertTrue("expected the shared response", first == future.get());
+            }
+            Assert.assertEquals(1, executions.get());
+            
+            // once complete, the next request goes over the wire again
+            tokenEndpoint.requestToken(new ClientCredentialsGrantRequest());
+            Assert.assertEquals(2, executions.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testCoalesceRequestsErrorResponse() throws Exception {
+        final String error = "unauthorized_client";
+        final String responseBody = "{\"error\":\""+error+"\"}";
+        TokenEndpoint tokenEndpoint = HereAccount.tokenEndpointBuilder()
+                .setHttpProvider(mockHttpProvider(dummyResponse(400, 
+                                               responseBody.getBytes().length, 
+                                               new ByteArrayInputStream(responseBody.getBytes("UTF-8")))))
+                .setClientCredentialsProvider(new OAuth1ClientCredentialsProvider(url, accessKeyId, "mySecret"))
+                .setCoalesceRequests(true)
+                .build();
+        
+        try {
+            tokenEndpoint.requestToken(new ClientCredentialsGrantRequest());
+            Assert.fail("Expected AccessTokenException");
+        } catch (AccessTokenException e) {
+            String actualError = e.getErrorResponse().getError();
+            assertTrue("error was expected "+error+", actual "+actualError, 
+                    error.equals(actualError));
+        }
+    }
+    
     private HttpResponse dummyResponse(final int statusCode,
                                        final long contentLength,
                                        final InputStream body) {
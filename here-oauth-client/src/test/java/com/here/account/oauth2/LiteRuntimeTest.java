@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.auth.BatchSignatureVerifier;
+import com.here.account.auth.OAuth1ClientCredentialsProvider;
+import com.here.account.auth.SignatureCalculator;
+import com.here.account.auth.SignatureMethod;
+import com.here.account.http.java.JavaHttpProvider;
+import com.here.account.util.JsonSerializer;
+import com.here.account.util.MinimalJsonCodec;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs in the <tt>test-lite</tt> surefire execution, without Jackson, Apache HttpClient
+ * or commons-codec on the classpath; skipped when Jackson is present.
+ */
+public class LiteRuntimeTest {
+
+    private HttpServer httpServer;
+    private String url;
+    private volatile int statusCode;
+    private volatile String responseBody;
+    private volatile String authorizationHeader;
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue("jackson-databind is on the classpath", !JsonSerializer.isJacksonAvailable());
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/oauth2/token", this::handle);
+        httpServer.start();
+        url = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/oauth2/token";
+    }
+
+    @After
+    public void tearDown() {
+        if (null != httpServer) {
+            httpServer.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] body = responseBody.getBytes(JsonSerializer.CHARSET);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private TokenEndpoint getTokenEndpoint() {
+        return HereAccount.getTokenEndpoint(JavaHttpProvider.builder().build(),
+                new OAuth1ClientCredentialsProvider(url, "accessKeyId", "accessKeySecret"));
+    }
+
+    @Test
+    public void test_requestToken() throws Exception {
+        statusCode = 200;
+        responseBody = "{\"access_token\":\"h1.abc\",\"token_type\":\"bearer\",\"expires_in\":3600}";
+        AccessTokenResponse response = getTokenEndpoint().requestToken(new ClientCredentialsGrantRequest());
+        assertEquals("h1.abc", response.getAccessToken());
+        assertEquals(Long.valueOf(3600L), response.getExpiresIn());
+        assertTrue("expected an OAuth1 signature, actual " + authorizationHeader,
+                authorizationHeader.startsWith("OAuth ") && authorizationHeader.contains("oauth_signature="));
+    }
+
+    @Test
+    public void test_requestToken_error() throws Exception {
+        statusCode = 401;
+        responseBody = "{\"error\":\"invalid_client\",\"httpStatus\":401,\"errorCode\":401300}";
+        try {
+            getTokenEndpoint().requestToken(new ClientCredentialsGrantRequest());
+            fail("expected AccessTokenException");
+        } catch (AccessTokenException e) {
+            assertEquals(401, e.getStatusCode());
+            assertEquals("invalid_client", e.getErrorResponse().getError());
+            assertEquals(Integer.valueOf(401300), e.getErrorResponse().getErrorCode());
+        }
+    }
+
+    @Test
+    public void test_jsonSerializer_maps() throws IOException {
+        assertTrue("expected the minimal codec, actual " + JsonSerializer.getCodec(),
+                JsonSerializer.getCodec() instanceof MinimalJsonCodec);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("access_token", "h1.abc");
+        map.put("expires_in", 3600);
+        map.put("scopes", Arrays.asList("a", "b"));
+        String json = JsonSerializer.toJson(map);
+        assertEquals(map, JsonSerializer.toMap(new ByteArrayInputStream(json.getBytes(JsonSerializer.CHARSET))));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void test_jsonSerializer_pojo() throws IOException {
+        JsonSerializer.toPojo(ByteBuffer.wrap("{}".getBytes(JsonSerializer.CHARSET)), AccessTokenResponse.class);
+    }
+
+    @Test
+    public void test_batchSignatureVerifier() throws IOException {
+        Map<String, List<String>> formParams = new HashMap<String, List<String>>();
+        formParams.put("grant_type", Collections.singletonList("client_credentials"));
+        String signature = new SignatureCalculator("accessKeyId", "accessKeySecret").calculateSignature(
+                "POST", url, 1480000000L, "nonce", SignatureMethod.HMACSHA256, formParams, null);
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("consumerKey", "accessKeyId");
+        record.put("method", "POST");
+        record.put("baseURL", url);
+        record.put("timestamp", 1480000000L);
+        record.put("nonce", "nonce");
+        record.put("signatureMethod", SignatureMethod.HMACSHA256.getOauth1SignatureMethod());
+        record.put("signature", signature);
+        record.put("formParams", formParams);
+
+        BatchSignatureVerifier.Report report = BatchSignatureVerifier.builder()
+                .setVerificationKeyProvider(consumerKey -> "accessKeyId".equals(consumerKey) ? "accessKeySecret" : null)
+                .build()
+                .verify(new StringReader(JsonSerializer.toJson(record) + "\nnot json\n"));
+        assertEquals(2, report.getRecordCount());
+        assertEquals(1, report.getValidCount());
+        assertEquals(BatchSignatureVerifier.Reason.MALFORMED_RECORD, report.getFailures().get(0).getReason());
+    }
+}
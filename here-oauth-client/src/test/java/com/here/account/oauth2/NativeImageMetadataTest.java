@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Validates the GraalVM native-image metadata shipped in the jar,
+ * so that it keeps up with the classes it describes.
+ */
+public class NativeImageMetadataTest {
+
+    private static final String METADATA_DIR = "META-INF/native-image/com.here.account/here-oauth-client/";
+    private static final String BUILD_TIME_ARG = "--initialize-at-build-time=";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ClassLoader classLoader = getClass().getClassLoader();
+
+    private InputStream open(String name) {
+        InputStream in = classLoader.getResourceAsStream(METADATA_DIR + name);
+        assertNotNull("missing " + METADATA_DIR + name, in);
+        return in;
+    }
+
+    private List<Map<String, Object>> readReflectConfig() throws IOException {
+        try (InputStream in = open("reflect-config.json")) {
+            return objectMapper.readValue(in, new TypeReference<List<Map<String, Object>>>() {});
+        }
+    }
+
+    private Set<String> getReflectionRegisteredClassNames() throws IOException {
+        Set<String> names = new HashSet<String>();
+        for (Map<String, Object> entry : readReflectConfig()) {
+            names.add((String) entry.get("name"));
+        }
+        return names;
+    }
+
+    /**
+     * Whether the class is only compiled for Java 11, into the multi-release jar's
+     * <tt>META-INF/versions/11</tt>, which is not on the classpath of the Java 8 tests.
+     */
+    private static boolean isJava11Only(String className) {
+        String topLevelClassName = className.replaceFirst("\\$.*", "");
+        return Files.exists(Paths.get("src/main/java11", topLevelClassName.replace('.', '/') + ".java"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_reflectConfig_resolves() throws Exception {
+        for (Map<String, Object> entry : readReflectConfig()) {
+            String className = (String) entry.get("name");
+            Class<?> c;
+            try {
+                c = Class.forName(className, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                assertTrue("not on the classpath: " + className, isJava11Only(className));
+                continue;
+            }
+            List<Map<String, Object>> methods = (List<Map<String, Object>>) entry.get("methods");
+            if (null != methods) {
+                for (Map<String, Object> method : methods) {
+                    List<String> parameterTypeNames = (List<String>) method.get("parameterTypes");
+                    Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.size()];
+                    for (int i = 0; i < parameterTypes.length; i++) {
+                        parameterTypes[i] = Class.forName(parameterTypeNames.get(i), false, classLoader);
+                    }
+                    if ("<init>".equals(method.get("name"))) {
+                        c.getDeclaredConstructor(parameterTypes);
+                    } else {
+                        c.getDeclaredMethod((String) method.get("name"), parameterTypes);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Every class that Jackson binds by its annotations needs reflection metadata.
+     */
+    @Test
+    public void test_reflectConfig_coversJacksonAnnotatedClasses() throws Exception {
+        Set<String> registered = getReflectionRegisteredClassNames();
+        Path classesDir = Paths.get(AccessTokenResponse.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<String> classNames;
+        try (Stream<Path> paths = Files.walk(classesDir.resolve("com/here/account"))) {
+            classNames = paths
+                    .map(path -> classesDir.relativize(path).toString())
+                    .filter(name -> name.endsWith(".class"))
+                    .map(name -> name.substring(0, name.length() - ".class".length()).replace('/', '.').replace('\\', '.'))
+                    .collect(Collectors.toList());
+        }
+        assertTrue("expected classes in " + classesDir, classNames.size() > 10);
+        List<String> unregistered = new ArrayList<String>();
+        for (String className : classNames) {
+            Class<?> c = Class.forName(className, false, classLoader);
+            if (isJacksonAnnotated(c) && !registered.contains(className)) {
+                unregistered.add(className);
+            }
+        }
+        assertTrue("Jackson-annotated classes missing from reflect-config.json: " + unregistered,
+                unregistered.isEmpty());
+    }
+
+    private static boolean isJacksonAnnotated(Class<?> c) {
+        List<AccessibleObject> members = new ArrayList<AccessibleObject>();
+        members.addAll(Arrays.asList(c.getDeclaredFields()));
+        members.addAll(Arrays.asList(c.getDeclaredMethods()));
+        members.addAll(Arrays.asList(c.getDeclaredConstructors()));
+        if (hasJacksonAnnotation(c.getDeclaredAnnotations())) {
+            return true;
+        }
+        for (AccessibleObject member : members) {
+            if (hasJacksonAnnotation(member.getDeclaredAnnotations())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasJacksonAnnotation(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType().getName().startsWith("com.fasterxml.jackson.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void test_resourceConfig_coversResources() throws IOException {
+        Map<String, Object> resourceConfig;
+        try (InputStream in = open("resource-config.json")) {
+            resourceConfig = objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+        }
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> includes = (List<Map<String, String>>)
+                ((Map<String, Object>) resourceConfig.get("resources")).get("includes");
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (Map<String, String> include : includes) {
+            patterns.add(Pattern.compile(include.get("pattern")));
+        }
+        // loaded by Apache HttpClient's VersionInfo and PublicSuffixMatcherLoader
+        for (String resource : Arrays.asList("org/apache/http/client/version.properties",
+                "org/apache/http/version.properties", "mozilla/public-suffix-list.txt")) {
+            assertNotNull("not on the classpath: " + resource, classLoader.getResource(resource));
+            boolean matched = false;
+            for (Pattern pattern : patterns) {
+                matched |= pattern.matcher(resource).matches();
+            }
+            assertTrue("no resource-config.json pattern includes " + resource, matched);
+        }
+    }
+
+    /**
+     * Classes initialized at build time must exist,
+     * and must not pull third-party state, such as an ObjectMapper, into the image heap.
+     */
+    @Test
+    public void test_nativeImageProperties_buildTimeInitialization() throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = open("native-image.properties")) {
+            properties.load(in);
+        }
+        String args = properties.getProperty("Args");
+        assertNotNull("missing Args", args);
+        List<String> classNames = new ArrayList<String>();
+        for (String arg : args.trim().split("\\s+")) {
+            if (arg.startsWith(BUILD_TIME_ARG)) {
+                classNames.addAll(Arrays.asList(arg.substring(BUILD_TIME_ARG.length()).split(",")));
+            }
+        }
+        assertFalse("expected build-time initialized classes", classNames.isEmpty());
+        for (String className : classNames) {
+            Class<?> c = Class.forName(className, false, classLoader);
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    String typeName = field.getType().getName();
+                    assertTrue(className + "." + field.getName() + " is a third-party " + typeName,
+                            typeName.startsWith("java.") || typeName.startsWith("com.here.account.")
+                            || field.getType().isPrimitive() || field.getType().isArray());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.util.RefreshableResponseProvider;
+import com.here.account.util.TestClock;
+
+public class TokenCacheTest {
+
+    private TestClock clock;
+    private List<RefreshableResponseProvider<AccessTokenResponse>> loaded;
+    private TokenCache.Loader loader;
+    
+    @Before
+    public void setUp() {
+        clock = new TestClock();
+        loaded = new ArrayList<RefreshableResponseProvider<AccessTokenResponse>>();
+        loader = () -> {
+            @SuppressWarnings("unchecked")
+            RefreshableResponseProvider<AccessTokenResponse> refresher = mock(RefreshableResponseProvider.class);
+            when(refresher.getUnexpiredResponse()).thenReturn(new AccessTokenResponse());
+            loaded.add(refresher);
+            return refresher;
+        };
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_badMaximumSize() {
+        new TokenCache(0, 1000L);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_badMaximumIdleMillis() {
+        new TokenCache(1, 0L);
+    }
+    
+    @Test
+    public void test_sameKeyShared() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        Fresh<AccessTokenResponse> fresh1 = tokenCache.get("a", loader);
+        Fresh<AccessTokenResponse> fresh2 = tokenCache.get("a", loader);
+        assertEquals("expected one load", 1, loaded.size());
+        assertTrue("expected the same token", fresh1.get() == fresh2.get());
+        
+        tokenCache.get("b", loader);
+        assertEquals("expected a load per key", 2, loaded.size());
+        assertEquals(2, tokenCache.size());
+    }
+    
+    @Test
+    public void test_concurrentMissesShareOneLoad() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CompletableFuture<Void> release = new CompletableFuture<Void>();
+        AtomicInteger loads = new AtomicInteger();
+        List<AccessTokenResponse> tokens = Collections.synchronizedList(new ArrayList<AccessTokenResponse>());
+        TokenCache.Loader slowLoader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.join();
+            return loader.load();
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            futures.add(executorService.submit(() -> tokens.add(tokenCache.get("a", slowLoader).get())));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executorService.submit(() -> tokens.add(tokenCache.get("a", slowLoader).get())));
+            }
+            release.complete(null);
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals("expected one load", 1, loads.get());
+        assertEquals(1, loaded.size());
+        assertEquals(4, tokens.size());
+        for (AccessTokenResponse token : tokens) {
+            assertTrue("expected the same token", tokens.get(0) == token);
+        }
+    }
+    
+    @Test
+    public void test_concurrentMissesShareFailure() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CompletableFuture<Void> release = new CompletableFuture<Void>();
+        AtomicInteger loads = new AtomicInteger();
+        TokenCache.Loader failingLoader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.join();
+            throw new RequestExecutionException("simulate unable to connect");
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executorService.submit(() -> tokenCache.get("a", failingLoader));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<?> second = executorService.submit(() -> tokenCache.get("a", failingLoader));
+            release.complete(null);
+            for (Future<?> future : new Future<?>[] {first, second}) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("expected the shared failure");
+                } catch (ExecutionException e) {
+                    assertTrue("unexpected cause " + e.getCause(), 
+                            e.getCause() instanceof RequestExecutionException);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        // the failed load isn't cached; the next miss loads again
+        tokenCache.get("a", loader);
+        assertEquals(1, loaded.size());
+    }
+    
+    @Test
+    public void test_leastRecentlyUsedEvicted() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 2, 1000L);
+        Fresh<AccessTokenResponse> freshA = tokenCache.get("a", loader);
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1);
+        tokenCache.get("b", loader);
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1);
+        // touch a, so b is the least recently used
+        freshA.get();
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1);
+        tokenCache.get("c", loader);
+        
+        assertEquals(2, tokenCache.size());
+        verify(loaded.get(0), never()).shutdown();
+        verify(loaded.get(1), times(1)).shutdown();
+        verify(loaded.get(2), never()).shutdown();
+    }
+    
+    @Test
+    public void test_idleEvictedAndReloaded() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        Fresh<AccessTokenResponse> fresh = tokenCache.get("a", loader);
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1001L);
+        tokenCache.cleanUp();
+        assertEquals(0, tokenCache.size());
+        verify(loaded.get(0), times(1)).shutdown();
+        
+        // the evicted Fresh transparently reloads
+        fresh.get();
+        assertEquals("expected a reload", 2, loaded.size());
+        assertEquals(1, tokenCache.size());
+        fresh.get();
+        assertEquals("expected no further reload", 2, loaded.size());
+    }
+    
+    @Test
+    public void test_invalidateAll() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        tokenCache.get("a", loader);
+        tokenCache.get("b", loader);
+        tokenCache.invalidateAll();
+        assertEquals(0, tokenCache.size());
+        verify(loaded.get(0), times(1)).shutdown();
+        verify(loaded.get(1), times(1)).shutdown();
+    }
+    
+    @Test
+    public void test_invalidateAll_whileLoading() throws Exception {
+        TokenCache tokenCache = new TokenCache(clock, 10, 1000L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CompletableFuture<Void> release = new CompletableFuture<Void>();
+        TokenCache.Loader slowLoader = () -> {
+            loading.countDown();
+            release.join();
+            return loader.load();
+        };
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Fresh<AccessTokenResponse> fresh;
+        try {
+            Future<Fresh<AccessTokenResponse>> future = executorService.submit(() -> tokenCache.get("a", slowLoader));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            tokenCache.invalidateAll();
+            release.complete(null);
+            fresh = future.get(5, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+        // the load invalidated in flight is stopped, not cached
+        assertEquals(0, tokenCache.size());
+        verify(loaded.get(0), times(1)).shutdown();
+        
+        // and its Fresh requests a new token on first use
+        fresh.get();
+        assertEquals("expected a reload", 2, loaded.size());
+        assertEquals(1, tokenCache.size());
+        verify(loaded.get(1), never()).shutdown();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.oauth2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.here.account.util.JsonSerializer;
+
+public class TokenResponseCodecTest {
+
+    private static ByteBuffer heap(String json) {
+        return ByteBuffer.wrap(json.getBytes(JsonSerializer.CHARSET));
+    }
+
+    private static ByteBuffer direct(String json) {
+        byte[] bytes = json.getBytes(JsonSerializer.CHARSET);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private static void assertSameAsDatabind(String json) throws IOException {
+        AccessTokenResponse expected = JsonSerializer.toPojo(heap(json), AccessTokenResponse.class);
+        AccessTokenResponse actual = TokenResponseCodec.readAccessTokenResponse(heap(json));
+        assertEquals(expected.getAccessToken(), actual.getAccessToken());
+        assertEquals(expected.getTokenType(), actual.getTokenType());
+        assertEquals(expected.getExpiresIn(), actual.getExpiresIn());
+        assertEquals(expected.getRefreshToken(), actual.getRefreshToken());
+        assertEquals(expected.getIdToken(), actual.getIdToken());
+    }
+
+    @Test
+    public void test_accessTokenResponse_allFields() throws IOException {
+        String json = "{\"access_token\":\"at\",\"token_type\":\"bearer\",\"expires_in\":3600,"
+                + "\"refresh_token\":\"rt\",\"id_token\":\"it\"}";
+        AccessTokenResponse response = TokenResponseCodec.readAccessTokenResponse(heap(json));
+        assertEquals("at", response.getAccessToken());
+        assertEquals("bearer", response.getTokenType());
+        assertEquals(Long.valueOf(3600L), response.getExpiresIn());
+        assertEquals("rt", response.getRefreshToken());
+        assertEquals("it", response.getIdToken());
+        assertSameAsDatabind(json);
+    }
+
+    @Test
+    public void test_accessTokenResponse_unknownPropertiesSkipped() throws IOException {
+        String json = "{\"scope\":\"a b\",\"nested\":{\"access_token\":\"wrong\",\"x\":[1,{\"y\":2}]},"
+                + "\"list\":[\"access_token\"],\"access_token\":\"at\",\"expires_in\":1}";
+        AccessTokenResponse response = TokenResponseCodec.readAccessTokenResponse(heap(json));
+        assertEquals("at", response.getAccessToken());
+        assertEquals(Long.valueOf(1L), response.getExpiresIn());
+        assertSameAsDatabind(json);
+    }
+
+    @Test
+    public void test_accessTokenResponse_coercion() throws IOException {
+        String json = "{\"access_token\":123,\"expires_in\":\"3600\",\"token_type\":true}";
+        AccessTokenResponse response = TokenResponseCodec.readAccessTokenResponse(heap(json));
+        assertEquals("123", response.getAccessToken());
+        assertEquals(Long.valueOf(3600L), response.getExpiresIn());
+        assertEquals("true", response.getTokenType());
+        assertSameAsDatabind(json);
+    }
+
+    @Test
+    public void test_accessTokenResponse_nulls() throws IOException {
+        String json = "{\"access_token\":null,\"expires_in\":null}";
+        AccessTokenResponse response = TokenResponseCodec.readAccessTokenResponse(heap(json));
+        assertNull(response.getAccessToken());
+        assertNull(response.getExpiresIn());
+        assertSameAsDatabind(json);
+        assertSameAsDatabind("{}");
+    }
+
+    @Test
+    public void test_accessTokenResponse_directBuffer() throws IOException {
+        ByteBuffer buffer = direct("{\"access_token\":\"at\",\"expires_in\":60}");
+        AccessTokenResponse response = TokenResponseCodec.readAccessTokenResponse(buffer);
+        assertEquals("at", response.getAccessToken());
+        assertEquals(Long.valueOf(60L), response.getExpiresIn());
+        assertEquals("position must be unchanged", 0, buffer.position());
+    }
+
+    @Test
+    public void test_accessTokenResponse_heapSlice() throws IOException {
+        byte[] bytes = "xx{\"access_token\":\"at\"}yy".getBytes(JsonSerializer.CHARSET);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 4).slice();
+        assertEquals("at", TokenResponseCodec.readAccessTokenResponse(buffer).getAccessToken());
+    }
+
+    @Test
+    public void test_accessTokenResponse_byteOrderMark() throws IOException {
+        byte[] json = "{\"access_token\":\"at\"}".getBytes(JsonSerializer.CHARSET);
+        byte[] bytes = new byte[json.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(json, 0, bytes, 3, json.length);
+        assertEquals("at", JsonSerializer.toPojo(ByteBuffer.wrap(bytes), AccessTokenResponse.class)
+                .getAccessToken());
+        assertEquals("at", TokenResponseCodec.readAccessTokenResponse(ByteBuffer.wrap(bytes)).getAccessToken());
+    }
+
+    @Test
+    public void test_accessTokenResponse_contentAfterObject() throws IOException {
+        assertSameAsDatabind("{\"access_token\":\"at\"}\n");
+        assertSameAsDatabind("{\"access_token\":\"at\"} {\"access_token\":\"other\"}");
+        assertSameAsDatabind("{\"access_token\":\"at\"}garbage");
+        assertEquals("at", TokenResponseCodec.readErrorResponse(heap("{\"error\":\"at\"}garbage")).getError());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_malformed() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap("bogus"));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_truncated() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap("{\"access_token\":\"at\""));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_empty() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap(""));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_notAnObject() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap("[\"access_token\"]"));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_objectForString() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap("{\"access_token\":{\"a\":1}}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_accessTokenResponse_textForNumber() throws IOException {
+        TokenResponseCodec.readAccessTokenResponse(heap("{\"expires_in\":\"soon\"}"));
+    }
+
+    @Test
+    public void test_errorResponse() throws IOException {
+        String json = "{\"errorId\":\"ERROR-1\",\"httpStatus\":401,\"errorCode\":\"401300\","
+                + "\"message\":\"Signature mismatch\",\"error\":\"invalid_client\","
+                + "\"error_description\":\"errorCode: '401300'\",\"extra\":{\"a\":[]}}";
+        ErrorResponse response = TokenResponseCodec.readErrorResponse(heap(json));
+        assertEquals("invalid_client", response.getError());
+        assertEquals("errorCode: '401300'", response.getErrorDescription());
+        assertEquals("ERROR-1", response.getErrorId());
+        assertEquals(Integer.valueOf(401), response.getHttpStatus());
+        assertEquals(Integer.valueOf(401300), response.getErrorCode());
+        assertEquals("Signature mismatch", response.getMessage());
+
+        ErrorResponse expected = JsonSerializer.toPojo(heap(json), ErrorResponse.class);
+        assertEquals(expected.getError(), response.getError());
+        assertEquals(expected.getErrorDescription(), response.getErrorDescription());
+        assertEquals(expected.getErrorId(), response.getErrorId());
+        assertEquals(expected.getHttpStatus(), response.getHttpStatus());
+        assertEquals(expected.getErrorCode(), response.getErrorCode());
+        assertEquals(expected.getMessage(), response.getMessage());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_errorResponse_outOfRange() throws IOException {
+        TokenResponseCodec.readErrorResponse(heap("{\"httpStatus\":4294967296}"));
+    }
+}
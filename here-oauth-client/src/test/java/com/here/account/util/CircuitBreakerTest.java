@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
+
+public class CircuitBreakerTest {
+
+    private TestClock clock;
+    private CircuitBreaker circuitBreaker;
+    
+    @Before
+    public void setUp() {
+        clock = new TestClock();
+        circuitBreaker = new CircuitBreaker(clock, 3, 1000L);
+    }
+    
+    @Test
+    public void test_opensAfterThreshold() {
+        for (int i = 0; i < 2; i++) {
+            assertTrue(circuitBreaker.allowRequest());
+            circuitBreaker.recordFailure();
+            assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        }
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(3, circuitBreaker.getConsecutiveFailures());
+        assertFalse(circuitBreaker.allowRequest());
+        assertEquals(1000L, circuitBreaker.getRemainingOpenMillis());
+    }
+    
+    @Test
+    public void test_successResets() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getConsecutiveFailures());
+    }
+    
+    @Test
+    public void test_halfOpen_singleTrial() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1000L);
+        assertTrue("expected one trial call", circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse("expected only one trial call", circuitBreaker.allowRequest());
+        
+        circuitBreaker.recordFailure();
+        assertEquals("failed trial opens again", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+        
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 1000L);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.getConsecutiveFailures());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider() {
+        final AtomicInteger refreshCalls = new AtomicInteger();
+        final ExpiringResponse initialToken = new ExpiringResponse() {
+
+            @Override
+            public Long getExpiresIn() {
+                return 3600L;
+            }
+
+            @Override
+            public Long getStartTimeMilliseconds() {
+                return clock.currentTimeMillis();
+            }
+            
+        };
+        RefreshableResponseProvider<ExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<ExpiringResponse>builder()
+                .setClock(clock)
+                .setInitialToken(initialToken)
+                .setRefreshTokenFunction((ExpiringResponse previous) -> {
+                    refreshCalls.incrementAndGet();
+                    throw new RuntimeException("simulate unable to refresh");
+                })
+                .setRetryBackoff(new ExponentialBackoff(1000L, 8000L))
+                .setCircuitBreaker(new CircuitBreaker(clock, 3, TimeUnit.MINUTES.toMillis(10L)))
+                .build();
+        try {
+            // the first, scheduled refresh, then retries
+            long nowMillis = clock.currentTimeMillis() + TimeUnit.HOURS.toMillis(1L);
+            clock.setCurrentTimeMillis(nowMillis);
+            assertEquals(1, refreshCalls.get());
+            assertEquals(1, refreshableResponseProvider.getConsecutiveFailures());
+            assertTrue(refreshableResponseProvider.nextRetryInterval() <= 1000L);
+            
+            for (int i = 0; i < 5; i++) {
+                nowMillis += TimeUnit.MINUTES.toMillis(1L);
+                clock.setCurrentTimeMillis(nowMillis);
+            }
+            assertEquals("expected retries to stop while the circuit breaker is open", 
+                    3, refreshCalls.get());
+            assertEquals(3, refreshableResponseProvider.getConsecutiveFailures());
+            assertTrue("expected the retry after the circuit breaker opens", 
+                    refreshableResponseProvider.nextRetryInterval() > TimeUnit.MINUTES.toMillis(5L));
+            
+            // the trial call
+            clock.setCurrentTimeMillis(nowMillis + TimeUnit.MINUTES.toMillis(10L));
+            assertEquals(4, refreshCalls.get());
+        } finally {
+            refreshableResponseProvider.shutdown();
+        }
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider_error() {
+        final AtomicInteger refreshCalls = new AtomicInteger();
+        final ExpiringResponse initialToken = new ExpiringResponse() {
+
+            @Override
+            public Long getExpiresIn() {
+                return 3600L;
+            }
+
+            @Override
+            public Long getStartTimeMilliseconds() {
+                return clock.currentTimeMillis();
+            }
+            
+        };
+        CircuitBreaker refreshCircuitBreaker = new CircuitBreaker(clock, 1, TimeUnit.MINUTES.toMillis(1L));
+        RefreshableResponseProvider<ExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<ExpiringResponse>builder()
+                .setClock(clock)
+                .setInitialToken(initialToken)
+                .setRefreshTokenFunction((ExpiringResponse previous) -> {
+                    if (1 == refreshCalls.incrementAndGet()) {
+                        throw new ExceptionInInitializerError("simulate a broken refresh");
+                    }
+                    return initialToken;
+                })
+                .setRetryBackoff(new ExponentialBackoff(1000L, 8000L))
+                .setCircuitBreaker(refreshCircuitBreaker)
+                .build();
+        try {
+            long nowMillis = clock.currentTimeMillis() + TimeUnit.HOURS.toMillis(1L);
+            clock.setCurrentTimeMillis(nowMillis);
+            assertEquals(1, refreshCalls.get());
+            assertEquals(1, refreshableResponseProvider.getConsecutiveFailures());
+            assertEquals("expected the failure recorded", 
+                    CircuitBreaker.State.OPEN, refreshCircuitBreaker.getState());
+            
+            // the failed refresh doesn't block the retry, the circuit breaker's trial call
+            clock.setCurrentTimeMillis(nowMillis + TimeUnit.MINUTES.toMillis(1L) + 1000L);
+            assertEquals(2, refreshCalls.get());
+            assertEquals(0, refreshableResponseProvider.getConsecutiveFailures());
+            assertEquals(CircuitBreaker.State.CLOSED, refreshCircuitBreaker.getState());
+        } finally {
+            refreshableResponseProvider.shutdown();
+        }
+    }
+}
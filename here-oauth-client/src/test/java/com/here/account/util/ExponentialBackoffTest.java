@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ExponentialBackoffTest {
+
+    @Test
+    public void test_maximumDelay_doublesUpToCap() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000L, 60000L);
+        assertEquals(1000L, backoff.getMaximumDelayMillis(1));
+        assertEquals(2000L, backoff.getMaximumDelayMillis(2));
+        assertEquals(4000L, backoff.getMaximumDelayMillis(3));
+        assertEquals(32000L, backoff.getMaximumDelayMillis(6));
+        assertEquals(60000L, backoff.getMaximumDelayMillis(7));
+        assertEquals(60000L, backoff.getMaximumDelayMillis(1000));
+        assertEquals(60000L, backoff.getMaximumDelayMillis(Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void test_delay_fullJitter() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000L, 60000L, new Random(42L));
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delayMillis = backoff.getDelayMillis(3);
+            min = Math.min(min, delayMillis);
+            max = Math.max(max, delayMillis);
+        }
+        assertTrue("min " + min, min >= 0L && min < 400L);
+        assertTrue("max " + max, max <= 4000L && max > 3600L);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_badInitial() {
+        new ExponentialBackoff(0L, 1000L);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_badMaximum() {
+        new ExponentialBackoff(1000L, 999L);
+    }
+}
@@ -15,11 +15,14 @@
  */
 package com.here.account.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -45,6 +48,23 @@ public class JsonSerializerTest {
         assertTrue("expected accessToken "+accessToken+", actual "+actualAccessToken, accessToken.equals(actualAccessToken));
     }
     
+    @Test
+    public void test_toPojo_byteBuffer() throws IOException {
+        String accessToken = "at"+UUID.randomUUID();
+        byte[] json = ("xx{\"access_token\":\""+accessToken+"\",\"expires_in\":123}yy").getBytes(JsonSerializer.CHARSET);
+        // a heap slice, parsed in place
+        ByteBuffer heap = ByteBuffer.wrap(json, 2, json.length - 4).slice();
+        assertEquals(accessToken, JsonSerializer.toPojo(heap, AccessTokenResponse.class).getAccessToken());
+        assertEquals("position must be unchanged", 0, heap.position());
+        
+        ByteBuffer direct = ByteBuffer.allocateDirect(json.length);
+        direct.put(json);
+        ((Buffer) direct).position(2);
+        ((Buffer) direct).limit(json.length - 2);
+        assertEquals(accessToken, JsonSerializer.toPojo(direct, AccessTokenResponse.class).getAccessToken());
+        assertEquals(2, direct.position());
+    }
+    
     @Test
     public void test_escape_solidus() throws IOException {
         ObjectMapper MAPPER = new ObjectMapper();
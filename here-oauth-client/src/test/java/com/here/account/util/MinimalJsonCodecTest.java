@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MinimalJsonCodecTest {
+
+    private final MinimalJsonCodec codec = new MinimalJsonCodec();
+    private final JacksonJsonCodec jacksonCodec = new JacksonJsonCodec();
+
+    private static ByteArrayInputStream in(String json) {
+        return new ByteArrayInputStream(json.getBytes(JsonSerializer.CHARSET));
+    }
+
+    private void assertSameAsJackson(String json) throws IOException {
+        assertEquals(jacksonCodec.toMap(in(json)), codec.toMap(in(json)));
+    }
+
+    @Test
+    public void test_toMap_types() throws IOException {
+        String json = "{\"s\":\"x\",\"i\":1,\"l\":12345678901,\"b\":123456789012345678901234,"
+                + "\"d\":1.5,\"e\":-2E3,\"t\":true,\"f\":false,\"n\":null,"
+                + "\"a\":[1,\"two\",[],{}],\"o\":{\"nested\":{\"deep\":[null]}}}";
+        Map<String, Object> map = codec.toMap(in(json));
+        assertEquals("x", map.get("s"));
+        assertEquals(Integer.valueOf(1), map.get("i"));
+        assertEquals(Long.valueOf(12345678901L), map.get("l"));
+        assertEquals(new BigInteger("123456789012345678901234"), map.get("b"));
+        assertEquals(Double.valueOf(1.5), map.get("d"));
+        assertEquals(Double.valueOf(-2000), map.get("e"));
+        assertEquals(Boolean.TRUE, map.get("t"));
+        assertEquals(Boolean.FALSE, map.get("f"));
+        assertTrue(map.containsKey("n"));
+        assertNull(map.get("n"));
+        assertSameAsJackson(json);
+    }
+
+    @Test
+    public void test_toMap_strings() throws IOException {
+        assertSameAsJackson("{\"escapes\":\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\\uD83D\\uDE00\","
+                + "\"utf8\":\"café 東京 😀\",\"\":\"\"}");
+    }
+
+    @Test
+    public void test_toMap_integerBoundaries() throws IOException {
+        assertSameAsJackson("{\"a\":2147483647,\"b\":2147483648,\"c\":-2147483648,\"d\":-2147483649,"
+                + "\"e\":9223372036854775807,\"f\":9223372036854775808,\"g\":-9223372036854775808,"
+                + "\"h\":1000000000,\"i\":0,\"j\":-0}");
+    }
+
+    @Test
+    public void test_toMap_whitespace() throws IOException {
+        assertSameAsJackson(" \r\n\t{ \"a\" : [ 1 , 2 ] , \"b\" : { } } \n");
+    }
+
+    @Test
+    public void test_toMap_malformed() {
+        List<String> malformed = Arrays.asList(
+                "",
+                "   ",
+                "[]",
+                "\"string\"",
+                "{",
+                "{\"a\"}",
+                "{\"a\":}",
+                "{\"a\":1,}",
+                "{,\"a\":1}",
+                "{\"a\":1 \"b\":2}",
+                "{a:1}",
+                "{'a':1}",
+                "{\"a\":[1,]}",
+                "{\"a\":[1 2]}",
+                "{\"a\":01}",
+                "{\"a\":1.}",
+                "{\"a\":.5}",
+                "{\"a\":1e}",
+                "{\"a\":-}",
+                "{\"a\":+1}",
+                "{\"a\":tru}",
+                "{\"a\":nul}",
+                "{\"a\":\"unterminated}",
+                "{\"a\":\"bad \\x escape\"}",
+                "{\"a\":\"bad \\u12 escape\"}",
+                "{\"a\":\"control \u0001 char\"}",
+                "{\"a\":1}}",
+                "{\"a\":1} trailing",
+                "{\"a\":[1}",
+                "{\"a\":{]}");
+        for (String json : malformed) {
+            try {
+                codec.toMap(in(json));
+                fail("expected IOException for " + json);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void test_toMap_maxDepth() throws IOException {
+        StringBuilder deep = new StringBuilder("{\"a\":");
+        for (int i = 0; i < JsonTokenizer.MAX_DEPTH; i++) {
+            deep.append('[');
+        }
+        try {
+            codec.toMap(in(deep.toString()));
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nested deeper than"));
+        }
+    }
+
+    @Test
+    public void test_toJson() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("s", "quote\" backslash\\ slash/ newline\n tab\t control\u0001 café 😀");
+        map.put("i", 1);
+        map.put("l", 12345678901L);
+        map.put("d", 1.5);
+        map.put("t", true);
+        map.put("list", Arrays.asList(1, "two", Collections.emptyMap()));
+        map.put("array", new int[] {1, 2});
+        map.put("nested", Collections.singletonMap("k", Collections.singletonList("v")));
+        map.put("c", 'c');
+        assertEquals(jacksonCodec.toJson(map), codec.toJson(map));
+    }
+
+    @Test
+    public void test_toJson_roundTrip() throws IOException {
+        String json = "{\"access_token\":\"h1.abc\",\"expires_in\":3600,\"scopes\":[\"a\",\"b\"],"
+                + "\"nested\":{\"x\":null,\"y\":false}}";
+        assertEquals(json, codec.toJson(codec.toMap(in(json))));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_toJson_unsupported() throws IOException {
+        codec.toJson(Collections.<String, Object>singletonMap("pojo", new Object()));
+    }
+
+    @Test
+    public void test_tokenizer_skipChildren() throws IOException {
+        byte[] bytes = "{\"skip\":{\"a\":[1,{\"b\":[]}],\"c\":\"}\"},\"keep\":2}".getBytes(JsonSerializer.CHARSET);
+        JsonTokenizer tokenizer = new JsonTokenizer(bytes, 0, bytes.length);
+        assertEquals(JsonTokenizer.Token.START_OBJECT, tokenizer.nextToken());
+        assertEquals("skip", tokenizer.nextFieldName());
+        assertEquals(JsonTokenizer.Token.START_OBJECT, tokenizer.nextToken());
+        tokenizer.skipChildren();
+        assertEquals(JsonTokenizer.Token.END_OBJECT, tokenizer.getCurrentToken());
+        assertEquals("keep", tokenizer.nextFieldName());
+        assertEquals(JsonTokenizer.Token.VALUE_NUMBER, tokenizer.nextToken());
+        assertTrue(tokenizer.isIntegralNumber());
+        assertEquals("2", tokenizer.getText());
+        assertNull(tokenizer.nextFieldName());
+        assertEquals(JsonTokenizer.Token.END_OBJECT, tokenizer.getCurrentToken());
+        assertNull(tokenizer.nextToken());
+    }
+
+    @Test
+    public void test_jsonSerializer_codec() {
+        assertTrue("expected the Jackson codec, actual " + JsonSerializer.getCodec(),
+                JsonSerializer.getCodec() instanceof JacksonJsonCodec);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
+
+public class RefreshPolicyTest {
+
+    private static ExpiringResponse expiresIn(final long expiresInSeconds) {
+        return new ExpiringResponse() {
+
+            @Override
+            public Long getExpiresIn() {
+                return expiresInSeconds;
+            }
+
+            @Override
+            public Long getStartTimeMilliseconds() {
+                return System.currentTimeMillis();
+            }
+            
+        };
+    }
+    
+    @Test
+    public void test_default() {
+        assertEquals(3590000L, RefreshPolicy.DEFAULT.getRefreshDelayMillis(expiresIn(3600L)));
+        assertEquals("expected minimum", 30000L, RefreshPolicy.DEFAULT.getRefreshDelayMillis(expiresIn(35L)));
+    }
+    
+    @Test
+    public void test_fractionOfLifetime_noJitter() {
+        RefreshPolicy refreshPolicy = new RefreshPolicy.FractionOfLifetime(0.75, 0.0);
+        assertEquals(2700000L, refreshPolicy.getRefreshDelayMillis(expiresIn(3600L)));
+    }
+    
+    @Test
+    public void test_fractionOfLifetime_jitter() {
+        RefreshPolicy refreshPolicy = new RefreshPolicy.FractionOfLifetime(0.75, 0.1, new Random(42L));
+        Set<Long> delays = new HashSet<Long>();
+        for (int i = 0; i < 1000; i++) {
+            long delayMillis = refreshPolicy.getRefreshDelayMillis(expiresIn(3600L));
+            assertTrue("too soon " + delayMillis, delayMillis >= 2340000L);
+            assertTrue("too late " + delayMillis, delayMillis <= 3060000L);
+            delays.add(delayMillis);
+        }
+        assertTrue("expected the delays to be spread out", delays.size() > 900);
+    }
+    
+    @Test
+    public void test_fractionOfLifetime_minimum() {
+        RefreshPolicy refreshPolicy = new RefreshPolicy.FractionOfLifetime(0.5, 0.0);
+        assertEquals(RefreshPolicy.FractionOfLifetime.MINIMUM_DELAY_MILLIS, 
+                refreshPolicy.getRefreshDelayMillis(expiresIn(1L)));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_fractionOfLifetime_badFraction() {
+        new RefreshPolicy.FractionOfLifetime(1.0, 0.0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void test_fractionOfLifetime_badJitter() {
+        new RefreshPolicy.FractionOfLifetime(0.9, 0.2);
+    }
+    
+    @Test
+    public void test_builder_refreshPolicy() {
+        RefreshableResponseProvider<ExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<ExpiringResponse>builder()
+                .setClock(new TestClock())
+                .setInitialToken(expiresIn(3600L))
+                .setRefreshTokenFunction((ExpiringResponse previous) -> expiresIn(3600L))
+                .setRefreshPolicy(new RefreshPolicy.FractionOfLifetime(0.5, 0.0))
+                .build();
+        try {
+            assertEquals(1800000L, refreshableResponseProvider.nextRefreshInterval());
+        } finally {
+            refreshableResponseProvider.shutdown();
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package com.here.account.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -128,5 +134,56 @@ public class RefreshableResponseProviderTest {
             tearDown();
         }
     }
-    
+
+    @Test
+    public void test_beforeRefresh() {
+        TestClock clock = new TestClock();
+        final List<String> events = new ArrayList<String>();
+        this.refreshableResponseProvider = RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setClock(clock)
+                .setRefreshIntervalMillis(10000L)
+                .setBeforeRefresh(() -> events.add("before"), 1000L)
+                .setInitialToken(initialToken)
+                .setRefreshTokenFunction((MyExpiringResponse previous) -> {
+                    events.add("refresh");
+                    return new MyExpiringResponse();
+                })
+                .build();
+
+        long start = clock.currentTimeMillis();
+        clock.setCurrentTimeMillis(start + 8999L);
+        assertEquals(Collections.emptyList(), events);
+        clock.setCurrentTimeMillis(start + 9000L);
+        assertEquals(Arrays.asList("before"), events);
+        clock.setCurrentTimeMillis(start + 10000L);
+        assertEquals(Arrays.asList("before", "refresh"), events);
+        clock.setCurrentTimeMillis(start + 20000L);
+        assertEquals(Arrays.asList("before", "refresh", "before", "refresh"), events);
+    }
+
+    @Test
+    public void test_beforeRefresh_failureDoesNotStopRefresh() {
+        TestClock clock = new TestClock();
+        final List<String> events = new ArrayList<String>();
+        this.refreshableResponseProvider = RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setClock(clock)
+                .setRefreshIntervalMillis(10000L)
+                .setBeforeRefresh(() -> {
+                    throw new IllegalStateException("simulate trouble preparing");
+                }, 1000L)
+                .setInitialToken(initialToken)
+                .setRefreshTokenFunction((MyExpiringResponse previous) -> {
+                    events.add("refresh");
+                    return new MyExpiringResponse();
+                })
+                .build();
+
+        clock.setCurrentTimeMillis(clock.currentTimeMillis() + 10000L);
+        assertEquals(Arrays.asList("refresh"), events);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_beforeRefresh_leadMillis() {
+        RefreshableResponseProvider.<MyExpiringResponse>builder().setBeforeRefresh(() -> {}, 0L);
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
+
+public class SharedRefreshSchedulerTest {
+
+    private SharedRefreshScheduler scheduler;
+    
+    @Before
+    public void setUp() {
+        scheduler = new SharedRefreshScheduler(10L, 8, 2);
+    }
+    
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+    
+    @Test
+    public void test_runsAfterDelay() throws InterruptedException {
+        final CountDownLatch ran = new CountDownLatch(1);
+        long startMillis = System.currentTimeMillis();
+        SharedRefreshScheduler.Timeout timeout = scheduler.schedule(() -> ran.countDown(), 50L);
+        assertTrue("task should have run", ran.await(5, TimeUnit.SECONDS));
+        assertTrue("task ran too early", System.currentTimeMillis() - startMillis >= 50L);
+        assertTrue(timeout.isExpired());
+    }
+    
+    @Test
+    public void test_delayLongerThanOneRevolution() throws InterruptedException {
+        // 8 buckets of 10 ms is one revolution per 80 ms
+        final CountDownLatch ran = new CountDownLatch(1);
+        long startMillis = System.currentTimeMillis();
+        scheduler.schedule(() -> ran.countDown(), 200L);
+        assertTrue("task should have run", ran.await(5, TimeUnit.SECONDS));
+        assertTrue("task ran too early", System.currentTimeMillis() - startMillis >= 200L);
+    }
+    
+    @Test
+    public void test_cancel() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        SharedRefreshScheduler.Timeout timeout = scheduler.schedule(() -> runs.incrementAndGet(), 30L);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        final CountDownLatch later = new CountDownLatch(1);
+        scheduler.schedule(() -> later.countDown(), 100L);
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertEquals("cancelled task should not run", 0, runs.get());
+        assertFalse(timeout.cancel());
+    }
+    
+    @Test
+    public void test_manyTasksFewThreads() throws InterruptedException {
+        int numTasks = 10000;
+        final CountDownLatch ran = new CountDownLatch(numTasks);
+        int threadsBefore = Thread.activeCount();
+        for (int i = 0; i < numTasks; i++) {
+            scheduler.schedule(() -> ran.countDown(), i % 100);
+        }
+        assertTrue("all tasks should have run", ran.await(10, TimeUnit.SECONDS));
+        // one timer thread plus two workers
+        assertTrue("thread count should stay flat", Thread.activeCount() - threadsBefore <= 3);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void test_scheduleAfterShutdown() {
+        scheduler.shutdown();
+        scheduler.schedule(() -> { }, 10L);
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(2);
+        RefreshableResponseProvider<MyExpiringResponse> refreshableResponseProvider = 
+                new RefreshableResponseProvider<MyExpiringResponse>(
+                scheduler.getClock(), 20L, new MyExpiringResponse(), 
+                (MyExpiringResponse previous) -> {
+                    refreshed.countDown();
+                    return new MyExpiringResponse();
+                }, 
+                RefreshableResponseProvider.getScheduledExecutorServiceSize1());
+        try {
+            assertTrue("expected refreshes on the shared scheduler", refreshed.await(5, TimeUnit.SECONDS));
+        } finally {
+            refreshableResponseProvider.shutdown();
+        }
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider_shutdownCancels() throws InterruptedException {
+        RefreshableResponseProvider<MyExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setClock(scheduler.getClock())
+                .setRefreshIntervalMillis(60000L)
+                .setInitialToken(new MyExpiringResponse())
+                .setRefreshTokenFunction((MyExpiringResponse previous) -> new MyExpiringResponse())
+                .build();
+        assertEquals(1, scheduler.getPendingCount());
+        refreshableResponseProvider.shutdown();
+        // the cancelled refresh leaves the wheel within a revolution, not after its delay
+        long deadlineMillis = System.currentTimeMillis() + 5000L;
+        while (scheduler.getPendingCount() > 0 && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10L);
+        }
+        assertEquals("expected the scheduled refresh cancelled", 0, scheduler.getPendingCount());
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider_refreshExecutor() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final String[] refreshThreadName = new String[1];
+        ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(
+                (Runnable r) -> new Thread(r, "test-refresh"));
+        RefreshableResponseProvider<MyExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setClock(scheduler.getClock())
+                .setRefreshIntervalMillis(20L)
+                .setRefreshExecutor((Runnable command) -> {
+                    executions.incrementAndGet();
+                    refreshExecutor.execute(command);
+                })
+                .setInitialToken(new MyExpiringResponse())
+                .setRefreshTokenFunction((MyExpiringResponse previous) -> {
+                    refreshThreadName[0] = Thread.currentThread().getName();
+                    refreshed.countDown();
+                    return new MyExpiringResponse();
+                })
+                .build();
+        try {
+            assertTrue("expected a refresh", refreshed.await(5, TimeUnit.SECONDS));
+            assertEquals("test-refresh", refreshThreadName[0]);
+            assertTrue(executions.get() >= 1);
+        } finally {
+            refreshableResponseProvider.shutdown();
+            refreshExecutor.shutdown();
+        }
+    }
+    
+    @Test
+    public void test_refreshableResponseProvider_defaultRefreshExecutor() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        final String[] refreshThreadName = new String[1];
+        RefreshableResponseProvider<MyExpiringResponse> refreshableResponseProvider = 
+                RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setRefreshIntervalMillis(20L)
+                .setInitialToken(new MyExpiringResponse())
+                .setRefreshTokenFunction((MyExpiringResponse previous) -> {
+                    refreshThreadName[0] = Thread.currentThread().getName();
+                    refreshed.countDown();
+                    return new MyExpiringResponse();
+                })
+                .build();
+        try {
+            assertTrue("expected a refresh", refreshed.await(5, TimeUnit.SECONDS));
+            assertTrue("expected a default refresh thread, actual " + refreshThreadName[0], 
+                    refreshThreadName[0].startsWith("here-auth-refresh-io-"));
+        } finally {
+            refreshableResponseProvider.shutdown();
+        }
+    }
+    
+    @Test
+    public void test_defaultRefreshExecutor_bounded() {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) SharedRefreshScheduler.getDefaultRefreshExecutor();
+        assertEquals(SharedRefreshScheduler.DEFAULT_REFRESH_THREADS, executor.getMaximumPoolSize());
+        assertTrue(executor.allowsCoreThreadTimeOut());
+        assertEquals(SharedRefreshScheduler.DEFAULT_REFRESH_QUEUE_CAPACITY, 
+                executor.getQueue().size() + executor.getQueue().remainingCapacity());
+    }
+    
+    private static class MyExpiringResponse implements ExpiringResponse {
+        private final long startTimeMillis = System.currentTimeMillis();
+
+        @Override
+        public Long getExpiresIn() {
+            return 60L;
+        }
+
+        @Override
+        public Long getStartTimeMilliseconds() {
+            return startTimeMillis;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.here.account.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.here.account.util.RefreshableResponseProvider.ExpiringResponse;
+import com.here.account.util.RefreshableResponseProvider.ResponseRefresher;
+
+public class StaleWhileRevalidateTest {
+
+    private static final long EXPIRES_IN_SECONDS = 60L;
+    private static final long SOFT_WINDOW_MILLIS = 10000L;
+    private static final long BLOCKING_TIMEOUT_MILLIS = 100L;
+    
+    private TestClock clock;
+    private AtomicInteger refreshes;
+    private AtomicBoolean fail;
+    private ExecutorService refreshExecutor;
+    private RefreshableResponseProvider<MyExpiringResponse> refreshableResponseProvider;
+    
+    private class MyExpiringResponse implements ExpiringResponse {
+        private final long startTimeMillis = clock.currentTimeMillis();
+        
+        @Override
+        public Long getExpiresIn() {
+            return EXPIRES_IN_SECONDS;
+        }
+
+        @Override
+        public Long getStartTimeMilliseconds() {
+            return startTimeMillis;
+        }
+    }
+    
+    @Before
+    public void setUp() {
+        clock = new TestClock();
+        refreshes = new AtomicInteger();
+        fail = new AtomicBoolean();
+        refreshExecutor = Executors.newSingleThreadExecutor();
+    }
+    
+    @After
+    public void tearDown() {
+        if (null != refreshableResponseProvider) {
+            refreshableResponseProvider.shutdown();
+        }
+        refreshExecutor.shutdownNow();
+    }
+    
+    private void build(ResponseRefresher<MyExpiringResponse> refreshTokenFunction) {
+        refreshableResponseProvider = RefreshableResponseProvider.<MyExpiringResponse>builder()
+                .setClock(clock)
+                // scheduled refreshes never come, as if they were all failing
+                .setRefreshIntervalMillis(TimeUnit.DAYS.toMillis(1L))
+                .setRefreshExecutor(refreshExecutor)
+                .setStaleWhileRevalidate(SOFT_WINDOW_MILLIS, BLOCKING_TIMEOUT_MILLIS)
+                .setInitialToken(new MyExpiringResponse())
+                .setRefreshTokenFunction(refreshTokenFunction)
+                .build();
+    }
+    
+    private void build() {
+        build((MyExpiringResponse previous) -> {
+            refreshes.incrementAndGet();
+            if (fail.get()) {
+                throw new RuntimeException("simulate unable to refresh");
+            }
+            return new MyExpiringResponse();
+        });
+    }
+    
+    @Test
+    public void test_fresh() {
+        build();
+        MyExpiringResponse initial = refreshableResponseProvider.getUnexpiredResponse();
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + 49000L);
+        assertTrue(initial == refreshableResponseProvider.getUnexpiredResponse());
+        assertEquals(0, refreshes.get());
+    }
+    
+    @Test
+    public void test_softWindow_backgroundRefreshDeduplicated() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        build((MyExpiringResponse previous) -> {
+            refreshes.incrementAndGet();
+            awaitQuietly(release);
+            return new MyExpiringResponse();
+        });
+        MyExpiringResponse initial = refreshableResponseProvider.getUnexpiredResponse();
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + 55000L);
+        for (int i = 0; i < 5; i++) {
+            assertTrue("expected the current response", 
+                    initial == refreshableResponseProvider.getUnexpiredResponse());
+        }
+        
+        // let the background refresh finish
+        release.countDown();
+        awaitRefreshed(initial);
+        assertEquals("expected one refresh", 1, refreshes.get());
+    }
+    
+    @Test
+    public void test_softWindow_refreshReschedules() throws InterruptedException {
+        build();
+        MyExpiringResponse initial = refreshableResponseProvider.getUnexpiredResponse();
+        long softMillis = clock.getStartTimeMillis() + 55000L;
+        clock.setCurrentTimeMillis(softMillis);
+        awaitRefreshed(initial);
+        assertEquals(1, refreshes.get());
+        
+        // the refresh scheduled for the initial response was cancelled
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + TimeUnit.DAYS.toMillis(1L) + 1L);
+        Thread.sleep(50L);
+        assertEquals("expected the original scheduled refresh cancelled", 1, refreshes.get());
+        
+        // and replaced by one for the refreshed response
+        clock.setCurrentTimeMillis(softMillis + TimeUnit.DAYS.toMillis(1L) + 1L);
+        long deadlineMillis = System.currentTimeMillis() + 5000L;
+        while (refreshes.get() < 2 && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10L);
+        }
+        assertEquals("expected the rescheduled refresh", 2, refreshes.get());
+    }
+    
+    /**
+     * Calls getUnexpiredResponse(), within the soft window, until a background refresh replaces the response.
+     */
+    private void awaitRefreshed(MyExpiringResponse previous) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + 5000L;
+        while (previous == refreshableResponseProvider.getUnexpiredResponse() 
+                && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10L);
+        }
+        assertTrue("expected the refreshed response", previous != refreshableResponseProvider.getUnexpiredResponse());
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Test
+    public void test_expired_blockingRefresh() {
+        build();
+        MyExpiringResponse initial = refreshableResponseProvider.getUnexpiredResponse();
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + 61000L);
+        MyExpiringResponse refreshed = refreshableResponseProvider.getUnexpiredResponse();
+        assertTrue("expected the refreshed response", initial != refreshed);
+        assertEquals(1, refreshes.get());
+        assertTrue(refreshed == refreshableResponseProvider.getUnexpiredResponse());
+        assertEquals(1, refreshes.get());
+    }
+    
+    @Test
+    public void test_expired_refreshFails() {
+        build();
+        fail.set(true);
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + 61000L);
+        try {
+            refreshableResponseProvider.getUnexpiredResponse();
+            fail("should never return an expired response");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        fail.set(false);
+        refreshableResponseProvider.getUnexpiredResponse();
+        assertEquals("expected a new refresh after the failed one", 2, refreshes.get());
+    }
+    
+    @Test
+    public void test_expired_refreshTimesOut() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        build((MyExpiringResponse previous) -> {
+            refreshes.incrementAndGet();
+            awaitQuietly(release);
+            return new MyExpiringResponse();
+        });
+        MyExpiringResponse initial = refreshableResponseProvider.getUnexpiredResponse();
+        clock.setCurrentTimeMillis(clock.getStartTimeMillis() + 61000L);
+        
+        final AtomicBoolean otherTimedOut = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            try {
+                refreshableResponseProvider.getUnexpiredResponse();
+            } catch (IllegalStateException e) {
+                otherTimedOut.set(true);
+            }
+        });
+        other.start();
+        try {
+            // no caller, not even the one that started the refresh, waits past the timeout
+            refreshableResponseProvider.getUnexpiredResponse();
+            fail("should time out waiting for the refresh");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            other.join(5000L);
+        }
+        assertTrue("expected the other caller to time out too", otherTimedOut.get());
+        assertEquals("expected one shared refresh", 1, refreshes.get());
+        
+        release.countDown();
+        MyExpiringResponse refreshed = null;
+        long deadlineMillis = System.currentTimeMillis() + 5000L;
+        while (null == refreshed && System.currentTimeMillis() < deadlineMillis) {
+            try {
+                refreshed = refreshableResponseProvider.getUnexpiredResponse();
+            } catch (IllegalStateException e) {
+                // the refresh is still finishing
+            }
+        }
+        assertTrue("expected the refreshed response", null != refreshed && initial != refreshed);
+        assertEquals(1, refreshes.get());
+    }
+}